@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray.bench;
+
+import java.io.File;
+
+import com.apocalyptech.minecraft.xray.CameraPreset;
+import com.apocalyptech.minecraft.xray.MinecraftLevel;
+
+/**
+ * Checks that steady-state frames don't allocate anything.  This is the
+ * headless version of what FrameAllocationMonitor watches for in X-Ray
+ * itself: we load and mesh everything around the spawn point with a
+ * ReplayHarness (so through ChunkLoader, MeshScheduler and a
+ * RecordingRenderBackend), let it settle, warm up for a while so that the
+ * JIT has done its work, and then run a batch of frames with the camera
+ * sitting still, reading the thread's allocation counter before and after.
+ *
+ * We exit with a non-zero status if those frames allocated anything at all,
+ * so that this can be run as a check from ant.
+ */
+public class AllocationCheck
+{
+	private static final int WORLD_VERSION = 1;
+
+	private static void usage()
+	{
+		System.err.println("Usage: AllocationCheck [--world <dir> | --size <chunks>] [--range <chunks>]");
+		System.err.println("                       [--workers <n>] [--warmup <frames>] [--frames <n>]");
+		System.exit(1);
+	}
+
+	public static void main(String[] args)
+		throws Exception
+	{
+		File worldDir = null;
+		int size = 24;
+		int range = 8;
+		int workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		int warmup = 20000;
+		int frames = 1000;
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("--world"))
+				{
+					worldDir = new File(args[++i]);
+				}
+				else if (args[i].equals("--size"))
+				{
+					size = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("--range"))
+				{
+					range = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("--workers"))
+				{
+					workerCount = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("--warmup"))
+				{
+					warmup = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("--frames"))
+				{
+					frames = Integer.parseInt(args[++i]);
+				}
+				else
+				{
+					usage();
+				}
+			}
+		}
+		catch (ArrayIndexOutOfBoundsException e)
+		{
+			usage();
+		}
+		catch (NumberFormatException e)
+		{
+			usage();
+		}
+		if (size < 1 || range < 1 || workerCount < 1 || warmup < 0 || frames < 1)
+		{
+			usage();
+		}
+
+		if (worldDir == null)
+		{
+			worldDir = new File(SampleWorld.getBaseDir(), "allocation-world-v" + WORLD_VERSION + "-" + size);
+			if (!new File(worldDir, "level.dat").exists())
+			{
+				System.out.println("Generating world in " + worldDir.getPath());
+				new WorldGenerator(WorldGenerator.Terrain.CAVES, WorldGenerator.Format.ANVIL,
+						WorldGenerator.DEFAULT_SEED, worldDir.getName()).generate(worldDir, -size / 2, -size / 2, size, size);
+			}
+		}
+
+		MinecraftLevel level = BenchEnvironment.openLevel(worldDir);
+		CameraPreset spawn = level.getSpawnPoint();
+		ReplayHarness harness = new ReplayHarness(level, range, 1f, 60, workerCount, true);
+		harness.run(new float[][] { { spawn.block.x, spawn.block.z } });
+		harness.measureSteadyFrames(warmup);
+		long bytes = harness.measureSteadyFrames(frames);
+		harness.shutdown();
+
+		System.out.println(String.format("World:            %s", worldDir.getPath()));
+		System.out.println(String.format("Frames:           %d after %d warmup, %d chunks and %d draw calls each",
+					frames, warmup, harness.getLastChunks(), harness.getLastDrawCalls()));
+		if (bytes < 0)
+		{
+			System.out.println("Allocated:        unknown (this JVM can't count per-thread allocations)");
+			System.exit(1);
+		}
+		System.out.println(String.format("Allocated:        %d bytes (%.1f per frame)", bytes, bytes / (double)frames));
+		if (bytes > 0)
+		{
+			System.exit(1);
+		}
+	}
+}
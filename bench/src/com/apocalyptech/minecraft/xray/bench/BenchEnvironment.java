@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+
+import com.apocalyptech.minecraft.xray.BlockRenderTable;
+import com.apocalyptech.minecraft.xray.BlockType;
+import com.apocalyptech.minecraft.xray.BlockTypeLoadException;
+import com.apocalyptech.minecraft.xray.MinecraftConstants;
+import com.apocalyptech.minecraft.xray.MinecraftEnvironment;
+import com.apocalyptech.minecraft.xray.MinecraftLevel;
+import com.apocalyptech.minecraft.xray.RegionFile;
+import com.apocalyptech.minecraft.xray.RenderConfig;
+import com.apocalyptech.minecraft.xray.TextureDecorationStats;
+import com.apocalyptech.minecraft.xray.WorldInfo;
+import com.apocalyptech.minecraft.xray.XRay;
+
+/**
+ * Sets up just enough of X-Ray's static state to load and mesh chunks
+ * without a display: the block definitions, the texture coordinate tables,
+ * the render table, and stand-ins for the bits which would normally be
+ * computed while building the texture sheet (decoration stats, the
+ * silverfish textures, and which blocks count as explored).  Needs to be run from the
+ * top of the source tree, so that blockdefs/ can be found.
+ */
+public class BenchEnvironment
+{
+	private static boolean initialized = false;
+
+	public static synchronized void initialize()
+		throws BlockTypeLoadException
+	{
+		if (initialized)
+		{
+			return;
+		}
+		MinecraftConstants.loadMainBlocks();
+		MinecraftConstants.initSpriteSheetToTextureTable();
+		MinecraftConstants.initPaintings();
+
+		// Normally set up while building the texture sheet; we don't tint
+		// anything, so the highlighted silverfish just use the plain textures
+		MinecraftEnvironment.silverfishDataPlain = new HashMap<Byte, Integer>();
+		if (MinecraftConstants.BLOCK_SILVERFISH.texture_data_map != null)
+		{
+			MinecraftEnvironment.silverfishDataPlain.putAll(MinecraftConstants.BLOCK_SILVERFISH.texture_data_map);
+		}
+		MinecraftEnvironment.silverfishDataHighlighted = MinecraftEnvironment.silverfishDataPlain;
+		MinecraftConstants.exploredBlocks = new HashMap<Short, Boolean>();
+		for (BlockType block : MinecraftConstants.blockCollection.getBlocksFull())
+		{
+			if (block.getExplored())
+			{
+				MinecraftConstants.exploredBlocks.put(block.id, true);
+			}
+		}
+		BlockRenderTable.build();
+
+		// Pretend every texture fills its whole square
+		BufferedImage sheet = new BufferedImage(256, 512, BufferedImage.TYPE_INT_ARGB);
+		XRay.decorationStats = new HashMap<Integer, TextureDecorationStats>();
+		for (int i = 0; i < 256; i++)
+		{
+			XRay.decorationStats.put(i, new TextureDecorationStats(sheet, 0, 15, 0, 15));
+		}
+		RenderConfig.publish(MinecraftConstants.blockArray, BlockRenderTable.descriptors, null,
+				XRay.decorationStats, new short[0], MinecraftConstants.exploredBlocks.keySet());
+		initialized = true;
+	}
+
+	/**
+	 * Opens our sample world as a MinecraftLevel.  Chunks aren't loaded into
+	 * it; benchmarks construct whichever ones they need.
+	 */
+	public static MinecraftLevel openLevel()
+		throws BlockTypeLoadException, IOException
+	{
+		return openLevel(SampleWorld.getWorldDir());
+	}
+
+	/**
+	 * Opens the given world directory as a MinecraftLevel
+	 */
+	public static MinecraftLevel openLevel(File dir)
+		throws BlockTypeLoadException, IOException
+	{
+		initialize();
+		WorldInfo world = new WorldInfo(dir.getAbsolutePath(), dir.getName(), 0, false);
+		return new MinecraftLevel(world, null, null);
+	}
+
+	/**
+	 * Reads and inflates all the chunks in the given region file, returning
+	 * the raw NBT data for each one which exists.
+	 */
+	public static byte[][] readRawChunks(File regionFile)
+		throws IOException
+	{
+		RegionFile region = new RegionFile(regionFile);
+		byte[][] chunks = new byte[1024][];
+		byte[] buf = new byte[8192];
+		int count = 0;
+		int read;
+		for (int z = 0; z < 32; z++)
+		{
+			for (int x = 0; x < 32; x++)
+			{
+				DataInputStream in = region.getChunkDataInputStream(x, z);
+				if (in == null)
+				{
+					continue;
+				}
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				while ((read = in.read(buf)) > 0)
+				{
+					out.write(buf, 0, read);
+				}
+				in.close();
+				chunks[count++] = out.toByteArray();
+			}
+		}
+		region.close();
+		byte[][] result = new byte[count][];
+		System.arraycopy(chunks, 0, result, 0, count);
+		return result;
+	}
+}
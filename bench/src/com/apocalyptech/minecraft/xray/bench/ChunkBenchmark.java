@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.apocalyptech.minecraft.xray.Chunk;
+import com.apocalyptech.minecraft.xray.ChunkAnvil;
+import com.apocalyptech.minecraft.xray.MeshJob;
+import com.apocalyptech.minecraft.xray.MinecraftLevel;
+import com.apocalyptech.minecraft.xray.dtf.DTFReader;
+import com.apocalyptech.minecraft.xray.dtf.Tag;
+
+/**
+ * Benchmarks for what we do with a chunk once its NBT has been parsed:
+ * constructing the Chunk (which includes finishConstructor()'s pass over
+ * every section), pulling its minimap values, and meshing it.  Meshing
+ * records into MeshBuffers, the same as on MeshScheduler's workers, so no
+ * GL context is needed; we report how many GL calls were recorded so that
+ * changes in geometry output show up alongside the timings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChunkBenchmark
+{
+	private MinecraftLevel level;
+	private Tag[] tags;
+	private Chunk[] chunks;
+	private boolean[] selectedMap;
+	private int nextChunk;
+
+	@Setup
+	public void setup()
+		throws Exception
+	{
+		this.level = BenchEnvironment.openLevel();
+		byte[][] raw = BenchEnvironment.readRawChunks(SampleWorld.getRegionFile());
+		this.tags = new Tag[raw.length];
+		this.chunks = new Chunk[raw.length];
+		for (int i = 0; i < raw.length; i++)
+		{
+			this.tags[i] = DTFReader.readTagData(new DataInputStream(new ByteArrayInputStream(raw[i])));
+			this.chunks[i] = new ChunkAnvil(this.level, this.tags[i]);
+		}
+		this.selectedMap = new boolean[0];
+		this.nextChunk = 0;
+	}
+
+	/**
+	 * Picks the next chunk to work on, cycling through the sample region so
+	 * we're not just measuring a single column.
+	 */
+	private int next()
+	{
+		int idx = this.nextChunk;
+		this.nextChunk = (this.nextChunk + 1) % this.chunks.length;
+		return idx;
+	}
+
+	/**
+	 * Constructing a chunk from its NBT, including finishConstructor() and
+	 * the minimap column summary
+	 */
+	@Benchmark
+	public Chunk construct()
+	{
+		return new ChunkAnvil(this.level, this.tags[this.next()]);
+	}
+
+	/**
+	 * Meshing every section of a chunk
+	 */
+	@Benchmark
+	public void mesh(Blackhole bh)
+	{
+		Chunk chunk = this.chunks[this.next()];
+		chunk.setDirty();
+		MeshJob job = chunk.createMeshJob(0);
+		chunk.captureRebuild(job, this.selectedMap, false);
+		chunk.buildMeshes(job);
+		int ops = 0;
+		for (MeshJob.Result result : job.results)
+		{
+			ops += result.buffer.getOpCount();
+		}
+		bh.consume(ops);
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray.bench;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A bare-bones streaming writer for Minecraft's NBT format, which is the
+ * counterpart to DTFReader.  X-Ray itself never writes NBT; this is only
+ * here so that the benchmarks can build their own sample worlds.
+ *
+ * Compounds are opened with beginCompound() and closed with endCompound().
+ * Lists are opened with beginList(), and then must contain exactly the
+ * number of elements given; list elements are written with the unnamed
+ * variants (beginListCompound(), etc).
+ */
+public class NBTWriter
+{
+	public static final byte TAG_END = 0;
+	public static final byte TAG_BYTE = 1;
+	public static final byte TAG_SHORT = 2;
+	public static final byte TAG_INT = 3;
+	public static final byte TAG_LONG = 4;
+	public static final byte TAG_FLOAT = 5;
+	public static final byte TAG_DOUBLE = 6;
+	public static final byte TAG_BYTE_ARRAY = 7;
+	public static final byte TAG_STRING = 8;
+	public static final byte TAG_LIST = 9;
+	public static final byte TAG_COMPOUND = 10;
+	public static final byte TAG_INT_ARRAY = 11;
+
+	private final DataOutputStream out;
+
+	public NBTWriter(DataOutputStream out)
+	{
+		this.out = out;
+	}
+
+	private void header(byte type, String name)
+		throws IOException
+	{
+		this.out.writeByte(type);
+		this.out.writeUTF(name);
+	}
+
+	public void beginCompound(String name)
+		throws IOException
+	{
+		this.header(TAG_COMPOUND, name);
+	}
+
+	/**
+	 * Starts a compound which is an element of a list
+	 */
+	public void beginListCompound()
+	{
+		// Unnamed compounds have no header at all
+	}
+
+	public void endCompound()
+		throws IOException
+	{
+		this.out.writeByte(TAG_END);
+	}
+
+	public void beginList(String name, byte elementType, int count)
+		throws IOException
+	{
+		this.header(TAG_LIST, name);
+		this.out.writeByte(elementType);
+		this.out.writeInt(count);
+	}
+
+	public void writeByte(String name, int value)
+		throws IOException
+	{
+		this.header(TAG_BYTE, name);
+		this.out.writeByte(value);
+	}
+
+	public void writeShort(String name, int value)
+		throws IOException
+	{
+		this.header(TAG_SHORT, name);
+		this.out.writeShort(value);
+	}
+
+	public void writeInt(String name, int value)
+		throws IOException
+	{
+		this.header(TAG_INT, name);
+		this.out.writeInt(value);
+	}
+
+	public void writeLong(String name, long value)
+		throws IOException
+	{
+		this.header(TAG_LONG, name);
+		this.out.writeLong(value);
+	}
+
+	public void writeString(String name, String value)
+		throws IOException
+	{
+		this.header(TAG_STRING, name);
+		this.out.writeUTF(value);
+	}
+
+	public void writeByteArray(String name, byte[] value)
+		throws IOException
+	{
+		this.header(TAG_BYTE_ARRAY, name);
+		this.out.writeInt(value.length);
+		this.out.write(value);
+	}
+
+	public void writeIntArray(String name, int[] value)
+		throws IOException
+	{
+		this.header(TAG_INT_ARRAY, name);
+		this.out.writeInt(value.length);
+		for (int v : value)
+		{
+			this.out.writeInt(v);
+		}
+	}
+
+	/**
+	 * Writes an unnamed double, as an element of a list
+	 */
+	public void writeListDouble(double value)
+		throws IOException
+	{
+		this.out.writeDouble(value);
+	}
+
+	/**
+	 * Writes an unnamed float, as an element of a list
+	 */
+	public void writeListFloat(float value)
+		throws IOException
+	{
+		this.out.writeFloat(value);
+	}
+}
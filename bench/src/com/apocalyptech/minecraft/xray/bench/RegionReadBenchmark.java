@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.apocalyptech.minecraft.xray.RegionFile;
+import com.apocalyptech.minecraft.xray.dtf.DTFReader;
+import com.apocalyptech.minecraft.xray.dtf.Tag;
+
+/**
+ * Benchmarks for getting chunk data off the disk: reading and inflating a
+ * chunk out of a region file, and parsing its NBT.  Each benchmark call
+ * processes every chunk in the sample region, so results are per-region.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RegionReadBenchmark
+{
+	private File regionFile;
+	private RegionFile region;
+	private byte[][] rawChunks;
+	private byte[] buf;
+
+	@Setup
+	public void setup()
+		throws IOException
+	{
+		this.regionFile = SampleWorld.getRegionFile();
+		this.region = new RegionFile(this.regionFile);
+		this.rawChunks = BenchEnvironment.readRawChunks(this.regionFile);
+		this.buf = new byte[8192];
+	}
+
+	@TearDown
+	public void tearDown()
+		throws IOException
+	{
+		this.region.close();
+	}
+
+	/**
+	 * Opening the region file and reading its header
+	 */
+	@Benchmark
+	public void openRegion(Blackhole bh)
+		throws IOException
+	{
+		RegionFile rf = new RegionFile(this.regionFile);
+		bh.consume(rf.hasChunk(0, 0));
+		rf.close();
+	}
+
+	/**
+	 * Reading and inflating every chunk in the region
+	 */
+	@Benchmark
+	public void readAndInflate(Blackhole bh)
+		throws IOException
+	{
+		DataInputStream in;
+		int read;
+		for (int z = 0; z < SampleWorld.CHUNKS; z++)
+		{
+			for (int x = 0; x < SampleWorld.CHUNKS; x++)
+			{
+				in = this.region.getChunkDataInputStream(x, z);
+				while ((read = in.read(this.buf)) > 0)
+				{
+					bh.consume(read);
+				}
+				in.close();
+			}
+		}
+	}
+
+	/**
+	 * Reading and inflating every chunk in the region, read as a single batch
+	 * in file order rather than one chunk at a time
+	 */
+	@Benchmark
+	public void readAndInflateBatched(Blackhole bh)
+		throws IOException
+	{
+		int[] xs = new int[SampleWorld.CHUNKS * SampleWorld.CHUNKS];
+		int[] zs = new int[xs.length];
+		for (int i = 0; i < xs.length; i++)
+		{
+			xs[i] = i % SampleWorld.CHUNKS;
+			zs[i] = i / SampleWorld.CHUNKS;
+		}
+		int read;
+		for (DataInputStream in : this.region.getChunkDataInputStreams(xs, zs))
+		{
+			while ((read = in.read(this.buf)) > 0)
+			{
+				bh.consume(read);
+			}
+			in.close();
+		}
+	}
+
+	/**
+	 * Parsing the NBT of every chunk in the region, from already-inflated data
+	 */
+	@Benchmark
+	public void parseNbt(Blackhole bh)
+		throws IOException
+	{
+		Tag t;
+		for (byte[] raw : this.rawChunks)
+		{
+			t = DTFReader.readTagData(new DataInputStream(new ByteArrayInputStream(raw)));
+			bh.consume(t);
+		}
+	}
+}
@@ -0,0 +1,267 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import com.apocalyptech.minecraft.xray.ChunkLoader;
+import com.apocalyptech.minecraft.xray.MinecraftEnvironment;
+import com.apocalyptech.minecraft.xray.MinecraftLevel;
+
+/**
+ * Checks that reading chunks in batches with MinecraftLevel.readChunks()
+ * gives exactly the same data as reading each one on its own with
+ * MinecraftEnvironment.getChunkInputStream() (which is just
+ * RegionFile.getChunkDataInputStream()).  Generated worlds in both Anvil and
+ * MCRegion format are checked, each spanning four region files, and the
+ * chunks are requested in a few different orders:
+ *
+ *   scan     - every chunk in a square a bit larger than the world, so that
+ *              some requests are for chunks and regions which don't exist,
+ *              all in a single batch
+ *   shuffled - the same chunks in random order, in ChunkLoader-sized batches,
+ *              so that each batch is a sparse, unordered set from several
+ *              regions
+ *   rings    - rings around the origin, nearest first, as the loader sees
+ *              them when the camera starts at a region corner, in
+ *              ChunkLoader-sized batches, with every batch also asking for
+ *              its first chunk a second time
+ *
+ * Any difference is reported, and we exit with a non-zero status if there
+ * were any, so that this can be run as a check from ant.
+ */
+public class RegionReadCheck
+{
+	private static final int WORLD_VERSION = 1;
+
+	private final MinecraftLevel level;
+	private int chunks;
+	private int missing;
+	private int mismatches;
+
+	public RegionReadCheck(MinecraftLevel level)
+	{
+		this.level = level;
+	}
+
+	/**
+	 * Reads everything from the given stream, or returns null if there isn't
+	 * a stream
+	 */
+	private static byte[] drain(DataInputStream in)
+		throws IOException
+	{
+		if (in == null)
+		{
+			return null;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		int read;
+		while ((read = in.read(buf)) > 0)
+		{
+			out.write(buf, 0, read);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+
+	/**
+	 * Reads the given chunks as one batch, and compares each against reading
+	 * it on its own
+	 */
+	private void checkBatch(String pattern, int[] x, int[] z)
+		throws IOException
+	{
+		DataInputStream[] streams = this.level.readChunks(x, z);
+		if (streams.length != x.length)
+		{
+			System.out.println(String.format("%s: asked for %d chunks, got %d streams", pattern, x.length, streams.length));
+			this.mismatches++;
+			return;
+		}
+		byte[] batched;
+		byte[] single;
+		for (int i = 0; i < x.length; i++)
+		{
+			batched = drain(streams[i]);
+			single = drain(MinecraftEnvironment.getChunkInputStream(this.level.world, x[i], z[i]));
+			this.chunks++;
+			if (single == null)
+			{
+				this.missing++;
+			}
+			if (batched == null && single == null)
+			{
+				continue;
+			}
+			if (batched == null || single == null || !Arrays.equals(batched, single))
+			{
+				System.out.println(String.format("%s: chunk %d, %d differs (batched %s bytes, single %s bytes)", pattern, x[i], z[i],
+							(batched == null ? "no" : Integer.toString(batched.length)),
+							(single == null ? "no" : Integer.toString(single.length))));
+				this.mismatches++;
+			}
+		}
+	}
+
+	/**
+	 * Checks the given chunks in batches of the given size
+	 */
+	private void checkBatches(String pattern, ArrayList<int[]> chunks, int batch, boolean repeatFirst)
+		throws IOException
+	{
+		for (int start = 0; start < chunks.size(); start += batch)
+		{
+			int count = Math.min(batch, chunks.size() - start);
+			int extra = (repeatFirst ? 1 : 0);
+			int[] x = new int[count + extra];
+			int[] z = new int[count + extra];
+			for (int i = 0; i < count; i++)
+			{
+				x[i] = chunks.get(start + i)[0];
+				z[i] = chunks.get(start + i)[1];
+			}
+			if (repeatFirst)
+			{
+				x[count] = x[0];
+				z[count] = z[0];
+			}
+			this.checkBatch(pattern, x, z);
+		}
+	}
+
+	/**
+	 * Runs all of our request patterns over the square of chunks from
+	 * -extent to extent-1 on each axis
+	 */
+	public void run(int extent, long seed)
+		throws IOException
+	{
+		ArrayList<int[]> square = new ArrayList<int[]>();
+		for (int z = -extent; z < extent; z++)
+		{
+			for (int x = -extent; x < extent; x++)
+			{
+				square.add(new int[] { x, z });
+			}
+		}
+		this.checkBatches("scan", square, square.size(), false);
+
+		ArrayList<int[]> shuffled = new ArrayList<int[]>(square);
+		Collections.shuffle(shuffled, new Random(seed));
+		this.checkBatches("shuffled", shuffled, ChunkLoader.READ_BATCH, false);
+
+		ArrayList<int[]> rings = new ArrayList<int[]>();
+		for (int r = 0; r < extent; r++)
+		{
+			for (int[] chunk : square)
+			{
+				if (Math.max(Math.abs(chunk[0]), Math.abs(chunk[1])) == r)
+				{
+					rings.add(chunk);
+				}
+			}
+		}
+		this.checkBatches("rings", rings, ChunkLoader.READ_BATCH, true);
+	}
+
+	private static void usage()
+	{
+		System.err.println("Usage: RegionReadCheck [--size <chunks>] [--seed <n>]");
+		System.exit(1);
+	}
+
+	public static void main(String[] args)
+		throws Exception
+	{
+		int size = 40;
+		long seed = WorldGenerator.DEFAULT_SEED;
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("--size"))
+				{
+					size = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("--seed"))
+				{
+					seed = Long.parseLong(args[++i]);
+				}
+				else
+				{
+					usage();
+				}
+			}
+		}
+		catch (ArrayIndexOutOfBoundsException e)
+		{
+			usage();
+		}
+		catch (NumberFormatException e)
+		{
+			usage();
+		}
+		if (size < 2)
+		{
+			usage();
+		}
+
+		// The world is centered on the origin, so it always spans the four
+		// regions which meet there; we also ask for a few chunks past its edge
+		int extent = (size / 2) + 4;
+		int failures = 0;
+		for (WorldGenerator.Format format : WorldGenerator.Format.values())
+		{
+			String name = format.toString().toLowerCase();
+			File worldDir = new File(SampleWorld.getBaseDir(), "region-check-v" + WORLD_VERSION + "-" + name + "-" + size + "-" + seed);
+			if (!new File(worldDir, "level.dat").exists())
+			{
+				System.out.println("Generating " + name + " world in " + worldDir.getPath());
+				new WorldGenerator(WorldGenerator.Terrain.CAVES, format, seed, worldDir.getName())
+					.generate(worldDir, -size / 2, -size / 2, size, size);
+			}
+			RegionReadCheck check = new RegionReadCheck(BenchEnvironment.openLevel(worldDir));
+			check.run(extent, seed);
+			System.out.println(String.format("%-9s %d chunk reads compared (%d nonexistent), %d mismatches",
+						name + ":", check.chunks, check.missing, check.mismatches));
+			failures += check.mismatches;
+		}
+		if (failures > 0)
+		{
+			System.exit(1);
+		}
+	}
+}
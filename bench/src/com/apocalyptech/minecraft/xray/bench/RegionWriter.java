@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes MCRegion/Anvil region files.  Our own RegionFile only ever opens
+ * files read-only, so the benchmarks use this to build their sample worlds.
+ * Chunks are appended in the order they're written, each one zlib-compressed
+ * and padded out to a whole number of 4KB sectors.
+ */
+public class RegionWriter
+{
+	private static final int SECTOR_BYTES = 4096;
+	private static final byte VERSION_DEFLATE = 2;
+
+	private final RandomAccessFile file;
+	private final int[] offsets;
+	private final int[] timestamps;
+	private int nextSector;
+
+	public RegionWriter(File path)
+		throws IOException
+	{
+		if (path.exists() && !path.delete())
+		{
+			throw new IOException("Could not replace " + path.getPath());
+		}
+		this.file = new RandomAccessFile(path, "rw");
+		this.offsets = new int[1024];
+		this.timestamps = new int[1024];
+		this.nextSector = 2;
+	}
+
+	/**
+	 * Returns a stream to write a chunk's NBT data into.  The chunk is
+	 * actually written when the stream is closed.
+	 *
+	 * @param x Chunk X coordinate within the region, from 0 to 31
+	 * @param z Chunk Z coordinate within the region, from 0 to 31
+	 */
+	public DataOutputStream getChunkDataOutputStream(final int x, final int z)
+	{
+		return new DataOutputStream(new DeflaterOutputStream(new ByteArrayOutputStream()
+		{
+			@Override
+			public void close()
+				throws IOException
+			{
+				writeChunk(x, z, this.buf, this.count);
+			}
+		}));
+	}
+
+	private void writeChunk(int x, int z, byte[] data, int length)
+		throws IOException
+	{
+		int sectors = (length + 5 + SECTOR_BYTES - 1) / SECTOR_BYTES;
+		if (sectors >= 256)
+		{
+			throw new IOException("Chunk " + x + "," + z + " is too large for a region file");
+		}
+		this.file.seek((long)this.nextSector * SECTOR_BYTES);
+		this.file.writeInt(length + 1);
+		this.file.writeByte(VERSION_DEFLATE);
+		this.file.write(data, 0, length);
+		this.file.write(new byte[(sectors * SECTOR_BYTES) - length - 5]);
+		this.offsets[x + (z * 32)] = (this.nextSector << 8) | sectors;
+		this.timestamps[x + (z * 32)] = (int)(System.currentTimeMillis() / 1000L);
+		this.nextSector += sectors;
+	}
+
+	/**
+	 * Writes out our header and closes the file.
+	 */
+	public void close()
+		throws IOException
+	{
+		this.file.seek(0);
+		for (int offset : this.offsets)
+		{
+			this.file.writeInt(offset);
+		}
+		for (int timestamp : this.timestamps)
+		{
+			this.file.writeInt(timestamp);
+		}
+		this.file.close();
+	}
+}
@@ -0,0 +1,948 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+
+import com.apocalyptech.minecraft.xray.Block;
+import com.apocalyptech.minecraft.xray.CameraPreset;
+import com.apocalyptech.minecraft.xray.Chunk;
+import com.apocalyptech.minecraft.xray.ChunkLoader;
+import com.apocalyptech.minecraft.xray.FrameBudgetGovernor;
+import com.apocalyptech.minecraft.xray.MeshScheduler;
+import com.apocalyptech.minecraft.xray.MinecraftLevel;
+import com.apocalyptech.minecraft.xray.RecordingRenderBackend;
+import com.apocalyptech.minecraft.xray.XRay;
+
+import org.lwjgl.opengl.GL11;
+
+/**
+ * Flies a camera along a scripted path through a world, without a display,
+ * and reports how well chunk loading keeps up: chunks loaded per second,
+ * how long chunks take from being requested to being ready to draw (p50 and
+ * p99), and peak heap usage.  This is meant for comparing changes to the
+ * loader with actual numbers, rather than by eye.
+ *
+ * Each simulated frame does what XRay's main loop does for chunk loading:
+ * when the camera crosses into a new chunk, the newly-exposed chunks are
+ * queued as in triggerChunkLoads(), and then loadPendingChunks()'s logic
+ * loads from that queue, through the same ChunkLoader, until
+ * FrameBudgetGovernor says we're out of time, marking neighbor borders dirty
+ * as it goes.  Anything which needs rebuilding is then handed to a real
+ * MeshScheduler, nearest chunks first, and finished meshes are uploaded
+ * within the same budget.  "Ready" means that a chunk's first meshes have
+ * been uploaded.  With --unbatched, chunks are read from disk one at a time
+ * rather than in batches, so that cold-load numbers can be compared.
+ * Finally the world is drawn, with the same pass order and texture binds as
+ * XRay.render().  There's no GL here at all: uploads and drawing go through
+ * a RecordingRenderBackend, so we also report what each frame would have
+ * drawn.  There's no frustum culling or minimap drawing; everything in range
+ * gets meshed and drawn.  Frames are paced to a fixed rate, the same way
+ * Display.sync() would, so that latencies are in real time.
+ *
+ * Given the same world and path, the last frame (once everything has
+ * settled) should always draw the same thing, so its draw calls, binds and
+ * quads per chunk are handy for catching changes in our geometry output.
+ *
+ * The initial load (which XRay does in one go, behind the loading screen)
+ * is timed separately, and isn't included in the latency figures.
+ *
+ * Paths are text files of waypoints, one "x z" pair of block coordinates per
+ * line; blank lines and anything after a # are ignored.  Without one, we fly
+ * a square loop around the spawn point.
+ */
+public class ReplayHarness
+{
+	// Bump this if WorldGenerator's output changes, so old copies get regenerated
+	private static final int WORLD_VERSION = 1;
+
+	private static final long MS = 1000000L;
+
+	// How many frames we'll wait at the end of the path for loading to settle
+	private static final int SETTLE_SECONDS = 30;
+
+	// Fake texture IDs to bind, since we don't have any real ones
+	private static final int PAINTING_TEXTURE = -2;
+
+	private final MinecraftLevel level;
+	private final int range;
+	private final float blocksPerFrame;
+	private final int fps;
+
+	// Offsets from the camera's chunk, nearest first
+	private final int[][] offsets;
+
+	private final FrameBudgetGovernor governor;
+	private final MeshScheduler scheduler;
+	private final ArrayList<Chunk> uploaded;
+	private final boolean[] selectedMap;
+
+	private final ChunkLoader loader;
+	private final HashMap<Long, Long> requestTimes;
+	private final IdentityHashMap<Chunk, Long> awaitingMesh;
+
+	private final RecordingRenderBackend backend;
+	private final ArrayList<Chunk> frameChunks;
+	private final BitSet sheetSet;
+	private int[] sheets;
+
+	private int camChunkX;
+	private int camChunkZ;
+
+	// Results
+	private int frames;
+	private int initialChunks;
+	private long initialNanos;
+	private int streamedChunks;
+	private final HashSet<Long> missingChunks;
+	private long loadNanos;
+	private final ArrayList<Long> latencies;
+	private long totalDrawCalls;
+	private long totalBinds;
+	private long totalStateChanges;
+	private long totalTriangles;
+	private int lastChunks;
+	private long lastDrawCalls;
+	private long lastBinds;
+	private long lastRedundantBinds;
+	private long lastStateChanges;
+	private long lastTriangles;
+
+	public ReplayHarness(MinecraftLevel level, int range, float speed, int fps, int workerCount, boolean batched)
+	{
+		this.level = level;
+		this.range = range;
+		this.blocksPerFrame = speed / fps;
+		this.fps = fps;
+
+		int side = (range * 2) + 1;
+		Integer[] order = new Integer[side * side];
+		for (int i = 0; i < order.length; i++)
+		{
+			order[i] = i;
+		}
+		final int r = range;
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				int side = (r * 2) + 1;
+				int da = Math.max(Math.abs((a / side) - r), Math.abs((a % side) - r));
+				int db = Math.max(Math.abs((b / side) - r), Math.abs((b % side) - r));
+				return (da - db);
+			}
+		});
+		this.offsets = new int[order.length][];
+		for (int i = 0; i < order.length; i++)
+		{
+			this.offsets[i] = new int[] { (order[i] / side) - range, (order[i] % side) - range };
+		}
+
+		this.governor = new FrameBudgetGovernor();
+		this.scheduler = new MeshScheduler(workerCount);
+		this.uploaded = new ArrayList<Chunk>();
+		this.selectedMap = new boolean[0];
+		this.loader = new ChunkLoader(level);
+		this.loader.setBatched(batched);
+		this.requestTimes = new HashMap<Long, Long>();
+		this.awaitingMesh = new IdentityHashMap<Chunk, Long>();
+		this.latencies = new ArrayList<Long>();
+		this.missingChunks = new HashSet<Long>();
+
+		this.backend = new RecordingRenderBackend();
+		XRay.renderBackend = this.backend;
+		this.frameChunks = new ArrayList<Chunk>();
+		this.sheetSet = new BitSet();
+		this.sheets = new int[0];
+	}
+
+	private static int toChunk(float coord)
+	{
+		return (int)Math.floor(coord / 16f);
+	}
+
+	private static Long key(int x, int z)
+	{
+		return Long.valueOf(((long)x << 32) | (z & 0xFFFFFFFFL));
+	}
+
+	private boolean isLoaded(int x, int z)
+	{
+		Chunk c = this.level.getChunk(x, z);
+		return (c != null && c.x == x && c.z == z);
+	}
+
+	/**
+	 * Queues a chunk for loading, as triggerChunkLoads() does: clearing out
+	 * whatever stale chunk currently occupies its slot.
+	 */
+	private void request(int x, int z, long now)
+	{
+		if (this.level.getChunk(x, z) != null)
+		{
+			this.level.clearChunk(x, z);
+		}
+		this.loader.add(x, z);
+		if (now > 0 && !this.requestTimes.containsKey(key(x, z)))
+		{
+			this.requestTimes.put(key(x, z), now);
+		}
+	}
+
+	/**
+	 * Our equivalent of triggerChunkLoads().  XRay works out the newly-exposed
+	 * strips from how far the camera moved; we just look at the whole window,
+	 * which comes to the same thing.
+	 */
+	private void triggerChunkLoads(float camX, float camZ)
+	{
+		int chunkX = toChunk(camX);
+		int chunkZ = toChunk(camZ);
+		if (chunkX == this.camChunkX && chunkZ == this.camChunkZ)
+		{
+			return;
+		}
+		this.camChunkX = chunkX;
+		this.camChunkZ = chunkZ;
+		long now = System.nanoTime();
+		for (int lx = chunkX - this.range; lx <= chunkX + this.range; lx++)
+		{
+			for (int lz = chunkZ - this.range; lz <= chunkZ + this.range; lz++)
+			{
+				if (!this.isLoaded(lx, lz) && !this.requestTimes.containsKey(key(lx, lz)))
+				{
+					this.request(lx, lz, now);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Our equivalent of loadPendingChunks(), minus the minimap
+	 */
+	private void loadPendingChunks(boolean initial)
+	{
+		long time = System.nanoTime();
+		long start;
+		Block b;
+		Long requested;
+		Chunk c;
+		while (!this.loader.isEmpty())
+		{
+			start = System.nanoTime();
+			b = this.loader.loadNext(initial ? this.loader.size() : ChunkLoader.READ_BATCH);
+			if (b == null)
+			{
+				continue;
+			}
+			requested = this.requestTimes.remove(key(b.x, b.z));
+			if (!this.isLoaded(b.x, b.z))
+			{
+				this.missingChunks.add(key(b.x, b.z));
+			}
+			else
+			{
+				this.loadNanos += System.nanoTime() - start;
+				c = this.level.getChunk(b.x, b.z);
+				this.addSheets(c);
+				if (initial)
+				{
+					this.initialChunks++;
+				}
+				else
+				{
+					this.streamedChunks++;
+					if (requested != null)
+					{
+						this.awaitingMesh.put(c, requested);
+					}
+					this.level.markChunkBorderAsDirty(b.x + 1, b.z, Chunk.FACING.WEST);
+					this.level.markChunkBorderAsDirty(b.x - 1, b.z, Chunk.FACING.EAST);
+					this.level.markChunkBorderAsDirty(b.x, b.z + 1, Chunk.FACING.NORTH);
+					this.level.markChunkBorderAsDirty(b.x, b.z - 1, Chunk.FACING.SOUTH);
+				}
+			}
+
+			if (!initial && System.nanoTime() - time > this.governor.remaining())
+			{
+				break;
+			}
+		}
+		if (!initial)
+		{
+			this.governor.charge(System.nanoTime() - time);
+		}
+	}
+
+	/**
+	 * Keeps track of which texture sheets our chunks use, so we know which
+	 * ones to go through while drawing.
+	 */
+	private void addSheets(Chunk c)
+	{
+		int before = this.sheetSet.cardinality();
+		this.sheetSet.or(c.usedTextureSheets);
+		if (this.sheetSet.cardinality() != before)
+		{
+			this.sheets = new int[this.sheetSet.cardinality()];
+			int i = 0;
+			for (int sheet = this.sheetSet.nextSetBit(0); sheet >= 0; sheet = this.sheetSet.nextSetBit(sheet + 1))
+			{
+				this.sheets[i++] = sheet;
+			}
+		}
+	}
+
+	/**
+	 * Uploads finished mesh jobs within our frame budget, and then requests a
+	 * rebuild of anything in range which needs it, nearest first, as XRay's
+	 * render() does.  Returns whether anything is still outstanding.
+	 */
+	private boolean updateMeshes()
+	{
+		Long requested;
+		long start = System.nanoTime();
+		this.uploaded.clear();
+		this.scheduler.upload(this.governor.remaining(), this.uploaded);
+		this.governor.charge(System.nanoTime() - start);
+		for (int i = 0; i < this.uploaded.size(); i++)
+		{
+			requested = this.awaitingMesh.remove(this.uploaded.get(i));
+			if (requested != null)
+			{
+				this.latencies.add(System.nanoTime() - requested);
+			}
+		}
+
+		Chunk c;
+		int x;
+		int z;
+		for (int[] offset : this.offsets)
+		{
+			x = this.camChunkX + offset[0];
+			z = this.camChunkZ + offset[1];
+			c = this.level.getChunk(x, z);
+			if (c == null || c.x != x || c.z != z || !c.needsRebuild())
+			{
+				continue;
+			}
+			this.scheduler.request(c, Math.max(Math.abs(offset[0]), Math.abs(offset[1])), this.selectedMap, false);
+		}
+		return (!this.loader.isEmpty() || this.scheduler.getQueueDepth() > 0 || this.scheduler.getInFlight() > 0);
+	}
+
+	/**
+	 * Binds the given fake texture, if it's not already bound
+	 */
+	private int bind(int texture, int lastTex)
+	{
+		if (texture != lastTex)
+		{
+			this.backend.glBindTexture(GL11.GL_TEXTURE_2D, texture);
+		}
+		return texture;
+	}
+
+	/**
+	 * Draws everything in range, in the same order as XRay.render(), and
+	 * records what got drawn.
+	 */
+	private void drawFrame()
+	{
+		ArrayList<Chunk> chunkList = this.frameChunks;
+		chunkList.clear();
+		Chunk k;
+		for (int lx = this.camChunkX - this.range; lx <= this.camChunkX + this.range; lx++)
+		{
+			for (int lz = this.camChunkZ - this.range; lz <= this.camChunkZ + this.range; lz++)
+			{
+				k = this.level.getChunk(lx, lz);
+				if (k != null)
+				{
+					chunkList.add(k);
+				}
+			}
+		}
+
+		this.backend.reset();
+		this.backend.glEnable(GL11.GL_TEXTURE_2D);
+		this.backend.glColor3f(1.0f, 1.0f, 1.0f);
+		int lastTex = -1;
+		for (int c = 0; c < chunkList.size(); c++)
+		{
+			k = chunkList.get(c);
+			if (k.hasPaintings())
+			{
+				lastTex = this.bind(PAINTING_TEXTURE, lastTex);
+				k.renderPaintings();
+			}
+		}
+		for (int sheet : this.sheets)
+		{
+			for (int c = 0; c < chunkList.size(); c++)
+			{
+				k = chunkList.get(c);
+				if (k.usesSheet(sheet))
+				{
+					lastTex = this.bind(sheet, lastTex);
+					k.renderSolid(sheet);
+					k.renderSelected(sheet);
+				}
+			}
+		}
+		for (int sheet : this.sheets)
+		{
+			for (int c = 0; c < chunkList.size(); c++)
+			{
+				k = chunkList.get(c);
+				if (k.usesSheet(sheet))
+				{
+					lastTex = this.bind(sheet, lastTex);
+					k.renderNonstandard(sheet);
+				}
+			}
+		}
+		for (int sheet : this.sheets)
+		{
+			for (int c = 0; c < chunkList.size(); c++)
+			{
+				k = chunkList.get(c);
+				if (k.usesSheet(sheet))
+				{
+					lastTex = this.bind(sheet, lastTex);
+					k.renderGlass(sheet);
+				}
+			}
+		}
+		this.backend.glColor3f(1.0f, 1.0f, 1.0f);
+
+		this.totalDrawCalls += this.backend.getDrawCalls();
+		this.totalBinds += this.backend.getTextureBinds();
+		this.totalStateChanges += this.backend.getStateChanges();
+		this.totalTriangles += this.backend.getTriangles();
+		this.lastChunks = chunkList.size();
+		this.lastDrawCalls = this.backend.getDrawCalls();
+		this.lastBinds = this.backend.getTextureBinds();
+		this.lastRedundantBinds = this.backend.getRedundantBinds();
+		this.lastStateChanges = this.backend.getStateChanges();
+		this.lastTriangles = this.backend.getTriangles();
+	}
+
+	/**
+	 * Runs a single frame, paced to our frame rate
+	 */
+	private boolean frame(boolean moving)
+	{
+		long frameStart = System.nanoTime();
+		this.governor.beginFrame(moving);
+		this.loadPendingChunks(false);
+		boolean busy = this.updateMeshes();
+		this.drawFrame();
+		this.governor.endFrame();
+		this.frames++;
+
+		long sleep = (1000000000L / this.fps) - (System.nanoTime() - frameStart);
+		if (sleep > 0)
+		{
+			try
+			{
+				Thread.sleep(sleep / MS, (int)(sleep % MS));
+			}
+			catch (InterruptedException e)
+			{
+				// Just carry on
+			}
+		}
+		return busy;
+	}
+
+	/**
+	 * Runs the given number of frames with the camera sitting still, without
+	 * any pacing, and returns how many bytes this thread allocated during
+	 * them, or -1 if the JVM can't tell us.  These go through the same load,
+	 * upload and draw steps as every other frame, so once everything has
+	 * settled, this should be zero.
+	 */
+	public long measureSteadyFrames(int count)
+	{
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+		{
+			return -1;
+		}
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+		if (!bean.isThreadAllocatedMemorySupported())
+		{
+			return -1;
+		}
+		bean.setThreadAllocatedMemoryEnabled(true);
+		long threadId = Thread.currentThread().getId();
+		long start = bean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < count; i++)
+		{
+			this.governor.beginFrame(false);
+			this.loadPendingChunks(false);
+			this.updateMeshes();
+			this.drawFrame();
+			this.governor.endFrame();
+		}
+		return bean.getThreadAllocatedBytes(threadId) - start;
+	}
+
+	/**
+	 * Stops our mesh workers
+	 */
+	public void shutdown()
+	{
+		this.scheduler.shutdown();
+	}
+
+	/**
+	 * Flies along the given waypoints, and then waits for loading to settle.
+	 * Call shutdown() once we're done with.
+	 */
+	public void run(float[][] path)
+	{
+		float camX = path[0][0];
+		float camZ = path[0][1];
+
+		// The initial load, all in one go
+		long start = System.nanoTime();
+		this.camChunkX = toChunk(camX);
+		this.camChunkZ = toChunk(camZ);
+		for (int lx = this.camChunkX - this.range; lx <= this.camChunkX + this.range; lx++)
+		{
+			for (int lz = this.camChunkZ - this.range; lz <= this.camChunkZ + this.range; lz++)
+			{
+				this.request(lx, lz, 0);
+			}
+		}
+		this.loadPendingChunks(true);
+		this.initialNanos = System.nanoTime() - start;
+		this.updateMeshes();
+
+		float dx;
+		float dz;
+		float dist;
+		for (int i = 1; i < path.length; i++)
+		{
+			while (true)
+			{
+				dx = path[i][0] - camX;
+				dz = path[i][1] - camZ;
+				dist = (float)Math.sqrt((dx * dx) + (dz * dz));
+				if (dist <= this.blocksPerFrame)
+				{
+					camX = path[i][0];
+					camZ = path[i][1];
+					break;
+				}
+				camX += (dx / dist) * this.blocksPerFrame;
+				camZ += (dz / dist) * this.blocksPerFrame;
+				this.triggerChunkLoads(camX, camZ);
+				this.frame(true);
+			}
+		}
+		this.triggerChunkLoads(camX, camZ);
+
+		int settle = this.fps * SETTLE_SECONDS;
+		while (this.frame(false) && settle-- > 0)
+		{
+			// Keep going until everything's loaded and meshed
+		}
+	}
+
+	/**
+	 * Returns the given percentile of our request-to-ready latencies, in
+	 * milliseconds, calculated the same way as MeshScheduler does.
+	 */
+	private double getLatencyPercentile(double percentile)
+	{
+		if (this.latencies.isEmpty())
+		{
+			return 0;
+		}
+		Long[] sorted = this.latencies.toArray(new Long[this.latencies.size()]);
+		Arrays.sort(sorted);
+		int idx = (int)Math.ceil(percentile / 100d * sorted.length) - 1;
+		idx = Math.max(0, Math.min(sorted.length - 1, idx));
+		return sorted[idx] / (double)MS;
+	}
+
+	/**
+	 * Returns how many chunks the last frame drew
+	 */
+	public int getLastChunks()
+	{
+		return this.lastChunks;
+	}
+
+	/**
+	 * Returns how many draw calls the last frame made
+	 */
+	public long getLastDrawCalls()
+	{
+		return this.lastDrawCalls;
+	}
+
+	/**
+	 * Returns how many quads the last frame drew for each chunk in range
+	 */
+	private double getQuadsPerChunk()
+	{
+		if (this.lastChunks == 0)
+		{
+			return 0;
+		}
+		return (this.lastTriangles / 2d) / this.lastChunks;
+	}
+
+	/**
+	 * Sums the peak usage of all our heap pools since they were last reset
+	 */
+	private static long getPeakHeap()
+	{
+		long total = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+			{
+				total += pool.getPeakUsage().getUsed();
+			}
+		}
+		return total;
+	}
+
+	private static void resetPeakHeap()
+	{
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() == MemoryType.HEAP)
+			{
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * Reads a path file: one "x z" waypoint per line
+	 */
+	private static float[][] readPath(File file)
+		throws IOException
+	{
+		ArrayList<float[]> points = new ArrayList<float[]>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try
+		{
+			String line;
+			String[] parts;
+			int lineNum = 0;
+			while ((line = reader.readLine()) != null)
+			{
+				lineNum++;
+				if (line.indexOf('#') >= 0)
+				{
+					line = line.substring(0, line.indexOf('#'));
+				}
+				line = line.trim();
+				if (line.length() == 0)
+				{
+					continue;
+				}
+				parts = line.split("\\s+");
+				try
+				{
+					if (parts.length != 2)
+					{
+						throw new NumberFormatException();
+					}
+					points.add(new float[] { Float.parseFloat(parts[0]), Float.parseFloat(parts[1]) });
+				}
+				catch (NumberFormatException e)
+				{
+					throw new IOException(file.getPath() + " line " + lineNum + ": expected \"x z\"");
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		if (points.size() < 2)
+		{
+			throw new IOException(file.getPath() + ": a path needs at least two waypoints");
+		}
+		return points.toArray(new float[points.size()][]);
+	}
+
+	/**
+	 * Our default path: a square loop of the given half-width around the
+	 * given point, starting and ending at one corner.
+	 */
+	private static float[][] squarePath(float x, float z, float extent)
+	{
+		return new float[][] {
+			{ x - extent, z - extent },
+			{ x + extent, z - extent },
+			{ x + extent, z + extent },
+			{ x - extent, z + extent },
+			{ x - extent, z - extent }
+		};
+	}
+
+	private static void usage()
+	{
+		System.err.println("Usage: ReplayHarness [--world <dir> | --terrain superflat|caves|ores|modded");
+		System.err.println("                      [--format anvil|mcregion] [--size <chunks>] [--seed <n>]]");
+		System.err.println("                     [--path <file>] [--speed <blocks/sec>] [--fps <n>]");
+		System.err.println("                     [--range <chunks>] [--workers <n>] [--unbatched] [--out <file.json>]");
+		System.exit(1);
+	}
+
+	public static void main(String[] args)
+		throws Exception
+	{
+		File worldDir = null;
+		WorldGenerator.Terrain terrain = WorldGenerator.Terrain.CAVES;
+		WorldGenerator.Format format = WorldGenerator.Format.ANVIL;
+		int size = 48;
+		long seed = WorldGenerator.DEFAULT_SEED;
+		File pathFile = null;
+		float speed = 30f;
+		int fps = 60;
+		int range = 8;
+		int workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		boolean batched = true;
+		File outFile = null;
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("--world"))
+				{
+					worldDir = new File(args[++i]);
+				}
+				else if (args[i].equals("--terrain"))
+				{
+					terrain = WorldGenerator.Terrain.valueOf(args[++i].toUpperCase());
+				}
+				else if (args[i].equals("--format"))
+				{
+					format = WorldGenerator.Format.valueOf(args[++i].toUpperCase());
+				}
+				else if (args[i].equals("--size"))
+				{
+					size = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("--seed"))
+				{
+					seed = Long.parseLong(args[++i]);
+				}
+				else if (args[i].equals("--path"))
+				{
+					pathFile = new File(args[++i]);
+				}
+				else if (args[i].equals("--speed"))
+				{
+					speed = Float.parseFloat(args[++i]);
+				}
+				else if (args[i].equals("--fps"))
+				{
+					fps = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("--range"))
+				{
+					range = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("--workers"))
+				{
+					workerCount = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("--unbatched"))
+				{
+					batched = false;
+				}
+				else if (args[i].equals("--out"))
+				{
+					outFile = new File(args[++i]);
+				}
+				else
+				{
+					usage();
+				}
+			}
+		}
+		catch (ArrayIndexOutOfBoundsException e)
+		{
+			usage();
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			usage();
+		}
+		if (size < 1 || speed <= 0 || fps < 1 || range < 1 || workerCount < 1)
+		{
+			usage();
+		}
+
+		String worldDesc;
+		if (worldDir == null)
+		{
+			worldDesc = terrain.toString().toLowerCase() + "/" + format.toString().toLowerCase() + "/" + size;
+			worldDir = new File(SampleWorld.getBaseDir(), "replay-world-v" + WORLD_VERSION + "-"
+					+ terrain.toString().toLowerCase() + "-" + format.toString().toLowerCase() + "-" + size + "-" + seed);
+			if (!new File(worldDir, "level.dat").exists())
+			{
+				WorldGenerator generator = null;
+				try
+				{
+					generator = new WorldGenerator(terrain, format, seed, worldDir.getName());
+				}
+				catch (IllegalArgumentException e)
+				{
+					System.err.println(e.getMessage());
+					System.exit(1);
+				}
+				System.out.println("Generating " + worldDesc + " world in " + worldDir.getPath());
+				generator.generate(worldDir, -size / 2, -size / 2, size, size);
+			}
+		}
+		else
+		{
+			worldDesc = worldDir.getPath();
+		}
+
+		MinecraftLevel level = BenchEnvironment.openLevel(worldDir);
+		float[][] path;
+		if (pathFile != null)
+		{
+			path = readPath(pathFile);
+		}
+		else
+		{
+			CameraPreset spawn = level.getSpawnPoint();
+			float extent = 256;
+			if (worldDir.getName().startsWith("replay-world-"))
+			{
+				// Stay far enough inside the generated area that we're not just
+				// loading the void
+				extent = Math.max(32, (size * 8) - ((range + 1) * 16));
+			}
+			path = squarePath(spawn.block.x, spawn.block.z, extent);
+		}
+
+		System.gc();
+		resetPeakHeap();
+		ReplayHarness harness = new ReplayHarness(level, range, speed, fps, workerCount, batched);
+		long start = System.nanoTime();
+		harness.run(path);
+		harness.shutdown();
+		double seconds = (System.nanoTime() - start - harness.initialNanos) / 1000000000d;
+		long peakHeap = getPeakHeap();
+
+		int loaded = harness.initialChunks + harness.streamedChunks;
+		double wallRate = harness.streamedChunks / seconds;
+		double loadRate = (harness.loadNanos > 0 ? loaded / (harness.loadNanos / 1000000000d) : 0);
+		double p50 = harness.getLatencyPercentile(50);
+		double p99 = harness.getLatencyPercentile(99);
+
+		System.out.println(String.format("World:            %s", worldDesc));
+		System.out.println(String.format("Path:             %d waypoints at %.1f blocks/sec, %d fps, range %d, %d workers, %s reads",
+					path.length, speed, fps, range, workerCount, (batched ? "batched" : "unbatched")));
+		System.out.println(String.format("Initial load:     %d chunks in %.1fms", harness.initialChunks, harness.initialNanos / (double)MS));
+		System.out.println(String.format("Streamed:         %d chunks over %d frames (%.1fs)", harness.streamedChunks, harness.frames, seconds));
+		System.out.println(String.format("Chunks/sec:       %.1f while flying, %.1f loader throughput", wallRate, loadRate));
+		System.out.println(String.format("Request to ready: p50 %.1fms, p99 %.1fms (%d chunks)", p50, p99, harness.latencies.size()));
+		System.out.println(String.format("Peak heap:        %.1fMB", peakHeap / (1024d * 1024d)));
+		System.out.println(String.format("Per frame (avg):  %.1f draw calls, %.1f binds, %.1f state changes, %.0f quads",
+					harness.totalDrawCalls / (double)harness.frames, harness.totalBinds / (double)harness.frames,
+					harness.totalStateChanges / (double)harness.frames, harness.totalTriangles / 2d / harness.frames));
+		System.out.println(String.format("Last frame:       %d chunks, %d draw calls, %d binds (%d redundant), %d state changes, %.1f quads/chunk",
+					harness.lastChunks, harness.lastDrawCalls, harness.lastBinds, harness.lastRedundantBinds,
+					harness.lastStateChanges, harness.getQuadsPerChunk()));
+		if (!harness.missingChunks.isEmpty() || harness.scheduler.getFailedCount() > 0)
+		{
+			System.out.println(String.format("Missing chunks:   %d, failed mesh jobs: %d", harness.missingChunks.size(), harness.scheduler.getFailedCount()));
+		}
+
+		if (outFile != null)
+		{
+			PrintWriter out = new PrintWriter(new FileWriter(outFile));
+			try
+			{
+				out.println("{");
+				out.println("  \"world\": \"" + worldDesc.replace("\\", "\\\\").replace("\"", "\\\"") + "\",");
+				out.println("  \"speed\": " + speed + ",");
+				out.println("  \"fps\": " + fps + ",");
+				out.println("  \"range\": " + range + ",");
+				out.println("  \"workers\": " + workerCount + ",");
+				out.println("  \"batched\": " + batched + ",");
+				out.println("  \"frames\": " + harness.frames + ",");
+				out.println("  \"initialChunks\": " + harness.initialChunks + ",");
+				out.println("  \"initialMs\": " + String.format("%.3f", harness.initialNanos / (double)MS) + ",");
+				out.println("  \"streamedChunks\": " + harness.streamedChunks + ",");
+				out.println("  \"missingChunks\": " + harness.missingChunks.size() + ",");
+				out.println("  \"failedJobs\": " + harness.scheduler.getFailedCount() + ",");
+				out.println("  \"chunksPerSecond\": " + String.format("%.3f", wallRate) + ",");
+				out.println("  \"loaderChunksPerSecond\": " + String.format("%.3f", loadRate) + ",");
+				out.println("  \"readyP50Ms\": " + String.format("%.3f", p50) + ",");
+				out.println("  \"readyP99Ms\": " + String.format("%.3f", p99) + ",");
+				out.println("  \"peakHeapBytes\": " + peakHeap + ",");
+				out.println("  \"avgDrawCalls\": " + String.format("%.3f", harness.totalDrawCalls / (double)harness.frames) + ",");
+				out.println("  \"avgBinds\": " + String.format("%.3f", harness.totalBinds / (double)harness.frames) + ",");
+				out.println("  \"avgStateChanges\": " + String.format("%.3f", harness.totalStateChanges / (double)harness.frames) + ",");
+				out.println("  \"lastFrameChunks\": " + harness.lastChunks + ",");
+				out.println("  \"lastFrameDrawCalls\": " + harness.lastDrawCalls + ",");
+				out.println("  \"lastFrameBinds\": " + harness.lastBinds + ",");
+				out.println("  \"lastFrameStateChanges\": " + harness.lastStateChanges + ",");
+				out.println("  \"lastFrameQuads\": " + (harness.lastTriangles / 2) + ",");
+				out.println("  \"quadsPerChunk\": " + String.format("%.3f", harness.getQuadsPerChunk()));
+				out.println("}");
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+	}
+}
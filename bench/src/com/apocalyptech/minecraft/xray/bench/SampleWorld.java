@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The sample world our benchmarks run against.  Rather than checking a
+ * binary save into the tree, we generate a small Anvil world from a fixed
+ * seed the first time it's needed, so every run (and every commit) sees
+ * exactly the same data.  It uses WorldGenerator's cave terrain, which is
+ * deliberately busy: bedrock, stone riddled with caves and ores, a dirt and
+ * grass surface with trees, plus water, glass and torches, so that the
+ * nonstandard and glass passes have something to do as well.
+ *
+ * Set the "xray.bench.world" system property to run against a real world
+ * directory instead.
+ */
+public class SampleWorld
+{
+	// Bump this if the generated data changes, so old copies get regenerated
+	private static final int VERSION = 3;
+
+	public static final int CHUNKS = 8;
+
+	/**
+	 * Returns the directory of our sample world, generating it if need be.
+	 */
+	public static synchronized File getWorldDir()
+		throws IOException
+	{
+		String override = System.getProperty("xray.bench.world");
+		if (override != null)
+		{
+			return new File(override);
+		}
+		File dir = new File(getBaseDir(), "sample-world-v" + VERSION);
+		if (!new File(dir, "level.dat").exists())
+		{
+			new WorldGenerator(WorldGenerator.Terrain.CAVES, WorldGenerator.Format.ANVIL,
+					WorldGenerator.DEFAULT_SEED, "X-Ray Benchmark").generate(dir, 0, 0, CHUNKS, CHUNKS);
+		}
+		return dir;
+	}
+
+	/**
+	 * Returns the directory that generated worlds are kept in
+	 */
+	public static File getBaseDir()
+	{
+		return new File(System.getProperty("xray.bench.dir", System.getProperty("java.io.tmpdir")));
+	}
+
+	/**
+	 * Returns the region file in our sample world which holds chunk 0,0
+	 */
+	public static File getRegionFile()
+		throws IOException
+	{
+		return new File(new File(getWorldDir(), "region"), "r.0.0.mca");
+	}
+}
@@ -0,0 +1,249 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray.bench;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+import com.apocalyptech.minecraft.xray.SheetAtlas;
+
+/**
+ * Checks SheetAtlas without a display: the grid it picks for various numbers
+ * and shapes of sheets, that each sheet ends up in the right cell (scaled up
+ * if it's smaller than the cell), that mapU()/mapV() point back at the same
+ * texels the sheet's own coordinates did, and that we get null back, so X-Ray
+ * falls back to drawing each sheet separately, when the grid won't fit in
+ * GL_MAX_TEXTURE_SIZE.
+ *
+ * The sheets are generated: each one is split into four quadrants, each a
+ * different color which is unique to that sheet, so that a sheet which ends
+ * up in the wrong cell, flipped, or unscaled shows up as a wrong color.
+ *
+ * Any failure is reported, and we exit with a non-zero status if there were
+ * any, so that this can be run as a check from ant.
+ */
+public class SheetAtlasCheck
+{
+	private int checks;
+	private int failures;
+
+	private void check(boolean ok, String description)
+	{
+		this.checks++;
+		if (!ok)
+		{
+			this.failures++;
+			System.out.println("FAILED: " + description);
+		}
+	}
+
+	/**
+	 * Returns the color of the given quadrant (0-3, left to right and then
+	 * top to bottom) of the given sheet
+	 */
+	private static int quadrantColor(int sheet, int quadrant)
+	{
+		return 0xFF000000 | ((sheet + 1) << 16) | ((quadrant + 1) << 8) | 0x5A;
+	}
+
+	/**
+	 * Generates a sheet of the given size for the given sheet number
+	 */
+	private static BufferedImage makeSheet(int sheet, int width, int height)
+	{
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				int quadrant = (x < width / 2 ? 0 : 1) + (y < height / 2 ? 0 : 2);
+				image.setRGB(x, y, quadrantColor(sheet, quadrant));
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Checks computeGrid() for a given case
+	 */
+	private void checkGrid(int sheets, int cellWidth, int cellHeight, int maxSize, int cols, int rows)
+	{
+		int[] grid = SheetAtlas.computeGrid(sheets, cellWidth, cellHeight, maxSize);
+		String description = String.format("%d sheets of %dx%d, max %d: expected %s, got %s",
+				sheets, cellWidth, cellHeight, maxSize,
+				(cols == 0 ? "no grid" : cols + "x" + rows),
+				(grid == null ? "no grid" : grid[0] + "x" + grid[1]));
+		if (cols == 0)
+		{
+			this.check(grid == null, description);
+		}
+		else
+		{
+			this.check(grid != null && grid[0] == cols && grid[1] == rows, description);
+		}
+	}
+
+	/**
+	 * Grid dimensions are powers of two, as square as the cells allow, and
+	 * just large enough for the sheets
+	 */
+	private void checkGrids()
+	{
+		this.checkGrid(1, 256, 256, 4096, 1, 1);
+		this.checkGrid(2, 256, 256, 4096, 2, 1);
+		this.checkGrid(3, 256, 256, 4096, 2, 2);
+		this.checkGrid(4, 256, 256, 4096, 2, 2);
+		this.checkGrid(5, 256, 256, 4096, 4, 2);
+		this.checkGrid(8, 256, 256, 4096, 4, 2);
+		this.checkGrid(9, 256, 256, 4096, 4, 4);
+		this.checkGrid(17, 256, 256, 4096, 8, 4);
+
+		// Tall cells get more columns first, wide ones more rows, to keep the
+		// image itself square-ish
+		this.checkGrid(2, 256, 512, 4096, 2, 1);
+		this.checkGrid(4, 256, 512, 4096, 4, 1);
+		this.checkGrid(2, 512, 256, 4096, 1, 2);
+		this.checkGrid(4, 512, 256, 4096, 2, 2);
+
+		// Exactly fitting is fine; one texel over isn't
+		this.checkGrid(4, 256, 256, 512, 2, 2);
+		this.checkGrid(5, 256, 256, 1024, 4, 2);
+		this.checkGrid(5, 256, 256, 1023, 0, 0);
+		this.checkGrid(5, 256, 256, 512, 0, 0);
+		this.checkGrid(1, 2048, 2048, 1024, 0, 0);
+	}
+
+	/**
+	 * Composes an atlas from sheets of the given sizes, and checks every
+	 * sheet's cell and texture coordinate mapping
+	 */
+	private void checkCompose(int[][] sizes, int maxSize, int expectWidth, int expectHeight)
+	{
+		ArrayList<BufferedImage> sheets = new ArrayList<BufferedImage>();
+		for (int i = 0; i < sizes.length; i++)
+		{
+			sheets.add(makeSheet(i, sizes[i][0], sizes[i][1]));
+		}
+		String name = sizes.length + " sheets, max " + maxSize;
+		SheetAtlas atlas = SheetAtlas.compose(sheets, maxSize);
+		if (expectWidth == 0)
+		{
+			this.check(atlas == null, name + ": expected no atlas, so that sheets are drawn separately");
+			return;
+		}
+		if (atlas == null)
+		{
+			this.check(false, name + ": expected an atlas, got none");
+			return;
+		}
+		BufferedImage image = atlas.getImage();
+		this.check(image.getWidth() == expectWidth && image.getHeight() == expectHeight,
+				String.format("%s: expected %dx%d, got %dx%d", name, expectWidth, expectHeight, image.getWidth(), image.getHeight()));
+		this.check(atlas.getSheetCount() == sizes.length,
+				name + ": expected " + sizes.length + " sheets, got " + atlas.getSheetCount());
+		this.check(atlas.getCols() * atlas.getRows() >= sizes.length, name + ": grid is too small for its sheets");
+
+		int cellWidth = image.getWidth() / atlas.getCols();
+		int cellHeight = image.getHeight() / atlas.getRows();
+		float[] coords = { 0.01f, 0.25f, 0.49f, 0.51f, 0.75f, 0.99f };
+		for (int sheet = 0; sheet < sizes.length; sheet++)
+		{
+			// The cell edges line up with texel boundaries, so coordinates
+			// at 0 and 1 don't reach into any neighboring cell
+			float left = atlas.mapU(sheet, 0f) * image.getWidth();
+			float right = atlas.mapU(sheet, 1f) * image.getWidth();
+			float top = atlas.mapV(sheet, 0f) * image.getHeight();
+			float bottom = atlas.mapV(sheet, 1f) * image.getHeight();
+			this.check(left == (sheet % atlas.getCols()) * cellWidth && right == left + cellWidth &&
+					top == (sheet / atlas.getCols()) * cellHeight && bottom == top + cellHeight,
+					String.format("%s: sheet %d maps to (%.2f,%.2f)-(%.2f,%.2f), not its cell", name, sheet, left, top, right, bottom));
+
+			// mapU/mapV agree with the scale and offset the mesher uses
+			this.check(atlas.mapU(sheet, 0.5f) == atlas.getOffsetU(sheet) + 0.5f * atlas.getScaleU() &&
+					atlas.mapV(sheet, 0.5f) == atlas.getOffsetV(sheet) + 0.5f * atlas.getScaleV(),
+					name + ": sheet " + sheet + " mapU/mapV disagree with getScale/getOffset");
+
+			// And the texel we land on is the same color as the sheet's own
+			for (float u : coords)
+			{
+				for (float v : coords)
+				{
+					int quadrant = (u < 0.5f ? 0 : 1) + (v < 0.5f ? 0 : 2);
+					int x = (int)(atlas.mapU(sheet, u) * image.getWidth());
+					int y = (int)(atlas.mapV(sheet, v) * image.getHeight());
+					int found = image.getRGB(x, y);
+					if (found != quadrantColor(sheet, quadrant))
+					{
+						this.check(false, String.format("%s: sheet %d at (%.2f,%.2f) mapped to texel %d,%d which is %08X, not %08X",
+									name, sheet, u, v, x, y, found, quadrantColor(sheet, quadrant)));
+						return;
+					}
+				}
+			}
+			this.check(true, "");
+		}
+	}
+
+	private void checkComposes()
+	{
+		// Six 256x256 sheets, as we'd get from a stock texture pack plus mods
+		int[][] six = new int[6][];
+		for (int i = 0; i < six.length; i++)
+		{
+			six[i] = new int[] { 256, 256 };
+		}
+		this.checkCompose(six, 4096, 1024, 512);
+		this.checkCompose(six, 1024, 1024, 512);
+
+		// Too big for the card: we get nothing, and X-Ray draws the six
+		// sheets separately instead
+		this.checkCompose(six, 512, 0, 0);
+
+		// Smaller and non-power-of-two sheets get scaled up to fill the cell,
+		// as Texture would have stretched them
+		this.checkCompose(new int[][] { { 256, 256 }, { 128, 128 }, { 200, 256 } }, 4096, 512, 512);
+
+		// A high-resolution pack, where one sheet alone is near the limit
+		this.checkCompose(new int[][] { { 1024, 1024 }, { 1024, 1024 } }, 2048, 2048, 1024);
+		this.checkCompose(new int[][] { { 1024, 1024 }, { 1024, 1024 } }, 1024, 0, 0);
+
+		// Nothing at all
+		this.check(SheetAtlas.compose(new ArrayList<BufferedImage>(), 4096) == null, "no sheets: expected no atlas");
+	}
+
+	public static void main(String[] args)
+	{
+		SheetAtlasCheck check = new SheetAtlasCheck();
+		check.checkGrids();
+		check.checkComposes();
+		System.out.println(String.format("SheetAtlas: %d checks, %d failed", check.checks, check.failures));
+		if (check.failures > 0)
+		{
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,343 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+import com.apocalyptech.minecraft.xray.BlockType;
+import com.apocalyptech.minecraft.xray.BlockTypeLoadException;
+import com.apocalyptech.minecraft.xray.TextureAtlasPacker;
+
+/**
+ * Compares TextureAtlasPacker against the greedy sheet-by-sheet fill that we
+ * used to do (TextureAtlasPacker.simulateGreedy()), on a fixed set of blocks
+ * read from a file, and checks that the packed plan is actually valid: every
+ * block's textures are all on its sheet, and no sheet holds more than it
+ * has room for.  We exit with a non-zero status if the plan is invalid, or
+ * if it uses more sheets than the greedy fill would have.
+ *
+ * The input file has one setting or block per line; blank lines and lines
+ * starting with # are ignored:
+ *
+ *   free <n>                    - free slots on our starting sheet
+ *   size <n>                    - slots on each new sheet
+ *   block <name> <namespace|-> <texture> [<texture> ...]
+ *
+ * The committed sets in bench/data were made with --generate, which creates
+ * blocks with between one and six textures each, sharing textures in one of
+ * two ways:
+ *
+ *   families - blocks come in families of one to eight (like a mod's set of
+ *              wood types or machines), which draw their textures from a
+ *              pool shared within the family, plus the odd texture from
+ *              some other family
+ *   random   - any texture may be reused from any earlier block, which ties
+ *              almost everything together into one group that has to be
+ *              split up; this is the packer's worst case
+ *
+ * With no --input, both committed sets are checked.
+ */
+public class TexturePackerCheck
+{
+	public static final String[] DEFAULT_INPUTS = {
+		"bench/data/texture-packer-families.txt",
+		"bench/data/texture-packer-random.txt"
+	};
+
+	private int firstPageFree = 256;
+	private int pageSize = 256;
+	private final ArrayList<BlockType> blocks = new ArrayList<BlockType>();
+	private final ArrayList<String> namespaces = new ArrayList<String>();
+	private final ArrayList<ArrayList<String>> keys = new ArrayList<ArrayList<String>>();
+
+	/**
+	 * Reads our input set from the given file
+	 */
+	private void read(File file)
+		throws IOException
+	{
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try
+		{
+			String line;
+			int lineNum = 0;
+			while ((line = in.readLine()) != null)
+			{
+				lineNum++;
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#"))
+				{
+					continue;
+				}
+				String[] parts = line.split("\\s+");
+				if (parts[0].equals("free") && parts.length == 2)
+				{
+					this.firstPageFree = Integer.parseInt(parts[1]);
+				}
+				else if (parts[0].equals("size") && parts.length == 2)
+				{
+					this.pageSize = Integer.parseInt(parts[1]);
+				}
+				else if (parts[0].equals("block") && parts.length >= 4)
+				{
+					BlockType block = new BlockType();
+					block.idStr = parts[1];
+					ArrayList<String> blockKeys = new ArrayList<String>();
+					for (int i = 3; i < parts.length; i++)
+					{
+						blockKeys.add(parts[i]);
+					}
+					this.blocks.add(block);
+					this.namespaces.add(parts[2].equals("-") ? null : parts[2]);
+					this.keys.add(blockKeys);
+				}
+				else
+				{
+					throw new IOException(file.getPath() + ", line " + lineNum + ": can't parse \"" + line + "\"");
+				}
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Packs our input set, reports on it, and returns whether it passed
+	 */
+	private boolean run()
+		throws BlockTypeLoadException
+	{
+		TextureAtlasPacker packer = new TextureAtlasPacker(this.firstPageFree, this.pageSize);
+		LinkedHashSet<String> distinct = new LinkedHashSet<String>();
+		for (int i = 0; i < this.blocks.size(); i++)
+		{
+			packer.add(this.blocks.get(i), this.namespaces.get(i), this.keys.get(i));
+			distinct.addAll(this.keys.get(i));
+		}
+		int[] greedy = packer.simulateGreedy();
+		packer.pack();
+
+		boolean ok = true;
+		HashMap<Integer, LinkedHashSet<String>> pages = new HashMap<Integer, LinkedHashSet<String>>();
+		for (int page = 0; page < packer.getPageCount(); page++)
+		{
+			LinkedHashSet<String> pageKeys = new LinkedHashSet<String>(packer.getPageKeys(page));
+			pages.put(page, pageKeys);
+			int capacity = (page == 0 ? this.firstPageFree : this.pageSize);
+			if (pageKeys.size() > capacity)
+			{
+				System.out.println("FAILED: sheet " + page + " holds " + pageKeys.size() + " textures, but only has room for " + capacity);
+				ok = false;
+			}
+		}
+		for (int i = 0; i < this.blocks.size(); i++)
+		{
+			int page = packer.getPage(this.blocks.get(i));
+			for (String key : this.keys.get(i))
+			{
+				if (!pages.get(page).contains(key))
+				{
+					System.out.println("FAILED: block " + this.blocks.get(i).idStr + " is on sheet " + page + ", but its texture " + key + " isn't");
+					ok = false;
+				}
+			}
+		}
+
+		System.out.println(String.format("Input:            %d blocks using %d distinct textures, %d free on the first sheet, %d per sheet",
+					this.blocks.size(), distinct.size(), this.firstPageFree, this.pageSize));
+		System.out.println(String.format("Greedy fill:      %d sheets, %d slots", greedy[0], greedy[1]));
+		System.out.println(String.format("Packed:           %d sheets, %d slots", packer.getPageCount(), packer.getSlotCount()));
+		if (packer.getPageCount() > greedy[0])
+		{
+			System.out.println("FAILED: the packer used more sheets than the greedy fill");
+			ok = false;
+		}
+		return ok;
+	}
+
+	/**
+	 * Writes out a new synthetic input set
+	 */
+	private static void generate(File file, boolean families, long seed, int blockCount, int firstPageFree)
+		throws IOException
+	{
+		Random rnd = new Random(seed);
+		ArrayList<String> textures = new ArrayList<String>();
+		ArrayList<String> pool = new ArrayList<String>();
+		int familyLeft = 0;
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try
+		{
+			out.println("# Synthetic extra-texture set for TexturePackerCheck, made with:");
+			out.println("#   TexturePackerCheck --generate <file> --sharing " + (families ? "families" : "random") +
+					" --seed " + seed + " --blocks " + blockCount + " --free " + firstPageFree);
+			out.println("free " + firstPageFree);
+			out.println("size 256");
+			for (int i = 0; i < blockCount; i++)
+			{
+				if (families && familyLeft == 0)
+				{
+					familyLeft = 1 + rnd.nextInt(8);
+					pool.clear();
+				}
+				familyLeft--;
+				StringBuffer line = new StringBuffer("block filename_" + i + " -");
+				int count = 1 + rnd.nextInt(6);
+				for (int j = 0; j < count; j++)
+				{
+					String texture;
+					float roll = rnd.nextFloat();
+					if (families && !pool.isEmpty() && roll < 0.5f)
+					{
+						texture = pool.get(rnd.nextInt(pool.size()));
+					}
+					else if (!textures.isEmpty() && roll < (families ? 0.53f : 0.35f))
+					{
+						texture = textures.get(rnd.nextInt(textures.size()));
+					}
+					else
+					{
+						texture = "tex" + textures.size() + ".png";
+						textures.add(texture);
+						pool.add(texture);
+					}
+					line.append(' ').append(texture);
+				}
+				out.println(line.toString());
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private static void usage()
+	{
+		System.err.println("Usage: TexturePackerCheck [--input <file>]");
+		System.err.println("       TexturePackerCheck --generate <file> [--sharing families|random] [--seed <n>]");
+		System.err.println("                          [--blocks <n>] [--free <n>]");
+		System.exit(1);
+	}
+
+	public static void main(String[] args)
+		throws Exception
+	{
+		File input = null;
+		File output = null;
+		boolean families = true;
+		long seed = WorldGenerator.DEFAULT_SEED;
+		int blockCount = 300;
+		int firstPageFree = 40;
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("--input"))
+				{
+					input = new File(args[++i]);
+				}
+				else if (args[i].equals("--generate"))
+				{
+					output = new File(args[++i]);
+				}
+				else if (args[i].equals("--sharing"))
+				{
+					String sharing = args[++i];
+					if (sharing.equals("families"))
+					{
+						families = true;
+					}
+					else if (sharing.equals("random"))
+					{
+						families = false;
+					}
+					else
+					{
+						usage();
+					}
+				}
+				else if (args[i].equals("--seed"))
+				{
+					seed = Long.parseLong(args[++i]);
+				}
+				else if (args[i].equals("--blocks"))
+				{
+					blockCount = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("--free"))
+				{
+					firstPageFree = Integer.parseInt(args[++i]);
+				}
+				else
+				{
+					usage();
+				}
+			}
+		}
+		catch (ArrayIndexOutOfBoundsException e)
+		{
+			usage();
+		}
+		catch (NumberFormatException e)
+		{
+			usage();
+		}
+
+		if (output != null)
+		{
+			generate(output, families, seed, blockCount, firstPageFree);
+			System.out.println("Wrote " + blockCount + " blocks to " + output.getPath());
+			return;
+		}
+
+		String[] inputs = (input == null ? DEFAULT_INPUTS : new String[] { input.getPath() });
+		boolean ok = true;
+		for (String path : inputs)
+		{
+			TexturePackerCheck check = new TexturePackerCheck();
+			check.read(new File(path));
+			System.out.println(String.format("Input file:       %s", path));
+			ok &= check.run();
+		}
+		if (!ok)
+		{
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,654 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray.bench;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates synthetic worlds for benchmarking, so that we can measure the
+ * whole load path without needing a real save.  Writes a level.dat plus
+ * region files in either Anvil (.mca) or MCRegion (.mcr) format, with one
+ * of a few kinds of terrain:
+ *
+ *   SUPERFLAT - bedrock, two layers of dirt and a layer of grass
+ *   CAVES     - rolling hills over stone which is riddled with noisy caves,
+ *               with ores, water, trees, torches and glass scattered about
+ *   ORES      - the same hills, but solid underground, and very ore-dense
+ *   MODDED    - caves, with a large share of the underground made up of
+ *               block IDs above 255 (stored in Anvil's Add nibbles), with
+ *               random data values.  Anvil only.
+ *
+ * Every chunk is generated from its own coordinates and the world seed, so
+ * a given chunk comes out the same no matter how large an area is written.
+ * The world is 128 blocks high in either format.
+ */
+public class WorldGenerator
+{
+	public static enum Terrain
+	{
+		SUPERFLAT,
+		CAVES,
+		ORES,
+		MODDED
+	}
+
+	public static enum Format
+	{
+		ANVIL,
+		MCREGION
+	}
+
+	public static final int HEIGHT = 128;
+	public static final int SEA_LEVEL = 60;
+	public static final long DEFAULT_SEED = 0x5852617942656E63L;
+
+	private static final short AIR = 0;
+	private static final short STONE = 1;
+	private static final short GRASS = 2;
+	private static final short DIRT = 3;
+	private static final short BEDROCK = 7;
+	private static final short WATER = 9;
+	private static final short LAVA = 11;
+	private static final short GOLD_ORE = 14;
+	private static final short IRON_ORE = 15;
+	private static final short COAL_ORE = 16;
+	private static final short LOG = 17;
+	private static final short LEAVES = 18;
+	private static final short GLASS = 20;
+	private static final short LAPIS_ORE = 21;
+	private static final short TORCH = 50;
+	private static final short DIAMOND_ORE = 56;
+	private static final short REDSTONE_ORE = 73;
+
+	// Where we pull our fake mod block IDs from; spread out so that both the
+	// low and high bits of the Add nibble get used
+	private static final int[] MOD_ID_BASES = { 256, 600, 1200, 2500, 4000 };
+
+	private final Terrain terrain;
+	private final Format format;
+	private final long seed;
+	private final String name;
+
+	// Random offsets into our noise lattice, so different seeds get different caves
+	private final int noiseOffsetX;
+	private final int noiseOffsetZ;
+
+	public WorldGenerator(Terrain terrain, Format format, long seed, String name)
+	{
+		if (terrain == Terrain.MODDED && format != Format.ANVIL)
+		{
+			throw new IllegalArgumentException("Block IDs above 255 can only be stored in Anvil worlds");
+		}
+		this.terrain = terrain;
+		this.format = format;
+		this.seed = seed;
+		this.name = name;
+		Random random = new Random(seed);
+		this.noiseOffsetX = random.nextInt(1 << 20);
+		this.noiseOffsetZ = random.nextInt(1 << 20);
+	}
+
+	/**
+	 * Writes out a world covering the given rectangle of chunks.  The spawn
+	 * point is put in the middle of it.  level.dat is written last, so that a
+	 * world which was interrupted partway through won't look finished.
+	 *
+	 * @param dir The world directory to write to
+	 * @param minX The lowest chunk X coordinate to generate
+	 * @param minZ The lowest chunk Z coordinate to generate
+	 * @param width How many chunks to generate along X
+	 * @param depth How many chunks to generate along Z
+	 */
+	public void generate(File dir, int minX, int minZ, int width, int depth)
+		throws IOException
+	{
+		File regionDir = new File(dir, "region");
+		if (!regionDir.isDirectory() && !regionDir.mkdirs())
+		{
+			throw new IOException("Could not create " + regionDir.getPath());
+		}
+		String extension = (this.format == Format.ANVIL ? ".mca" : ".mcr");
+		HashMap<String, RegionWriter> regions = new HashMap<String, RegionWriter>();
+		try
+		{
+			RegionWriter region;
+			String key;
+			for (int x = minX; x < minX + width; x++)
+			{
+				for (int z = minZ; z < minZ + depth; z++)
+				{
+					key = "r." + (x >> 5) + "." + (z >> 5) + extension;
+					region = regions.get(key);
+					if (region == null)
+					{
+						region = new RegionWriter(new File(regionDir, key));
+						regions.put(key, region);
+					}
+					DataOutputStream out = region.getChunkDataOutputStream(x & 31, z & 31);
+					this.writeChunk(new NBTWriter(out), x, z);
+					out.close();
+				}
+			}
+		}
+		finally
+		{
+			for (RegionWriter region : regions.values())
+			{
+				region.close();
+			}
+		}
+
+		this.writeLevelDat(new File(dir, "level.dat"), (minX + (width / 2)) * 16, (minZ + (depth / 2)) * 16);
+	}
+
+	private void writeLevelDat(File file, int spawnX, int spawnZ)
+		throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(file)));
+		try
+		{
+			NBTWriter nbt = new NBTWriter(out);
+			nbt.beginCompound("");
+			nbt.beginCompound("Data");
+			nbt.writeInt("version", (this.format == Format.ANVIL ? 19133 : 19132));
+			nbt.writeString("LevelName", this.name);
+			nbt.writeLong("RandomSeed", this.seed);
+			nbt.writeInt("SpawnX", spawnX);
+			nbt.writeInt("SpawnY", HEIGHT / 2);
+			nbt.writeInt("SpawnZ", spawnZ);
+			nbt.endCompound();
+			nbt.endCompound();
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Builds a single chunk column, in Anvil's YZX order.  The block IDs and
+	 * data values are unpacked, one entry per block.
+	 */
+	private void buildColumn(int chunkX, int chunkZ, short[] blocks, byte[] data)
+	{
+		Random random = new Random(this.seed ^ (chunkX * 341873128712L) ^ (chunkZ * 132897987541L));
+		int surface;
+		int worldX;
+		int worldZ;
+		int idx;
+		for (int x = 0; x < 16; x++)
+		{
+			for (int z = 0; z < 16; z++)
+			{
+				worldX = (chunkX * 16) + x;
+				worldZ = (chunkZ * 16) + z;
+				if (this.terrain == Terrain.SUPERFLAT)
+				{
+					blocks[index(x, 0, z)] = BEDROCK;
+					blocks[index(x, 1, z)] = DIRT;
+					blocks[index(x, 2, z)] = DIRT;
+					blocks[index(x, 3, z)] = GRASS;
+					continue;
+				}
+
+				surface = 64 + (int)(8 * Math.sin(worldX / 11d) * Math.cos(worldZ / 13d))
+					+ (int)(6 * this.noise(worldX / 24d, 0, worldZ / 24d));
+				for (int y = 0; y < HEIGHT; y++)
+				{
+					idx = index(x, y, z);
+					if (y == 0 || (y < 4 && random.nextInt(2) == 0))
+					{
+						blocks[idx] = BEDROCK;
+					}
+					else if (y < surface - 4)
+					{
+						if (this.terrain != Terrain.ORES && this.isCave(worldX, y, worldZ))
+						{
+							blocks[idx] = (y < 10 ? LAVA : AIR);
+						}
+						else
+						{
+							this.pickUnderground(random, y, blocks, data, idx);
+						}
+					}
+					else if (y < surface)
+					{
+						blocks[idx] = DIRT;
+					}
+					else if (y == surface)
+					{
+						blocks[idx] = (surface < SEA_LEVEL ? WATER : GRASS);
+					}
+					else if (y < SEA_LEVEL)
+					{
+						blocks[idx] = WATER;
+					}
+				}
+				if (surface >= SEA_LEVEL && random.nextInt(40) == 0)
+				{
+					plantTree(blocks, x, surface + 1, z);
+				}
+				else if (surface >= SEA_LEVEL && random.nextInt(60) == 0)
+				{
+					blocks[index(x, surface + 1, z)] = (random.nextBoolean() ? TORCH : GLASS);
+				}
+			}
+		}
+	}
+
+	private static int index(int x, int y, int z)
+	{
+		return (y * 256) + (z * 16) + x;
+	}
+
+	/**
+	 * Fills in a single underground block, according to our terrain type
+	 */
+	private void pickUnderground(Random random, int y, short[] blocks, byte[] data, int idx)
+	{
+		int roll = random.nextInt(1000);
+		switch (this.terrain)
+		{
+			case ORES:
+				// Roughly a third of everything is ore of some sort
+				if (roll < 90)
+				{
+					blocks[idx] = COAL_ORE;
+				}
+				else if (roll < 170)
+				{
+					blocks[idx] = IRON_ORE;
+				}
+				else if (roll < 220)
+				{
+					blocks[idx] = REDSTONE_ORE;
+				}
+				else if (roll < 260)
+				{
+					blocks[idx] = LAPIS_ORE;
+				}
+				else if (roll < 300)
+				{
+					blocks[idx] = GOLD_ORE;
+				}
+				else if (roll < 330)
+				{
+					blocks[idx] = DIAMOND_ORE;
+				}
+				else
+				{
+					blocks[idx] = STONE;
+				}
+				return;
+
+			case MODDED:
+				if (roll < 400)
+				{
+					blocks[idx] = (short)(MOD_ID_BASES[random.nextInt(MOD_ID_BASES.length)] + random.nextInt(64));
+					data[idx] = (byte)random.nextInt(16);
+					return;
+				}
+				break;
+		}
+
+		if (roll < 15)
+		{
+			blocks[idx] = COAL_ORE;
+		}
+		else if (roll < 23)
+		{
+			blocks[idx] = IRON_ORE;
+		}
+		else if (roll < 26 && y < 32)
+		{
+			blocks[idx] = GOLD_ORE;
+		}
+		else if (roll < 28 && y < 16)
+		{
+			blocks[idx] = DIAMOND_ORE;
+		}
+		else
+		{
+			blocks[idx] = STONE;
+		}
+	}
+
+	/**
+	 * Whether the given block should be hollowed out as part of a cave.  Caves
+	 * are the places where our noise field comes close to zero, which gives us
+	 * long winding tunnels rather than round blobs.
+	 */
+	private boolean isCave(int x, int y, int z)
+	{
+		double n = this.noise(x / 16d, y / 10d, z / 16d);
+		return (n > -0.12 && n < 0.12);
+	}
+
+	/**
+	 * Smoothed 3D value noise, from -1 to 1
+	 */
+	private double noise(double x, double y, double z)
+	{
+		x += this.noiseOffsetX;
+		z += this.noiseOffsetZ;
+		int x0 = (int)Math.floor(x);
+		int y0 = (int)Math.floor(y);
+		int z0 = (int)Math.floor(z);
+		double fx = smooth(x - x0);
+		double fy = smooth(y - y0);
+		double fz = smooth(z - z0);
+		double x00 = lerp(fx, this.lattice(x0, y0, z0), this.lattice(x0 + 1, y0, z0));
+		double x10 = lerp(fx, this.lattice(x0, y0 + 1, z0), this.lattice(x0 + 1, y0 + 1, z0));
+		double x01 = lerp(fx, this.lattice(x0, y0, z0 + 1), this.lattice(x0 + 1, y0, z0 + 1));
+		double x11 = lerp(fx, this.lattice(x0, y0 + 1, z0 + 1), this.lattice(x0 + 1, y0 + 1, z0 + 1));
+		return lerp(fz, lerp(fy, x00, x10), lerp(fy, x01, x11));
+	}
+
+	private double lattice(int x, int y, int z)
+	{
+		long h = this.seed + (x * 374761393L) + (y * 668265263L) + (z * 2147483647L);
+		h = (h ^ (h >>> 13)) * 1274126177L;
+		h = h ^ (h >>> 16);
+		return ((h & 0xFFFF) / 32767.5d) - 1d;
+	}
+
+	private static double smooth(double t)
+	{
+		return t * t * (3 - (2 * t));
+	}
+
+	private static double lerp(double t, double a, double b)
+	{
+		return a + (t * (b - a));
+	}
+
+	private static void plantTree(short[] blocks, int x, int y, int z)
+	{
+		if (y + 6 >= HEIGHT || x < 2 || x > 13 || z < 2 || z > 13)
+		{
+			return;
+		}
+		for (int ly = y + 3; ly < y + 6; ly++)
+		{
+			for (int lx = x - 2; lx <= x + 2; lx++)
+			{
+				for (int lz = z - 2; lz <= z + 2; lz++)
+				{
+					blocks[index(lx, ly, lz)] = LEAVES;
+				}
+			}
+		}
+		for (int ly = y; ly < y + 5; ly++)
+		{
+			blocks[index(x, ly, z)] = LOG;
+		}
+	}
+
+	private void writeChunk(NBTWriter nbt, int chunkX, int chunkZ)
+		throws IOException
+	{
+		short[] blocks = new short[HEIGHT * 256];
+		byte[] data = new byte[HEIGHT * 256];
+		this.buildColumn(chunkX, chunkZ, blocks, data);
+
+		nbt.beginCompound("");
+		nbt.beginCompound("Level");
+		nbt.writeInt("xPos", chunkX);
+		nbt.writeInt("zPos", chunkZ);
+		nbt.writeLong("LastUpdate", 0);
+		nbt.writeByte("TerrainPopulated", 1);
+		nbt.beginList("Entities", NBTWriter.TAG_COMPOUND, 0);
+		nbt.beginList("TileEntities", NBTWriter.TAG_COMPOUND, 0);
+		if (this.format == Format.ANVIL)
+		{
+			this.writeSections(nbt, blocks, data);
+		}
+		else
+		{
+			this.writeMCRegionBlocks(nbt, blocks, data);
+		}
+		nbt.endCompound();
+		nbt.endCompound();
+	}
+
+	/**
+	 * Writes out our column as Anvil sections.  As in real worlds, sections
+	 * which are entirely air are left out, and the Add array is only written
+	 * for sections which need it.
+	 */
+	private void writeSections(NBTWriter nbt, short[] blocks, byte[] data)
+		throws IOException
+	{
+		int sectionCount = HEIGHT / 16;
+		boolean[] present = new boolean[sectionCount];
+		int count = 0;
+		for (int section = 0; section < sectionCount; section++)
+		{
+			for (int i = section * 4096; i < (section + 1) * 4096; i++)
+			{
+				if (blocks[i] != AIR)
+				{
+					present[section] = true;
+					count++;
+					break;
+				}
+			}
+		}
+
+		int[] heightMap = new int[256];
+		for (int i = 0; i < blocks.length; i++)
+		{
+			if (blocks[i] != AIR)
+			{
+				heightMap[i % 256] = (i / 256) + 1;
+			}
+		}
+		nbt.writeIntArray("HeightMap", heightMap);
+
+		nbt.beginList("Sections", NBTWriter.TAG_COMPOUND, count);
+		byte[] sectionBlocks = new byte[4096];
+		byte[] add = new byte[2048];
+		boolean hasAdd;
+		int base;
+		for (int section = 0; section < sectionCount; section++)
+		{
+			if (!present[section])
+			{
+				continue;
+			}
+			base = section * 4096;
+			hasAdd = false;
+			for (int i = 0; i < 4096; i++)
+			{
+				sectionBlocks[i] = (byte)blocks[base + i];
+				if (blocks[base + i] > 255)
+				{
+					hasAdd = true;
+				}
+			}
+			nbt.beginListCompound();
+			nbt.writeByte("Y", section);
+			nbt.writeByteArray("Blocks", sectionBlocks);
+			if (hasAdd)
+			{
+				packNibbles(blocks, base, add, 8);
+				nbt.writeByteArray("Add", add);
+			}
+			nbt.writeByteArray("Data", packNibbles(data, base, 4096));
+			nbt.writeByteArray("SkyLight", new byte[2048]);
+			nbt.writeByteArray("BlockLight", new byte[2048]);
+			nbt.endCompound();
+		}
+	}
+
+	/**
+	 * Writes out our column in MCRegion's format: a single XZY-ordered array
+	 * of 32768 block IDs, with matching nibble arrays.
+	 */
+	private void writeMCRegionBlocks(NBTWriter nbt, short[] blocks, byte[] data)
+		throws IOException
+	{
+		byte[] xzyBlocks = new byte[HEIGHT * 256];
+		byte[] xzyData = new byte[HEIGHT * 256];
+		byte[] heightMap = new byte[256];
+		int from;
+		int to;
+		for (int x = 0; x < 16; x++)
+		{
+			for (int z = 0; z < 16; z++)
+			{
+				for (int y = 0; y < HEIGHT; y++)
+				{
+					from = index(x, y, z);
+					to = y + (z * HEIGHT) + (x * HEIGHT * 16);
+					xzyBlocks[to] = (byte)blocks[from];
+					xzyData[to] = data[from];
+					if (blocks[from] != AIR)
+					{
+						heightMap[(z * 16) + x] = (byte)(y + 1);
+					}
+				}
+			}
+		}
+		nbt.writeByteArray("Blocks", xzyBlocks);
+		nbt.writeByteArray("Data", packNibbles(xzyData, 0, xzyData.length));
+		nbt.writeByteArray("SkyLight", new byte[HEIGHT * 128]);
+		nbt.writeByteArray("BlockLight", new byte[HEIGHT * 128]);
+		nbt.writeByteArray("HeightMap", heightMap);
+	}
+
+	/**
+	 * Packs the given range of unpacked values into a nibble array, low
+	 * nibble first.
+	 */
+	private static byte[] packNibbles(byte[] values, int base, int length)
+	{
+		byte[] packed = new byte[length / 2];
+		for (int i = 0; i < length; i += 2)
+		{
+			packed[i / 2] = (byte)((values[base + i] & 0xF) | ((values[base + i + 1] & 0xF) << 4));
+		}
+		return packed;
+	}
+
+	/**
+	 * Packs the given bits of 4096 block IDs into a nibble array, low nibble first
+	 */
+	private static void packNibbles(short[] values, int base, byte[] packed, int shift)
+	{
+		for (int i = 0; i < 4096; i += 2)
+		{
+			packed[i / 2] = (byte)(((values[base + i] >> shift) & 0xF) | (((values[base + i + 1] >> shift) & 0xF) << 4));
+		}
+	}
+
+	private static void usage()
+	{
+		System.err.println("Usage: WorldGenerator <dir> [--terrain superflat|caves|ores|modded]");
+		System.err.println("                      [--format anvil|mcregion] [--size <chunks>] [--seed <n>]");
+		System.exit(1);
+	}
+
+	/**
+	 * Generates a world from the commandline.  The world is a square of
+	 * --size chunks on each side, centered on the origin.
+	 */
+	public static void main(String[] args)
+		throws IOException
+	{
+		File dir = null;
+		Terrain terrain = Terrain.CAVES;
+		Format format = Format.ANVIL;
+		int size = 32;
+		long seed = DEFAULT_SEED;
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("--terrain"))
+				{
+					terrain = Terrain.valueOf(args[++i].toUpperCase());
+				}
+				else if (args[i].equals("--format"))
+				{
+					format = Format.valueOf(args[++i].toUpperCase());
+				}
+				else if (args[i].equals("--size"))
+				{
+					size = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("--seed"))
+				{
+					seed = Long.parseLong(args[++i]);
+				}
+				else if (dir == null && !args[i].startsWith("--"))
+				{
+					dir = new File(args[i]);
+				}
+				else
+				{
+					usage();
+				}
+			}
+		}
+		catch (ArrayIndexOutOfBoundsException e)
+		{
+			usage();
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			usage();
+		}
+		if (dir == null || size < 1)
+		{
+			usage();
+		}
+
+		WorldGenerator generator = null;
+		try
+		{
+			generator = new WorldGenerator(terrain, format, seed, dir.getName());
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		long start = System.nanoTime();
+		generator.generate(dir, -size / 2, -size / 2, size, size);
+		System.out.println(String.format("Wrote %d %s %s chunks to %s in %.1fs", size * size,
+					terrain.toString().toLowerCase(), format.toString().toLowerCase(), dir.getPath(),
+					(System.nanoTime() - start) / 1000000000d));
+	}
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.util.HashMap;
+
+import static com.apocalyptech.minecraft.xray.MinecraftConstants.*;
+
+/**
+ * Everything the mesher needs to know about a single block ID, computed once
+ * up-front rather than for every block in every pass.  Built by
+ * BlockRenderTable.
+ */
+public class BlockRenderDescriptor
+{
+	// The block type we were built from
+	public final BlockType block;
+
+	// Basic properties
+	public final boolean solid;
+	public final boolean water;
+	public final boolean glass;
+	public final int texSheet;
+	public final int baseTexture;
+	public final int dataMask;
+
+	// Which render passes we can be drawn in, indexed by Chunk.RENDER_PASS ordinal.
+	// Note that water still needs to be checked against the current toggle.
+	public final boolean[] inPass;
+
+	// Main texture to use for each (masked) data value, and whether that data
+	// value was actually known to the block definition.
+	public final int[] texByData;
+	public final boolean[] dataKnown;
+
+	// For blocks drawn as simple cubes, the texture to use for each face, indexed
+	// by (unmasked) data value and then Chunk.FACING ordinal.  Does not include
+	// any explored-highlighting offset.
+	public final int[][] faceTextures;
+
+	// How we're drawn, and whether that's just a simple cube
+	public final BlockRenderer renderer;
+	public final boolean faceRenderer;
+
+	// Which of the XRay.RenderToggles.MESH_* toggles affect how we're drawn, and
+	// the descriptor to use instead when that toggle is on (if we're drawn with
+	// different textures, rather than just different geometry).
+	public int toggleAffect;
+	public BlockRenderDescriptor toggledOn;
+
+	public BlockRenderDescriptor(BlockType block, BlockRenderer renderer, boolean faceRenderer)
+	{
+		this(block, renderer, faceRenderer, block.tex_idx, block.texture_data_map, block.texture_dir_map);
+	}
+
+	/**
+	 * Builds a descriptor using the given textures, rather than the ones that
+	 * the BlockType currently has set.
+	 */
+	public BlockRenderDescriptor(BlockType block, BlockRenderer renderer, boolean faceRenderer,
+			int baseTexture, HashMap<Byte, Integer> dataMap, HashMap<BlockType.DIRECTION_REL, Integer> dirMap)
+	{
+		this.block = block;
+		this.renderer = renderer;
+		this.faceRenderer = faceRenderer;
+		this.solid = block.isSolid();
+		this.water = (block.type == BLOCK_TYPE.WATER);
+		this.glass = (block.type == BLOCK_TYPE.GLASS || block.type == BLOCK_TYPE.SOLID_PANE);
+		this.texSheet = block.getTexSheet();
+		this.baseTexture = baseTexture;
+		this.toggleAffect = 0;
+		this.toggledOn = null;
+		this.dataMask = block.tex_data_mask & 0xF;
+
+		this.inPass = new boolean[Chunk.RENDER_PASS.values().length];
+		this.inPass[Chunk.RENDER_PASS.SOLIDS.ordinal()] = (this.solid && !this.water && !this.glass);
+		this.inPass[Chunk.RENDER_PASS.NONSTANDARD.ordinal()] = (!this.solid && !this.glass);
+		this.inPass[Chunk.RENDER_PASS.GLASS.ordinal()] = this.glass;
+		this.inPass[Chunk.RENDER_PASS.SELECTED.ordinal()] = !this.water;
+
+		this.texByData = new int[16];
+		this.dataKnown = new boolean[16];
+		for (int i = 0; i < 16; i++)
+		{
+			this.texByData[i] = baseTexture;
+			if (dataMap == null)
+			{
+				this.dataKnown[i] = true;
+			}
+			else if (dataMap.containsKey((byte)i))
+			{
+				this.texByData[i] = dataMap.get((byte)i);
+				this.dataKnown[i] = true;
+			}
+		}
+
+		this.faceTextures = new int[16][];
+		for (int i = 0; i < 16; i++)
+		{
+			this.faceTextures[i] = computeFaceTextures(block, dirMap, (byte)i, this.texByData[i & this.dataMask]);
+		}
+	}
+
+	/**
+	 * Returns the descriptor to use given the specified state of our
+	 * mesh-affecting toggles.
+	 */
+	public BlockRenderDescriptor forToggles(int toggles)
+	{
+		if (this.toggledOn != null && (toggles & this.toggleAffect) != 0)
+		{
+			return this.toggledOn;
+		}
+		return this;
+	}
+
+	/**
+	 * Computes the per-face textures for the given data value of a block which is
+	 * drawn as a simple cube.
+	 */
+	private static int[] computeFaceTextures(BlockType block, HashMap<BlockType.DIRECTION_REL, Integer> dirMap, byte data, int textureId)
+	{
+		int top = Chunk.FACING.TOP.ordinal();
+		int bottom = Chunk.FACING.BOTTOM.ordinal();
+		int north = Chunk.FACING.NORTH.ordinal();
+		int south = Chunk.FACING.SOUTH.ordinal();
+		int west = Chunk.FACING.WEST.ordinal();
+		int east = Chunk.FACING.EAST.ordinal();
+		int[] faces = new int[6];
+		for (int i = 0; i < 6; i++)
+		{
+			faces[i] = textureId;
+		}
+
+		// Huge Mushrooms are special-case since keeping the data in YAML seemed
+		// like far too much work at the time. Keeping them there does technically
+		// make more sense, so we should do that eventually.
+		// TODO: That ^
+		if (block.type == BLOCK_TYPE.HUGE_MUSHROOM)
+		{
+			int pores = block.texture_extra_map.get("pores");
+			int stem = block.texture_extra_map.get("stem");
+			switch (data)
+			{
+				case 1:
+					faces[east] = faces[south] = faces[bottom] = pores;
+					break;
+				case 2:
+					faces[west] = faces[east] = faces[south] = faces[bottom] = pores;
+					break;
+				case 3:
+					faces[west] = faces[south] = faces[bottom] = pores;
+					break;
+				case 4:
+					faces[east] = faces[south] = faces[north] = faces[bottom] = pores;
+					break;
+				case 5:
+					faces[west] = faces[east] = faces[south] = faces[north] = faces[bottom] = pores;
+					break;
+				case 6:
+					faces[west] = faces[south] = faces[north] = faces[bottom] = pores;
+					break;
+				case 7:
+					faces[east] = faces[north] = faces[bottom] = pores;
+					break;
+				case 8:
+					faces[west] = faces[east] = faces[north] = faces[bottom] = pores;
+					break;
+				case 9:
+					faces[west] = faces[north] = faces[bottom] = pores;
+					break;
+				case 10:
+					faces[west] = faces[east] = faces[south] = faces[north] = stem;
+					faces[top] = faces[bottom] = pores;
+					break;
+				default:
+					for (int i = 0; i < 6; i++)
+					{
+						faces[i] = pores;
+					}
+					break;
+			}
+		}
+
+		// Now assign the textures for each face, if we're supposed to
+		if (dirMap != null)
+		{
+			BlockType.DIRECTION_ABS dir;
+			if (block.texture_dir_data_map != null && block.texture_dir_data_map.containsKey(data))
+			{
+				dir = block.texture_dir_data_map.get(data);
+			}
+			else
+			{
+				dir = BlockType.DIRECTION_ABS.NORTH;
+			}
+
+			int forward = -1;
+			int backward = -1;
+			switch (dir)
+			{
+				case NORTH:
+					forward = north;
+					backward = south;
+					break;
+				case SOUTH:
+					forward = south;
+					backward = north;
+					break;
+				case WEST:
+					forward = west;
+					backward = east;
+					break;
+				case EAST:
+					forward = east;
+					backward = west;
+					break;
+			}
+			if (dirMap.containsKey(BlockType.DIRECTION_REL.FORWARD))
+			{
+				faces[forward] = dirMap.get(BlockType.DIRECTION_REL.FORWARD);
+			}
+			if (dirMap.containsKey(BlockType.DIRECTION_REL.BACKWARD))
+			{
+				faces[backward] = dirMap.get(BlockType.DIRECTION_REL.BACKWARD);
+			}
+			if (dirMap.containsKey(BlockType.DIRECTION_REL.SIDES))
+			{
+				int sides = dirMap.get(BlockType.DIRECTION_REL.SIDES);
+				if (forward == north || forward == south)
+				{
+					faces[west] = faces[east] = sides;
+				}
+				else
+				{
+					faces[north] = faces[south] = sides;
+				}
+			}
+
+			// Top/Bottom doesn't depend on orientation, at least for anything currently in Minecraft.
+			if (dirMap.containsKey(BlockType.DIRECTION_REL.TOP))
+			{
+				faces[top] = dirMap.get(BlockType.DIRECTION_REL.TOP);
+			}
+			if (dirMap.containsKey(BlockType.DIRECTION_REL.BOTTOM))
+			{
+				faces[bottom] = dirMap.get(BlockType.DIRECTION_REL.BOTTOM);
+			}
+		}
+
+		return faces;
+	}
+}
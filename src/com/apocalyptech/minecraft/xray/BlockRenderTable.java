@@ -0,0 +1,431 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.util.HashMap;
+
+import static com.apocalyptech.minecraft.xray.MinecraftConstants.*;
+
+/**
+ * Table of precomputed BlockRenderDescriptors, one per block ID, so that the
+ * mesher's inner loop only has to do a single array lookup to find out
+ * everything it needs to know about a block.
+ *
+ * This has to be built after our textures have been loaded (since that's
+ * what finalizes the texture indexes on each BlockType).  Blocks whose
+ * textures depend on a render toggle (grass and silverfish) get a descriptor
+ * for each state, independent of what the BlockType itself currently has set.
+ */
+public class BlockRenderTable
+{
+	// Our descriptors, indexed by block ID.  IDs which we don't know about
+	// point to the descriptor for BLOCK_UNKNOWN.
+	public static BlockRenderDescriptor[] descriptors = new BlockRenderDescriptor[0];
+
+	// The renderer for simple cubes, which is shared by all block types which use it
+	private static final BlockRenderer FACE_RENDERER = new BlockRenderer() {
+		public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+				int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+		{
+			chunk.renderBlockFace(desc.faceTextures[data & 0xF][facing.ordinal()] + tex_offset,
+					chunk.x*16 + x, y, chunk.z*16 + z, facing);
+		}
+	};
+
+	/**
+	 * Builds our full table from blockArray.
+	 */
+	public static void build()
+	{
+		BlockRenderDescriptor[] newDescriptors = new BlockRenderDescriptor[blockArray.length];
+		BlockRenderDescriptor unknown = createDescriptor(BLOCK_UNKNOWN);
+		for (int i = 0; i < blockArray.length; i++)
+		{
+			if (blockArray[i] == null)
+			{
+				newDescriptors[i] = unknown;
+			}
+			else
+			{
+				newDescriptors[i] = createDescriptor(blockArray[i]);
+			}
+		}
+
+		// Some blocks are drawn differently depending on our render toggles
+		for (BlockRenderDescriptor desc : newDescriptors)
+		{
+			if (desc.water)
+			{
+				desc.toggleAffect = XRay.RenderToggles.MESH_WATER;
+			}
+			else if (desc.block.type == BLOCK_TYPE.FENCE)
+			{
+				desc.toggleAffect = XRay.RenderToggles.MESH_FENCES;
+			}
+		}
+		BlockRenderDescriptor grass = createDescriptor(BLOCK_GRASS,
+				BLOCK_GRASS.tex_idx, BLOCK_GRASS.texture_data_map, null);
+		grass.toggleAffect = XRay.RenderToggles.MESH_GRASS;
+		grass.toggledOn = createDescriptor(BLOCK_GRASS,
+				BLOCK_GRASS.tex_idx, BLOCK_GRASS.texture_data_map, grassDirectionMap);
+		newDescriptors[BLOCK_GRASS.id] = grass;
+
+		BlockRenderDescriptor silverfish = createDescriptor(BLOCK_SILVERFISH,
+				MinecraftEnvironment.silverfishDataPlain.get((byte)0),
+				MinecraftEnvironment.silverfishDataPlain, BLOCK_SILVERFISH.texture_dir_map);
+		silverfish.toggleAffect = XRay.RenderToggles.MESH_SILVERFISH;
+		silverfish.toggledOn = createDescriptor(BLOCK_SILVERFISH,
+				MinecraftEnvironment.silverfishDataHighlighted.get((byte)0),
+				MinecraftEnvironment.silverfishDataHighlighted, BLOCK_SILVERFISH.texture_dir_map);
+		newDescriptors[BLOCK_SILVERFISH.id] = silverfish;
+
+		descriptors = newDescriptors;
+	}
+
+	/**
+	 * Creates a descriptor for the given block type
+	 */
+	private static BlockRenderDescriptor createDescriptor(BlockType block)
+	{
+		return createDescriptor(block, block.tex_idx, block.texture_data_map, block.texture_dir_map);
+	}
+
+	/**
+	 * Creates a descriptor for the given block type, using the specified textures
+	 */
+	private static BlockRenderDescriptor createDescriptor(BlockType block, int baseTexture,
+			HashMap<Byte, Integer> dataMap, HashMap<BlockType.DIRECTION_REL, Integer> dirMap)
+	{
+		BlockRenderer renderer = getRenderer(block.type);
+		if (renderer == null)
+		{
+			return new BlockRenderDescriptor(block, FACE_RENDERER, true, baseTexture, dataMap, dirMap);
+		}
+		else
+		{
+			return new BlockRenderDescriptor(block, renderer, false, baseTexture, dataMap, dirMap);
+		}
+	}
+
+	/**
+	 * Returns the renderer to use for the given block type, or null if it's
+	 * drawn as a simple cube.
+	 */
+	private static BlockRenderer getRenderer(BLOCK_TYPE type)
+	{
+		switch (type)
+		{
+			case TORCH:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderTorch(textureId, x, y, z);
+					}
+				};
+			case DECORATION_CROSS:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderCrossDecoration(textureId, x, y, z);
+					}
+				};
+			case DECORATION_GRID:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderGridDecoration(textureId, x, y, z);
+					}
+				};
+			case LADDER:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderLadder(textureId, x, y, z);
+					}
+				};
+			case FLOOR:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderFloor(textureId, x, y, z);
+					}
+				};
+			case MINECART_TRACKS:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderMinecartTracks(textureId, x, y, z, desc.block, tex_offset);
+					}
+				};
+			case SIMPLE_RAIL:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderSimpleRail(textureId, x, y, z, desc.block, tex_offset);
+					}
+				};
+			case PRESSURE_PLATE:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderPlate(textureId, x, y, z);
+					}
+				};
+			case DOOR:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderDoor(textureId, x, y, z, desc.block, tex_offset);
+					}
+				};
+			case STAIRS:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderStairs(textureId, x, y, z, blockOffset);
+					}
+				};
+			case SIGNPOST:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderSignpost(textureId, x, y, z);
+					}
+				};
+			case WALLSIGN:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderWallSign(textureId, x, y, z);
+					}
+				};
+			case FENCE:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderFence(textureId, x, y, z, blockOffset, t);
+					}
+				};
+			case FENCE_GATE:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderFenceGate(textureId, x, y, z, blockOffset);
+					}
+				};
+			case LEVER:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderLever(textureId, x, y, z, desc.block, tex_offset);
+					}
+				};
+			case BUTTON:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderButton(textureId, x, y, z);
+					}
+				};
+			case PORTAL:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderPortal(textureId, x, y, z, blockOffset, t);
+					}
+				};
+			case SNOW:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderSnow(textureId, x, y, z, blockOffset, t);
+					}
+				};
+			case BED:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderBed(textureId, x, y, z, desc.block, tex_offset);
+					}
+				};
+			case TRAPDOOR:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderTrapdoor(textureId, x, y, z);
+					}
+				};
+			case PISTON_BODY:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderPistonBody(textureId, x, y, z, desc.block, tex_offset);
+					}
+				};
+			case PISTON_HEAD:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderPistonHead(textureId, x, y, z, desc.block, tex_offset, false, false);
+					}
+				};
+			case CAKE:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderCake(textureId, x, y, z, desc.block, tex_offset);
+					}
+				};
+			case VINE:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderVine(textureId, x, y, z, blockOffset);
+					}
+				};
+			case SOLID_PANE:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderSolidPane(textureId, x, y, z, blockOffset, t);
+					}
+				};
+			case CHEST:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderChest(textureId, x, y, z, blockOffset, desc.block, tex_offset);
+					}
+				};
+			case STEM:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderStem(textureId, x, y, z, blockOffset, desc.block, tex_offset);
+					}
+				};
+			case HALFHEIGHT:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderHalfHeight(textureId, x, y, z, blockOffset);
+					}
+				};
+			case CAULDRON:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderCauldron(textureId, x, y, z, blockOffset, desc.block, tex_offset);
+					}
+				};
+			case ENCHANTMENT_TABLE:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderEnchantmentTable(textureId, x, y, z, blockOffset, desc.block, tex_offset);
+					}
+				};
+			case BREWING_STAND:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderBrewingStand(textureId, x, y, z, desc.block, tex_offset);
+					}
+				};
+			case SEMISOLID:
+			case WATER:
+			case GLASS:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderSemisolid(textureId, x, y, z, blockOffset, t);
+					}
+				};
+			case END_PORTAL:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderEndPortal(textureId, x, y, z);
+					}
+				};
+			case END_PORTAL_FRAME:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderEndPortalFrame(textureId, x, y, z, blockOffset, desc.block, tex_offset);
+					}
+				};
+			case DRAGON_EGG:
+				return new BlockRenderer() {
+					public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+							int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing)
+					{
+						chunk.renderDragonEgg(textureId, x, y, z);
+					}
+				};
+
+			case NORMAL:
+			case HUGE_MUSHROOM:
+			default:
+				return null;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+/**
+ * Strategy for drawing a single block of a given type into the chunk's
+ * current display list.  One of these is attached to each
+ * BlockRenderDescriptor, so that the main loop in Chunk.renderWorld() doesn't
+ * have to switch on the block type for every block.
+ */
+public interface BlockRenderer
+{
+	/**
+	 * Renders a single block.
+	 *
+	 * @param chunk The chunk we're rendering
+	 * @param desc The descriptor of the block being rendered
+	 * @param textureId Texture to use, already resolved for data value and explored-ness
+	 * @param tex_offset Texture offset to use for any extra textures (ie: for explored highlighting)
+	 * @param x X coordinate within the chunk
+	 * @param y Y coordinate
+	 * @param z Z coordinate within the chunk
+	 * @param blockOffset Offset of the block into the chunk's current snapshot
+	 * @param t The block ID
+	 * @param data The block's data value
+	 * @param facing Which face we're currently rendering, for solid blocks
+	 */
+	public void render(Chunk chunk, BlockRenderDescriptor desc, int textureId, int tex_offset,
+			int x, int y, int z, int blockOffset, short t, byte data, Chunk.FACING facing);
+}
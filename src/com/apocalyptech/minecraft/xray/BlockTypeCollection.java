@@ -34,6 +34,7 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.concurrent.Future;
 
 import java.awt.Graphics2D;
 import java.awt.AlphaComposite;
@@ -76,6 +77,9 @@ import org.yaml.snakeyaml.constructor.Constructor;
  */
 public class BlockTypeCollection
 {
+	// How we identify textures to TextureAtlasPacker
+	private static final String SHEET_KEY_PREFIX = "sheet:";
+	private static final String FILENAME_KEY_PREFIX = "file:";
 
 	private String name;
 	private String texpath;
@@ -601,176 +605,193 @@ public class BlockTypeCollection
 	}
 
 	/**
-	 * Imports any extra-sheet textures into our main texture
+	 * Imports any textures from extra texture sheets, and any filename-based
+	 * textures, into our main textures.  TextureAtlasPacker decides which
+	 * sheet each block's textures go on; we then copy everything into place
+	 * and convert each block's texture indexes to match.
 	 */
-	public void importCustomTextureSheets()
+	public void importExtraTextures()
 		throws BlockTypeLoadException
 	{
-		int new_tex;
-		if (this.getCustomTextureFileCount() > 0)
+		// Figure out what we need.  Textures from extra sheets are keyed by
+		// sheet and index, and filename textures by filename.
+		TextureAtlasPacker packer = new TextureAtlasPacker(this.unusedTextureCount(), 256);
+		for (String sheet : this.getCustomTextureFileList())
 		{
-			BufferedImage bi = this.textures.get(this.cur_texture_page);
-			Graphics2D g2d = bi.createGraphics();
-			for (String sheet : this.getCustomTextureFileList())
+			for (BlockType block : this.getCustomTextureFileBlocks(sheet))
 			{
-				ExceptionDialog.setExtraStatus1("Importing textures from " + sheet);
-				HashMap<Integer, Integer> seenTextures = new HashMap<Integer, Integer>();
-				BufferedImage bi2 = MinecraftEnvironment.buildImageFromInput(MinecraftEnvironment.getMinecraftTexturepackData(sheet));
-				int bi2_width = bi2.getWidth()/16;
-				for (BlockType block : this.getCustomTextureFileBlocks(sheet))
+				ArrayList<String> keys = new ArrayList<String>();
+				for (int tex : block.getUsedTextures())
 				{
-					ExceptionDialog.setExtraStatus2("Processing block " + block.id + ": " + block.idStr);
-					ArrayList<Integer> blockTex = new ArrayList<Integer>();
-					for (Integer tex : block.getUsedTextures())
-					{
-						if (!seenTextures.containsKey(tex))
-						{
-							seenTextures.put(tex, null);
-							blockTex.add(tex);
-						}
-					}
-					if (blockTex.size() > this.unusedTextureCount())
-					{
-						// This check is to make sure that all textures used by a particular block are
-						// contained within the same texture sheet.
-						// TODO: Ideally what we should do multiple passes and fill up the pages as much
-						// as absolutely possible - using this method it's possible we'll be leaving
-						// empty spots.
-						bi = this.addTextureMap();
-						g2d = bi.createGraphics();
-
-						// Technically speaking this may cause the same texture to exist on both
-						// sheets, if more than one block shares a texture
-						blockTex = block.getUsedTextures();
-						seenTextures.clear();
-						for (int tex : blockTex)
-						{
-							seenTextures.put(tex, null);
-						}
-					}
-
-					// Whatever's left in blockTex at this point should be copied+converted into
-					// our texture
-					for (int tex : blockTex)
-					{
-						seenTextures.put(tex, this.reserveTexture(false));
-						if (seenTextures.get(tex) == -1)
-						{
-							throw new BlockTypeLoadException("Could not allocate additional textures");
-						}
-						int[] idx_coords = BlockType.getTexCoordsArr(seenTextures.get(tex));
-						int[] old_coords = BlockType.getTexCoordsArr(tex);
-
-						// Do the actual copying
-						g2d.setComposite(AlphaComposite.Src);
-						if (this.square_width < bi2_width)
-						{
-							g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-							g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-						}
-						else
-						{
-							g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
-							g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);			
-						}
-						g2d.drawImage(bi2,
-								idx_coords[0]*this.square_width, idx_coords[1]*this.square_width,
-								(idx_coords[0]+1)*this.square_width, (idx_coords[1]+1)*this.square_width,
-								old_coords[0]*bi2_width, old_coords[1]*bi2_width, (old_coords[0]+1)*bi2_width, (old_coords[1]+1)*bi2_width,
-								null);
-					}
-
-					// And now, lest we forget, convert all of the texture indexes in the
-					// BlockType object
-					block.convertTexIdx(seenTextures);
-					block.setTexSheet(this.cur_texture_page);
-
+					keys.add(getSheetKey(sheet, tex));
 				}
+				packer.add(block, sheet, keys);
 			}
 		}
-	}
+		for (BlockType block : this.getBlocksFull())
+		{
+			if (block.getTexfile() == null && block.getTextureFilenames().size() > 0)
+			{
+				ArrayList<String> keys = new ArrayList<String>();
+				for (String tex : block.getTextureFilenames())
+				{
+					keys.add(getFilenameKey(tex));
+				}
+				packer.add(block, null, keys);
+			}
+		}
+		if (packer.isEmpty())
+		{
+			return;
+		}
 
-	/**
-	 * Loads any filename-based textures into our main texture
-	 *
-	 * TODO: It would be nice to have this process all blocks from the same "group"
-	 *       at the same time, rather than potentially interleaved.  Probably not
-	 *       that big of a deal, though.
-	 */
-	public void loadFilenameTextures()
-		throws BlockTypeLoadException
-	{
-		HashMap<String, Integer> mapping = new HashMap<String, Integer>();
-		ArrayList<String> texList;
+		// Decoding the images is the slow part, and doesn't depend on anything
+		// else, so do them all at once, up front.
+		HashMap<String, Future<BufferedImage>> sheetImages = new HashMap<String, Future<BufferedImage>>();
+		for (String sheet : this.getCustomTextureFileList())
+		{
+			sheetImages.put(sheet, MinecraftEnvironment.submitTexturepackImage(sheet));
+		}
+		HashMap<String, Future<BufferedImage>> fileImages = new HashMap<String, Future<BufferedImage>>();
+		for (String tex : this.getFilenameTextureList())
+		{
+			fileImages.put(tex, MinecraftEnvironment.submitTexturepackImage(tex));
+		}
 
-		BufferedImage bi = this.textures.get(this.cur_texture_page);
-		Graphics2D g2d = bi.createGraphics();
+		// Now work out where everything goes
+		int[] greedy = packer.simulateGreedy();
+		packer.pack();
+		XRay.logger.info("Extra textures: previously would have needed " + greedy[0] + " sheet(s) and " + greedy[1] +
+				" slots; packed into " + packer.getPageCount() + " sheet(s) and " + packer.getSlotCount() + " slots");
 
-		for (BlockType block : this.getBlocksFull())
+		// Copy everything into place
+		int firstPage = this.cur_texture_page;
+		ArrayList<HashMap<String, Integer>> pageSlots = new ArrayList<HashMap<String, Integer>>();
+		for (int page = 0; page < packer.getPageCount(); page++)
 		{
-			ExceptionDialog.setExtraStatus1("Importing textures for block " + block.id + ": " + block.idStr);
-			texList = block.getTextureFilenames();
-			if (texList.size() > 0)
+			BufferedImage bi;
+			if (page == 0)
+			{
+				bi = this.textures.get(firstPage);
+			}
+			else
+			{
+				bi = this.addTextureMap();
+			}
+			Graphics2D g2d = bi.createGraphics();
+			g2d.setComposite(AlphaComposite.Src);
+			HashMap<String, Integer> slots = new HashMap<String, Integer>();
+			for (String key : packer.getPageKeys(page))
 			{
-				ArrayList<String> blockTex = new ArrayList<String>();
-				for (String tex : texList)
+				int slot = this.reserveTexture(false);
+				if (slot == -1)
 				{
-					if (!mapping.containsKey(tex))
-					{
-						mapping.put(tex, null);
-						blockTex.add(tex);
-					}
+					throw new BlockTypeLoadException("Could not allocate additional textures");
 				}
-				if (blockTex.size() > this.unusedTextureCount())
+				slots.put(key, slot);
+				int[] idx_coords = BlockType.getTexCoordsArr(slot);
+
+				BufferedImage bi2;
+				int[] old_coords;
+				int src_width;
+				int src_height;
+				if (key.startsWith(FILENAME_KEY_PREFIX))
 				{
-					// See notes above in importCustomTextureSheets, re: some downsides to this
-					bi = this.addTextureMap();
-					g2d = bi.createGraphics();
-
-					// Again, see notes above.
-					blockTex = block.getTextureFilenames();
-					mapping.clear();
-					for (String tex : blockTex)
+					String tex = key.substring(FILENAME_KEY_PREFIX.length());
+					ExceptionDialog.setExtraStatus1("Loading texture " + tex);
+					bi2 = StartupTasks.await(fileImages.get(tex));
+					if (bi2 == null)
 					{
-						mapping.put(tex, null);
+						throw new BlockTypeLoadException("File " + tex + " is not found");
 					}
+					old_coords = new int[] { 0, 0 };
+					src_width = bi2.getWidth();
+					src_height = bi2.getHeight();
 				}
-
-				// Anything left in blockTex at this point gets copied+converted
-				for (String tex : blockTex)
+				else
 				{
-					ExceptionDialog.setExtraStatus2("Loading texture " + tex);
-					mapping.put(tex, this.reserveTexture(false));
-					if (mapping.get(tex) == -1)
-					{
-						throw new BlockTypeLoadException("Could not allocate additional textures");
-					}
-					int[] idx_coords = BlockType.getTexCoordsArr(mapping.get(tex));
-
-					BufferedImage bi2 = MinecraftEnvironment.buildImageFromInput(MinecraftEnvironment.getMinecraftTexturepackData(tex));
+					int split = key.lastIndexOf(':');
+					String sheet = key.substring(SHEET_KEY_PREFIX.length(), split);
+					ExceptionDialog.setExtraStatus1("Importing textures from " + sheet);
+					bi2 = StartupTasks.await(sheetImages.get(sheet));
 					if (bi2 == null)
 					{
-						throw new BlockTypeLoadException("File " + tex + " is not found");
-					}
-					int new_width = bi2.getWidth();
-					g2d.setComposite(AlphaComposite.Src);
-					if (this.square_width < new_width)
-					{
-						g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-						g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-					}
-					else
-					{
-						g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
-						g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);			
+						throw new BlockTypeLoadException("File " + sheet + " is not found");
 					}
-					g2d.drawImage(bi2, idx_coords[0]*square_width, idx_coords[1]*square_width, square_width, square_width, null);
+					old_coords = BlockType.getTexCoordsArr(Integer.parseInt(key.substring(split + 1)));
+					src_width = bi2.getWidth()/16;
+					src_height = src_width;
 				}
 
-				// Finally, update with our mapping
+				// Do the actual copying
+				if (this.square_width < src_width)
+				{
+					g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+					g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+				}
+				else
+				{
+					g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+					g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+				}
+				g2d.drawImage(bi2,
+						idx_coords[0]*this.square_width, idx_coords[1]*this.square_width,
+						(idx_coords[0]+1)*this.square_width, (idx_coords[1]+1)*this.square_width,
+						old_coords[0]*src_width, old_coords[1]*src_height, (old_coords[0]+1)*src_width, (old_coords[1]+1)*src_height,
+						null);
+			}
+			pageSlots.add(slots);
+		}
+		ExceptionDialog.clearExtraStatus1();
+
+		// And now, lest we forget, convert all of the texture indexes in the
+		// BlockType objects
+		for (String sheet : this.getCustomTextureFileList())
+		{
+			for (BlockType block : this.getCustomTextureFileBlocks(sheet))
+			{
+				ExceptionDialog.setExtraStatus2("Processing block " + block.id + ": " + block.idStr);
+				int page = packer.getPage(block);
+				HashMap<Integer, Integer> mapping = new HashMap<Integer, Integer>();
+				for (int tex : block.getUsedTextures())
+				{
+					mapping.put(tex, pageSlots.get(page).get(getSheetKey(sheet, tex)));
+				}
+				block.convertTexIdx(mapping);
+				block.setTexSheet(firstPage + page);
+			}
+		}
+		for (BlockType block : this.getBlocksFull())
+		{
+			if (block.getTexfile() == null && block.getTextureFilenames().size() > 0)
+			{
+				ExceptionDialog.setExtraStatus2("Processing block " + block.id + ": " + block.idStr);
+				int page = packer.getPage(block);
+				HashMap<String, Integer> mapping = new HashMap<String, Integer>();
+				for (String tex : block.getTextureFilenames())
+				{
+					mapping.put(tex, pageSlots.get(page).get(getFilenameKey(tex)));
+				}
 				block.setTextureFilenameMapping(mapping);
-				block.setTexSheet(this.cur_texture_page);
+				block.setTexSheet(firstPage + page);
 			}
 		}
+		ExceptionDialog.clearExtraStatus2();
+	}
+
+	/**
+	 * Returns the key we give TextureAtlasPacker for a texture from an extra sheet
+	 */
+	private static String getSheetKey(String sheet, int tex)
+	{
+		return SHEET_KEY_PREFIX + sheet + ":" + tex;
+	}
+
+	/**
+	 * Returns the key we give TextureAtlasPacker for a filename texture
+	 */
+	private static String getFilenameKey(String tex)
+	{
+		return FILENAME_KEY_PREFIX + tex;
 	}
 }
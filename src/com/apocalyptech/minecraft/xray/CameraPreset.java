@@ -31,7 +31,7 @@ package com.apocalyptech.minecraft.xray;
  * that we can switch between users when loading multiplayer maps, though it's
  * also intended to hold the singleplayer location, if available.
  */
-class CameraPreset
+public class CameraPreset
 {
 	public int idx;
 	public String name;
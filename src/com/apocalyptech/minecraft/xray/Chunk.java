@@ -28,8 +28,9 @@ package com.apocalyptech.minecraft.xray;
 
 import java.lang.Math;
 import java.util.Map;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Random;
-import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.regex.PatternSyntaxException;
 
@@ -62,15 +63,9 @@ import static com.apocalyptech.minecraft.xray.MinecraftConstants.*;
  * up with the current implementation of renderVertical and renderHorizontal - I suspect
  * that much of the rendering code would be improved by moving to those if possible.
  */
-public abstract class Chunk {
-	private HashMap<Integer, Integer> displayListNums;
-	private HashMap<Integer, Integer> nonstandardListNums;
-	private HashMap<Integer, Integer> glassListNums;
-	private HashMap<Integer, Integer> selectedDisplayListNums;
+public abstract class Chunk implements ColumnSummary.BlockSource {
 	public int x, z;
 	public int x_chunkOffset, z_chunkOffset;
-	public HashMap<Integer, Boolean> isDirty;
-	public HashMap<Integer, Boolean> isSelectedDirty;
 	public boolean isOnMinimap;
 	private CompoundTag chunkData;
 	private ArrayList<PaintingEntity> paintings;
@@ -80,6 +75,62 @@ public abstract class Chunk {
 	// These are vars used while looping over our set of blocks
 	protected int lx, ly, lz;
 	protected int lOffset;
+	protected int lSection;
+
+	// The snapshot we're currently rendering from, while inside renderWorld()
+	protected ChunkSnapshot snapshot;
+
+	// The toggle state (XRay.RenderToggles.MESH_*) that the sub-mesh currently
+	// being built is for, and the set of toggle combinations which affected any
+	// of the blocks we looked at while building it (one bit per combination).
+	protected int meshToggles;
+	private long affectMasksSeen;
+
+	// Where our render methods send their geometry, and whether we're building
+	// for highlighted ores.  These are only ever touched by whichever
+	// MeshScheduler worker is currently meshing this chunk.
+	protected MeshBuffer mesh;
+	private boolean meshHighlighting;
+
+	// The render configuration that our geometry is built against.  This is
+	// whichever was current when we were loaded, and after that it's taken from
+	// each MeshJob as it gets built.
+	protected RenderConfig meshConfig;
+
+	// The render configuration our lists were last requested against, on the
+	// GL thread.  If a newer one changes our geometry, we mark ourselves dirty.
+	private RenderConfig listConfig;
+
+	// Display lists for our paintings, border, and slime box.  These get built
+	// along with the first mesh job for the chunk.
+	private int paintingList = -1;
+	private int borderList = -1;
+	private int slimeBoxList = -1;
+	private boolean extrasRequested = false;
+
+	// How many mesh jobs in a row have failed for us, on the GL thread.  A
+	// failed job's work is requeued, up to MAX_MESH_FAILURES times.
+	private static final int MAX_MESH_FAILURES = 3;
+	private int meshFailures = 0;
+
+	// What we draw onto the minimap, worked out once at load
+	private ColumnSummary minimapSummary;
+
+	// What we draw onto the cave map, and the band of Y levels it's for
+	private int[] sliceColors;
+	private int sliceBottom = Integer.MIN_VALUE;
+	private int sliceTop = Integer.MIN_VALUE;
+
+	// The color that air is brightened towards on the cave map
+	private static final int CAVE_COLOR = 0xFFFFD966;
+
+	// Bumped every time our lists are freed, so that any MeshJob which was
+	// queued beforehand knows it's out of date.
+	private int listGeneration = 0;
+
+	// Our per-section rendering state.  Indexed by section number (y/16); will
+	// be null for any section which is entirely empty.
+	protected ChunkSection[] sections;
 
 	// Maximum height of this chunk (will vary per Chunk for Anvil maps)
 	protected int maxHeight;
@@ -93,7 +144,7 @@ public abstract class Chunk {
 	protected MinecraftLevel level;
 	public boolean willSpawnSlimes;
 
-	public HashMap<Integer, Boolean> usedTextureSheets;
+	public BitSet usedTextureSheets;
 
 	private final float fence_postsize = .125f;
 	private final float fence_postsize_h = fence_postsize/2f;
@@ -101,14 +152,25 @@ public abstract class Chunk {
 	private final float fence_top_slat_offset = .375f;
 	private final float fence_slat_start_offset = -.125f;
 
-	private static enum RENDER_PASS {
+	/**
+	 * Sheet number which our sub-meshes are stored under when all our texture
+	 * sheets have been combined into a SheetAtlas.
+	 */
+	public static final int ATLAS_SHEET = Integer.MAX_VALUE;
+	private static final int[] ATLAS_SHEETS = new int[] { ATLAS_SHEET };
+
+	// Which faces renderWorld() loops over, depending on the pass
+	private static final FACING[] ALL_FACING_PASSES = new FACING[] { FACING.TOP, FACING.BOTTOM, FACING.NORTH, FACING.SOUTH, FACING.WEST, FACING.EAST };
+	private static final FACING[] TOP_FACING_PASS = new FACING[] { FACING.TOP };
+
+	protected static enum RENDER_PASS {
 		SOLIDS,
 		NONSTANDARD,
 		GLASS,
 		SELECTED
 	}
 
-	protected static enum FACING {
+	public static enum FACING {
 		TOP,
 		BOTTOM,
 		NORTH,
@@ -128,6 +190,8 @@ public abstract class Chunk {
 		this.level = level;
 		this.chunkData = (CompoundTag) data;
 		this.isOnMinimap = false;
+		this.meshConfig = RenderConfig.getCurrent();
+		this.listConfig = this.meshConfig;
 
 		//this.levelTag = (CompoundTag) chunkData.value.get(0); // first tag
 		//Thaumcraft's new way store its aura data in region file cause exeption, so we use name now
@@ -173,193 +237,605 @@ public abstract class Chunk {
 	 */
 	protected void finishConstructor()
 	{
-		// Compute which texture sheets are in-use by this chunk
-		// Also we'll be populating our light source object in here
-		// highlight will key off of
-		this.usedTextureSheets = new HashMap<Integer, Boolean>();
-		this.rewindLoop();
-		short t = 0;
-		while (t != -2)
-		{
-			t = this.nextBlock();
-			if(t < 1) {
+		// Compute which texture sheets are in-use by each section of this chunk, and
+		// which block types each section contains.  Also we'll be populating our light
+		// source object in here highlight will key off of
+		this.usedTextureSheets = new BitSet();
+		this.sections = new ChunkSection[(this.ceilingHeight+1)/16];
+		ChunkSection section;
+		int[] faceOpaqueCount = new int[6];
+		boolean[] opaque = new boolean[4096];
+		boolean[] fillVisited = new boolean[4096];
+		int[] fillQueue = new int[4096];
+		short t;
+
+		// Our minimap summary comes from the HeightMap if we can manage it, or
+		// else gets filled in as part of this loop.
+		this.minimapSummary = new ColumnSummary(this.level.world.isDimension(-1));
+		boolean summarizing = !this.minimapSummary.summarizeFromHeightMap(this,
+				this.levelTag.getTagWithName("HeightMap"), this.ceilingHeight);
+		if (summarizing)
+		{
+			this.minimapSummary.beginPass();
+		}
+
+		for (int i = 0; i < this.sections.length; i++)
+		{
+			if (!this.hasSection(i))
+			{
 				continue;
 			}
-			if (exploredBlocks.containsKey(t))
+			section = new ChunkSection(i);
+			for (int f = 0; f < faceOpaqueCount.length; f++)
+			{
+				faceOpaqueCount[f] = 0;
+			}
+			Arrays.fill(opaque, false);
+			this.rewindLoop(i);
+			t = 0;
+			while (t != -2)
+			{
+				t = this.nextBlock();
+				if (summarizing && t != -2)
+				{
+					this.minimapSummary.addBlock(this.lx, this.ly, this.lz, t);
+				}
+				if(t < 1) {
+					if (t == 0)
+					{
+						section.setAir(this.lx, this.ly % 16, this.lz);
+					}
+					continue;
+				}
+				section.nonAirCount++;
+				section.blockIds.set(t);
+				opaque[this.lx + (this.lz * 16) + ((this.ly % 16) * 256)] = !this.checkSolid(t);
+				if (this.meshConfig.blockArray[t] != null && this.meshConfig.blockArray[t].isSolid())
+				{
+					section.opaqueCount++;
+					if (this.lx == 0)
+					{
+						faceOpaqueCount[FACING.WEST.ordinal()]++;
+					}
+					else if (this.lx == 15)
+					{
+						faceOpaqueCount[FACING.EAST.ordinal()]++;
+					}
+					if (this.lz == 0)
+					{
+						faceOpaqueCount[FACING.NORTH.ordinal()]++;
+					}
+					else if (this.lz == 15)
+					{
+						faceOpaqueCount[FACING.SOUTH.ordinal()]++;
+					}
+					if (this.ly % 16 == 0)
+					{
+						faceOpaqueCount[FACING.BOTTOM.ordinal()]++;
+					}
+					else if (this.ly % 16 == 15)
+					{
+						faceOpaqueCount[FACING.TOP.ordinal()]++;
+					}
+				}
+				if (this.lx == 0)
+				{
+					section.edgeBlocks[FACING.WEST.ordinal()] = true;
+				}
+				else if (this.lx == 15)
+				{
+					section.edgeBlocks[FACING.EAST.ordinal()] = true;
+				}
+				if (this.lz == 0)
+				{
+					section.edgeBlocks[FACING.NORTH.ordinal()] = true;
+				}
+				else if (this.lz == 15)
+				{
+					section.edgeBlocks[FACING.SOUTH.ordinal()] = true;
+				}
+				if (this.meshConfig.isExplored(t))
+				{
+					this.level.lightSources.add(this.x_chunkOffset + this.lx, this.ly, this.z_chunkOffset + this.lz);
+				}
+				BlockType block = this.meshConfig.blockArray[t];
+				if (block == null)
+				{
+					block = BLOCK_UNKNOWN;
+				}
+				section.addSheet(block.getTexSheet());
+				this.usedTextureSheets.set(block.getTexSheet());
+			}
+
+			for (int f = 0; f < faceOpaqueCount.length; f++)
 			{
-				this.level.lightSources.add(this.x_chunkOffset + this.lx, this.ly, this.z_chunkOffset + this.lz);
+				section.opaqueFaces[f] = (faceOpaqueCount[f] == 256);
 			}
-			BlockType block = blockArray[t];
-			if (block == null)
+
+			// Sections with nothing in them don't need any rendering state at all.
+			if (section.nonAirCount > 0)
 			{
-				block = BLOCK_UNKNOWN;
+				section.seeThroughConnectivity = SectionVisibility.computeConnectivity(opaque, false, fillQueue, fillVisited);
+				section.opaqueConnectivity = SectionVisibility.computeConnectivity(opaque, true, fillQueue, fillVisited);
+				this.sections[i] = section;
 			}
-			this.usedTextureSheets.put(block.getTexSheet(), true);
 		}
 
-		// And create all our necessary GL Lists (and other structures)
-		displayListNums = new HashMap<Integer, Integer>();
-		nonstandardListNums = new HashMap<Integer, Integer>();
-		glassListNums = new HashMap<Integer, Integer>();
-		selectedDisplayListNums = new HashMap<Integer, Integer>();
-		this.isDirty = new HashMap<Integer, Boolean>();
-		this.isSelectedDirty = new HashMap<Integer, Boolean>();
-		for (int sheet : this.usedTextureSheets.keySet())
+		if (summarizing)
 		{
-			displayListNums.put(sheet, GL11.glGenLists(1));
-			selectedDisplayListNums.put(sheet, GL11.glGenLists(1));
-			glassListNums.put(sheet, GL11.glGenLists(1));
-			nonstandardListNums.put(sheet, GL11.glGenLists(1));
-			this.isDirty.put(sheet, true);
-			this.isSelectedDirty.put(sheet, true);
+			this.minimapSummary.endPass();
 		}
 	}
 
 	/**
-	 * Returns whether or not this chunk contains blocks which use the specified sheet
+	 * Returns whether or not this chunk contains blocks which use the specified sheet.
+	 * Every block uses ATLAS_SHEET when we're drawing out of a SheetAtlas.
 	 */
 	public boolean usesSheet(int sheet)
 	{
-		return this.usedTextureSheets.containsKey(sheet);
+		if (sheet == ATLAS_SHEET)
+		{
+			return !this.usedTextureSheets.isEmpty();
+		}
+		return this.usedTextureSheets.get(sheet);
 	}
 
 	/**
-	 * Marks a our lists as dirty
+	 * Returns the sheets we should be building sub-meshes for in the given
+	 * section: either every sheet it uses, or just ATLAS_SHEET if all our sheets
+	 * have been combined into a SheetAtlas.  This goes by the job's config
+	 * rather than XRay's current state, so that the worker and the upload
+	 * always agree on the layout.
 	 */
-	public void setDirty()
+	private int[] getMeshSheets(RenderConfig config, ChunkSection section)
 	{
-		for (Map.Entry<Integer, Boolean> entry : this.isDirty.entrySet())
+		if (config.atlas != null && !section.usedTextureSheets.isEmpty())
 		{
-			entry.setValue(true);
+			return ATLAS_SHEETS;
 		}
+		return section.getSheets();
 	}
 
 	/**
-	 * Marks a our selected lists as dirty
+	 * Marks all our lists as dirty
 	 */
-	public void setSelectedDirty()
+	public void setDirty()
 	{
-		for (Map.Entry<Integer, Boolean> entry : this.isSelectedDirty.entrySet())
+		for (ChunkSection section : this.sections)
 		{
-			entry.setValue(true);
+			if (section != null)
+			{
+				section.setDirty();
+			}
 		}
 	}
-	
+
 	/**
-	 * Will return an array of values which are suitable for feeding into a
-	 * minimap.
+	 * Marks our lists as dirty, but only for sections which have blocks along
+	 * the given border.  This is what we want when an adjacent chunk gets loaded,
+	 * since only the faces along that border could possibly have changed.
 	 */
-	public abstract short[][] getMinimapValues();
-
-	public CompoundTag getChunkData() {
-		return this.chunkData;
+	public void setBorderDirty(FACING border)
+	{
+		for (ChunkSection section : this.sections)
+		{
+			if (section != null && section.edgeBlocks[border.ordinal()])
+			{
+				section.setDirty();
+			}
+		}
 	}
 
 	/**
-	 * Gets the Block ID of the block immediately to the given facing. This might
-	 * load in the adjacent chunk, if needed.  Will return -1 if that adjacent
-	 * chunk can't be found.
+	 * Marks our lists as dirty, but only for sections which contain one of the
+	 * given block IDs.
 	 */
-	protected abstract short getAdjBlockId(int x, int y, int z, FACING facing, int blockOffset);
+	public void setDirty(BitSet blockIds)
+	{
+		for (ChunkSection section : this.sections)
+		{
+			if (section != null && section.containsAny(blockIds))
+			{
+				section.setDirty();
+			}
+		}
+	}
 
 	/**
-	 * Gets the data value of the block immediately to the west.  This might
-	 * load in the adjacent chunk, if needed.  Will return -1 if that adjacent
-	 * chunk can't be found.
+	 * Marks all our selected lists as dirty
 	 */
-	private byte getAdjWestBlockData(int x, int y, int z)
+	public void setSelectedDirty()
 	{
-		if (x > 0)
+		for (ChunkSection section : this.sections)
 		{
-			return getData(x-1, y, z);
+			if (section != null)
+			{
+				section.setSelectedDirty();
+			}
 		}
-		else
+	}
+
+	/**
+	 * Marks our selected lists as dirty, but only for sections which contain
+	 * one of the given block IDs.
+	 */
+	public void setSelectedDirty(BitSet blockIds)
+	{
+		for (ChunkSection section : this.sections)
 		{
-			Chunk otherChunk = level.getChunk(this.x-1, this.z);
-			if (otherChunk == null)
+			if (section != null && section.containsAny(blockIds))
 			{
-				return -1;
+				section.setSelectedDirty();
 			}
-			else
+		}
+	}
+
+	/**
+	 * Frees all the GL lists that our sections have allocated.  Should be called
+	 * whenever this chunk is being thrown away.
+	 */
+	public void freeLists()
+	{
+		for (ChunkSection section : this.sections)
+		{
+			if (section != null)
 			{
-				return otherChunk.getData(15, y, z);
+				section.freeLists();
 			}
 		}
+		if (this.paintingList != -1)
+		{
+			XRay.renderBackend.glDeleteLists(this.paintingList, 1);
+			this.paintingList = -1;
+		}
+		if (this.borderList != -1)
+		{
+			XRay.renderBackend.glDeleteLists(this.borderList, 1);
+			this.borderList = -1;
+		}
+		if (this.slimeBoxList != -1)
+		{
+			XRay.renderBackend.glDeleteLists(this.slimeBoxList, 1);
+			this.slimeBoxList = -1;
+		}
+		this.extrasRequested = false;
+		this.listGeneration++;
 	}
 
 	/**
-	 * Gets the data value of the block immediately to the east.  This might
-	 * load in the adjacent chunk, if needed.  Will return -1 if that adjacent
-	 * chunk can't be found.
+	 * Returns whether the face of the section adjacent to the given section (in
+	 * the given direction) is entirely opaque.  A missing neighbor chunk or the
+	 * bottom of the world counts as opaque, since checkSolid() won't draw faces
+	 * against those either.
 	 */
-	private byte getAdjEastBlockData(int x, int y, int z)
+	private boolean isAdjSectionFaceOpaque(MeshJob job, ChunkSection section, FACING facing)
 	{
-		if (x < 15)
+		ChunkSection[] otherSections = this.sections;
+		int otherY = section.y;
+		FACING otherFace = facing;
+		switch (facing)
+		{
+			case TOP:
+				otherY++;
+				otherFace = FACING.BOTTOM;
+				break;
+			case BOTTOM:
+				if (otherY == 0)
+				{
+					return true;
+				}
+				otherY--;
+				otherFace = FACING.TOP;
+				break;
+			default:
+				Chunk otherChunk;
+				switch (facing)
+				{
+					case WEST:
+						otherChunk = job.west;
+						otherFace = FACING.EAST;
+						break;
+					case EAST:
+						otherChunk = job.east;
+						otherFace = FACING.WEST;
+						break;
+					case NORTH:
+						otherChunk = job.north;
+						otherFace = FACING.SOUTH;
+						break;
+					default:
+						otherChunk = job.south;
+						otherFace = FACING.NORTH;
+						break;
+				}
+				if (otherChunk == null)
+				{
+					return true;
+				}
+				otherSections = otherChunk.sections;
+				break;
+		}
+		if (otherY >= otherSections.length || otherSections[otherY] == null)
 		{
-			return getData(x+1, y, z);
+			return false;
 		}
-		else
+		return otherSections[otherY].opaqueFaces[otherFace.ordinal()];
+	}
+
+	/**
+	 * Returns whether the given section is entirely opaque and is walled in
+	 * on all sides by other opaque blocks, in which case none of our passes
+	 * could possibly draw anything for it.  (Bedrock is the exception, since
+	 * we build bedrock faces against other solid blocks into their own sub-mesh
+	 * for when render_bedrock is on.)
+	 */
+	private boolean isSectionBuried(MeshJob job, ChunkSection section)
+	{
+		if (!section.isFullyOpaque())
 		{
-			Chunk otherChunk = level.getChunk(this.x+1, this.z);
-			if (otherChunk == null)
-			{
-				return -1;
-			}
-			else
+			return false;
+		}
+		if (section.blockIds.get(BLOCK_BEDROCK.id))
+		{
+			return false;
+		}
+		for (FACING facing : FACING.values())
+		{
+			if (!this.isAdjSectionFaceOpaque(job, section, facing))
 			{
-				return otherChunk.getData(0, y, z);
+				return false;
 			}
 		}
+		return true;
 	}
 
 	/**
-	 * Gets the data value of the block immediately to the south.  This might
-	 * load in the adjacent chunk, if needed.  Will return -1 if that adjacent
-	 * chunk can't be found.
+	 * Returns whether the given section contains any of the ores which are
+	 * currently selected for highlighting.
 	 */
-	private byte getAdjNorthBlockData(int x, int y, int z)
+	private boolean hasSelectedOres(ChunkSection section, boolean[] selectedMap)
 	{
-		if (z > 0)
+		for (int i = 0; i < selectedMap.length; i++)
 		{
-			return getData(x, y, z-1);
-		}
-		else
-		{
-			Chunk otherChunk = level.getChunk(this.x, this.z-1);
-			if (otherChunk == null)
+			if (selectedMap[i] && section.blockIds.get(this.meshConfig.highlightOres[i]))
 			{
-				return -1;
+				return true;
 			}
-			else
+		}
+		return false;
+	}
+
+	/**
+	 * Returns approximately how much memory this chunk is using, including
+	 * our compiled geometry.
+	 */
+	public long estimateMemoryUsage()
+	{
+		long total = this.getDataSize();
+		for (ChunkSection section : this.sections)
+		{
+			if (section != null)
 			{
-				return otherChunk.getData(x, y, 15);
+				total += section.getMeshBytes();
+				total += section.airColumns.length * 8;
 			}
 		}
+		return total;
 	}
 
 	/**
-	 * Gets the data value of the block immediately to the north.  This might
-	 * load in the adjacent chunk, if needed.  Will return -1 if that adjacent
-	 * chunk can't be found.
+	 * Returns approximately how much memory the implementing class's block
+	 * data takes up.
 	 */
-	private byte getAdjSouthBlockData(int x, int y, int z)
+	protected abstract long getDataSize();
+
+	/**
+	 * Returns how many sections high this chunk is
+	 */
+	public int getSectionCount()
+	{
+		return this.sections.length;
+	}
+
+	/**
+	 * Returns whether the implementing class has any data for the given section.
+	 */
+	protected abstract boolean hasSection(int section);
+	
+	/**
+	 * Will return an array of values which are suitable for feeding into a
+	 * minimap: the top visible block ID for each column, indexed by [x][z].
+	 * The array shouldn't be modified.
+	 */
+	public short[][] getMinimapValues()
+	{
+		return this.minimapSummary.getBlocks();
+	}
+
+	/**
+	 * Returns the height of the top visible block for each column, indexed by
+	 * [x][z].  The array shouldn't be modified.
+	 */
+	public short[][] getMinimapHeights()
+	{
+		return this.minimapSummary.getHeights();
+	}
+
+	/**
+	 * Returns the ARGB minimap color for each column, indexed by (z*16)+x.
+	 * The array shouldn't be modified.
+	 */
+	public int[] getMinimapColors()
+	{
+		return this.minimapSummary.getColors();
+	}
+
+	/**
+	 * Brings our cave map colors up to date for the given band of Y levels.
+	 * Each column gets the (darkened) color of the block in the middle of the
+	 * band, brightened towards CAVE_COLOR by however much of the band is air,
+	 * so cave openings at or near the camera's level stand out.  The air comes
+	 * from what we recorded for each section at load, so moving up and down
+	 * never has to rescan our data.
+	 *
+	 * @param bottom The lowest Y level in the band
+	 * @param top The highest Y level in the band
+	 * @return Whether any of our colors changed
+	 */
+	public boolean updateSliceColors(int bottom, int top)
 	{
-		if (z < 15)
+		if (bottom == this.sliceBottom && top == this.sliceTop)
 		{
-			return getData(x, y, z+1);
+			return false;
 		}
-		else
+		this.sliceBottom = bottom;
+		this.sliceTop = top;
+		if (this.sliceColors == null)
 		{
-			Chunk otherChunk = level.getChunk(this.x, this.z+1);
-			if (otherChunk == null)
-			{
-				return -1;
-			}
-			else
+			this.sliceColors = new int[256];
+		}
+
+		int middle = (bottom + top) / 2;
+		int layers = top - bottom + 1;
+		boolean changed = false;
+		int air;
+		int base;
+		int color;
+		short block;
+		BlockType type;
+		for (int zz = 0; zz < 16; zz++)
+		{
+			for (int xx = 0; xx < 16; xx++)
 			{
-				return otherChunk.getData(x, y, 0);
+				air = 0;
+				for (int y = bottom; y <= top; y++)
+				{
+					if (this.isSliceAir(xx, y, zz))
+					{
+						air++;
+					}
+				}
+				base = 0;
+				if (middle >= 0 && middle <= this.ceilingHeight && !this.isSliceAir(xx, middle, zz))
+				{
+					block = this.getBlock(xx, middle, zz);
+					type = (block > 0 ? this.meshConfig.blockArray[block] : null);
+					if (type == null)
+					{
+						type = BLOCK_UNKNOWN;
+					}
+					if (type.color != null)
+					{
+						base = type.color.getRGB();
+						base = ((((base >> 16) & 0xFF) * 2 / 5) << 16) |
+							((((base >> 8) & 0xFF) * 2 / 5) << 8) |
+							((base & 0xFF) * 2 / 5);
+					}
+				}
+				color = 0xFF000000 |
+					(blendSliceChannel(base >> 16, CAVE_COLOR >> 16, air, layers) << 16) |
+					(blendSliceChannel(base >> 8, CAVE_COLOR >> 8, air, layers) << 8) |
+					blendSliceChannel(base, CAVE_COLOR, air, layers);
+				if (this.sliceColors[(zz * 16) + xx] != color)
+				{
+					this.sliceColors[(zz * 16) + xx] = color;
+					changed = true;
+				}
 			}
 		}
+		return changed;
+	}
+
+	private static int blendSliceChannel(int from, int to, int amount, int total)
+	{
+		from &= 0xFF;
+		to &= 0xFF;
+		return from + (((to - from) * amount) / total);
+	}
+
+	/**
+	 * Returns whether the given block is air, for the cave map.  Anything
+	 * above our data counts as air; anything below the world doesn't.
+	 */
+	private boolean isSliceAir(int x, int y, int z)
+	{
+		if (y < 0)
+		{
+			return false;
+		}
+		int section = y / 16;
+		if (section >= this.sections.length || this.sections[section] == null)
+		{
+			return true;
+		}
+		return this.sections[section].isAir(x, y % 16, z);
+	}
+
+	/**
+	 * Returns our cave map colors as of the last call to updateSliceColors(),
+	 * indexed by (z*16)+x.  The array shouldn't be modified.
+	 */
+	public int[] getSliceColors()
+	{
+		return this.sliceColors;
+	}
+
+	public CompoundTag getChunkData() {
+		return this.chunkData;
+	}
+
+	/**
+	 * Gets the Block ID of the block immediately to the given facing, from the
+	 * snapshot we're currently rendering.  Will return -1 if that adjacent chunk
+	 * isn't loaded.  Note that blockOffset is an offset into the snapshot, not
+	 * into our own data.
+	 */
+	protected short getAdjBlockId(int x, int y, int z, FACING facing, int blockOffset) {
+		return this.snapshot.getBlockId(blockOffset + ChunkSnapshot.FACE_OFFSET[facing.ordinal()]);
+	}
+
+	/**
+	 * Returns the block ID to use for anything above our ceiling.
+	 */
+	protected short getCeilingBlockId()
+	{
+		return 0;
+	}
+
+	/**
+	 * Gets the data value of the block immediately to the west.  Will return -1
+	 * if that adjacent chunk isn't loaded.
+	 */
+	private byte getAdjWestBlockData(int x, int y, int z)
+	{
+		return this.snapshot.getData(x-1, y, z);
+	}
+
+	/**
+	 * Gets the data value of the block immediately to the east.  Will return -1
+	 * if that adjacent chunk isn't loaded.
+	 */
+	private byte getAdjEastBlockData(int x, int y, int z)
+	{
+		return this.snapshot.getData(x+1, y, z);
+	}
+
+	/**
+	 * Gets the data value of the block immediately to the south.  Will return -1
+	 * if that adjacent chunk isn't loaded.
+	 */
+	private byte getAdjNorthBlockData(int x, int y, int z)
+	{
+		return this.snapshot.getData(x, y, z-1);
+	}
+
+	/**
+	 * Gets the data value of the block immediately to the north.  Will return -1
+	 * if that adjacent chunk isn't loaded.
+	 */
+	private byte getAdjSouthBlockData(int x, int y, int z)
+	{
+		return this.snapshot.getData(x, y, z+1);
 	}
 
 	/**
@@ -367,7 +843,7 @@ public abstract class Chunk {
 	 */
 	private byte getAdjUpBlockData(int x, int y, int z)
 	{
-		return getData(x, y+1, z);
+		return this.snapshot.getData(x, y+1, z);
 	}
 
 	/**
@@ -375,7 +851,7 @@ public abstract class Chunk {
 	 */
 	private byte getAdjDownBlockData(int x, int y, int z)
 	{
-		return getData(x, y-1, z);
+		return this.snapshot.getData(x, y-1, z);
 	}
 	
 	/**
@@ -405,19 +881,19 @@ public abstract class Chunk {
 
 		float curFace[][] = blockFaces[facing.ordinal()];
 
-		GL11.glBegin(GL11.GL_TRIANGLE_STRIP);
-			GL11.glTexCoord2f(precalcSpriteSheetToTextureX[t], precalcSpriteSheetToTextureY[t]);
-			GL11.glVertex3f(x+curFace[0][0], y+curFace[0][1], z+curFace[0][2]);
+		this.mesh.glBegin(GL11.GL_TRIANGLE_STRIP);
+			this.mesh.glTexCoord2f(precalcSpriteSheetToTextureX[t], precalcSpriteSheetToTextureY[t]);
+			this.mesh.glVertex3f(x+curFace[0][0], y+curFace[0][1], z+curFace[0][2]);
 	
-			GL11.glTexCoord2f(precalcSpriteSheetToTextureX[t]+TEX16, precalcSpriteSheetToTextureY[t]);
-			GL11.glVertex3f(x+curFace[1][0], y+curFace[1][1], z+curFace[1][2]);
+			this.mesh.glTexCoord2f(precalcSpriteSheetToTextureX[t]+TEX16, precalcSpriteSheetToTextureY[t]);
+			this.mesh.glVertex3f(x+curFace[1][0], y+curFace[1][1], z+curFace[1][2]);
 	
-			GL11.glTexCoord2f(precalcSpriteSheetToTextureX[t], precalcSpriteSheetToTextureY[t]+TEX32);
-			GL11.glVertex3f(x+curFace[2][0], y+curFace[2][1], z+curFace[2][2]);
+			this.mesh.glTexCoord2f(precalcSpriteSheetToTextureX[t], precalcSpriteSheetToTextureY[t]+TEX32);
+			this.mesh.glVertex3f(x+curFace[2][0], y+curFace[2][1], z+curFace[2][2]);
 	
-			GL11.glTexCoord2f(precalcSpriteSheetToTextureX[t]+TEX16, precalcSpriteSheetToTextureY[t]+TEX32);
-			GL11.glVertex3f(x+curFace[3][0], y+curFace[3][1], z+curFace[3][2]);
-		GL11.glEnd();
+			this.mesh.glTexCoord2f(precalcSpriteSheetToTextureX[t]+TEX16, precalcSpriteSheetToTextureY[t]+TEX32);
+			this.mesh.glVertex3f(x+curFace[3][0], y+curFace[3][1], z+curFace[3][2]);
+		this.mesh.glEnd();
 	}
 
 	/**
@@ -468,19 +944,19 @@ public abstract class Chunk {
 				break;
 		}
 		
-		GL11.glBegin(GL11.GL_TRIANGLE_STRIP);
-			GL11.glTexCoord2f(x1, y1);
-			GL11.glVertex3f(x-scale, y-scale, z+scale);
+		this.mesh.glBegin(GL11.GL_TRIANGLE_STRIP);
+			this.mesh.glTexCoord2f(x1, y1);
+			this.mesh.glVertex3f(x-scale, y-scale, z+scale);
 	
-			GL11.glTexCoord2f(x2, y2);
-			GL11.glVertex3f(x-scale, y-scale, z-scale);
+			this.mesh.glTexCoord2f(x2, y2);
+			this.mesh.glVertex3f(x-scale, y-scale, z-scale);
 	
-			GL11.glTexCoord2f(x3, y3);
-			GL11.glVertex3f(x+scale, y-scale, z+scale);
+			this.mesh.glTexCoord2f(x3, y3);
+			this.mesh.glVertex3f(x+scale, y-scale, z+scale);
 	
-			GL11.glTexCoord2f(x4, y4);
-			GL11.glVertex3f(x+scale, y-scale, z-scale);
-		GL11.glEnd();
+			this.mesh.glTexCoord2f(x4, y4);
+			this.mesh.glVertex3f(x+scale, y-scale, z-scale);
+		this.mesh.glEnd();
 		
 	}
 
@@ -513,19 +989,19 @@ public abstract class Chunk {
 		float tdx = TEX256*tex_width;
 		float tdy = TEX512*tex_height;
 
-		GL11.glBegin(GL11.GL_TRIANGLE_STRIP);
-			GL11.glTexCoord2f(bx, by);
-			GL11.glVertex3f(x1, y+height, z1);
+		this.mesh.glBegin(GL11.GL_TRIANGLE_STRIP);
+			this.mesh.glTexCoord2f(bx, by);
+			this.mesh.glVertex3f(x1, y+height, z1);
 	
-			GL11.glTexCoord2f(bx+tdx, by);
-			GL11.glVertex3f(x2, y+height, z2);
+			this.mesh.glTexCoord2f(bx+tdx, by);
+			this.mesh.glVertex3f(x2, y+height, z2);
 	
-			GL11.glTexCoord2f(bx, by+tdy);
-			GL11.glVertex3f(x1, y, z1);
+			this.mesh.glTexCoord2f(bx, by+tdy);
+			this.mesh.glVertex3f(x1, y, z1);
 	
-			GL11.glTexCoord2f(bx+tdx, by+tdy);
-			GL11.glVertex3f(x2, y, z2);
-		GL11.glEnd();
+			this.mesh.glTexCoord2f(bx+tdx, by+tdy);
+			this.mesh.glVertex3f(x2, y, z2);
+		this.mesh.glEnd();
 	}
 	
 	/**
@@ -548,19 +1024,19 @@ public abstract class Chunk {
 	 */
 	public void renderNonstandardVertical(float tx, float ty, float tdx, float tdy, float x1, float y1, float z1, float x2, float y2, float z2)
 	{
-		GL11.glBegin(GL11.GL_TRIANGLE_STRIP);
-			GL11.glTexCoord2f(tx, ty);
-			GL11.glVertex3f(x1, y1, z1);
+		this.mesh.glBegin(GL11.GL_TRIANGLE_STRIP);
+			this.mesh.glTexCoord2f(tx, ty);
+			this.mesh.glVertex3f(x1, y1, z1);
 			
-			GL11.glTexCoord2f(tx+tdx, ty);
-			GL11.glVertex3f(x2, y1, z2);
+			this.mesh.glTexCoord2f(tx+tdx, ty);
+			this.mesh.glVertex3f(x2, y1, z2);
 			
-			GL11.glTexCoord2f(tx, ty+tdy);
-			GL11.glVertex3f(x1, y2, z1);
+			this.mesh.glTexCoord2f(tx, ty+tdy);
+			this.mesh.glVertex3f(x1, y2, z1);
 			
-			GL11.glTexCoord2f(tx+tdx, ty+tdy);
-			GL11.glVertex3f(x2, y2, z2);
-		GL11.glEnd();
+			this.mesh.glTexCoord2f(tx+tdx, ty+tdy);
+			this.mesh.glVertex3f(x2, y2, z2);
+		this.mesh.glEnd();
 	}
 	
 	/**
@@ -586,19 +1062,19 @@ public abstract class Chunk {
 	 */
 	public void renderNonstandardVerticalTexRotate(float tx, float ty, float tdx, float tdy, float x1, float y1, float z1, float x2, float y2, float z2)
 	{
-		GL11.glBegin(GL11.GL_TRIANGLE_STRIP);
-			GL11.glTexCoord2f(tx+tdx, ty);
-			GL11.glVertex3f(x1, y1, z1);
+		this.mesh.glBegin(GL11.GL_TRIANGLE_STRIP);
+			this.mesh.glTexCoord2f(tx+tdx, ty);
+			this.mesh.glVertex3f(x1, y1, z1);
 			
-			GL11.glTexCoord2f(tx+tdx, ty+tdy);
-			GL11.glVertex3f(x2, y1, z2);
+			this.mesh.glTexCoord2f(tx+tdx, ty+tdy);
+			this.mesh.glVertex3f(x2, y1, z2);
 			
-			GL11.glTexCoord2f(tx, ty);
-			GL11.glVertex3f(x1, y2, z1);
+			this.mesh.glTexCoord2f(tx, ty);
+			this.mesh.glVertex3f(x1, y2, z1);
 			
-			GL11.glTexCoord2f(tx, ty+tdy);
-			GL11.glVertex3f(x2, y2, z2);
-		GL11.glEnd();
+			this.mesh.glTexCoord2f(tx, ty+tdy);
+			this.mesh.glVertex3f(x2, y2, z2);
+		this.mesh.glEnd();
 	}
 
 	/**
@@ -628,37 +1104,37 @@ public abstract class Chunk {
 		float tdx = TEX256*tex_width;
 		float tdy = TEX512*tex_height;
 
-		GL11.glBegin(GL11.GL_TRIANGLE_STRIP);
+		this.mesh.glBegin(GL11.GL_TRIANGLE_STRIP);
 			
 			if (flip_tex)
 			{
-				GL11.glTexCoord2f(bx, by);
-				GL11.glVertex3f(x1, y, z2);
+				this.mesh.glTexCoord2f(bx, by);
+				this.mesh.glVertex3f(x1, y, z2);
 		
-				GL11.glTexCoord2f(bx+tdx, by);
-				GL11.glVertex3f(x2, y, z2);
+				this.mesh.glTexCoord2f(bx+tdx, by);
+				this.mesh.glVertex3f(x2, y, z2);
 		
-				GL11.glTexCoord2f(bx, by+tdy);
-				GL11.glVertex3f(x1, y, z1);
+				this.mesh.glTexCoord2f(bx, by+tdy);
+				this.mesh.glVertex3f(x1, y, z1);
 		
-				GL11.glTexCoord2f(bx+tdx, by+tdy);
-				GL11.glVertex3f(x2, y, z1);
+				this.mesh.glTexCoord2f(bx+tdx, by+tdy);
+				this.mesh.glVertex3f(x2, y, z1);
 			}
 			else
 			{
-				GL11.glTexCoord2f(bx, by);
-				GL11.glVertex3f(x1, y, z1);
+				this.mesh.glTexCoord2f(bx, by);
+				this.mesh.glVertex3f(x1, y, z1);
 		
-				GL11.glTexCoord2f(bx+tdx, by);
-				GL11.glVertex3f(x1, y, z2);
+				this.mesh.glTexCoord2f(bx+tdx, by);
+				this.mesh.glVertex3f(x1, y, z2);
 		
-				GL11.glTexCoord2f(bx, by+tdy);
-				GL11.glVertex3f(x2, y, z1);
+				this.mesh.glTexCoord2f(bx, by+tdy);
+				this.mesh.glVertex3f(x2, y, z1);
 		
-				GL11.glTexCoord2f(bx+tdx, by+tdy);
-				GL11.glVertex3f(x2, y, z2);
+				this.mesh.glTexCoord2f(bx+tdx, by+tdy);
+				this.mesh.glVertex3f(x2, y, z2);
 			}
-		GL11.glEnd();
+		this.mesh.glEnd();
 	}
 	
 	/**
@@ -681,19 +1157,19 @@ public abstract class Chunk {
 		float bx = precalcSpriteSheetToTextureX[t];
 		float by = precalcSpriteSheetToTextureY[t];
 
-		GL11.glBegin(GL11.GL_TRIANGLE_STRIP);
-			GL11.glTexCoord2f(bx, by);
-			GL11.glVertex3f(x1, y, z1);
+		this.mesh.glBegin(GL11.GL_TRIANGLE_STRIP);
+			this.mesh.glTexCoord2f(bx, by);
+			this.mesh.glVertex3f(x1, y, z1);
 	
-			GL11.glTexCoord2f(bx+TEX16, by);
-			GL11.glVertex3f(x2, y, z2);
+			this.mesh.glTexCoord2f(bx+TEX16, by);
+			this.mesh.glVertex3f(x2, y, z2);
 	
-			GL11.glTexCoord2f(bx, by+TEX32);
-			GL11.glVertex3f(x3, y, z3);
+			this.mesh.glTexCoord2f(bx, by+TEX32);
+			this.mesh.glVertex3f(x3, y, z3);
 	
-			GL11.glTexCoord2f(bx+TEX16, by+TEX32);
-			GL11.glVertex3f(x4, y, z4);
-		GL11.glEnd();
+			this.mesh.glTexCoord2f(bx+TEX16, by+TEX32);
+			this.mesh.glVertex3f(x4, y, z4);
+		this.mesh.glEnd();
 	}
 	
 	/**
@@ -712,19 +1188,19 @@ public abstract class Chunk {
 	 * @param y
 	 */
 	public void renderNonstandardHorizontal(float tx, float ty, float tdx, float tdy, float x1, float z1, float x2, float z2, float y) {
-		GL11.glBegin(GL11.GL_TRIANGLE_STRIP);
-			GL11.glTexCoord2f(tx, ty);
-			GL11.glVertex3f(x1, y, z1);
+		this.mesh.glBegin(GL11.GL_TRIANGLE_STRIP);
+			this.mesh.glTexCoord2f(tx, ty);
+			this.mesh.glVertex3f(x1, y, z1);
 	
-			GL11.glTexCoord2f(tx+tdx, ty);
-			GL11.glVertex3f(x1, y, z2);
+			this.mesh.glTexCoord2f(tx+tdx, ty);
+			this.mesh.glVertex3f(x1, y, z2);
 	
-			GL11.glTexCoord2f(tx, ty+tdy);
-			GL11.glVertex3f(x2, y, z1);
+			this.mesh.glTexCoord2f(tx, ty+tdy);
+			this.mesh.glVertex3f(x2, y, z1);
 	
-			GL11.glTexCoord2f(tx+tdx, ty+tdy);
-			GL11.glVertex3f(x2, y, z2);
-		GL11.glEnd();
+			this.mesh.glTexCoord2f(tx+tdx, ty+tdy);
+			this.mesh.glVertex3f(x2, y, z2);
+		this.mesh.glEnd();
 	}
 
 	/**
@@ -746,19 +1222,19 @@ public abstract class Chunk {
 	 * @param y
 	 */
 	public void renderNonstandardHorizontalTexRotate(float tx, float ty, float tdx, float tdy, float x1, float z1, float x2, float z2, float y) {
-		GL11.glBegin(GL11.GL_TRIANGLE_STRIP);
-			GL11.glTexCoord2f(tx+tdx, ty);
-			GL11.glVertex3f(x1, y, z1);
+		this.mesh.glBegin(GL11.GL_TRIANGLE_STRIP);
+			this.mesh.glTexCoord2f(tx+tdx, ty);
+			this.mesh.glVertex3f(x1, y, z1);
 	
-			GL11.glTexCoord2f(tx+tdx, ty+tdy);
-			GL11.glVertex3f(x1, y, z2);
+			this.mesh.glTexCoord2f(tx+tdx, ty+tdy);
+			this.mesh.glVertex3f(x1, y, z2);
 	
-			GL11.glTexCoord2f(tx, ty);
-			GL11.glVertex3f(x2, y, z1);
+			this.mesh.glTexCoord2f(tx, ty);
+			this.mesh.glVertex3f(x2, y, z1);
 	
-			GL11.glTexCoord2f(tx, ty+tdy);
-			GL11.glVertex3f(x2, y, z2);
-		GL11.glEnd();
+			this.mesh.glTexCoord2f(tx, ty+tdy);
+			this.mesh.glVertex3f(x2, y, z2);
+		this.mesh.glEnd();
 	}
 
 	/**
@@ -787,19 +1263,19 @@ public abstract class Chunk {
 		float tx = precalcSpriteSheetToTextureX[t];
 		float ty = precalcSpriteSheetToTextureY[t];
 
-		GL11.glBegin(GL11.GL_TRIANGLE_STRIP);
-			GL11.glTexCoord2f(tx, ty);
-			GL11.glVertex3f(x1, y1, z1);
+		this.mesh.glBegin(GL11.GL_TRIANGLE_STRIP);
+			this.mesh.glTexCoord2f(tx, ty);
+			this.mesh.glVertex3f(x1, y1, z1);
 	
-			GL11.glTexCoord2f(tx+TEX16, ty);
-			GL11.glVertex3f(x2, y2, z2);
+			this.mesh.glTexCoord2f(tx+TEX16, ty);
+			this.mesh.glVertex3f(x2, y2, z2);
 	
-			GL11.glTexCoord2f(tx, ty+TEX32);
-			GL11.glVertex3f(x3, y3, z3);
+			this.mesh.glTexCoord2f(tx, ty+TEX32);
+			this.mesh.glVertex3f(x3, y3, z3);
 	
-			GL11.glTexCoord2f(tx+TEX16, ty+TEX32);
-			GL11.glVertex3f(x4, y4, z4);
-		GL11.glEnd();
+			this.mesh.glTexCoord2f(tx+TEX16, ty+TEX32);
+			this.mesh.glVertex3f(x4, y4, z4);
+		this.mesh.glEnd();
 		
 	}
 	
@@ -837,27 +1313,27 @@ public abstract class Chunk {
 		
 		float xoff=0.5f;
 		
-		GL11.glBegin(GL11.GL_TRIANGLE_STRIP);
+		this.mesh.glBegin(GL11.GL_TRIANGLE_STRIP);
 		
-			GL11.glTexCoord2f(bx, by+TEX32);
-			GL11.glVertex3f(x+xoff, y-0.5f, z-0.5f);
+			this.mesh.glTexCoord2f(bx, by+TEX32);
+			this.mesh.glVertex3f(x+xoff, y-0.5f, z-0.5f);
 	
-			GL11.glTexCoord2f(bx, by+TEX64);
-			GL11.glVertex3f(x+xoff, y, z-0.5f);
+			this.mesh.glTexCoord2f(bx, by+TEX64);
+			this.mesh.glVertex3f(x+xoff, y, z-0.5f);
 			
-			GL11.glTexCoord2f(bx+TEX16, by+TEX32);
-			GL11.glVertex3f(x-xoff, y-0.5f, z-0.5f);
+			this.mesh.glTexCoord2f(bx+TEX16, by+TEX32);
+			this.mesh.glVertex3f(x-xoff, y-0.5f, z-0.5f);
 	
-			GL11.glTexCoord2f(bx+TEX32, by+TEX64);
-			GL11.glVertex3f(x, y, z-0.5f);
+			this.mesh.glTexCoord2f(bx+TEX32, by+TEX64);
+			this.mesh.glVertex3f(x, y, z-0.5f);
 	
-			GL11.glTexCoord2f(bx+TEX16, by);
-			GL11.glVertex3f(x-xoff, y+0.5f, z-0.5f);
+			this.mesh.glTexCoord2f(bx+TEX16, by);
+			this.mesh.glVertex3f(x-xoff, y+0.5f, z-0.5f);
 			
-			GL11.glTexCoord2f(bx+TEX32, by);
-			GL11.glVertex3f(x, y+0.5f, z-0.5f);
+			this.mesh.glTexCoord2f(bx+TEX32, by);
+			this.mesh.glVertex3f(x, y+0.5f, z-0.5f);
 
-		GL11.glEnd();
+		this.mesh.glEnd();
 	}	
 	
 	/**
@@ -1029,7 +1505,7 @@ public abstract class Chunk {
 	/**
 	 * Renders a decoration which is supposed to be a "cross" in a single block.  There's
 	 * some code duplication from renderRectDecoration in here, but not too much, hopefully.
-	 * This will require an entry in XRay.decorationStats for the given textureId.
+	 * This will require an entry in our RenderConfig's decoration stats for the given textureId.
 	 */
 	public void renderCrossDecoration(int textureId, int xxx, int yyy, int zzz)
 	{
@@ -1039,7 +1515,7 @@ public abstract class Chunk {
 
 		// We do the "% 256" here because our texture ID might be in the "highlighted"
 		// range, for Explored highlighting.
-		TextureDecorationStats stats = XRay.decorationStats.get(textureId % 256);
+		TextureDecorationStats stats = this.meshConfig.getDecorationStats(textureId % 256);
 		if (stats == null)
 		{
 			return;
@@ -1064,7 +1540,7 @@ public abstract class Chunk {
 
 	/**
 	 * Renders an rectangular decoration which is just standing straight up.  This will require
-	 * an entry in XRay.decorationStats for the given textureId.
+	 * an entry in our RenderConfig's decoration stats for the given textureId.
 	 *
 	 * Currently only used for torches and levers, actually.
 	 */
@@ -1074,7 +1550,7 @@ public abstract class Chunk {
 	}
 
 	/**
-	 * Renders a rectangular decoration.  This will require an entry in XRay.decorationStats for
+	 * Renders a rectangular decoration.  This will require an entry in our RenderConfig's decoration stats for
 	 * the given textureId.  Optionally pass in some parameters for rotation, currently used
 	 * for torches and levers.
 	 *
@@ -1113,7 +1589,7 @@ public abstract class Chunk {
 		float my_y = yyy - 0.5f;
 		// We do the "% 256" here because our texture ID might be in the "highlighted"
 		// range, for Explored highlighting.
-		TextureDecorationStats stats = XRay.decorationStats.get(textureId % 256);
+		TextureDecorationStats stats = this.meshConfig.getDecorationStats(textureId % 256);
 		if (stats == null)
 		{
 			return;
@@ -1142,9 +1618,9 @@ public abstract class Chunk {
 		// to the origin for the actual verticies, and then translate?
 		if (do_rotate)
 		{
-			GL11.glPushMatrix();
-			GL11.glTranslatef(tx, ty, tz);
-			GL11.glRotatef((float)rotate_degrees, rotate_x, 0f, rotate_z);
+			this.mesh.glPushMatrix();
+			this.mesh.glTranslatef(tx, ty, tz);
+			this.mesh.glRotatef((float)rotate_degrees, rotate_x, 0f, rotate_z);
 		}
 		
 		// First draw the borders
@@ -1169,7 +1645,7 @@ public abstract class Chunk {
 
 		if (do_rotate)
 		{
-			GL11.glPopMatrix();
+			this.mesh.glPopMatrix();
 		}
 	}
 	
@@ -1189,7 +1665,7 @@ public abstract class Chunk {
 
 		// We do the "% 256" here because our texture ID might be in the "highlighted"
 		// range, for Explored highlighting.
-		TextureDecorationStats stats = XRay.decorationStats.get(textureId % 256);
+		TextureDecorationStats stats = this.meshConfig.getDecorationStats(textureId % 256);
 		if (stats == null)
 		{
 			return;
@@ -1579,24 +2055,24 @@ public abstract class Chunk {
 		data &= 0x3;
 
 		// Use GL to rotate these properly
-		GL11.glPushMatrix();
-		GL11.glTranslatef(x, y, z);
+		this.mesh.glPushMatrix();
+		this.mesh.glTranslatef(x, y, z);
 
 		// We're drawing the bed with the head facing East (direction 2)
 		if (data == 0)
 		{
 			// Pointing West
-			GL11.glRotatef(180f, 0f, 1f, 0f);
+			this.mesh.glRotatef(180f, 0f, 1f, 0f);
 		}
 		else if (data == 1)
 		{
 			// Pointing South
-			GL11.glRotatef(90f, 0f, 1f, 0f);
+			this.mesh.glRotatef(90f, 0f, 1f, 0f);
 		}
 		else if (data == 3)
 		{
 			// Pointing North
-			GL11.glRotatef(-90f, 0f, 1f, 0f);
+			this.mesh.glRotatef(-90f, 0f, 1f, 0f);
 		}
 
 		float end_tex_x, end_tex_y;
@@ -1634,7 +2110,7 @@ public abstract class Chunk {
 		this.renderNonstandardVertical(end_tex_x, end_tex_y, TEX16, bed_tex_height, side_part, bed_height-side_full, end_z, -side_part, -side_full, end_z);
 
 		// Pop the matrix
-		GL11.glPopMatrix();
+		this.mesh.glPopMatrix();
 	}
 	
 	/**
@@ -1767,29 +2243,29 @@ public abstract class Chunk {
 		float tex_dy = TEX32 * twidth;
 
 		// Use GL to rotate these properly
-		GL11.glPushMatrix();
-		GL11.glTranslatef(x, y, z);
+		this.mesh.glPushMatrix();
+		this.mesh.glTranslatef(x, y, z);
 		if (swung)
 		{
 			if (dir == 0)
 			{
 				// South
-				GL11.glRotatef(-90f, 1f, 0f, 0f);
+				this.mesh.glRotatef(-90f, 1f, 0f, 0f);
 			}
 			else if (dir == 1)
 			{
 				// North
-				GL11.glRotatef(90f, 1f, 0f, 0f);
+				this.mesh.glRotatef(90f, 1f, 0f, 0f);
 			}
 			else if (dir == 2)
 			{
 				// East
-				GL11.glRotatef(90f, 0f, 0f, 1f);
+				this.mesh.glRotatef(90f, 0f, 0f, 1f);
 			}
 			else
 			{
 				// West
-				GL11.glRotatef(-90f, 0f, 0f, 1f);
+				this.mesh.glRotatef(-90f, 0f, 0f, 1f);
 			}
 		}
 		
@@ -1811,7 +2287,7 @@ public abstract class Chunk {
 				-.5f+toff, -.5f+toff,       -.5f+toff,
 				.5f-toff, -.5f+toff+twidth, -.5f+toff);
 
-		GL11.glPopMatrix();
+		this.mesh.glPopMatrix();
 	}
 
 	/**
@@ -1827,17 +2303,17 @@ public abstract class Chunk {
 	 */
 	private STAIR_RENDER shouldRenderStairSide(byte our_data, short adj_id, byte adj_data)
 	{
-		if (adj_id < 0 || blockArray[adj_id] == null)
+		if (adj_id < 0 || this.meshConfig.blockArray[adj_id] == null)
 		{
 			return STAIR_RENDER.YES;
 		}
-		if (blockArray[adj_id].isSolid())
+		if (this.meshConfig.blockArray[adj_id].isSolid())
 		{
 			return STAIR_RENDER.NO;
 		}
 		else
 		{
-			switch (blockArray[adj_id].getType())
+			switch (this.meshConfig.blockArray[adj_id].getType())
 			{
 				case STAIRS:
 					if (our_data == adj_data)
@@ -1871,17 +2347,17 @@ public abstract class Chunk {
 	 */
 	private STAIR_RENDER shouldRenderStairFront(short adj_id, byte adj_data)
 	{
-		if (adj_id < 0 || blockArray[adj_id] == null)
+		if (adj_id < 0 || this.meshConfig.blockArray[adj_id] == null)
 		{
 			return STAIR_RENDER.YES;
 		}
-		if (blockArray[adj_id].isSolid())
+		if (this.meshConfig.blockArray[adj_id].isSolid())
 		{
 			return STAIR_RENDER.NO;
 		}
 		else
 		{
-			switch (blockArray[adj_id].getType())
+			switch (this.meshConfig.blockArray[adj_id].getType())
 			{
 				case HALFHEIGHT:
 					if ((adj_data & 0x8) == 0x8)
@@ -1914,15 +2390,15 @@ public abstract class Chunk {
 	 */
 	private STAIR_RENDER shouldRenderStairBack(short adj_id)
 	{
-		if (adj_id < 0 || blockArray[adj_id] == null)
+		if (adj_id < 0 || this.meshConfig.blockArray[adj_id] == null)
 		{
 			return STAIR_RENDER.YES;
 		}
-		if (blockArray[adj_id].isSolid())
+		if (this.meshConfig.blockArray[adj_id].isSolid())
 		{
 			return STAIR_RENDER.NO;
 		}
-		switch (blockArray[adj_id].getType())
+		switch (this.meshConfig.blockArray[adj_id].getType())
 		{
 			case SEMISOLID:
 			case WATER:
@@ -1947,17 +2423,17 @@ public abstract class Chunk {
 	 */
 	private STAIR_RENDER shouldRenderStairTop(boolean top, short adj_id, byte adj_data)
 	{
-		if (adj_id < 0 || blockArray[adj_id] == null)
+		if (adj_id < 0 || this.meshConfig.blockArray[adj_id] == null)
 		{
 			return STAIR_RENDER.YES;
 		}
-		if (blockArray[adj_id].isSolid())
+		if (this.meshConfig.blockArray[adj_id].isSolid())
 		{
 			return STAIR_RENDER.NO;
 		}
 		else
 		{
-			switch (blockArray[adj_id].getType())
+			switch (this.meshConfig.blockArray[adj_id].getType())
 			{
 				case HALFHEIGHT:
 					if (top)
@@ -2007,17 +2483,17 @@ public abstract class Chunk {
 	 */
 	private STAIR_RENDER shouldRenderStairBottom(boolean top, short adj_id, byte adj_data)
 	{
-		if (adj_id < 0 || blockArray[adj_id] == null)
+		if (adj_id < 0 || this.meshConfig.blockArray[adj_id] == null)
 		{
 			return STAIR_RENDER.YES;
 		}
-		if (blockArray[adj_id].isSolid())
+		if (this.meshConfig.blockArray[adj_id].isSolid())
 		{
 			return STAIR_RENDER.NO;
 		}
 		else
 		{
-			switch (blockArray[adj_id].getType())
+			switch (this.meshConfig.blockArray[adj_id].getType())
 			{
 				case HALFHEIGHT:
 					if (top)
@@ -2071,8 +2547,8 @@ public abstract class Chunk {
 		float y = yyy;
 
 		// GL stuff; only draw one way
-		GL11.glPushMatrix();
-		GL11.glTranslatef(x, y, z);
+		this.mesh.glPushMatrix();
+		this.mesh.glTranslatef(x, y, z);
 		
 		byte data = getData(xxx, yyy, zzz);
 		boolean top = ((data & 0x4) == 0x4);
@@ -2095,7 +2571,7 @@ public abstract class Chunk {
 		{
 			case 0:
 				// Ascending to the east, descending to the west
-				GL11.glRotatef(180f, 0f, 1f, 0f);
+				this.mesh.glRotatef(180f, 0f, 1f, 0f);
 				left_id = getAdjBlockId(xxx, yyy, zzz, FACING.SOUTH, blockOffset);
 				left_data = getAdjSouthBlockData(xxx, yyy, zzz);
 				right_id = getAdjBlockId(xxx, yyy, zzz, FACING.NORTH, blockOffset);
@@ -2118,7 +2594,7 @@ public abstract class Chunk {
 
 			case 2:
 				// Ascending to the south, descending to the north
-				GL11.glRotatef(90f, 0f, 1f, 0f);
+				this.mesh.glRotatef(90f, 0f, 1f, 0f);
 				left_id = getAdjBlockId(xxx, yyy, zzz, FACING.WEST, blockOffset);
 				left_data = getAdjWestBlockData(xxx, yyy, zzz);
 				right_id = getAdjBlockId(xxx, yyy, zzz, FACING.EAST, blockOffset);
@@ -2131,7 +2607,7 @@ public abstract class Chunk {
 			case 3:
 			default:
 				// Ascending to the north, descending to the south
-				GL11.glRotatef(270f, 0f, 1f, 0f);
+				this.mesh.glRotatef(270f, 0f, 1f, 0f);
 				left_id = getAdjBlockId(xxx, yyy, zzz, FACING.EAST, blockOffset);
 				left_data = getAdjEastBlockData(xxx, yyy, zzz);
 				right_id = getAdjBlockId(xxx, yyy, zzz, FACING.WEST, blockOffset);
@@ -2144,7 +2620,7 @@ public abstract class Chunk {
 
 		if (top)
 		{
-			GL11.glScalef(1f, -1f, 1f);
+			this.mesh.glScalef(1f, -1f, 1f);
 			top_id = getAdjBlockId(xxx, yyy, zzz, FACING.BOTTOM, blockOffset);
 			top_data = getAdjDownBlockData(xxx, yyy, zzz);
 			bottom_id = getAdjBlockId(xxx, yyy, zzz, FACING.TOP, blockOffset);
@@ -2228,7 +2704,7 @@ public abstract class Chunk {
 		this.renderVertical(textureId, 0f, .5f, 0f, -.5f, 0f, .5f, 16, 8, 0, 0);
 
 		// aaand pop our GL matrix
-		GL11.glPopMatrix();
+		this.mesh.glPopMatrix();
 		
 	}
 	
@@ -2390,7 +2866,7 @@ public abstract class Chunk {
 		float z = zzz + this.z*16;
 		float y = yyy;
 		float slat_start = y+fence_slat_start_offset;
-		boolean beta19_fences = XRay.toggle.beta19_fences;
+		boolean beta19_fences = ((this.meshToggles & XRay.RenderToggles.MESH_FENCES) != 0);
 		
 		// First the fencepost
 		this.renderVertical(textureId, x+fence_postsize, z+fence_postsize, x+fence_postsize, z-fence_postsize, y-0.5f, 1f, 4, 16, 6, 0);
@@ -2439,7 +2915,7 @@ public abstract class Chunk {
 			this.renderHorizontal(textureId, x-fence_postsize, z+fence_postsize_h, x-.5f, z-fence_postsize_h, slat_start+fence_top_slat_offset, 2, 6, 14, 0, false);
 			this.renderHorizontal(textureId, x-fence_postsize, z+fence_postsize_h, x-.5f, z-fence_postsize_h, slat_start+fence_top_slat_offset+fence_slat_height, 2, 6, 14, 0, false);
 		}
-		else if (adj_id > -1 && blockArray[adj_id] != null && blockArray[adj_id].type == BLOCK_TYPE.FENCE_GATE)
+		else if (adj_id > -1 && this.meshConfig.blockArray[adj_id] != null && this.meshConfig.blockArray[adj_id].type == BLOCK_TYPE.FENCE_GATE)
 		{
 			// Fence Gate to the West
 			adj_data = this.getAdjWestBlockData(xxx, yyy, zzz);
@@ -2465,7 +2941,7 @@ public abstract class Chunk {
 
 		// Check for adjacent fence gates in the +x direction
 		adj_id = this.getAdjBlockId(xxx, yyy, zzz, FACING.EAST, blockOffset);
-		if (adj_id > -1 && blockArray[adj_id] != null && blockArray[adj_id].type == BLOCK_TYPE.FENCE_GATE)
+		if (adj_id > -1 && this.meshConfig.blockArray[adj_id] != null && this.meshConfig.blockArray[adj_id].type == BLOCK_TYPE.FENCE_GATE)
 		{
 			// Fence Gate to the East
 			adj_data = this.getAdjEastBlockData(xxx, yyy, zzz);
@@ -2537,7 +3013,7 @@ public abstract class Chunk {
 			this.renderHorizontal(textureId, x+fence_postsize_h, z-fence_postsize, x-fence_postsize_h, z-.5f, slat_start+fence_top_slat_offset, 2, 6, 14, 0, true);
 			this.renderHorizontal(textureId, x+fence_postsize_h, z-fence_postsize, x-fence_postsize_h, z-.5f, slat_start+fence_top_slat_offset+fence_slat_height, 2, 6, 14, 0, true);
 		}
-		else if (adj_id > -1 && blockArray[adj_id] != null && blockArray[adj_id].type == BLOCK_TYPE.FENCE_GATE)
+		else if (adj_id > -1 && this.meshConfig.blockArray[adj_id] != null && this.meshConfig.blockArray[adj_id].type == BLOCK_TYPE.FENCE_GATE)
 		{
 			// Fence Gate to the North
 			adj_data = this.getAdjNorthBlockData(xxx, yyy, zzz);
@@ -2563,7 +3039,7 @@ public abstract class Chunk {
 
 		// Check for adjacent fence gates in the +z direction
 		adj_id = this.getAdjBlockId(xxx, yyy, zzz, FACING.SOUTH, blockOffset);
-		if (adj_id > -1 && blockArray[adj_id] != null && blockArray[adj_id].type == BLOCK_TYPE.FENCE_GATE)
+		if (adj_id > -1 && this.meshConfig.blockArray[adj_id] != null && this.meshConfig.blockArray[adj_id].type == BLOCK_TYPE.FENCE_GATE)
 		{
 			// Fence Gate to the South
 			adj_data = this.getAdjSouthBlockData(xxx, yyy, zzz);
@@ -2637,18 +3113,18 @@ public abstract class Chunk {
 		int dir = (data & 0x3);
 
 		// GL stuff; only draw one way
-		GL11.glPushMatrix();
-		GL11.glTranslatef(x, y, z);
+		this.mesh.glPushMatrix();
+		this.mesh.glTranslatef(x, y, z);
 		switch (dir)
 		{
 			case 1:
-				GL11.glRotatef(270f, 0f, 1f, 0f);
+				this.mesh.glRotatef(270f, 0f, 1f, 0f);
 				break;
 			case 2:
-				GL11.glRotatef(180f, 0f, 1f, 0f);
+				this.mesh.glRotatef(180f, 0f, 1f, 0f);
 				break;
 			case 3:
-				GL11.glRotatef(90f, 0f, 1f, 0f);
+				this.mesh.glRotatef(90f, 0f, 1f, 0f);
 				break;
 			case 0:
 			default:
@@ -2732,7 +3208,7 @@ public abstract class Chunk {
 		}
 
 		// aaand pop our GL matrix
-		GL11.glPopMatrix();
+		this.mesh.glPopMatrix();
 	}
 
 	/**
@@ -2854,11 +3330,11 @@ public abstract class Chunk {
 		{
 			return true;
 		}
-		if (blockArray[block] == null)
+		if (this.meshConfig.blockArray[block] == null)
 		{
 			return false;
 		}
-		return !blockArray[block].isSolid();
+		return !this.meshConfig.blockArray[block].isSolid();
 	}
 
 	/**
@@ -2870,11 +3346,11 @@ public abstract class Chunk {
 		if(block <= 0) {
 			return false;
 		}
-		if (blockArray[block] == null)
+		if (this.meshConfig.blockArray[block] == null)
 		{
 			return false;
 		}
-		return blockArray[block].isSolid();
+		return this.meshConfig.blockArray[block].isSolid();
 	}
 	
 	/**
@@ -2901,29 +3377,29 @@ public abstract class Chunk {
 		float TEX_PISTON = TEX128*3f;
 
 		// Use GL to rotate these properly
-		GL11.glPushMatrix();
-		GL11.glTranslatef(x, y, z);
+		this.mesh.glPushMatrix();
+		this.mesh.glTranslatef(x, y, z);
 
 		// This routine draws the piston facing south, which is direction value 3
 		if (direction == 1)
 		{
 			// Up
-			GL11.glRotatef(-90f, 1f, 0f, 0f);
+			this.mesh.glRotatef(-90f, 1f, 0f, 0f);
 		}
 		else if (direction == 2)
 		{
 			// North
-			GL11.glRotatef(180f, 0f, 1f, 0f);
+			this.mesh.glRotatef(180f, 0f, 1f, 0f);
 		}
 		else if (direction == 4)
 		{
 			// West
-			GL11.glRotatef(-90f, 0f, 1f, 0f);
+			this.mesh.glRotatef(-90f, 0f, 1f, 0f);
 		}
 		else if (direction == 5)
 		{
 			// East
-			GL11.glRotatef(90f, 0f, 1f, 0f);
+			this.mesh.glRotatef(90f, 0f, 1f, 0f);
 		}
 
 		// First the main body bit
@@ -2939,12 +3415,12 @@ public abstract class Chunk {
 			renderVertical(block.texture_extra_map.get("front")+tex_offset, -.49f, .25f, .49f, .25f, -.49f, .98f);
 
 			// Pop the matrix after
-			GL11.glPopMatrix();
+			this.mesh.glPopMatrix();
 		}
 		else
 		{
 			// Pop the matrix before
-			GL11.glPopMatrix();
+			this.mesh.glPopMatrix();
 
 			renderPistonHead(block.texture_extra_map.get("head")+tex_offset, xxx, yyy, zzz, BLOCK_PISTON_HEAD, tex_offset,
 					true, (block.id == BLOCK_PISTON_STICKY_BODY.id));
@@ -2984,29 +3460,29 @@ public abstract class Chunk {
 		float side_tex_y = precalcSpriteSheetToTextureY[block.texture_extra_map.get("body")+tex_offset];
 
 		// Matrix stuff
-		GL11.glPushMatrix();
-		GL11.glTranslatef(x, y, z);
+		this.mesh.glPushMatrix();
+		this.mesh.glTranslatef(x, y, z);
 
 		// This routine draws the piston facing south, which is direction value 3
 		if (direction == 1)
 		{
 			// Up
-			GL11.glRotatef(-90f, 1f, 0f, 0f);
+			this.mesh.glRotatef(-90f, 1f, 0f, 0f);
 		}
 		else if (direction == 2)
 		{
 			// North
-			GL11.glRotatef(180f, 0f, 1f, 0f);
+			this.mesh.glRotatef(180f, 0f, 1f, 0f);
 		}
 		else if (direction == 4)
 		{
 			// West
-			GL11.glRotatef(-90f, 0f, 1f, 0f);
+			this.mesh.glRotatef(-90f, 0f, 1f, 0f);
 		}
 		else if (direction == 5)
 		{
 			// East
-			GL11.glRotatef(90f, 0f, 1f, 0f);
+			this.mesh.glRotatef(90f, 0f, 1f, 0f);
 		}
 
 		// Outside edges
@@ -3046,7 +3522,7 @@ public abstract class Chunk {
 		renderVertical(textureId, -.49f, .49f, .49f, .49f, -.49f, .98f);
 
 		// Pop the matrix
-		GL11.glPopMatrix();
+		this.mesh.glPopMatrix();
 	}
 	
 	/**
@@ -3100,8 +3576,8 @@ public abstract class Chunk {
 		float actual_width = (6f-(float)bites_eaten)/6f;
 
 		// Use GL to rotate these properly
-		GL11.glPushMatrix();
-		GL11.glTranslatef(x, y, z);
+		this.mesh.glPushMatrix();
+		this.mesh.glTranslatef(x, y, z);
 
 		// Note that cake will always be eaten from the West
 		// Knowing that, draw the east face, first
@@ -3135,7 +3611,7 @@ public abstract class Chunk {
 				0f);
 
 		// Pop the matrix
-		GL11.glPopMatrix();
+		this.mesh.glPopMatrix();
 	}
 	
 	/**
@@ -3274,8 +3750,8 @@ public abstract class Chunk {
 		byte orientation = getData(xxx, yyy, zzz);
 
 		// Use GL to rotate these properly
-		GL11.glPushMatrix();
-		GL11.glTranslatef(x, y, z);
+		this.mesh.glPushMatrix();
+		this.mesh.glTranslatef(x, y, z);
 
 		// Find out if we have adjacent chests, and rotate.  Our "have_right" and
 		// "have_left" booleans are a little bit at odds with the orientation of the
@@ -3289,19 +3765,19 @@ public abstract class Chunk {
 				// Facing West
 				have_right = (getAdjBlockId(xxx, yyy, zzz, FACING.SOUTH, blockOffset) == block.id);
 				have_left = (getAdjBlockId(xxx, yyy, zzz, FACING.NORTH, blockOffset) == block.id);
-				GL11.glRotatef(270f, 0f, 1f, 0f);
+				this.mesh.glRotatef(270f, 0f, 1f, 0f);
 				break;
 			case 5:
 				// Facing East
 				have_right = (getAdjBlockId(xxx, yyy, zzz, FACING.NORTH, blockOffset) == block.id);
 				have_left = (getAdjBlockId(xxx, yyy, zzz, FACING.SOUTH, blockOffset) == block.id);
-				GL11.glRotatef(90f, 0f, 1f, 0f);
+				this.mesh.glRotatef(90f, 0f, 1f, 0f);
 				break;
 			case 2:
 				// Facing North
 				have_right = (getAdjBlockId(xxx, yyy, zzz, FACING.WEST, blockOffset) == block.id);
 				have_left = (getAdjBlockId(xxx, yyy, zzz, FACING.EAST, blockOffset) == block.id);
-				GL11.glRotatef(180f, 0f, 1f, 0f);
+				this.mesh.glRotatef(180f, 0f, 1f, 0f);
 				break;
 			case 3:
 			default:
@@ -3340,7 +3816,7 @@ public abstract class Chunk {
 		}
 
 		// Pop the matrix
-		GL11.glPopMatrix();
+		this.mesh.glPopMatrix();
 	}
 
 	
@@ -3379,16 +3855,16 @@ public abstract class Chunk {
 				short adjblock;
 				// Stems will prefer: West, East, North, South
 				adjblock = getAdjBlockId(xxx,yyy,zzz,FACING.WEST,blockOffset);
-				if (adjblock > 0 && blockArray[adjblock] != null &&
-						blockArray[adjblock].idStr.equals(nameparts[0]))
+				if (adjblock > 0 && this.meshConfig.blockArray[adjblock] != null &&
+						this.meshConfig.blockArray[adjblock].idStr.equals(nameparts[0]))
 				{
 					connected = true;
 				}
 				if (!connected)
 				{
 					adjblock = getAdjBlockId(xxx,yyy,zzz,FACING.EAST,blockOffset);
-					if (adjblock > 0 && blockArray[adjblock] != null &&
-							blockArray[adjblock].idStr.equals(nameparts[0]))
+					if (adjblock > 0 && this.meshConfig.blockArray[adjblock] != null &&
+							this.meshConfig.blockArray[adjblock].idStr.equals(nameparts[0]))
 					{
 						connected = true;
 						rotate = 180f;
@@ -3397,8 +3873,8 @@ public abstract class Chunk {
 				if (!connected)
 				{
 					adjblock = getAdjBlockId(xxx,yyy,zzz,FACING.NORTH,blockOffset);
-					if (adjblock > 0 && blockArray[adjblock] != null &&
-							blockArray[adjblock].idStr.equals(nameparts[0]))
+					if (adjblock > 0 && this.meshConfig.blockArray[adjblock] != null &&
+							this.meshConfig.blockArray[adjblock].idStr.equals(nameparts[0]))
 					{
 						connected = true;
 						rotate = 270f;
@@ -3407,8 +3883,8 @@ public abstract class Chunk {
 				if (!connected)
 				{
 					adjblock = getAdjBlockId(xxx,yyy,zzz,FACING.SOUTH,blockOffset);
-					if (adjblock > 0 && blockArray[adjblock] != null &&
-							blockArray[adjblock].idStr.equals(nameparts[0]))
+					if (adjblock > 0 && this.meshConfig.blockArray[adjblock] != null &&
+							this.meshConfig.blockArray[adjblock].idStr.equals(nameparts[0]))
 					{
 						connected = true;
 						rotate = 90f;
@@ -3420,7 +3896,7 @@ public abstract class Chunk {
 		if (connected)
 		{
 			int curve_tex = block.texture_extra_map.get("curve")+tex_offset;
-			TextureDecorationStats stats = XRay.decorationStats.get(curve_tex % 256);
+			TextureDecorationStats stats = this.meshConfig.getDecorationStats(curve_tex % 256);
 			float tex_begin_x = precalcSpriteSheetToTextureX[curve_tex] + stats.getTexLeft();
 			float tex_begin_y = precalcSpriteSheetToTextureY[curve_tex] + stats.getTexTop();
 			float tex_width = stats.getTexWidth();
@@ -3430,16 +3906,16 @@ public abstract class Chunk {
 			float height = stats.getHeight();
 
 			// Use GL to rotate these properly
-			GL11.glPushMatrix();
-			GL11.glTranslatef(x, y, z);
-			GL11.glRotatef(rotate, 0f, 1f, 0f);
+			this.mesh.glPushMatrix();
+			this.mesh.glTranslatef(x, y, z);
+			this.mesh.glRotatef(rotate, 0f, 1f, 0f);
 
 			this.renderNonstandardVertical(tex_begin_x, tex_begin_y, tex_width, tex_height,
 				-.5f, -.5f+height, 0f,
 				-.5f+width, -.5f, 0f);
 
 			// Pop the matrix
-			GL11.glPopMatrix();
+			this.mesh.glPopMatrix();
 		}
 		else
 		{
@@ -3477,8 +3953,8 @@ public abstract class Chunk {
 			data = 3;
 		}
 
-		GL11.glPushMatrix();
-		GL11.glTranslatef(x, y, z);
+		this.mesh.glPushMatrix();
+		this.mesh.glTranslatef(x, y, z);
 
 		int inside_tex = block.texture_extra_map.get("inside")+tex_offset;
 
@@ -3506,7 +3982,7 @@ public abstract class Chunk {
 		// Top
 		renderHorizontal(block.texture_extra_map.get("top")+tex_offset, edge, edge, -edge, -edge, height-.5f);
 
-		GL11.glPopMatrix();
+		this.mesh.glPopMatrix();
 	}
 	
 	/**
@@ -3529,8 +4005,8 @@ public abstract class Chunk {
 		float height = .75f;
 		float bottom = -.5f;
 
-		GL11.glPushMatrix();
-		GL11.glTranslatef(x, y, z);
+		this.mesh.glPushMatrix();
+		this.mesh.glTranslatef(x, y, z);
 
 		int side_tex = block.texture_extra_map.get("sides") + tex_offset;
 
@@ -3549,7 +4025,7 @@ public abstract class Chunk {
 		renderVertical(side_tex, edge, edge, edge, -edge, bottom, height, 16, 12, 0, 4);
 		renderVertical(side_tex, -edge, edge, -edge, -edge, bottom, height, 16, 12, 0, 4);
 
-		GL11.glPopMatrix();
+		this.mesh.glPopMatrix();
 	}
 
 	/**
@@ -3562,15 +4038,15 @@ public abstract class Chunk {
 		{
 			return true;
 		}
-		if (blockArray[adj_block] == null)
+		if (this.meshConfig.blockArray[adj_block] == null)
 		{
 			return true;
 		}
-		if (blockArray[adj_block].isSolid())
+		if (this.meshConfig.blockArray[adj_block].isSolid())
 		{
 			return false;
 		}
-		if (blockArray[adj_block].type == BLOCK_TYPE.HALFHEIGHT)
+		if (this.meshConfig.blockArray[adj_block].type == BLOCK_TYPE.HALFHEIGHT)
 		{
 			return (top != ((adj_data & 0x8) == 0x8));
 		}
@@ -3638,8 +4114,8 @@ public abstract class Chunk {
 			{
 				short top_block = getAdjBlockId(xxx, yyy, zzz, FACING.TOP, blockOffset);
 				render_top = (top_block == 0 ||
-						(top_block > 0 && blockArray[top_block] != null &&
-						 !blockArray[top_block].isSolid()));
+						(top_block > 0 && this.meshConfig.blockArray[top_block] != null &&
+						 !this.meshConfig.blockArray[top_block].isSolid()));
 			}
 		}
 		else
@@ -3647,7 +4123,7 @@ public abstract class Chunk {
 			if (y > 0)
 			{
 				short bottom = getAdjBlockId(xxx, yyy, zzz, FACING.BOTTOM, blockOffset);
-				render_bottom = (bottom == 0 || (bottom > 0 && blockArray[bottom] != null && !blockArray[bottom].isSolid()));
+				render_bottom = (bottom == 0 || (bottom > 0 && this.meshConfig.blockArray[bottom] != null && !this.meshConfig.blockArray[bottom].isSolid()));
 			}
 		}
 
@@ -3693,7 +4169,7 @@ public abstract class Chunk {
 		adj = getAdjBlockId(xxx, yyy, zzz, FACING.NORTH, blockOffset);
 		if (adj != blockId)
 		{
-			if (adj > 0 && blockArray[adj] != null && blockArray[adj].type == BLOCK_TYPE.HALFHEIGHT)
+			if (adj > 0 && this.meshConfig.blockArray[adj] != null && this.meshConfig.blockArray[adj].type == BLOCK_TYPE.HALFHEIGHT)
 			{
 				this.renderVertical(textureId, x-.5f, z-.5f, x+.5f, z-.5f, y, .5f, 16, 8, 0, 0);
 				this.renderVertical(textureId, x-.5f, z-.5f, x+.5f, z-.5f, y-.5f, .5f, 16, 8, 0, 8);
@@ -3706,7 +4182,7 @@ public abstract class Chunk {
 		adj = getAdjBlockId(xxx, yyy, zzz, FACING.SOUTH, blockOffset);
 		if (adj != blockId)
 		{
-			if (adj > 0 && blockArray[adj] != null && blockArray[adj].type == BLOCK_TYPE.HALFHEIGHT)
+			if (adj > 0 && this.meshConfig.blockArray[adj] != null && this.meshConfig.blockArray[adj].type == BLOCK_TYPE.HALFHEIGHT)
 			{
 				this.renderVertical(textureId, x-.5f, z+.5f, x+.5f, z+.5f, y, .5f, 16, 8, 0, 0);
 				this.renderVertical(textureId, x-.5f, z+.5f, x+.5f, z+.5f, y-.5f, .5f, 16, 8, 0, 8);
@@ -3719,7 +4195,7 @@ public abstract class Chunk {
 		adj = getAdjBlockId(xxx, yyy, zzz, FACING.WEST, blockOffset);
 		if (adj != blockId)
 		{
-			if (adj > 0 && blockArray[adj] != null && blockArray[adj].type == BLOCK_TYPE.HALFHEIGHT)
+			if (adj > 0 && this.meshConfig.blockArray[adj] != null && this.meshConfig.blockArray[adj].type == BLOCK_TYPE.HALFHEIGHT)
 			{
 				this.renderVertical(textureId, x-.5f, z+.5f, x-.5f, z-.5f, y, .5f, 16, 8, 0, 0);
 				this.renderVertical(textureId, x-.5f, z+.5f, x-.5f, z-.5f, y-.5f, .5f, 16, 8, 0, 8);
@@ -3732,7 +4208,7 @@ public abstract class Chunk {
 		adj = getAdjBlockId(xxx, yyy, zzz, FACING.EAST, blockOffset);
 		if (adj != blockId)
 		{
-			if (adj > 0 && blockArray[adj] != null && blockArray[adj].type == BLOCK_TYPE.HALFHEIGHT)
+			if (adj > 0 && this.meshConfig.blockArray[adj] != null && this.meshConfig.blockArray[adj].type == BLOCK_TYPE.HALFHEIGHT)
 			{
 				this.renderVertical(textureId, x+.5f, z+.5f, x+.5f, z-.5f, y, .5f, 16, 8, 0, 0);
 				this.renderVertical(textureId, x+.5f, z+.5f, x+.5f, z-.5f, y-.5f, .5f, 16, 8, 0, 8);
@@ -3811,8 +4287,8 @@ public abstract class Chunk {
 		int tex_bottom = block.texture_extra_map.get("bottom")+tex_offset;
 		int tex_eye = block.texture_extra_map.get("eye")+tex_offset;
 
-		GL11.glPushMatrix();
-		GL11.glTranslatef(x, y, z);
+		this.mesh.glPushMatrix();
+		this.mesh.glTranslatef(x, y, z);
 
 		// First draw the base, regardless of eye state
 		adj = getAdjBlockId(xxx, yyy, zzz, FACING.WEST, blockOffset);
@@ -3848,7 +4324,7 @@ public abstract class Chunk {
 			renderHorizontal(tex_eye, -eye_side, -eye_side, eye_side, eye_side, side, 8, 8, 4, 4, false);
 		}
 
-		GL11.glPopMatrix();
+		this.mesh.glPopMatrix();
 	}
 	
 	/**
@@ -3876,7 +4352,7 @@ public abstract class Chunk {
 		float nine = .5625f;
 		float postheight = .875f;
 
-		TextureDecorationStats stats = XRay.decorationStats.get(textureId % 256);
+		TextureDecorationStats stats = this.meshConfig.getDecorationStats(textureId % 256);
 		if (stats == null)
 		{
 			return;
@@ -3904,8 +4380,8 @@ public abstract class Chunk {
 		if ((data & 0x2) == 0x2) { potion_0x2 = true; }
 		if ((data & 0x4) == 0x4) { potion_0x4 = true; }
 
-		GL11.glPushMatrix();
-		GL11.glTranslatef(x, y, z);
+		this.mesh.glPushMatrix();
+		this.mesh.glTranslatef(x, y, z);
 
 		// Center post
 		renderVertical(textureId, one, one, -one, one, -eight, postheight, 2, 14, 7, 2);
@@ -3981,7 +4457,7 @@ public abstract class Chunk {
 				dist, potion_abs_bottom, -dist);
 		}
 
-		GL11.glPopMatrix();
+		this.mesh.glPopMatrix();
 	}
 
 	/**
@@ -4004,8 +4480,8 @@ public abstract class Chunk {
 		float height = .75f;
 		float sides = .4375f;
 
-		GL11.glPushMatrix();
-		GL11.glTranslatef(x, y, z);
+		this.mesh.glPushMatrix();
+		this.mesh.glTranslatef(x, y, z);
 
 		// Sides
 		renderVertical(textureId, -sides, -sides, sides, -sides, bottom, height, 14, 12, 1, 4);
@@ -4017,51 +4493,103 @@ public abstract class Chunk {
 		renderHorizontal(textureId, -sides, -sides, sides, sides, top, 14, 14, 1, 1, false);
 		renderHorizontal(textureId, -sides, -sides, sides, sides, bottom_base, 14, 14, 1, 1, false);
 
-		GL11.glPopMatrix();
+		this.mesh.glPopMatrix();
 	}
 
-	public void renderWorldSolids(int sheet)
-	{
-		renderWorld(RENDER_PASS.SOLIDS, sheet, null);
-	}
-
-	public void renderWorldNonstandard(int sheet)
+	/**
+	 * Meshes all the sub-meshes of the given type for a section.  We first build
+	 * the geometry which doesn't depend on any toggles at all, keeping track of
+	 * which combinations of toggles affected the blocks we skipped over.  Then
+	 * for each of those combinations we build a sub-mesh for every state that
+	 * those toggles could be in.  The "gating" toggles (water, bedrock) just turn
+	 * geometry on or off, so we only need to build their "on" state.
+	 *
+	 * @param job The job we're building for
+	 * @param work The section we're building
+	 * @param sheet Which texture sheet are we currently rendering?
+	 * @param pass What pass of rendering are we processing?
+	 * @param listType Which of the ChunkSection.LIST_* types we're building
+	 * @param snapshot Snapshot of the section we're rendering
+	 */
+	private void compileSubMeshes(MeshJob job, MeshJob.SectionWork work, int sheet, RENDER_PASS pass, int listType,
+			ChunkSnapshot snapshot)
 	{
-		renderWorld(RENDER_PASS.NONSTANDARD, sheet, null);
-	}
+		this.compileSubMesh(job, work, sheet, pass, listType, snapshot, 0, 0);
+		long seen = this.affectMasksSeen;
+		int gating;
+		int value;
+		for (int affect = 1; affect < XRay.RenderToggles.MESH_COMBINATIONS; affect++)
+		{
+			if ((seen & (1L << affect)) == 0)
+			{
+				continue;
+			}
 
-	public void renderWorldGlass(int sheet)
-	{
-		renderWorld(RENDER_PASS.GLASS, sheet, null);
+			// Loop through every subset of our affecting toggles
+			gating = affect & XRay.RenderToggles.MESH_GATING;
+			value = affect;
+			while (true)
+			{
+				if ((value & gating) == gating)
+				{
+					this.compileSubMesh(job, work, sheet, pass, listType, snapshot, affect, value);
+				}
+				if (value == 0)
+				{
+					break;
+				}
+				value = (value - 1) & affect;
+			}
+		}
 	}
 
-	public void renderWorldSelected(int sheet, boolean[] selectedMap)
+	/**
+	 * Meshes a single sub-mesh for a section, only keeping it around if we
+	 * actually drew anything into it.
+	 */
+	private void compileSubMesh(MeshJob job, MeshJob.SectionWork work, int sheet, RENDER_PASS pass, int listType,
+			ChunkSnapshot snapshot, int affectMask, int valueMask)
 	{
-		renderWorld(RENDER_PASS.SELECTED, sheet, selectedMap);
+		this.mesh = new MeshBuffer();
+		if (renderWorld(pass, sheet, snapshot, job.selectedMap, affectMask, valueMask))
+		{
+			job.addResult(work, sheet, listType, affectMask, valueMask, this.mesh);
+		}
 	}
 	
 	/**
-	 * Renders our chunk.
+	 * Renders a single section of our chunk.  Only blocks whose rendering is
+	 * affected by exactly the toggles in affectMask are drawn, as they would
+	 * look with those toggles set as in valueMask.
 	 * 
 	 * @param pass What pass of rendering are we processing?
 	 * @param sheet Which texture sheet are we currently rendering?
+	 * @param snapshot Snapshot of the section of the chunk we're rendering
 	 * @param selectedMap If in RENDER_PASS.SELECTED, here's a HashMap to which ones to highlight.
+	 * @param affectMask Which XRay.RenderToggles.MESH_* toggles we're building for
+	 * @param valueMask The state of those toggles
+	 * @return Whether we actually drew anything
 	 */
-	public void renderWorld(RENDER_PASS pass, int sheet, boolean[] selectedMap) {
+	public boolean renderWorld(RENDER_PASS pass, int sheet, ChunkSnapshot snapshot, boolean[] selectedMap,
+			int affectMask, int valueMask) {
+
+		this.snapshot = snapshot;
+		this.meshToggles = valueMask;
+		this.affectMasksSeen = 0;
 
-		float worldX = this.x*16;
-		float worldZ = this.z*16;
-		
 		boolean draw = false;
+		boolean drewAnything = false;
 		int tex_offset = 0;
-		BlockType block;
-		boolean highlightingOres = (XRay.toggle.highlightOres != XRay.HIGHLIGHT_TYPE.OFF);
+		int affect;
+		BlockRenderDescriptor desc;
+		boolean highlightingOres = this.meshHighlighting;
+		int passIdx = pass.ordinal();
 		short t;
-		int xOff, zOff, blockOffset;
-		int x, y, z;
+		short adj;
 		int textureId;
 		byte data;
-		int north_t, south_t, west_t, east_t, top_t, bottom_t;
+		SheetAtlas atlas = this.meshConfig.atlas;
+		int atlasSheet = -1;
 
 		// This is to support dynamically highlighting "regular" blocks based on their
 		// face.  It's quite slow to do the tinting down at the bottom on a per-block
@@ -4071,11 +4599,11 @@ public abstract class Chunk {
 		FACING[] facingPasses;
 		if (pass == RENDER_PASS.SOLIDS || pass == RENDER_PASS.SELECTED)
 		{
-			facingPasses = new FACING[] { FACING.TOP, FACING.BOTTOM, FACING.NORTH, FACING.SOUTH, FACING.WEST, FACING.EAST };
+			facingPasses = ALL_FACING_PASSES;
 		}
 		else
 		{
-			facingPasses = new FACING[] { FACING.TOP };
+			facingPasses = TOP_FACING_PASS;
 		}
 
 		for (FACING facingPass :  facingPasses)
@@ -4087,104 +4615,69 @@ public abstract class Chunk {
 				switch (facingPass)
 				{
 					case TOP:
-						GL11.glColor3f(1f, 1f, 1f);
+						this.mesh.glColor3f(1f, 1f, 1f);
 						break;
 					case BOTTOM:
-						GL11.glColor3f(.5f, .5f, .5f);
+						this.mesh.glColor3f(.5f, .5f, .5f);
 						break;
 					case WEST:
 					case EAST:
-						GL11.glColor3f(.83f, .83f, .83f);
+						this.mesh.glColor3f(.83f, .83f, .83f);
 						break;
 					case NORTH:
 					case SOUTH:
-						GL11.glColor3f(.66f, .66f, .66f);
+						this.mesh.glColor3f(.66f, .66f, .66f);
 						break;
 				}
 			}
 		
-			this.rewindLoop();
-			t = 0;
-			while (t != -2)
+			for (int blockIdx = 0; blockIdx < 4096; blockIdx++)
 			{
-				// Grab our block type
-				t = this.nextBlock();
+				// Grab our block type.  lOffset is an offset into our snapshot.
+				this.lx = blockIdx & 15;
+				this.lz = (blockIdx >> 4) & 15;
+				this.ly = snapshot.baseY + (blockIdx >> 8);
+				this.lOffset = ChunkSnapshot.index(this.lx, blockIdx >> 8, this.lz);
+				t = snapshot.getBlockId(this.lOffset);
 				if(t < 1) {
 					continue;
 				}
 
-				// Get the actual BlockType object
-				block = blockArray[t];
-				if (block == null)
-				{
-					//XRay.logger.debug("Unknown block ID: " + t);
-					block = BLOCK_UNKNOWN;
-				}
-
-				// Check our texture sheet
-				if (sheet != block.getTexSheet())
+				// Get the render descriptor for this block, and check to see if
+				// it belongs in this pass at all
+				desc = this.meshConfig.descriptors[t];
+				if ((sheet != ATLAS_SHEET && desc.texSheet != sheet) || !desc.inPass[passIdx] || desc.baseTexture == -1)
 				{
 					continue;
 				}
-				
-				// Doublecheck for water
-				if ((pass != RENDER_PASS.NONSTANDARD && block.type == BLOCK_TYPE.WATER) ||
-						(!XRay.toggle.render_water && block.type == BLOCK_TYPE.WATER))
-				{
-					continue;
-				}
-
-				// Doublecheck for glass stuffs
-				if ((pass == RENDER_PASS.GLASS && (block.type != BLOCK_TYPE.GLASS && block.type != BLOCK_TYPE.SOLID_PANE)) ||
-						(pass != RENDER_PASS.SELECTED &&
-						 pass != RENDER_PASS.GLASS && (block.type == BLOCK_TYPE.GLASS || block.type == BLOCK_TYPE.SOLID_PANE)))
-				{
-					continue;
-				}
-				
-				// Grab our texture ID and verify it
-				textureId = block.tex_idx;
-				if(textureId == -1) {
-					//XRay.logger.debug("Unknown block id: " + t);
-					continue;
-				}
+				affect = desc.toggleAffect;
 				
 				// Set up our intitial drawing parameters
 				switch (pass)
 				{
 					case SOLIDS:
-						if (!block.isSolid())
+						// Check for adjacent blocks.  Bedrock faces against other solid
+						// blocks only get drawn when render_bedrock is on.
+						adj = getAdjBlockId(this.lx, this.ly, this.lz, facingPass, this.lOffset);
+						if (checkSolid(adj))
 						{
-							continue;
+							draw = true;
 						}
-						draw = false;
-
-						// Check for adjacent blocks
-						draw = checkSolid(getAdjBlockId(this.lx, this.ly, this.lz, facingPass, this.lOffset))
-							|| (
-								XRay.toggle.render_bedrock
-								&& t == BLOCK_BEDROCK.id
-								&& getAdjBlockId(this.lx, this.ly, this.lz, facingPass, this.lOffset) != BLOCK_BEDROCK.id);
-						break;
-
-					case NONSTANDARD:
-						if (block.isSolid())
+						else if (t == BLOCK_BEDROCK.id && adj != BLOCK_BEDROCK.id)
 						{
-							continue;
+							draw = true;
+							affect |= XRay.RenderToggles.MESH_BEDROCK;
+						}
+						else
+						{
+							draw = false;
 						}
-						draw = true;
-						break;
-
-					case GLASS:
-						// If we got here, our checks above would have made sure that we're
-						// only dealing with the proper materials.
-						draw = true;
 						break;
 
 					case SELECTED:
 						draw = false;
 						for(int i=0;i<selectedMap.length;i++) {
-							if(selectedMap[i] && level.HIGHLIGHT_ORES[i] == t) {
+							if(selectedMap[i] && this.meshConfig.highlightOres[i] == t) {
 								// TODO: should maybe check our boundaries for similar ores, like we do for regular blocks
 								draw = true;
 								break;
@@ -4193,416 +4686,71 @@ public abstract class Chunk {
 						break;
 
 					default:
-						// Should never get here
-						continue;
+						draw = true;
+						break;
 				}
 				
 				// Continue on to the actual rendering
 				if (draw)
 				{
-					// Check to see if this block type has a texture ID which changes depending
-					// on the block's data value
-					if (block.texture_data_map != null)
+					// Blocks next to a torch get the "highlighted" textures when
+					// we're highlighting explored regions
+					if (this.level.lightSources.check(this.x_chunkOffset + this.lx, this.ly, this.z_chunkOffset + this.lz))
 					{
-						data = getData(this.lx, this.ly, this.lz);
-						data &= block.tex_data_mask;
+						affect |= XRay.RenderToggles.MESH_EXPLORED;
+					}
 
-						// Now try to get the new texture
-						try
-						{
-							textureId = block.texture_data_map.get(data);
-						}
-						catch (NullPointerException e)
-						{
-							// Just report and continue
-							XRay.logger.debug("Unknown data value for block " + block.idStr + ": " + data);
-						}
+					// Only draw the blocks which belong in the sub-mesh we're building
+					this.affectMasksSeen |= (1L << affect);
+					if (affect != affectMask)
+					{
+						continue;
 					}
 
-					// If we're highlighting explored regions and there's an adjacent
-					// torch, flip over to the "highlighted" textures
-					if (XRay.toggle.highlight_explored)
+					// If we're rendering "selected" stuff without highlighting, the regular
+					// solid faces have already been drawn by the main pass.
+					if (desc.faceRenderer && pass == RENDER_PASS.SELECTED && !highlightingOres)
 					{
-						if (this.level.lightSources.check(this.x_chunkOffset + this.lx, this.ly, this.z_chunkOffset + this.lz))
-						{
-							textureId += 256;
-							tex_offset = 256;
-						}
-						else
-						{
-							tex_offset = 0;
-						}
+						continue;
+					}
+					drewAnything = true;
+
+					// Grab our texture, which may change depending on the block's data value
+					desc = desc.forToggles(valueMask);
+					data = snapshot.getData(this.lOffset);
+					textureId = desc.texByData[data & desc.dataMask];
+					if (!desc.dataKnown[data & desc.dataMask])
+					{
+						XRay.logger.debug("Unknown data value for block " + desc.block.idStr + ": " + data);
+					}
+					if ((valueMask & XRay.RenderToggles.MESH_EXPLORED) != 0)
+					{
+						tex_offset = 256;
 					}
 					else
 					{
 						tex_offset = 0;
 					}
+					textureId += tex_offset;
 
-					// Now process the actual drawing
-					switch(block.type)
+					// If we're building for the atlas, point our texture coordinates
+					// at whichever cell this block's sheet lives in
+					if (sheet == ATLAS_SHEET && desc.texSheet != atlasSheet)
 					{
-						case TORCH:
-							renderTorch(textureId,this.lx,this.ly,this.lz);
-							break;
-						case DECORATION_CROSS:
-							renderCrossDecoration(textureId,this.lx,this.ly,this.lz);
-							break;
-						case DECORATION_GRID:
-							renderGridDecoration(textureId,this.lx,this.ly,this.lz);
-							break;
-						case LADDER:
-							renderLadder(textureId,this.lx,this.ly,this.lz);
-							break;
-						case FLOOR:
-							renderFloor(textureId,this.lx,this.ly,this.lz);
-							break;
-						case MINECART_TRACKS:
-							renderMinecartTracks(textureId,this.lx,this.ly,this.lz,block,tex_offset);
-							break;
-						case SIMPLE_RAIL:
-							renderSimpleRail(textureId,this.lx,this.ly,this.lz,block,tex_offset);
-							break;
-						case PRESSURE_PLATE:
-							renderPlate(textureId,this.lx,this.ly,this.lz);
-							break;
-						case DOOR:
-							renderDoor(textureId,this.lx,this.ly,this.lz,block,tex_offset);
-							break;
-						case STAIRS:
-							renderStairs(textureId,this.lx,this.ly,this.lz,this.lOffset);
-							break;
-						case SIGNPOST:
-							renderSignpost(textureId,this.lx,this.ly,this.lz);
-							break;
-						case WALLSIGN:
-							renderWallSign(textureId,this.lx,this.ly,this.lz);
-							break;
-						case FENCE:
-							renderFence(textureId,this.lx,this.ly,this.lz,this.lOffset,t);
-							break;
-						case FENCE_GATE:
-							renderFenceGate(textureId,this.lx,this.ly,this.lz,this.lOffset);
-							break;
-						case LEVER:
-							renderLever(textureId,this.lx,this.ly,this.lz,block,tex_offset);
-							break;
-						case BUTTON:
-							renderButton(textureId,this.lx,this.ly,this.lz);
-							break;
-						case PORTAL:
-							renderPortal(textureId,this.lx,this.ly,this.lz,this.lOffset,t);
-							break;
-						case SNOW:
-							renderSnow(textureId,this.lx,this.ly,this.lz,this.lOffset,t);
-							break;
-						case BED:
-							renderBed(textureId,this.lx,this.ly,this.lz,block,tex_offset);
-							break;
-						case TRAPDOOR:
-							renderTrapdoor(textureId,this.lx,this.ly,this.lz);
-							break;
-						case PISTON_BODY:
-							renderPistonBody(textureId,this.lx,this.ly,this.lz,block,tex_offset);
-							break;
-						case PISTON_HEAD:
-							renderPistonHead(textureId,this.lx,this.ly,this.lz,block,tex_offset,false,false);
-							break;
-						case CAKE:
-							renderCake(textureId,this.lx,this.ly,this.lz,block,tex_offset);
-							break;
-						case VINE:
-							renderVine(textureId,this.lx,this.ly,this.lz,this.lOffset);
-							break;
-						case SOLID_PANE:
-							renderSolidPane(textureId,this.lx,this.ly,this.lz,this.lOffset,t);
-							break;
-						case CHEST:
-							renderChest(textureId,this.lx,this.ly,this.lz,this.lOffset,block,tex_offset);
-							break;
-						case STEM:
-							renderStem(textureId,this.lx,this.ly,this.lz,this.lOffset,block,tex_offset);
-							break;
-						case HALFHEIGHT:
-							renderHalfHeight(textureId,this.lx,this.ly,this.lz,this.lOffset);
-							break;
-						case CAULDRON:
-							renderCauldron(textureId,this.lx,this.ly,this.lz,this.lOffset,block,tex_offset);
-							break;
-						case ENCHANTMENT_TABLE:
-							renderEnchantmentTable(textureId,this.lx,this.ly,this.lz,this.lOffset,block,tex_offset);
-							break;
-						case BREWING_STAND:
-							renderBrewingStand(textureId,this.lx,this.ly,this.lz,block,tex_offset);
-							break;
-						case SEMISOLID:
-						case WATER:
-						case GLASS:
-							renderSemisolid(textureId,this.lx,this.ly,this.lz,this.lOffset,t);
-							break;
-						case END_PORTAL:
-							renderEndPortal(textureId,this.lx,this.ly,this.lz);
-							break;
-						case END_PORTAL_FRAME:
-							renderEndPortalFrame(textureId,this.lx,this.ly,this.lz,this.lOffset,block,tex_offset);
-							break;
-						case DRAGON_EGG:
-							renderDragonEgg(textureId,this.lx,this.ly,this.lz);
-							break;
-
-						case NORMAL:
-						case HUGE_MUSHROOM:
-						default:
-							north_t = textureId;
-							south_t = textureId;
-							west_t = textureId;
-							east_t = textureId;
-							top_t = textureId;
-							bottom_t = textureId;
-
-							// Huge Mushrooms are special-case since keeping the data in YAML seemed
-							// like far too much work at the time. Keeping them there does technically
-							// make more sense, so we should do that eventually.
-							// TODO: That ^
-							if (block.type == BLOCK_TYPE.HUGE_MUSHROOM)
-							{
-								int TEX_HUGE_MUSHROOM_PORES = block.texture_extra_map.get("pores");
-								int TEX_HUGE_MUSHROOM_STEM = block.texture_extra_map.get("stem");
-								data = getData(this.lx, this.ly, this.lz);
-								switch (data)
-								{
-									case 0:
-										west_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										east_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										south_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										north_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										top_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										bottom_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										break;
-									case 1:
-										east_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										south_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										bottom_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										break;
-									case 2:
-										west_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										east_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										south_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										bottom_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										break;
-									case 3:
-										west_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										south_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										bottom_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										break;
-									case 4:
-										east_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										south_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										north_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										bottom_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										break;
-									case 5:
-										west_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										east_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										south_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										north_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										bottom_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										break;
-									case 6:
-										west_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										south_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										north_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										bottom_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										break;
-									case 7:
-										east_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										north_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										bottom_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										break;
-									case 8:
-										west_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										east_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										north_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										bottom_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										break;
-									case 9:
-										west_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										north_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										bottom_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										break;
-									case 10:
-										west_t = TEX_HUGE_MUSHROOM_STEM + tex_offset;
-										east_t = TEX_HUGE_MUSHROOM_STEM + tex_offset;
-										south_t = TEX_HUGE_MUSHROOM_STEM + tex_offset;
-										north_t = TEX_HUGE_MUSHROOM_STEM + tex_offset;
-										top_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										bottom_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										break;
-									default:
-										west_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										east_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										south_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										north_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										top_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										bottom_t = TEX_HUGE_MUSHROOM_PORES + tex_offset;
-										break;
-								}
-							}
-
-							// Now assign the textures for each face, if we're supposed to
-							if (block.texture_dir_map != null)
-							{
-								data = getData(this.lx, this.ly, this.lz);
-								BlockType.DIRECTION_ABS dir;
-								if (block.texture_dir_data_map != null && block.texture_dir_data_map.containsKey(data))
-								{
-									dir = block.texture_dir_data_map.get(data);
-								}
-								else
-								{
-									dir = BlockType.DIRECTION_ABS.NORTH;
-								}
-
-								switch (dir)
-								{
-									case NORTH:
-										switch (facingPass)
-										{
-											case NORTH:
-											case SOUTH:
-												if (block.texture_dir_map.containsKey(BlockType.DIRECTION_REL.FORWARD))
-												{
-													north_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.FORWARD) + tex_offset;
-												}
-												if (block.texture_dir_map.containsKey(BlockType.DIRECTION_REL.BACKWARD))
-												{
-													south_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.BACKWARD) + tex_offset;
-												}
-												break;
-											case WEST:
-											case EAST:
-												if (block.texture_dir_map.containsKey(BlockType.DIRECTION_REL.SIDES))
-												{
-													west_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.SIDES) + tex_offset;
-													east_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.SIDES) + tex_offset;
-												}
-												break;
-										}
-										break;
-									case SOUTH:
-										switch (facingPass)
-										{
-											case NORTH:
-											case SOUTH:
-												if (block.texture_dir_map.containsKey(BlockType.DIRECTION_REL.BACKWARD))
-												{
-													north_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.BACKWARD) + tex_offset;
-												}
-												if (block.texture_dir_map.containsKey(BlockType.DIRECTION_REL.FORWARD))
-												{
-													south_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.FORWARD) + tex_offset;
-												}
-												break;
-											case WEST:
-											case EAST:
-												if (block.texture_dir_map.containsKey(BlockType.DIRECTION_REL.SIDES))
-												{
-													west_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.SIDES) + tex_offset;
-													east_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.SIDES) + tex_offset;
-												}
-												break;
-										}
-										break;
-									case WEST:
-										switch (facingPass)
-										{
-											case NORTH:
-											case SOUTH:
-												if (block.texture_dir_map.containsKey(BlockType.DIRECTION_REL.SIDES))
-												{
-													north_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.SIDES) + tex_offset;
-													south_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.SIDES) + tex_offset;
-												}
-												break;
-											case WEST:
-											case EAST:
-												if (block.texture_dir_map.containsKey(BlockType.DIRECTION_REL.FORWARD))
-												{
-													west_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.FORWARD) + tex_offset;
-												}
-												if (block.texture_dir_map.containsKey(BlockType.DIRECTION_REL.BACKWARD))
-												{
-													east_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.BACKWARD) + tex_offset;
-												}
-												break;
-										}
-										break;
-									case EAST:
-										switch (facingPass)
-										{
-											case NORTH:
-											case SOUTH:
-												if (block.texture_dir_map.containsKey(BlockType.DIRECTION_REL.SIDES))
-												{
-													north_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.SIDES) + tex_offset;
-													south_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.SIDES) + tex_offset;
-												}
-												break;
-											case WEST:
-											case EAST:
-												if (block.texture_dir_map.containsKey(BlockType.DIRECTION_REL.BACKWARD))
-												{
-													west_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.BACKWARD) + tex_offset;
-												}
-												if (block.texture_dir_map.containsKey(BlockType.DIRECTION_REL.FORWARD))
-												{
-													east_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.FORWARD) + tex_offset;
-												}
-												break;
-										}
-										break;
-								}
-
-								// Top/Bottom doesn't depend on orientation, at least for anything currently in Minecraft.
-								// If Minecraft starts adding blocks that can be oriented Up or Down, we'll have to move
-								// this back into the case statement above
-								switch (facingPass)
-								{
-									case TOP:
-										if (block.texture_dir_map.containsKey(BlockType.DIRECTION_REL.TOP))
-										{
-											top_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.TOP) + tex_offset;
-										}
-										break;
-									case BOTTOM:
-										if (block.texture_dir_map.containsKey(BlockType.DIRECTION_REL.BOTTOM))
-										{
-											bottom_t = block.texture_dir_map.get(BlockType.DIRECTION_REL.BOTTOM) + tex_offset;
-										}
-										break;
-								}
-							}
-
-							int curTexture = 0;
-							switch(facingPass)
-							{
-							case TOP: curTexture = top_t; break;
-							case BOTTOM: curTexture = bottom_t; break;
-							case NORTH: curTexture = north_t; break;
-							case SOUTH: curTexture = south_t; break;
-							case EAST: curTexture = east_t; break;
-							case WEST: curTexture = west_t; break;
-							}
-
-							// Finally, we're to the point of actually rendering the solid
-							if(pass != RENDER_PASS.SELECTED || highlightingOres)
-							{
-								this.renderBlockFace(curTexture, worldX+this.lx, this.ly, worldZ+this.lz, facingPass);
-							}
-							break;
+						atlasSheet = desc.texSheet;
+						this.mesh.setTexTransform(atlas.getScaleU(), atlas.getOffsetU(atlasSheet),
+								atlas.getScaleV(), atlas.getOffsetV(atlasSheet));
 					}
+
+					// Now process the actual drawing
+					desc.renderer.render(this, desc, textureId, tex_offset,
+							this.lx, this.ly, this.lz, this.lOffset, t, data, facingPass);
 				}
 			}
 		}
+
+		this.snapshot = null;
+		return drewAnything;
 	}
 
 	/**
@@ -4614,10 +4762,21 @@ public abstract class Chunk {
 	}
 	
 	/**
-	 * Renders paintings into our world.  Paintings are stored as Entities, not
-	 * block-level data, so they have to be handled differently than everything else.
+	 * Renders paintings into our world.
 	 */
 	public void renderPaintings()
+	{
+		if (this.paintingList != -1)
+		{
+			XRay.renderBackend.glCallList(this.paintingList);
+		}
+	}
+	
+	/**
+	 * Builds our paintings.  Paintings are stored as Entities, not block-level
+	 * data, so they have to be handled differently than everything else.
+	 */
+	private void buildPaintings()
 	{
 		PaintingInfo info;
 		float start_x;
@@ -4712,56 +4871,64 @@ public abstract class Chunk {
 		}
 	}
 	
+	/**
+	 * Calls our solid lists for any of our visible sections.  The lists
+	 * themselves are built by MeshScheduler; see needsRebuild().
+	 */
 	public void renderSolid(int sheet) {
-		if (!this.usedTextureSheets.containsKey(sheet))
+		if (!this.usesSheet(sheet))
 		{
 			return;
 		}
-		if(isDirty.get(sheet)) {
-			GL11.glNewList(this.displayListNums.get(sheet), GL11.GL_COMPILE);
-			renderWorldSolids(sheet);
-			GL11.glEndList();
-			GL11.glNewList(this.nonstandardListNums.get(sheet), GL11.GL_COMPILE);
-			//GL11.glDepthMask(false);
-			renderWorldNonstandard(sheet);
-			//GL11.glDepthMask(true);
-			GL11.glEndList();
-			GL11.glNewList(this.glassListNums.get(sheet), GL11.GL_COMPILE);
-			renderWorldGlass(sheet);
-			GL11.glEndList();
-			this.isDirty.put(sheet, false);
-		}
-		GL11.glCallList(this.displayListNums.get(sheet));
+		for (ChunkSection section : this.sections)
+		{
+			if (section != null && section.usesSheet(sheet) && level.visibility.isVisible(section))
+			{
+				section.callLists(sheet, ChunkSection.LIST_SOLIDS, XRay.toggle.getMeshMask());
+			}
+		}
 	}
 	
 	public void renderNonstandard(int sheet) {
-		if (!this.usedTextureSheets.containsKey(sheet))
+		if (!this.usesSheet(sheet))
 		{
 			return;
 		}
-		GL11.glCallList(this.nonstandardListNums.get(sheet));
+		for (ChunkSection section : this.sections)
+		{
+			if (section != null && section.usesSheet(sheet) && level.visibility.isVisible(section))
+			{
+				section.callLists(sheet, ChunkSection.LIST_NONSTANDARD, XRay.toggle.getMeshMask());
+			}
+		}
 	}
 
 	public void renderGlass(int sheet) {
-		if (!this.usedTextureSheets.containsKey(sheet))
+		if (!this.usesSheet(sheet))
 		{
 			return;
 		}
-		GL11.glCallList(this.glassListNums.get(sheet));
+		for (ChunkSection section : this.sections)
+		{
+			if (section != null && section.usesSheet(sheet) && level.visibility.isVisible(section))
+			{
+				section.callLists(sheet, ChunkSection.LIST_GLASS, XRay.toggle.getMeshMask());
+			}
+		}
 	}
 	
-	public void renderSelected(int sheet, boolean[] selectedMap) {
-		if (!this.usedTextureSheets.containsKey(sheet))
+	public void renderSelected(int sheet) {
+		if (!this.usesSheet(sheet))
 		{
 			return;
 		}
-		if(isSelectedDirty.get(sheet)) {
-			GL11.glNewList(this.selectedDisplayListNums.get(sheet), GL11.GL_COMPILE);
-			renderWorldSelected(sheet, selectedMap);
-			GL11.glEndList();
-			this.isSelectedDirty.put(sheet, false);
+		for (ChunkSection section : this.sections)
+		{
+			if (section != null && section.usesSheet(sheet))
+			{
+				section.callLists(sheet, ChunkSection.LIST_SELECTED, XRay.toggle.getMeshMask());
+			}
 		}
-		GL11.glCallList(this.selectedDisplayListNums.get(sheet));
 	}
 
 	/**
@@ -4769,6 +4936,29 @@ public abstract class Chunk {
 	 * bound before we get in here.
 	 */
 	public void renderBorder()
+	{
+		if (this.borderList != -1)
+		{
+			XRay.renderBackend.glCallList(this.borderList);
+		}
+	}
+
+	/**
+	 * Renders a box around where a slime would spawn.  We don't check our own willSpawnSlimes
+	 * var here; that's controlled by the main XRay render loop.
+	 */
+	public void renderSlimeBox()
+	{
+		if (this.slimeBoxList != -1)
+		{
+			XRay.renderBackend.glCallList(this.slimeBoxList);
+		}
+	}
+
+	/**
+	 * Builds the border drawn around this chunk.
+	 */
+	private void buildBorder()
 	{
 		float x = this.x*16-.49f;
 		float z = this.z*16-.49f;
@@ -4782,10 +4972,9 @@ public abstract class Chunk {
 	}
 
 	/**
-	 * Renders a box around where a slime would spawn.  We don't check our own willSpawnSlimes
-	 * var here; that's controlled by the main XRay render loop.
+	 * Builds the box drawn around where a slime would spawn.
 	 */
-	public void renderSlimeBox()
+	private void buildSlimeBox()
 	{
 		float x = this.x*16-.48f;
 		float z = this.z*16-.48f;
@@ -4801,18 +4990,325 @@ public abstract class Chunk {
 	}
 
 	/**
-	 * "Rewinds" our looping over blocks.
+	 * Returns whether we have anything which MeshScheduler needs to rebuild:
+	 * dirty sections which are currently visible, dirty selected lists, or
+	 * our paintings/border/slime box lists if we haven't asked for them yet.
+	 * If a new RenderConfig has been published which changes our geometry,
+	 * the affected lists get marked dirty first.  Called from the GL thread.
+	 */
+	public boolean needsRebuild()
+	{
+		RenderConfig config = RenderConfig.getCurrent();
+		if (config != this.listConfig)
+		{
+			if (config.mainVersion != this.listConfig.mainVersion)
+			{
+				this.setDirty();
+			}
+			if (config.selectedVersion != this.listConfig.selectedVersion)
+			{
+				this.setSelectedDirty();
+			}
+			this.listConfig = config;
+		}
+		if (!this.extrasRequested)
+		{
+			return true;
+		}
+		for (ChunkSection section : this.sections)
+		{
+			if (section == null)
+			{
+				continue;
+			}
+			if (section.isSelectedDirty || (section.isDirty && level.visibility.isVisible(section)))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Creates a new, empty, rebuild job for this chunk
+	 */
+	public MeshJob createMeshJob(int epoch)
+	{
+		return new MeshJob(this, this.listGeneration, epoch);
+	}
+
+	/**
+	 * Returns the chunk at the given offset from us, if it's loaded.  Called
+	 * from the GL thread only.
+	 */
+	private Chunk getNeighbor(int dx, int dz)
+	{
+		Chunk other = level.getChunk(this.x + dx, this.z + dz);
+		if (other == null || other.x != this.x + dx || other.z != this.z + dz)
+		{
+			return null;
+		}
+		return other;
+	}
+
+	/**
+	 * Moves our current dirty state into the given job, clearing our own flags.
+	 * The job may already have work in it from an earlier request, in which
+	 * case we just add to it.  Our neighboring chunks are pinned into the job
+	 * as well, so that the worker never has to go looking in the level for
+	 * them.  Called from the GL thread.
+	 */
+	public void captureRebuild(MeshJob job, boolean[] selectedMap, boolean highlighting)
+	{
+		boolean main;
+		job.selectedMap = selectedMap.clone();
+		job.highlighting = highlighting;
+		job.config = this.listConfig;
+		job.west = this.getNeighbor(-1, 0);
+		job.east = this.getNeighbor(1, 0);
+		job.north = this.getNeighbor(0, -1);
+		job.south = this.getNeighbor(0, 1);
+		for (ChunkSection section : this.sections)
+		{
+			if (section == null)
+			{
+				continue;
+			}
+			main = (section.isDirty && level.visibility.isVisible(section));
+			if (main || section.isSelectedDirty)
+			{
+				job.addSection(section, main, section.isSelectedDirty);
+				if (main)
+				{
+					section.isDirty = false;
+				}
+				section.isSelectedDirty = false;
+			}
+		}
+		if (!this.extrasRequested)
+		{
+			job.extras = true;
+			this.extrasRequested = true;
+		}
+	}
+
+	/**
+	 * Meshes everything in the given job into MeshBuffers.  This is run from
+	 * one of MeshScheduler's worker threads, and the scheduler guarantees that
+	 * only one worker will be in here for any given chunk.
+	 */
+	public void buildMeshes(MeshJob job)
+	{
+		ChunkSection section;
+		ChunkSnapshot snapshot;
+		boolean buried;
+		boolean selected;
+
+		this.meshHighlighting = job.highlighting;
+		this.meshConfig = job.config;
+		for (MeshJob.SectionWork work : job.getSections())
+		{
+			section = work.section;
+			snapshot = null;
+
+			// A section which is buried in solid blocks can't draw anything at
+			// all, so don't bother looping through it.  Likewise, a section with
+			// nothing but solid blocks won't have anything to draw in the
+			// nonstandard or glass passes.  Highlighted ores are drawn regardless
+			// of what's around them, so the only thing we can skip on there is not
+			// having any of them at all.
+			buried = this.isSectionBuried(job, section);
+			selected = (work.selected && this.hasSelectedOres(section, job.selectedMap));
+			for (int sheet : this.getMeshSheets(job.config, section))
+			{
+				if (work.main)
+				{
+					if (!buried)
+					{
+						if (snapshot == null)
+						{
+							snapshot = new ChunkSnapshot(this, section.y, job);
+						}
+						this.compileSubMeshes(job, work, sheet, RENDER_PASS.SOLIDS, ChunkSection.LIST_SOLIDS, snapshot);
+					}
+					if (section.hasNonOpaque())
+					{
+						if (snapshot == null)
+						{
+							snapshot = new ChunkSnapshot(this, section.y, job);
+						}
+						this.compileSubMeshes(job, work, sheet, RENDER_PASS.NONSTANDARD, ChunkSection.LIST_NONSTANDARD, snapshot);
+						this.compileSubMeshes(job, work, sheet, RENDER_PASS.GLASS, ChunkSection.LIST_GLASS, snapshot);
+					}
+				}
+				if (selected)
+				{
+					if (snapshot == null)
+					{
+						snapshot = new ChunkSnapshot(this, section.y, job);
+					}
+					this.compileSubMeshes(job, work, sheet, RENDER_PASS.SELECTED, ChunkSection.LIST_SELECTED, snapshot);
+				}
+			}
+		}
+
+		if (job.extras)
+		{
+			if (this.hasPaintings())
+			{
+				this.mesh = new MeshBuffer();
+				this.buildPaintings();
+				job.paintings = this.mesh;
+			}
+			this.mesh = new MeshBuffer();
+			this.buildBorder();
+			job.border = this.mesh;
+			if (this.willSpawnSlimes)
+			{
+				this.mesh = new MeshBuffer();
+				this.buildSlimeBox();
+				job.slimeBox = this.mesh;
+			}
+		}
+		this.mesh = null;
+	}
+
+	/**
+	 * Puts back the dirty flags for a job which MeshScheduler has thrown away
+	 * without uploading, so that it gets rebuilt next time we're drawn.  Called
+	 * from the GL thread.
+	 */
+	public void abandonMeshJob(MeshJob job)
+	{
+		if (job.chunkGeneration != this.listGeneration)
+		{
+			return;
+		}
+		for (MeshJob.SectionWork work : job.getSections())
+		{
+			if (work.main)
+			{
+				work.section.setDirty();
+			}
+			if (work.selected)
+			{
+				work.section.setSelectedDirty();
+			}
+		}
+		if (job.extras)
+		{
+			this.extrasRequested = false;
+		}
+	}
+
+	/**
+	 * Uploads the results of a finished job as display lists, replacing
+	 * whatever we had before.  Anything which has been marked dirty again since
+	 * the job was queued, or which was built against a RenderConfig that's since
+	 * been replaced, is skipped, since there'll be a newer job along for it.
+	 * A job which failed on the worker has its work handed back to us, so
+	 * that it gets requested again, unless we've failed too often in a row.
+	 * Called from the GL thread.
+	 *
+	 * @return Whether we actually uploaded anything
+	 */
+	public boolean uploadMeshes(MeshJob job)
+	{
+		if (job.chunkGeneration != this.listGeneration)
+		{
+			return false;
+		}
+		if (job.failed)
+		{
+			this.meshFailures++;
+			if (this.meshFailures < MAX_MESH_FAILURES)
+			{
+				this.abandonMeshJob(job);
+			}
+			else
+			{
+				XRay.logger.warn("Giving up on meshing chunk (" + this.x + ", " + this.z + ") after " +
+						this.meshFailures + " failures");
+
+				// Whatever dirties us next gets a fresh set of attempts
+				this.meshFailures = 0;
+			}
+			return false;
+		}
+		this.meshFailures = 0;
+
+		ChunkSection section;
+		for (MeshJob.SectionWork work : job.getSections())
+		{
+			section = work.section;
+			work.applyMain = (work.main && work.generation == section.generation &&
+					job.config.mainVersion == this.listConfig.mainVersion);
+			work.applySelected = (work.selected && work.selectedGeneration == section.selectedGeneration &&
+					job.config.selectedVersion == this.listConfig.selectedVersion);
+			for (int sheet : this.getMeshSheets(job.config, section))
+			{
+				if (work.applyMain)
+				{
+					section.clearSubMeshes(sheet, ChunkSection.LIST_SOLIDS);
+					section.clearSubMeshes(sheet, ChunkSection.LIST_NONSTANDARD);
+					section.clearSubMeshes(sheet, ChunkSection.LIST_GLASS);
+				}
+				if (work.applySelected)
+				{
+					section.clearSubMeshes(sheet, ChunkSection.LIST_SELECTED);
+				}
+			}
+		}
+		int lists = 0;
+		int vertices = 0;
+		for (MeshJob.Result result : job.results)
+		{
+			if (result.listType == ChunkSection.LIST_SELECTED ? result.work.applySelected : result.work.applyMain)
+			{
+				result.work.section.addSubMesh(result.sheet, result.listType,
+						result.affectMask, result.valueMask, result.buffer.compile(), result.buffer.getByteSize());
+				lists++;
+				vertices += result.buffer.getVertexCount();
+			}
+		}
+
+		if (job.paintings != null)
+		{
+			this.paintingList = job.paintings.compile();
+			lists++;
+		}
+		if (job.border != null)
+		{
+			this.borderList = job.border.compile();
+			lists++;
+		}
+		if (job.slimeBox != null)
+		{
+			this.slimeBoxList = job.slimeBox.compile();
+			lists++;
+		}
+
+		// Our geometry is all triangle strips of four vertices
+		Metrics.MESH_QUADS.record(vertices / 4);
+		Metrics.MESH_LISTS.record(lists);
+		return true;
+	}
+
+	/**
+	 * "Rewinds" our looping over blocks, to the start of the given section.
 	 */
-	protected void rewindLoop()
+	protected void rewindLoop(int section)
 	{
+		this.lSection = section;
 		this.lx = 0;
-		this.ly = 0;
+		this.ly = section*16;
 		this.lz = 0;
 		this.lOffset = -1;
 	}
 
 	/**
-	 * Advances our block loop
+	 * Advances our block loop, within the section we were rewound to.  Will
+	 * return -2 once we've gone past the end of the section.
 	 */
 	protected abstract short nextBlock();
 }
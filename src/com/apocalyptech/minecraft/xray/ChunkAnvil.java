@@ -58,7 +58,8 @@ public class ChunkAnvil extends Chunk {
 	private HashMap<Integer, Boolean> availableSections;
 	private ArrayList<Integer> availableSectionsList;
 
-	private int lSection;
+	// Block data for the section we're currently looping over
+	private short[] lSectionBlocks;
 	
 	public ChunkAnvil(MinecraftLevel level, Tag data) {
 
@@ -88,21 +89,7 @@ public class ChunkAnvil extends Chunk {
 			{
 				//ByteArrayTag dataTag = mapData.get(section);
 				//Now we can read real Block with ID higher then 256
-				ShortArrayTag dataTag = blockData.get(section);
-				int data_add;
-				for (int offset = 0; offset < 4096; offset++)
-				{
-					// TODO: Java's lack of unsigned datatypes is annoying.  We should
-					// really doublecheck to make sure that we're not doing things we
-					// shouldn't with negative values, here.  A little test app I wrote
-					// seems to say that this should Do The Right Thing here...
-					data_add = addBlocksTag.value[offset / 2];
-					if (offset % 2 == 1)
-					{
-						data_add = (data_add >> 4);
-					}
-					dataTag.value[offset] += ((data_add & 0xF) << 8);
-				}
+				mergeAddBlocks(blockData.get(section).value, addBlocksTag.value);
 			}
 		}
 
@@ -128,290 +115,32 @@ public class ChunkAnvil extends Chunk {
 	}
 	
 	/**
-	 * Will return an array of values which are suitable for feeding into a
-	 * minimap.
+	 * Merges a section's "Add" nibbles into its block IDs, for IDs above 255
+	 *
+	 * @param blocks The section's 4096 block IDs, which get updated
+	 * @param add The section's Add array
 	 */
-	public short[][] getMinimapValues()
+	static void mergeAddBlocks(short[] blocks, byte[] add)
 	{
-		short[][] minimap = new short[16][16];
-		boolean in_nether = this.level.world.isDimension(-1);
-		boolean found_air;
-		boolean found_solid;
-		boolean drew_block;
-
-		// We'll want to process our sections in reverse order
-		Collections.reverse(this.availableSectionsList);
-
-		// Do the loop
-		int offset;
-		short block;
-		ShortArrayTag blockDataTag;
-		for (int zz = 0; zz < 16; zz++)
-		{
-			for (int xx = 0; xx < 16; xx++)
-			{
-				// determine the top most visible block
-				found_air = !in_nether;
-				drew_block = false;
-				found_solid = false;
-
-				sectionloop: for (int section : this.availableSectionsList)
-				{
-					blockDataTag = this.blockData.get(section);
-					if (blockDataTag == null)
-					{
-						continue;
-					}
-					for (int yy = 15; yy >= 0; yy--)
-					{
-						offset = xx + (zz * 16) + (yy * 256);
-						block = blockDataTag.value[offset];
-
-						if (block > 0)
-						{
-							if (in_nether && !found_solid)
-							{
-								found_air = false;
-							}
-							found_solid = true;
-							if (found_air)
-							{
-								minimap[xx][zz] = block;
-								drew_block = true;
-								break sectionloop;
-							}
-						}
-						else
-						{
-							found_air = true;
-						}
-					}
-				}
-
-				// Make sure we don't have holes in our Nether minimap
-				if (in_nether && found_solid && !drew_block)
-				{
-					minimap[xx][zz] = MinecraftConstants.BLOCK_BEDROCK.id;
-				}
-			}
-		}
-
-		// re-reverse our section list
-		Collections.reverse(this.availableSectionsList);
-		return minimap;
-	}
-
-	/**
-	 * Gets the Block ID of the block immediately to the given facing. This might
-	 * load in the adjacent chunk, if needed.  Will return -1 if that adjacent
-	 * chunk can't be found.
-	 */
-	protected short getAdjBlockId(int x, int y, int z, FACING facing, int blockOffset) {
-		switch(facing) {
-			case TOP:
-				return getAdjUpBlockId(x, y, z, blockOffset);
-			case BOTTOM:
-				return getAdjDownBlockId(x, y, z, blockOffset);
-			case NORTH:
-				return getAdjNorthBlockId(x, y, z, blockOffset);
-			case SOUTH:
-				return getAdjSouthBlockId(x, y, z, blockOffset);
-			case WEST:
-				return getAdjWestBlockId(x, y, z, blockOffset);
-			case EAST:
-				return getAdjEastBlockId(x, y, z, blockOffset);
-		}
-
-		return -1;
-	}
-
-	/**
-	 * Gets the Block ID of the block immediately to the west.  This might
-	 * load in the adjacent chunk, if needed.  Will return -1 if that adjacent
-	 * chunk can't be found.
-	 */
-	protected short getAdjWestBlockId(int x, int y, int z, int blockOffset)
-	{
-		if (x > 0)
-		{
-			int section = y/16;
-			if (this.blockData.containsKey(section))
-			{
-				return blockData.get(section).value[blockOffset-1];
-			}
-			else
-			{
-				return 0;
-			}
-		}
-		else
-		{
-			Chunk otherChunk = level.getChunk(this.x-1, this.z);
-			if (otherChunk == null)
-			{
-				return -1;
-			}
-			else
-			{
-				return otherChunk.getBlock(15, y, z);
-			}
-		}
-	}
-
-	/**
-	 * Gets the Block ID of the block immediately to the east.  This might
-	 * load in the adjacent chunk, if needed.  Will return -1 if that adjacent
-	 * chunk can't be found.
-	 */
-	protected short getAdjEastBlockId(int x, int y, int z, int blockOffset)
-	{
-		if (x < 15)
-		{
-			int section = y/16;
-			if (this.blockData.containsKey(section))
-			{
-				return blockData.get(section).value[blockOffset+1];
-			}
-			else
-			{
-				return 0;
-			}
-		}
-		else
-		{
-			Chunk otherChunk = level.getChunk(this.x+1, this.z);
-			if (otherChunk == null)
-			{
-				return -1;
-			}
-			else
-			{
-				return otherChunk.getBlock(0, y, z);
-			}
-		}
-	}
-
-	/**
-	 * Gets the Block ID of the block immediately to the south.  This might
-	 * load in the adjacent chunk, if needed.  Will return -1 if that adjacent
-	 * chunk can't be found.
-	 */
-	protected short getAdjNorthBlockId(int x, int y, int z, int blockOffset)
-	{
-		if (z > 0)
+		int data_add;
+		for (int offset = 0; offset < 4096; offset++)
 		{
-			int section = y/16;
-			if (blockData.containsKey(section))
-			{
-				return blockData.get(section).value[blockOffset-16];
-			}
-			else
+			// TODO: Java's lack of unsigned datatypes is annoying.  We should
+			// really doublecheck to make sure that we're not doing things we
+			// shouldn't with negative values, here.  A little test app I wrote
+			// seems to say that this should Do The Right Thing here...
+			data_add = add[offset / 2];
+			if (offset % 2 == 1)
 			{
-				return 0;
-			}
-		}
-		else
-		{
-			Chunk otherChunk = level.getChunk(this.x, this.z-1);
-			if (otherChunk == null)
-			{
-				return -1;
-			}
-			else
-			{
-				return otherChunk.getBlock(x, y, 15);
+				data_add = (data_add >> 4);
 			}
+			blocks[offset] += ((data_add & 0xF) << 8);
 		}
 	}
 
-	/**
-	 * Gets the Block ID of the block immediately to the north.  This might
-	 * load in the adjacent chunk, if needed.  Will return -1 if that adjacent
-	 * chunk can't be found.
-	 */
-	protected short getAdjSouthBlockId(int x, int y, int z, int blockOffset)
-	{
-		if (z < 15)
-		{
-			int section = y/16;
-			if (blockData.containsKey(section))
-			{
-				return blockData.get(section).value[blockOffset+16];
-			}
-			else
-			{
-				return 0;
-			}
-		}
-		else
-		{
-			Chunk otherChunk = level.getChunk(this.x, this.z+1);
-			if (otherChunk == null)
-			{
-				return -1;
-			}
-			else
-			{
-				return otherChunk.getBlock(x, y, 0);
-			}
-		}
-	}
-
-	/**
-	 * Gets the Block ID of the block immediately up.
-	 * Will return -1 if we're already at the top
-	 */
-	protected short getAdjUpBlockId(int x, int y, int z, int blockOffset)
-	{
-		int section = y/16;
-		if ((y % 16) == 15)
-		{
-			if (blockData.containsKey(section + 1))
-			{
-				return blockData.get(section+1).value[x + (z*16)];
-			}
-			else
-			{
-				return 0;
-			}
-		}
-		else
-		{
-			return blockData.get(section).value[blockOffset+256];
-		}
-	}
-
-	/**
-	 * Gets the Block ID of the block immediately down.
-	 * Will return -1 if we're already at the bottom
-	 */
-	protected short getAdjDownBlockId(int x, int y, int z, int blockOffset)
-	{
-		if (y <= 0)
-		{
-			return -1;
-		}
-		int section = y/16;
-		if ((y % 16) == 0)
-		{
-			if (blockData.containsKey(section - 1))
-			{
-				return blockData.get(section-1).value[3840 + x + (16*z)];
-			}
-			else
-			{
-				return 0;
-			}
-		}
-		else
-		{
-			return blockData.get(section).value[blockOffset-256];
-		}
-	}
-	
 	/**
 	 * Gets the block ID at the specified coordinate in the chunk.  This is
-	 * only really used in the getAdj*BlockId() methods.
+	 * only really used when building a ChunkSnapshot.
 	 */
 	public short getBlock(int x, int y, int z) {
 		int section = y/16;
@@ -448,13 +177,36 @@ public class ChunkAnvil extends Chunk {
 		}
 	}
 
+	/**
+	 * Block IDs, data, and the two lighting arrays for each section we have
+	 */
+	protected long getDataSize()
+	{
+		return this.availableSectionsList.size() * (4096L*2 + 2048L*3);
+	}
+
+	/**
+	 * Returns whether we have data for the given section
+	 */
+	protected boolean hasSection(int section)
+	{
+		return this.availableSections.containsKey(section);
+	}
+
 	/**
 	 * Rewind our loop
 	 */
-	protected void rewindLoop()
+	protected void rewindLoop(int section)
 	{
-		super.rewindLoop();
-		this.lSection = -1;
+		super.rewindLoop(section);
+		if (this.availableSections.containsKey(section))
+		{
+			this.lSectionBlocks = this.blockData.get(section).value;
+		}
+		else
+		{
+			this.lSectionBlocks = null;
+		}
 	}
 
 	/**
@@ -462,23 +214,8 @@ public class ChunkAnvil extends Chunk {
 	 */
 	protected short nextBlock()
 	{
-		boolean advance_to_next_section = false;
-		boolean found_next_section = false;
-		this.lOffset = ((this.lOffset+1) % 4096);
-		if (this.lOffset == 0)
-		{
-			advance_to_next_section = true;
-			for (int section : this.availableSectionsList)
-			{
-				if (section > this.lSection)
-				{
-					found_next_section = true;
-					this.lSection = section;
-					break;
-				}
-			}
-		}
-		if (advance_to_next_section && !found_next_section)
+		this.lOffset++;
+		if (this.lSectionBlocks == null || this.lOffset >= 4096)
 		{
 			return -2;
 		}
@@ -486,7 +223,7 @@ public class ChunkAnvil extends Chunk {
 		this.lz = (this.lOffset / 16) % 16;
 		this.ly = (this.lOffset / 256) + (16*this.lSection);
 
-		return this.blockData.get(this.lSection).value[this.lOffset];
+		return this.lSectionBlocks[this.lOffset];
 	}
 
 }
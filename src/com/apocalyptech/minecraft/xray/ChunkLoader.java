@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.io.DataInputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.TreeMap;
+
+import com.apocalyptech.minecraft.xray.dtf.Tag;
+
+/**
+ * The queue of chunks waiting to be loaded into a MinecraftLevel, and the
+ * loop which works through it.  The data for the chunks at the front of the
+ * queue is read from disk a batch at a time (see MinecraftLevel.readChunks()),
+ * which lets each region file be read in order with a few large reads,
+ * rather than seeking back and forth for every chunk.
+ *
+ * XRay's main loop and the bench tree's ReplayHarness both load through
+ * here, so that the harness measures the same code the viewer runs.  Working
+ * out what to queue, and what to do with each chunk once it's been loaded
+ * (drawing it to the minimap, marking its neighbours dirty) is up to them.
+ *
+ * A ChunkLoader can also be created to refresh chunks instead, for when the
+ * game saves out chunks we already have.  Then it's the other way around:
+ * only chunks which are currently loaded get read (anything else will be
+ * read fresh whenever it's loaded anyway), and since the game may still be
+ * partway through writing a chunk when we get to it, a chunk which fails to
+ * load is put back on the end of the queue to try again, up to
+ * MAX_REFRESH_ATTEMPTS times.  The chunk we already had stays in place until
+ * then.
+ */
+public class ChunkLoader
+{
+	// How many chunks we read from disk at once, once the initial load is done.
+	// This is small enough that a single batch won't eat a whole frame.
+	public static final int READ_BATCH = 64;
+
+	// How many times we'll try to refresh a chunk which won't load before
+	// giving up on it.  If the game saves it again, it'll be queued again.
+	public static final int MAX_REFRESH_ATTEMPTS = 60;
+
+	private final MinecraftLevel level;
+	private final LinkedList<Block> queue;
+
+	// Data for the chunks at the front of our queue, in the same order
+	private final LinkedList<DataInputStream> readAhead;
+
+	// Whether we read ahead at all; if not, each chunk is read on its own
+	private boolean batched;
+
+	// Whether we're refreshing loaded chunks rather than loading new ones
+	private final boolean refresh;
+
+	// When refreshing, the chunks in our queue and how many times we've failed
+	// to load each one so far
+	private final TreeMap<IntegerPair, Integer> attempts;
+
+	public ChunkLoader(MinecraftLevel level)
+	{
+		this(level, false);
+	}
+
+	/**
+	 * @param level The level to load chunks into
+	 * @param refresh Whether we're refreshing chunks which are already loaded,
+	 *        rather than loading new ones
+	 */
+	public ChunkLoader(MinecraftLevel level, boolean refresh)
+	{
+		this.level = level;
+		this.queue = new LinkedList<Block>();
+		this.readAhead = new LinkedList<DataInputStream>();
+		this.batched = true;
+		this.refresh = refresh;
+		this.attempts = new TreeMap<IntegerPair, Integer>();
+	}
+
+	/**
+	 * Sets whether we read chunks from disk in batches (the default), or one
+	 * at a time with MinecraftLevel.loadChunk(x, z) as X-Ray used to.  The
+	 * latter is only there so that the replay harness can compare the two.
+	 */
+	public void setBatched(boolean batched)
+	{
+		this.batched = batched;
+		this.readAhead.clear();
+	}
+
+	/**
+	 * Adds a chunk to the end of our queue.  When refreshing, a chunk which
+	 * is already queued isn't queued twice.
+	 */
+	public void add(int x, int z)
+	{
+		if (this.refresh)
+		{
+			IntegerPair key = new IntegerPair(x, z);
+			if (this.attempts.containsKey(key))
+			{
+				return;
+			}
+			this.attempts.put(key, 0);
+		}
+		this.queue.add(new Block(x, 0, z));
+	}
+
+	/**
+	 * Returns how many chunks are waiting to be loaded
+	 */
+	public int size()
+	{
+		return this.queue.size();
+	}
+
+	public boolean isEmpty()
+	{
+		return this.queue.isEmpty();
+	}
+
+	/**
+	 * Returns whether the given chunk is currently loaded
+	 */
+	private boolean isLoaded(int x, int z)
+	{
+		Chunk c = this.level.getChunk(x, z);
+		return (c != null && c.x == x && c.z == z);
+	}
+
+	/**
+	 * Returns whether we still want to read the given chunk: when loading,
+	 * chunks which aren't loaded yet, and when refreshing, ones which are.
+	 */
+	private boolean isWanted(int x, int z)
+	{
+		return (this.isLoaded(x, z) == this.refresh);
+	}
+
+	/**
+	 * Loads the next chunk in our queue, reading the next batch from disk
+	 * first if we need to.  There may be some circumstances where a chunk
+	 * we're going to load is already loaded (mostly while moving diagonally),
+	 * in which case it's just skipped.  When refreshing, chunks which are no
+	 * longer loaded are skipped instead, as are ones which fail to load (and
+	 * are queued again).
+	 *
+	 * @param batch How many chunks to read if we need to read more
+	 * @return The position of the chunk, or null if it was skipped.  When
+	 *         loading, chunks which don't exist on disk aren't skipped; the
+	 *         level just won't have anything for them afterwards.
+	 */
+	public Block loadNext(int batch)
+	{
+		if (this.batched && this.readAhead.isEmpty())
+		{
+			this.readAhead(batch);
+		}
+		Block b = this.queue.removeFirst();
+		DataInputStream chunkData = (this.batched ? this.readAhead.removeFirst() : null);
+		if (!this.isWanted(b.x, b.z))
+		{
+			if (this.refresh)
+			{
+				this.attempts.remove(new IntegerPair(b.x, b.z));
+			}
+			return null;
+		}
+		Tag t;
+		if (chunkData != null)
+		{
+			t = this.level.loadChunk(b.x, b.z, chunkData);
+		}
+		else
+		{
+			// Either it doesn't exist (which the region header will tell us
+			// without touching the disk), or it was loaded when we read ahead
+			// and has been cleared out since.
+			t = this.level.loadChunk(b.x, b.z);
+		}
+		if (this.refresh)
+		{
+			IntegerPair key = new IntegerPair(b.x, b.z);
+			if (t == null)
+			{
+				int tries = this.attempts.get(key) + 1;
+				if (tries < MAX_REFRESH_ATTEMPTS)
+				{
+					this.attempts.put(key, tries);
+					this.queue.add(b);
+				}
+				else
+				{
+					this.attempts.remove(key);
+					XRay.logger.warn("Giving up on refreshing chunk (" + b.x + ", " + b.z + ") after " + tries + " attempts");
+				}
+				return null;
+			}
+			this.attempts.remove(key);
+		}
+		return b;
+	}
+
+	/**
+	 * Reads the data for the next few chunks in our queue from disk, all in
+	 * one go.  Chunks we don't want any more are skipped (loadNext() will
+	 * skip them too), and just get a null.
+	 *
+	 * @param count How many chunks to read
+	 */
+	private void readAhead(int count)
+	{
+		count = Math.min(count, this.queue.size());
+		boolean[] wanted = new boolean[count];
+		int[] x = new int[count];
+		int[] z = new int[count];
+		int needed = 0;
+		Iterator<Block> iter = this.queue.iterator();
+		Block b;
+		for (int i = 0; i < count; i++)
+		{
+			b = iter.next();
+			if (this.isWanted(b.x, b.z))
+			{
+				wanted[i] = true;
+				x[needed] = b.x;
+				z[needed] = b.z;
+				needed++;
+			}
+		}
+		DataInputStream[] streams = this.level.readChunks(Arrays.copyOf(x, needed), Arrays.copyOf(z, needed));
+		needed = 0;
+		for (int i = 0; i < count; i++)
+		{
+			this.readAhead.add(wanted[i] ? streams[needed++] : null);
+		}
+	}
+}
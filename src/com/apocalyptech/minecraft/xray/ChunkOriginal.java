@@ -73,222 +73,17 @@ public class ChunkOriginal extends Chunk {
 	}
 	
 	/**
-	 * Will return an array of values which are suitable for feeding into a
-	 * minimap.
+	 * We've always treated the top of an original-style chunk as if there
+	 * were an unloaded chunk above it.
 	 */
-	public short[][] getMinimapValues()
+	protected short getCeilingBlockId()
 	{
-		short[][] minimap = new short[16][16];
-		boolean in_nether = this.level.world.isDimension(-1);
-		boolean found_air;
-		boolean found_solid;
-		boolean drew_block;
-
-		int blockOffset;
-		short block;
-		for (int zz = 0; zz < 16; zz++)
-		{
-			for (int xx = 0; xx < 16; xx++)
-			{
-				// determine the top most visible block
-				found_air = !in_nether;
-				drew_block = false;
-				found_solid = false;
-				for (int yy = this.maxHeight; yy >= 0; yy--)
-				{
-					blockOffset = yy + (zz * 128) + (xx * 128 * 16);
-					block = blockData.value[blockOffset];
-
-					if (block > 0)
-					{
-						if (in_nether && !found_solid)
-						{
-							found_air = false;
-						}
-						found_solid = true;
-						if (found_air)
-						{
-							minimap[xx][zz] = block;
-							drew_block = true;
-							break;
-						}
-					}
-					else
-					{
-						found_air = true;
-					}
-				}
-
-				// Make sure we don't have holes in our Nether minimap
-				if (in_nether && found_solid && !drew_block)
-				{
-					minimap[xx][zz] = MinecraftConstants.BLOCK_BEDROCK.id;
-				}
-			}
-		}
-
-		return minimap;
-	}
-
-	/**
-	 * Gets the Block ID of the block immediately to the given facing. This might
-	 * load in the adjacent chunk, if needed.  Will return -1 if that adjacent
-	 * chunk can't be found.
-	 */
-	protected short getAdjBlockId(int x, int y, int z, FACING facing, int blockOffset) {
-		switch(facing) {
-			case TOP:
-				return getAdjUpBlockId(x, y, z, blockOffset);
-			case BOTTOM:
-				return getAdjDownBlockId(x, y, z, blockOffset);
-			case NORTH:
-				return getAdjNorthBlockId(x, y, z, blockOffset);
-			case SOUTH:
-				return getAdjSouthBlockId(x, y, z, blockOffset);
-			case WEST:
-				return getAdjWestBlockId(x, y, z, blockOffset);
-			case EAST:
-				return getAdjEastBlockId(x, y, z, blockOffset);
-		}
-
 		return -1;
 	}
 
-	/**
-	 * Gets the Block ID of the block immediately to the west.  This might
-	 * load in the adjacent chunk, if needed.  Will return -1 if that adjacent
-	 * chunk can't be found.
-	 */
-	protected short getAdjWestBlockId(int x, int y, int z, int blockOffset)
-	{
-		if (x > 0)
-		{
-			return blockData.value[blockOffset-BLOCKSPERCOLUMN];
-		}
-		else
-		{
-			Chunk otherChunk = level.getChunk(this.x-1, this.z);
-			if (otherChunk == null)
-			{
-				return -1;
-			}
-			else
-			{
-				return otherChunk.getBlock(15, y, z);
-			}
-		}
-	}
-
-	/**
-	 * Gets the Block ID of the block immediately to the east.  This might
-	 * load in the adjacent chunk, if needed.  Will return -1 if that adjacent
-	 * chunk can't be found.
-	 */
-	protected short getAdjEastBlockId(int x, int y, int z, int blockOffset)
-	{
-		if (x < 15)
-		{
-			return blockData.value[blockOffset+BLOCKSPERCOLUMN];
-		}
-		else
-		{
-			Chunk otherChunk = level.getChunk(this.x+1, this.z);
-			if (otherChunk == null)
-			{
-				return -1;
-			}
-			else
-			{
-				return otherChunk.getBlock(0, y, z);
-			}
-		}
-	}
-
-	/**
-	 * Gets the Block ID of the block immediately to the south.  This might
-	 * load in the adjacent chunk, if needed.  Will return -1 if that adjacent
-	 * chunk can't be found.
-	 */
-	protected short getAdjNorthBlockId(int x, int y, int z, int blockOffset)
-	{
-		if (z > 0)
-		{
-			return blockData.value[blockOffset-BLOCKSPERROW];
-		}
-		else
-		{
-			Chunk otherChunk = level.getChunk(this.x, this.z-1);
-			if (otherChunk == null)
-			{
-				return -1;
-			}
-			else
-			{
-				return otherChunk.getBlock(x, y, 15);
-			}
-		}
-	}
-
-	/**
-	 * Gets the Block ID of the block immediately to the north.  This might
-	 * load in the adjacent chunk, if needed.  Will return -1 if that adjacent
-	 * chunk can't be found.
-	 */
-	protected short getAdjSouthBlockId(int x, int y, int z, int blockOffset)
-	{
-		if (z < 15)
-		{
-			return blockData.value[blockOffset+BLOCKSPERROW];
-		}
-		else
-		{
-			Chunk otherChunk = level.getChunk(this.x, this.z+1);
-			if (otherChunk == null)
-			{
-				return -1;
-			}
-			else
-			{
-				return otherChunk.getBlock(x, y, 0);
-			}
-		}
-	}
-
-	/**
-	 * Gets the Block ID of the block immediately up.
-	 * Will return -1 if we're already at the top
-	 */
-	protected short getAdjUpBlockId(int x, int y, int z, int blockOffset)
-	{
-		if (y >= this.maxHeight)
-		{
-			return -1;
-		}
-		else
-		{
-			return blockData.value[blockOffset+1];
-		}
-	}
-
-	/**
-	 * Gets the Block ID of the block immediately down.
-	 * Will return -1 if we're already at the bottom
-	 */
-	protected short getAdjDownBlockId(int x, int y, int z, int blockOffset)
-	{
-		if (y <= 0)
-		{
-			return -1;
-		}
-		else
-		{
-			return blockData.value[blockOffset-1];
-		}
-	}
-	
 	/**
 	 * Gets the block ID at the specified coordinate in the chunk.  This is
-	 * only really used in the getAdj*BlockId() methods.
+	 * only really used when building a ChunkSnapshot.
 	 */
 	public short getBlock(int x, int y, int z) {
 		return blockData.value[y + (z * 128) + (x * 128 * 16)];
@@ -310,18 +105,47 @@ public class ChunkOriginal extends Chunk {
 	}
 
 	/**
-	 * Advances our block loop
+	 * Block IDs, data, and the two lighting arrays for the whole chunk
+	 */
+	protected long getDataSize()
+	{
+		return (BLOCKSPERCOLUMN * 16L * 2) + (BLOCKSPERCOLUMN * 16L / 2 * 3);
+	}
+
+	/**
+	 * Returns whether we have data for the given section.  We always have
+	 * data for the whole chunk, so this is just a bounds check.
+	 */
+	protected boolean hasSection(int section)
+	{
+		return (section >= 0 && section < (BLOCKSPERROW/16));
+	}
+
+	/**
+	 * Advances our block loop.  We loop over y first within the section,
+	 * since that's the order our data is stored in.
 	 */
 	protected short nextBlock()
 	{
-		this.lOffset++;
-		if (this.lOffset >= 32768)
+		if (this.lOffset >= 0)
 		{
-			return -2;
+			this.ly++;
+			if (this.ly >= (this.lSection+1)*16)
+			{
+				this.ly = this.lSection*16;
+				this.lz++;
+				if (this.lz > 15)
+				{
+					this.lz = 0;
+					this.lx++;
+					if (this.lx > 15)
+					{
+						return -2;
+					}
+				}
+			}
 		}
-		this.ly = this.lOffset % 128;
-		this.lz = (this.lOffset / 128) % 16;
-		this.lx = this.lOffset / 2048;
+		this.lOffset = this.ly + (this.lz * BLOCKSPERROW) + (this.lx * BLOCKSPERCOLUMN);
 		return this.blockData.value[this.lOffset];
 	}
 
@@ -0,0 +1,350 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.ArrayList;
+
+/**
+ * Rendering state for a single 16x16x16 section of a Chunk.  Display lists
+ * and their dirty flags used to live directly in Chunk, one per texture sheet,
+ * which meant that any invalidation at all would rebuild the entire column.
+ * Keeping them per-section lets us rebuild only the bits that actually need
+ * it (ie: the sections which touch a newly-loaded neighbor, or which contain
+ * the block types that a toggle affects).
+ *
+ * Sections which are entirely empty never get one of these objects at all.
+ */
+public class ChunkSection
+{
+	// The kinds of lists we build, one per render pass
+	public static final int LIST_SOLIDS = 0;
+	public static final int LIST_NONSTANDARD = 1;
+	public static final int LIST_GLASS = 2;
+	public static final int LIST_SELECTED = 3;
+
+	/**
+	 * A single display list of geometry.  Geometry which depends on one of our
+	 * render toggles is split out into its own sub-mesh for each state of those
+	 * toggles, so that flipping a toggle only changes which sub-meshes get
+	 * drawn, rather than requiring a rebuild.  A sub-mesh is drawn when the
+	 * current toggle state, masked with affectMask, equals valueMask.
+	 */
+	private static class SubMesh
+	{
+		public final int listType;
+		public final int affectMask;
+		public final int valueMask;
+		public final int list;
+		public final int bytes;
+
+		public SubMesh(int listType, int affectMask, int valueMask, int list, int bytes)
+		{
+			this.listType = listType;
+			this.affectMask = affectMask;
+			this.valueMask = valueMask;
+			this.list = list;
+			this.bytes = bytes;
+		}
+	}
+
+	// Which section of the chunk we are (ie: y/16)
+	public final int y;
+
+	// Block IDs which appear in this section
+	public BitSet blockIds;
+
+	// Whether we have any non-air blocks on each boundary layer, indexed
+	// by Chunk.FACING ordinal
+	public boolean[] edgeBlocks;
+
+	// Number of non-air blocks in the section
+	public int nonAirCount;
+
+	// Which columns are air on each layer of the section, for the cave map:
+	// four longs per layer, with bits indexed by (z*16)+x
+	public long[] airColumns;
+
+	// Number of fully-opaque (ie: solid) blocks in the section
+	public int opaqueCount;
+
+	// Whether each boundary layer of the section is made up entirely of
+	// opaque blocks, indexed by Chunk.FACING ordinal
+	public boolean[] opaqueFaces;
+
+	// Which faces of the section connect to each other through see-through
+	// blocks, and through opaque blocks.  See SectionVisibility.
+	public long seeThroughConnectivity;
+	public long opaqueConnectivity;
+
+	// The last SectionVisibility frame in which we were found to be visible
+	public int visibleFrame;
+
+	// Texture sheets used by blocks in this section, both as flags and as a list
+	public BitSet usedTextureSheets;
+	private int[] sheetList;
+
+	// Our compiled sub-meshes, indexed by texture sheet, plus the ones we
+	// build when drawing out of XRay.sheetAtlas.  These are looked up every
+	// frame, so we avoid anything which would box the sheet number.
+	private ArrayList<ArrayList<SubMesh>> subMeshes;
+	private ArrayList<SubMesh> atlasSubMeshes;
+
+	// Whether our lists need rebuilding.  The generation counters are bumped
+	// every time we're marked dirty, so that MeshScheduler can tell whether a
+	// finished rebuild is already out of date by the time it gets uploaded.
+	public boolean isDirty;
+	public boolean isSelectedDirty;
+	public int generation;
+	public int selectedGeneration;
+
+	public ChunkSection(int y)
+	{
+		this.y = y;
+		this.blockIds = new BitSet();
+		this.edgeBlocks = new boolean[6];
+		this.nonAirCount = 0;
+		this.airColumns = new long[64];
+		this.opaqueCount = 0;
+		this.opaqueFaces = new boolean[6];
+		this.usedTextureSheets = new BitSet();
+		this.sheetList = new int[0];
+		this.subMeshes = new ArrayList<ArrayList<SubMesh>>();
+		this.atlasSubMeshes = new ArrayList<SubMesh>();
+		this.isDirty = true;
+		this.isSelectedDirty = true;
+		this.generation = 0;
+		this.selectedGeneration = 0;
+	}
+
+	/**
+	 * Records that the given sheet is in use by this section
+	 */
+	public void addSheet(int sheet)
+	{
+		if (!this.usedTextureSheets.get(sheet))
+		{
+			this.usedTextureSheets.set(sheet);
+			this.sheetList = new int[this.usedTextureSheets.cardinality()];
+			int i = 0;
+			for (int used = this.usedTextureSheets.nextSetBit(0); used >= 0; used = this.usedTextureSheets.nextSetBit(used + 1))
+			{
+				this.sheetList[i++] = used;
+			}
+			while (this.subMeshes.size() <= sheet)
+			{
+				this.subMeshes.add(null);
+			}
+			this.subMeshes.set(sheet, new ArrayList<SubMesh>());
+		}
+	}
+
+	/**
+	 * Returns the sheets in use by this section, in order.  The array
+	 * shouldn't be modified.
+	 */
+	public int[] getSheets()
+	{
+		return this.sheetList;
+	}
+
+	/**
+	 * Returns the sub-mesh list for the given sheet
+	 */
+	private ArrayList<SubMesh> getSubMeshes(int sheet)
+	{
+		if (sheet == Chunk.ATLAS_SHEET)
+		{
+			return this.atlasSubMeshes;
+		}
+		return this.subMeshes.get(sheet);
+	}
+
+	/**
+	 * Returns whether or not this section contains blocks which use the specified sheet
+	 */
+	public boolean usesSheet(int sheet)
+	{
+		if (sheet == Chunk.ATLAS_SHEET)
+		{
+			return !this.usedTextureSheets.isEmpty();
+		}
+		return this.usedTextureSheets.get(sheet);
+	}
+
+	/**
+	 * Returns whether every block in this section is opaque
+	 */
+	public boolean isFullyOpaque()
+	{
+		return (this.opaqueCount == 4096);
+	}
+
+	/**
+	 * Returns whether this section contains anything other than opaque blocks,
+	 * ie: whether the nonstandard and glass passes could draw anything.
+	 */
+	public boolean hasNonOpaque()
+	{
+		return (this.nonAirCount > this.opaqueCount);
+	}
+
+	/**
+	 * Records that the given block is air
+	 */
+	public void setAir(int x, int layer, int z)
+	{
+		int column = (z * 16) + x;
+		this.airColumns[(layer * 4) + (column >> 6)] |= (1L << (column & 63));
+	}
+
+	/**
+	 * Returns whether the given block is air
+	 */
+	public boolean isAir(int x, int layer, int z)
+	{
+		int column = (z * 16) + x;
+		return ((this.airColumns[(layer * 4) + (column >> 6)] & (1L << (column & 63))) != 0);
+	}
+
+	/**
+	 * Returns whether this section contains any of the given block IDs
+	 */
+	public boolean containsAny(BitSet ids)
+	{
+		return this.blockIds.intersects(ids);
+	}
+
+	/**
+	 * Records a newly-compiled sub-mesh.
+	 * 
+	 * @param bytes Approximately how much memory the list's geometry takes up
+	 */
+	public void addSubMesh(int sheet, int listType, int affectMask, int valueMask, int list, int bytes)
+	{
+		this.getSubMeshes(sheet).add(new SubMesh(listType, affectMask, valueMask, list, bytes));
+	}
+
+	/**
+	 * Returns approximately how much memory our compiled geometry takes up
+	 */
+	public long getMeshBytes()
+	{
+		long total = 0;
+		for (SubMesh mesh : this.atlasSubMeshes)
+		{
+			total += mesh.bytes;
+		}
+		for (int sheet : this.sheetList)
+		{
+			for (SubMesh mesh : this.subMeshes.get(sheet))
+			{
+				total += mesh.bytes;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Frees all the sub-meshes of the given type for the given sheet, in
+	 * preparation for rebuilding them.
+	 */
+	public void clearSubMeshes(int sheet, int listType)
+	{
+		Iterator<SubMesh> iter = this.getSubMeshes(sheet).iterator();
+		SubMesh mesh;
+		while (iter.hasNext())
+		{
+			mesh = iter.next();
+			if (mesh.listType == listType)
+			{
+				XRay.renderBackend.glDeleteLists(mesh.list, 1);
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Calls all the sub-meshes of the given type for the given sheet which
+	 * should be drawn with the current state of our toggles.
+	 */
+	public void callLists(int sheet, int listType, int toggles)
+	{
+		ArrayList<SubMesh> meshes = this.getSubMeshes(sheet);
+		SubMesh mesh;
+		for (int i = 0; i < meshes.size(); i++)
+		{
+			mesh = meshes.get(i);
+			if (mesh.listType == listType && (toggles & mesh.affectMask) == mesh.valueMask)
+			{
+				XRay.renderBackend.glCallList(mesh.list);
+			}
+		}
+	}
+
+	/**
+	 * Marks our lists as dirty
+	 */
+	public void setDirty()
+	{
+		this.isDirty = true;
+		this.generation++;
+	}
+
+	/**
+	 * Marks our selected lists as dirty
+	 */
+	public void setSelectedDirty()
+	{
+		this.isSelectedDirty = true;
+		this.selectedGeneration++;
+	}
+
+	/**
+	 * Frees any GL lists we've allocated.
+	 */
+	public void freeLists()
+	{
+		this.freeLists(this.atlasSubMeshes);
+		for (int sheet : this.sheetList)
+		{
+			this.freeLists(this.subMeshes.get(sheet));
+		}
+		this.setDirty();
+		this.setSelectedDirty();
+	}
+
+	private void freeLists(ArrayList<SubMesh> meshes)
+	{
+		for (SubMesh mesh : meshes)
+		{
+			XRay.renderBackend.glDeleteLists(mesh.list, 1);
+		}
+		meshes.clear();
+	}
+}
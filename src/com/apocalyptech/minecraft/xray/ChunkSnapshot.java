@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+/**
+ * An immutable copy of a single 16x16x16 section of a Chunk, padded out by
+ * one block on each side with the blocks from the neighboring sections and
+ * chunks.  The mesher works off of one of these rather than the live chunk,
+ * so that looking at an adjacent block is always just an array offset,
+ * regardless of whether it's across a section or chunk boundary.
+ *
+ * Padding follows the same conventions that the old getAdj*() methods did:
+ * a missing neighbor chunk shows up as -1 (for both ID and data), as does
+ * the area below the bottom of the world.  The corners and edges of the
+ * padding are never looked at, so they're left empty.
+ */
+public class ChunkSnapshot
+{
+	public static final int DIM = 18;
+	public static final int AREA = DIM * DIM;
+	public static final int SIZE = AREA * DIM;
+
+	// Offset to the adjacent block, indexed by Chunk.FACING ordinal
+	public static final int[] FACE_OFFSET = new int[6];
+	static
+	{
+		FACE_OFFSET[Chunk.FACING.TOP.ordinal()] = AREA;
+		FACE_OFFSET[Chunk.FACING.BOTTOM.ordinal()] = -AREA;
+		FACE_OFFSET[Chunk.FACING.NORTH.ordinal()] = -DIM;
+		FACE_OFFSET[Chunk.FACING.SOUTH.ordinal()] = DIM;
+		FACE_OFFSET[Chunk.FACING.WEST.ordinal()] = -1;
+		FACE_OFFSET[Chunk.FACING.EAST.ordinal()] = 1;
+	}
+
+	// The Y coordinate of the bottom layer of our section
+	public final int baseY;
+
+	private final short[] blockIds;
+	private final byte[] blockData;
+
+	/**
+	 * Copies the given section of the given chunk, plus the layer of blocks
+	 * surrounding it.  The neighboring chunks are the ones pinned into the
+	 * job, rather than whatever the level has now.
+	 */
+	public ChunkSnapshot(Chunk chunk, int section, MeshJob job)
+	{
+		this.baseY = section * 16;
+		this.blockIds = new short[SIZE];
+		this.blockData = new byte[SIZE];
+
+		// Our own blocks first
+		int idx;
+		short t;
+		chunk.rewindLoop(section);
+		while ((t = chunk.nextBlock()) != -2)
+		{
+			if (t != 0)
+			{
+				idx = index(chunk.lx, chunk.ly - this.baseY, chunk.lz);
+				this.blockIds[idx] = t;
+				this.blockData[idx] = chunk.getData(chunk.lx, chunk.ly, chunk.lz);
+			}
+		}
+
+		// Now the layers above and below
+		int above = this.baseY + 16;
+		for (int x = 0; x < 16; x++)
+		{
+			for (int z = 0; z < 16; z++)
+			{
+				idx = index(x, 16, z);
+				if (above > chunk.ceilingHeight)
+				{
+					this.blockIds[idx] = chunk.getCeilingBlockId();
+				}
+				else
+				{
+					this.blockIds[idx] = chunk.getBlock(x, above, z);
+					this.blockData[idx] = chunk.getData(x, above, z);
+				}
+
+				idx = index(x, -1, z);
+				if (this.baseY == 0)
+				{
+					this.blockIds[idx] = -1;
+				}
+				else
+				{
+					this.blockIds[idx] = chunk.getBlock(x, this.baseY - 1, z);
+					this.blockData[idx] = chunk.getData(x, this.baseY - 1, z);
+				}
+			}
+		}
+
+		// And finally, our neighboring chunks
+		for (int y = 0; y < 16; y++)
+		{
+			for (int i = 0; i < 16; i++)
+			{
+				this.copyNeighbor(job.west, 15, y, i, index(-1, y, i));
+				this.copyNeighbor(job.east, 0, y, i, index(16, y, i));
+				this.copyNeighbor(job.north, i, y, 15, index(i, y, -1));
+				this.copyNeighbor(job.south, i, y, 0, index(i, y, 16));
+			}
+		}
+	}
+
+	/**
+	 * Copies a single block from a neighboring chunk into our padding.
+	 */
+	private void copyNeighbor(Chunk other, int x, int y, int z, int idx)
+	{
+		if (other == null)
+		{
+			this.blockIds[idx] = -1;
+			this.blockData[idx] = -1;
+		}
+		else if (this.baseY + y <= other.ceilingHeight)
+		{
+			this.blockIds[idx] = other.getBlock(x, this.baseY + y, z);
+			this.blockData[idx] = other.getData(x, this.baseY + y, z);
+		}
+	}
+
+	/**
+	 * Returns the offset into our arrays for the given coordinates.  X and Z
+	 * are relative to the chunk, Y is relative to our section, and all three
+	 * may go one block outside the section in either direction.
+	 */
+	public static int index(int x, int y, int z)
+	{
+		return (x + 1) + ((z + 1) * DIM) + ((y + 1) * AREA);
+	}
+
+	/**
+	 * Returns the block ID at the given offset
+	 */
+	public short getBlockId(int offset)
+	{
+		return this.blockIds[offset];
+	}
+
+	/**
+	 * Returns the block data at the given offset
+	 */
+	public byte getData(int offset)
+	{
+		return this.blockData[offset];
+	}
+
+	/**
+	 * Returns the block data at the given chunk coordinates
+	 */
+	public byte getData(int x, int y, int z)
+	{
+		return this.blockData[index(x, y - this.baseY, z)];
+	}
+}
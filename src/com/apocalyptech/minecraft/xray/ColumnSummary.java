@@ -0,0 +1,303 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import com.apocalyptech.minecraft.xray.dtf.ByteArrayTag;
+import com.apocalyptech.minecraft.xray.dtf.IntArrayTag;
+import com.apocalyptech.minecraft.xray.dtf.Tag;
+
+import static com.apocalyptech.minecraft.xray.MinecraftConstants.*;
+
+/**
+ * The top visible block in each column of a chunk, and its height, which is
+ * what we draw onto the minimap.  This used to be worked out by scanning
+ * every column top-down whenever the chunk was drawn onto the minimap, which
+ * happens again every time it comes back into range after being trimmed.
+ * Now it's worked out once when the chunk is loaded, and kept around.
+ *
+ * Where the chunk has a usable HeightMap tag we start from that.  Otherwise
+ * (or in the Nether, where the HeightMap only ever finds the bedrock ceiling)
+ * the Chunk feeds us every block, bottom-up, during the pass it already makes
+ * over its data in finishConstructor().  OverviewRenderer uses us in the same
+ * way, without building full Chunks.
+ *
+ * Arrays are indexed by [x][z].  A block ID of zero means that there's
+ * nothing to draw for that column.
+ */
+public class ColumnSummary
+{
+	/**
+	 * Anything we can look up block IDs in.  Chunk is the obvious one, but
+	 * OverviewRenderer has its own lighter-weight version.
+	 */
+	public static interface BlockSource
+	{
+		public short getBlock(int x, int y, int z);
+	}
+
+	private short[][] blocks;
+	private short[][] heights;
+	private int[] colors;
+
+	private boolean in_nether;
+
+	// State for our bottom-up pass, indexed by (z*16)+x.  In the Nether we're
+	// after the topmost solid block which has air above it and something
+	// solid above that again (ie: the floor underneath the ceiling), so we
+	// track the last solid block which had air directly above it as a
+	// candidate, and accept it once we find something solid higher up.
+	private boolean[] foundSolid;
+	private boolean[] prevSolid;
+	private short[] prevBlock;
+	private short[] prevHeight;
+	private short[] candidateBlock;
+	private short[] candidateHeight;
+
+	public ColumnSummary(boolean in_nether)
+	{
+		this.in_nether = in_nether;
+		this.blocks = new short[16][16];
+		this.heights = new short[16][16];
+	}
+
+	/**
+	 * Attempts to fill in our summary from the chunk's HeightMap tag, which
+	 * gives the height just above the topmost light-blocking block in each
+	 * column.  Things like flowers, torches and snow sitting on top of that
+	 * don't block light, so we step upwards through any of those as well.
+	 * Note that a non-light-blocking block floating over an air gap (a lone
+	 * glass roof, say) won't be picked up this way.
+	 *
+	 * @param chunk What we're summarizing, to look up blocks in
+	 * @param heightMapTag The chunk's HeightMap tag, which may be null
+	 * @param ceilingHeight The highest Y value the chunk can contain
+	 * @return false if the HeightMap was missing or doesn't match the chunk's
+	 *         data, in which case we'll need our bottom-up pass instead
+	 */
+	public boolean summarizeFromHeightMap(BlockSource chunk, Tag heightMapTag, int ceilingHeight)
+	{
+		if (this.in_nether || heightMapTag == null)
+		{
+			return false;
+		}
+		int[] intMap = null;
+		byte[] byteMap = null;
+		if (heightMapTag instanceof IntArrayTag)
+		{
+			intMap = ((IntArrayTag) heightMapTag).value;
+			if (intMap.length != 256)
+			{
+				return false;
+			}
+		}
+		else if (heightMapTag instanceof ByteArrayTag)
+		{
+			byteMap = ((ByteArrayTag) heightMapTag).value;
+			if (byteMap.length != 256)
+			{
+				return false;
+			}
+		}
+		else
+		{
+			return false;
+		}
+
+		int height;
+		short block;
+		for (int zz = 0; zz < 16; zz++)
+		{
+			for (int xx = 0; xx < 16; xx++)
+			{
+				if (intMap != null)
+				{
+					height = intMap[(zz * 16) + xx];
+				}
+				else
+				{
+					height = byteMap[(zz * 16) + xx] & 0xFF;
+				}
+
+				// A HeightMap which disagrees with the blocks themselves (ie: from
+				// a world edited by an external tool) is no good to us.
+				if (height < 1 || height > ceilingHeight + 1)
+				{
+					return false;
+				}
+				height--;
+				block = chunk.getBlock(xx, height, zz);
+				if (block < 1)
+				{
+					return false;
+				}
+				while (height < ceilingHeight && chunk.getBlock(xx, height + 1, zz) > 0)
+				{
+					height++;
+					block = chunk.getBlock(xx, height, zz);
+				}
+				this.blocks[xx][zz] = block;
+				this.heights[xx][zz] = (short) height;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Starts our bottom-up pass
+	 */
+	public void beginPass()
+	{
+		this.foundSolid = new boolean[256];
+		this.prevSolid = new boolean[256];
+		this.prevBlock = new short[256];
+		this.prevHeight = new short[256];
+		if (this.in_nether)
+		{
+			this.candidateBlock = new short[256];
+			this.candidateHeight = new short[256];
+		}
+	}
+
+	/**
+	 * Processes a single block during our bottom-up pass.  Blocks in each
+	 * column must be given to us in increasing Y order, though the columns
+	 * themselves can be interleaved however is convenient.
+	 */
+	public void addBlock(int x, int y, int z, short block)
+	{
+		int i = (z * 16) + x;
+		if (block > 0)
+		{
+			if (this.in_nether && this.candidateBlock[i] > 0)
+			{
+				this.blocks[x][z] = this.candidateBlock[i];
+				this.heights[x][z] = this.candidateHeight[i];
+				this.candidateBlock[i] = 0;
+			}
+			this.foundSolid[i] = true;
+			this.prevSolid[i] = true;
+			this.prevBlock[i] = block;
+			this.prevHeight[i] = (short) y;
+		}
+		else if (this.prevSolid[i])
+		{
+			if (this.in_nether)
+			{
+				this.candidateBlock[i] = this.prevBlock[i];
+				this.candidateHeight[i] = this.prevHeight[i];
+			}
+			this.prevSolid[i] = false;
+		}
+	}
+
+	/**
+	 * Finishes our bottom-up pass, and frees up the state it was using
+	 */
+	public void endPass()
+	{
+		int i;
+		for (int zz = 0; zz < 16; zz++)
+		{
+			for (int xx = 0; xx < 16; xx++)
+			{
+				i = (zz * 16) + xx;
+				if (!this.in_nether)
+				{
+					// The topmost non-air block is simply the last one we saw
+					this.blocks[xx][zz] = this.prevBlock[i];
+					this.heights[xx][zz] = this.prevHeight[i];
+				}
+				else if (this.foundSolid[i] && this.blocks[xx][zz] == 0)
+				{
+					// Make sure we don't have holes in our Nether minimap
+					this.blocks[xx][zz] = BLOCK_BEDROCK.id;
+					this.heights[xx][zz] = this.prevHeight[i];
+				}
+			}
+		}
+		this.foundSolid = null;
+		this.prevSolid = null;
+		this.prevBlock = null;
+		this.prevHeight = null;
+		this.candidateBlock = null;
+		this.candidateHeight = null;
+	}
+
+	/**
+	 * Returns the top visible block ID for each column.  The array shouldn't
+	 * be modified.
+	 */
+	public short[][] getBlocks()
+	{
+		return this.blocks;
+	}
+
+	/**
+	 * Returns the height of the top visible block in each column.  The array
+	 * shouldn't be modified.
+	 */
+	public short[][] getHeights()
+	{
+		return this.heights;
+	}
+
+	/**
+	 * Returns our columns as ARGB colors, ready to be copied straight onto
+	 * the minimap, indexed by (z*16)+x.  Columns with nothing to draw are
+	 * left fully transparent.  The array shouldn't be modified.
+	 */
+	public int[] getColors()
+	{
+		if (this.colors == null)
+		{
+			int[] newColors = new int[256];
+			short block;
+			BlockType type;
+			for (int zz = 0; zz < 16; zz++)
+			{
+				for (int xx = 0; xx < 16; xx++)
+				{
+					block = this.blocks[xx][zz];
+					if (block > 0)
+					{
+						type = blockArray[block];
+						if (type == null)
+						{
+							type = BLOCK_UNKNOWN;
+						}
+						if (type.color != null)
+						{
+							newColors[(zz * 16) + xx] = type.color.getRGB();
+						}
+					}
+				}
+			}
+			this.colors = newColors;
+		}
+		return this.colors;
+	}
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Keeps an eye on how much memory the GL thread allocates each frame.  Once
+ * everything is loaded and the camera is sitting still, the render loop
+ * shouldn't be allocating anything at all, since any garbage we generate
+ * there eventually turns into a GC pause in the middle of someone flying
+ * around.  This is our check for that: it reads the JVM's per-thread
+ * allocation counter around each frame and logs a summary of any steady-state
+ * frames which allocated.
+ *
+ * The counter is only available on Sun-derived JVMs, and we only bother
+ * reading it when debug logging is on.
+ */
+public class FrameAllocationMonitor
+{
+	private static final long LOG_INTERVAL = 10000000000L;
+
+	private final com.sun.management.ThreadMXBean bean;
+	private final long threadId;
+	private boolean skip;
+	private long frameStartBytes;
+
+	private long lastLog;
+	private long frames;
+	private long allocatingFrames;
+	private long allocatedBytes;
+	private long maxBytes;
+
+	public FrameAllocationMonitor()
+	{
+		com.sun.management.ThreadMXBean found = null;
+		if (XRay.logger.isDebugEnabled())
+		{
+			try
+			{
+				java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+				if (bean instanceof com.sun.management.ThreadMXBean)
+				{
+					found = (com.sun.management.ThreadMXBean) bean;
+					if (found.isThreadAllocatedMemorySupported())
+					{
+						found.setThreadAllocatedMemoryEnabled(true);
+					}
+					else
+					{
+						found = null;
+					}
+				}
+			}
+			catch (Throwable e)
+			{
+				// Not a JVM we can ask; just don't monitor anything
+				found = null;
+			}
+		}
+		this.bean = found;
+		this.threadId = Thread.currentThread().getId();
+		this.lastLog = System.nanoTime();
+	}
+
+	/**
+	 * Returns whether we're actually measuring anything
+	 */
+	public boolean isEnabled()
+	{
+		return (this.bean != null);
+	}
+
+	/**
+	 * Returns how many bytes our thread has allocated so far, or -1 if we
+	 * can't tell.
+	 */
+	public long getAllocatedBytes()
+	{
+		if (this.bean == null)
+		{
+			return -1;
+		}
+		return this.bean.getThreadAllocatedBytes(this.threadId);
+	}
+
+	/**
+	 * Starts measuring a frame.  Must be called from the thread which
+	 * constructed us.
+	 */
+	public void beginFrame()
+	{
+		if (this.bean == null)
+		{
+			return;
+		}
+		this.skip = false;
+		this.frameStartBytes = this.getAllocatedBytes();
+	}
+
+	/**
+	 * Marks the current frame as one which is expected to allocate (ie: it
+	 * redrew some text), so it won't be counted.
+	 */
+	public void skipFrame()
+	{
+		this.skip = true;
+	}
+
+	/**
+	 * Finishes measuring a frame.
+	 *
+	 * @param steady Whether this was a steady-state frame, which shouldn't
+	 *               have had any reason to allocate
+	 */
+	public void endFrame(boolean steady)
+	{
+		if (this.bean == null)
+		{
+			return;
+		}
+		long bytes = this.getAllocatedBytes() - this.frameStartBytes;
+		if (steady && !this.skip)
+		{
+			this.frames++;
+			if (bytes > 0)
+			{
+				this.allocatingFrames++;
+				this.allocatedBytes += bytes;
+				this.maxBytes = Math.max(this.maxBytes, bytes);
+			}
+		}
+
+		// Anything we allocate while logging happens after we've taken our
+		// measurement, so it doesn't count against the next frame
+		long now = System.nanoTime();
+		if (now - this.lastLog > LOG_INTERVAL)
+		{
+			if (this.frames > 0)
+			{
+				if (this.allocatingFrames > 0)
+				{
+					XRay.logger.debug("Frame allocation: " + this.allocatingFrames + " of " + this.frames +
+							" steady frames allocated, " + (this.allocatedBytes / this.allocatingFrames) +
+							" bytes avg, " + this.maxBytes + " bytes max");
+				}
+				else
+				{
+					XRay.logger.debug("Frame allocation: " + this.frames + " steady frames, none allocated");
+				}
+			}
+			this.lastLog = now;
+			this.frames = 0;
+			this.allocatingFrames = 0;
+			this.allocatedBytes = 0;
+			this.maxBytes = 0;
+		}
+	}
+}
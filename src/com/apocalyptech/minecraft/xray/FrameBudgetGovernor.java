@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+/**
+ * Decides how much time each frame we can spend on background work: loading
+ * chunks, uploading chunk geometry, and uploading the minimap texture.  This
+ * used to be a fixed tenth of a second for chunk loading alone, which is far
+ * too long for smooth rendering while moving around.
+ *
+ * We measure how long each frame actually spends working (up to, but not
+ * including, Display.update(), so that vsync doesn't skew things) and adjust
+ * the budget to keep that near our target frame time: backing off quickly
+ * when we're over, and growing slowly when there's headroom.  While the camera
+ * is moving, the budget is also capped fairly low; once the camera has been
+ * still for a little while, we relax our target and let the background work
+ * catch up.
+ *
+ * The budget is shared between all the background tasks for the frame; each
+ * one should check remaining() and then charge() whatever it used.
+ */
+public class FrameBudgetGovernor
+{
+	private static final long MS = 1000000L;
+
+	// Target frame times while moving, and while idle
+	private static final long MOVING_TARGET = 16666667L;
+	private static final long IDLE_TARGET = 50 * MS;
+
+	// Limits on the budget itself
+	private static final long MIN_BUDGET = 1 * MS;
+	private static final long MAX_MOVING_BUDGET = 4 * MS;
+	private static final long MAX_IDLE_BUDGET = 40 * MS;
+
+	// How many still frames before we consider ourselves idle
+	private static final int IDLE_FRAMES = 30;
+
+	// How often we log our current state
+	private static final long LOG_INTERVAL = 1000 * MS;
+
+	private long budget;
+	private long used;
+	private long frameStart;
+	private long averageFrame;
+	private int stillFrames;
+	private boolean idle;
+
+	private long lastLog;
+	private long framesSinceLog;
+	private long workSinceLog;
+
+	public FrameBudgetGovernor()
+	{
+		this.budget = MAX_MOVING_BUDGET;
+		this.used = 0;
+		this.frameStart = System.nanoTime();
+		this.averageFrame = MOVING_TARGET;
+		this.stillFrames = 0;
+		this.idle = false;
+		this.lastLog = this.frameStart;
+		this.framesSinceLog = 0;
+		this.workSinceLog = 0;
+	}
+
+	/**
+	 * Starts a new frame.  Should be called at the top of the main loop.
+	 * 
+	 * @param moving Whether the camera moved since the last frame
+	 */
+	public void beginFrame(boolean moving)
+	{
+		this.frameStart = System.nanoTime();
+		this.used = 0;
+
+		if (moving)
+		{
+			this.stillFrames = 0;
+		}
+		else if (this.stillFrames < IDLE_FRAMES)
+		{
+			this.stillFrames++;
+		}
+		boolean wasIdle = this.idle;
+		this.idle = (this.stillFrames >= IDLE_FRAMES);
+		if (this.idle != wasIdle && XRay.logger.isDebugEnabled())
+		{
+			XRay.logger.debug("Frame governor: " + (this.idle ? "camera idle, opening up" : "camera moving, throttling")
+					+ " (budget " + formatMs(this.budget) + ")");
+		}
+		if (!this.idle && this.budget > MAX_MOVING_BUDGET)
+		{
+			this.budget = MAX_MOVING_BUDGET;
+		}
+	}
+
+	/**
+	 * Ends the current frame, and adjusts our budget based on how long it
+	 * took.  Should be called just before Display.update().
+	 */
+	public void endFrame()
+	{
+		long now = System.nanoTime();
+		long work = now - this.frameStart;
+
+		// Smooth things out a bit, so a single slow frame doesn't throw us off
+		this.averageFrame = ((this.averageFrame * 3) + work) / 4;
+
+		long target = (this.idle ? IDLE_TARGET : MOVING_TARGET);
+		long max = (this.idle ? MAX_IDLE_BUDGET : MAX_MOVING_BUDGET);
+		if (this.averageFrame > target + (target / 10))
+		{
+			this.budget = Math.max(MIN_BUDGET, (this.budget * 3) / 4);
+		}
+		else if (this.averageFrame < target - (target / 10))
+		{
+			this.budget = Math.min(max, this.budget + Math.min(MS, (target - this.averageFrame) / 2));
+		}
+
+		this.framesSinceLog++;
+		this.workSinceLog += work;
+		if (now - this.lastLog > LOG_INTERVAL)
+		{
+			if (XRay.logger.isDebugEnabled())
+			{
+				XRay.logger.debug("Frame governor: avg frame " + formatMs(this.workSinceLog / this.framesSinceLog)
+						+ ", budget " + formatMs(this.budget) + (this.idle ? " (idle)" : " (moving)"));
+			}
+			this.lastLog = now;
+			this.framesSinceLog = 0;
+			this.workSinceLog = 0;
+		}
+	}
+
+	/**
+	 * Returns how much background time we have left this frame, in nanoseconds.
+	 * May be zero or negative once the budget has been used up.
+	 */
+	public long remaining()
+	{
+		return this.budget - this.used;
+	}
+
+	/**
+	 * Records that we've spent some of this frame's budget
+	 * 
+	 * @param nanos How long was spent, in nanoseconds
+	 */
+	public void charge(long nanos)
+	{
+		this.used += nanos;
+	}
+
+	/**
+	 * Returns our current per-frame budget, in nanoseconds
+	 */
+	public long getBudget()
+	{
+		return this.budget;
+	}
+
+	/**
+	 * Returns whether the camera has been still long enough that we're
+	 * letting background work run more freely
+	 */
+	public boolean isIdle()
+	{
+		return this.idle;
+	}
+
+	private static String formatMs(long nanos)
+	{
+		return String.format("%.1fms", nanos / (double)MS);
+	}
+}
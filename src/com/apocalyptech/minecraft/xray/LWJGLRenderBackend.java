@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import org.lwjgl.opengl.GL11;
+
+/**
+ * The RenderBackend we actually draw with, which passes everything straight
+ * through to GL11.
+ */
+public class LWJGLRenderBackend implements RenderBackend
+{
+	public void glBegin(int mode)
+	{
+		GL11.glBegin(mode);
+	}
+
+	public void glEnd()
+	{
+		GL11.glEnd();
+	}
+
+	public void glTexCoord2f(float s, float t)
+	{
+		GL11.glTexCoord2f(s, t);
+	}
+
+	public void glVertex3f(float x, float y, float z)
+	{
+		GL11.glVertex3f(x, y, z);
+	}
+
+	public void glColor3f(float red, float green, float blue)
+	{
+		GL11.glColor3f(red, green, blue);
+	}
+
+	public void glColor4f(float red, float green, float blue, float alpha)
+	{
+		GL11.glColor4f(red, green, blue, alpha);
+	}
+
+	public void glPushMatrix()
+	{
+		GL11.glPushMatrix();
+	}
+
+	public void glPopMatrix()
+	{
+		GL11.glPopMatrix();
+	}
+
+	public void glTranslatef(float x, float y, float z)
+	{
+		GL11.glTranslatef(x, y, z);
+	}
+
+	public void glRotatef(float angle, float x, float y, float z)
+	{
+		GL11.glRotatef(angle, x, y, z);
+	}
+
+	public void glScalef(float x, float y, float z)
+	{
+		GL11.glScalef(x, y, z);
+	}
+
+	public int glGenLists(int range)
+	{
+		return GL11.glGenLists(range);
+	}
+
+	public void glNewList(int list, int mode)
+	{
+		GL11.glNewList(list, mode);
+	}
+
+	public void glEndList()
+	{
+		GL11.glEndList();
+	}
+
+	public void glCallList(int list)
+	{
+		GL11.glCallList(list);
+	}
+
+	public void glDeleteLists(int list, int range)
+	{
+		GL11.glDeleteLists(list, range);
+	}
+
+	public void glBindTexture(int target, int texture)
+	{
+		GL11.glBindTexture(target, texture);
+	}
+
+	public void glEnable(int cap)
+	{
+		GL11.glEnable(cap);
+	}
+
+	public void glDisable(int cap)
+	{
+		GL11.glDisable(cap);
+	}
+
+	public void glBlendFunc(int sfactor, int dfactor)
+	{
+		GL11.glBlendFunc(sfactor, dfactor);
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Keeps recently-used dimensions around after we switch away from them, so
+ * that flipping back and forth between (say) the Overworld and the Nether
+ * doesn't have to reload everything from disk each time.  Each suspended
+ * dimension keeps its MinecraftLevel (with all its parsed chunks) and its
+ * minimap, though the minimap gives up its textures while it's in here.
+ *
+ * Everything we hold is kept under a memory budget.  When we're over it, the
+ * least-recently-used dimension first gives up its GL lists (which can be
+ * rebuilt from the chunk data fairly cheaply), and then if that's not enough
+ * it gets dropped entirely.
+ */
+public class LevelCache
+{
+	/**
+	 * A single suspended dimension
+	 */
+	public static class Entry
+	{
+		public final WorldInfo world;
+		public final MinecraftLevel level;
+		public final TiledMinimap minimap;
+		private boolean listsFreed;
+
+		public Entry(WorldInfo world, MinecraftLevel level, TiledMinimap minimap)
+		{
+			this.world = world;
+			this.level = level;
+			this.minimap = minimap;
+			this.listsFreed = false;
+		}
+
+		public long estimateMemoryUsage()
+		{
+			return this.level.estimateMemoryUsage() + this.minimap.estimateMemoryUsage();
+		}
+	}
+
+	// Access-ordered, so iteration starts with the least-recently-used
+	private LinkedHashMap<String, Entry> entries;
+
+	public LevelCache()
+	{
+		this.entries = new LinkedHashMap<String, Entry>(8, 0.75f, true);
+	}
+
+	private static String getKey(WorldInfo world)
+	{
+		return world.getBasePath() + ":" + world.getDimension();
+	}
+
+	/**
+	 * Suspends the given dimension, replacing anything we already had for it
+	 */
+	public void suspend(WorldInfo world, MinecraftLevel level, TiledMinimap minimap)
+	{
+		minimap.releaseTextures();
+		Entry old = this.entries.put(getKey(world), new Entry(world, level, minimap));
+		if (old != null && old.level != level)
+		{
+			this.dispose(old);
+		}
+	}
+
+	/**
+	 * Takes the given dimension back out of the cache, if we have it.
+	 * 
+	 * @return The suspended dimension, or null if we don't have it
+	 */
+	public Entry resume(WorldInfo world)
+	{
+		Entry entry = this.entries.remove(getKey(world));
+		if (entry != null)
+		{
+			XRay.logger.debug("Resuming cached dimension " + world.getDimensionDesc());
+		}
+		return entry;
+	}
+
+	/**
+	 * Frees up suspended dimensions until we're within our budget.
+	 * 
+	 * @param budget How much memory we can use, in bytes
+	 */
+	public void trim(long budget)
+	{
+		long total = 0;
+		for (Entry entry : this.entries.values())
+		{
+			total += entry.estimateMemoryUsage();
+		}
+
+		Iterator<Entry> iter = this.entries.values().iterator();
+		Entry entry;
+		long before;
+		while (total > budget && iter.hasNext())
+		{
+			entry = iter.next();
+			before = entry.estimateMemoryUsage();
+			if (!entry.listsFreed)
+			{
+				entry.level.freeAllLists();
+				entry.listsFreed = true;
+				total -= before - entry.estimateMemoryUsage();
+				XRay.logger.debug("Freed GL lists for cached dimension " + entry.world.getDimensionDesc());
+			}
+			if (total > budget)
+			{
+				// Take the estimate first, since disposing clears the minimap
+				total -= entry.estimateMemoryUsage();
+				this.dispose(entry);
+				iter.remove();
+				XRay.logger.debug("Dropped cached dimension " + entry.world.getDimensionDesc());
+			}
+		}
+	}
+
+	/**
+	 * Drops everything we've got
+	 */
+	public void clear()
+	{
+		for (Entry entry : this.entries.values())
+		{
+			this.dispose(entry);
+		}
+		this.entries.clear();
+	}
+
+	private void dispose(Entry entry)
+	{
+		if (!entry.listsFreed)
+		{
+			entry.level.freeAllLists();
+		}
+		entry.minimap.dispose();
+	}
+}
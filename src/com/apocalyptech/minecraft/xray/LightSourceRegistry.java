@@ -37,6 +37,9 @@ import java.util.HashMap;
  * location, this registry might differ from what's being shown.
  *
  * I'm not exactly overly concerned about that.
+ *
+ * Chunks get added in from the GL thread while the mesh workers are reading,
+ * so access is synchronized.
  */
 public class LightSourceRegistry
 {
@@ -54,7 +57,7 @@ public class LightSourceRegistry
 	 * based on the radius, though note that we're adding a cube centered around
 	 * the given coordinates, not a sphere.
 	 */
-	public void add(int x, int y, int z)
+	public synchronized void add(int x, int y, int z)
 	{
 		for (int lx = x - this.radius;
 				lx <= x + this.radius;
@@ -97,7 +100,7 @@ public class LightSourceRegistry
 	/**
 	 * Checks to see if the given coordinate is in our registry
 	 */
-	public boolean check(int x, int y, int z)
+	public synchronized boolean check(int x, int y, int z)
 	{
 		if (!this.registry.containsKey(x))
 		{
@@ -0,0 +1,273 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import org.lwjgl.opengl.GL11;
+
+/**
+ * A CPU-side recording of the immediate-mode GL calls that Chunk uses to
+ * draw its geometry.  Meshing happens on MeshScheduler's worker threads, which
+ * can't talk to GL at all, so the render methods write into one of these
+ * instead, and the GL thread later replays it into a display list.
+ *
+ * Only the handful of calls that the chunk renderers actually use are
+ * supported.
+ */
+public class MeshBuffer
+{
+	private static final byte OP_BEGIN = 0;
+	private static final byte OP_END = 1;
+	private static final byte OP_TEXCOORD = 2;
+	private static final byte OP_VERTEX = 3;
+	private static final byte OP_COLOR = 4;
+	private static final byte OP_PUSHMATRIX = 5;
+	private static final byte OP_POPMATRIX = 6;
+	private static final byte OP_TRANSLATE = 7;
+	private static final byte OP_ROTATE = 8;
+	private static final byte OP_SCALE = 9;
+
+	private byte[] ops;
+	private int opCount;
+	private float[] args;
+	private int argCount;
+	private int vertexCount;
+
+	// Transform applied to texture coordinates as they're recorded, so that
+	// geometry built for one texture sheet can be drawn out of a SheetAtlas
+	private float texScaleU;
+	private float texOffsetU;
+	private float texScaleV;
+	private float texOffsetV;
+
+	public MeshBuffer()
+	{
+		this.ops = new byte[256];
+		this.args = new float[1024];
+		this.opCount = 0;
+		this.argCount = 0;
+		this.vertexCount = 0;
+		this.setTexTransform(1f, 0f, 1f, 0f);
+	}
+
+	/**
+	 * Sets the transform for any texture coordinates recorded from now on:
+	 * s becomes offsetU + s*scaleU, and t becomes offsetV + t*scaleV.
+	 */
+	public void setTexTransform(float scaleU, float offsetU, float scaleV, float offsetV)
+	{
+		this.texScaleU = scaleU;
+		this.texOffsetU = offsetU;
+		this.texScaleV = scaleV;
+		this.texOffsetV = offsetV;
+	}
+
+	/**
+	 * Returns whether anything has been recorded
+	 */
+	public boolean isEmpty()
+	{
+		return (this.opCount == 0);
+	}
+
+	/**
+	 * Returns how many calls have been recorded
+	 */
+	public int getOpCount()
+	{
+		return this.opCount;
+	}
+
+	/**
+	 * Returns how many vertices have been recorded
+	 */
+	public int getVertexCount()
+	{
+		return this.vertexCount;
+	}
+
+	/**
+	 * Approximate memory used by this buffer, in bytes
+	 */
+	public int getByteSize()
+	{
+		return this.ops.length + (this.args.length * 4);
+	}
+
+	private void op(byte op, int argsNeeded)
+	{
+		if (this.opCount == this.ops.length)
+		{
+			byte[] newOps = new byte[this.ops.length * 2];
+			System.arraycopy(this.ops, 0, newOps, 0, this.opCount);
+			this.ops = newOps;
+		}
+		if (this.argCount + argsNeeded > this.args.length)
+		{
+			float[] newArgs = new float[this.args.length * 2];
+			System.arraycopy(this.args, 0, newArgs, 0, this.argCount);
+			this.args = newArgs;
+		}
+		this.ops[this.opCount++] = op;
+	}
+
+	public void glBegin(int mode)
+	{
+		this.op(OP_BEGIN, 1);
+		this.args[this.argCount++] = mode;
+	}
+
+	public void glEnd()
+	{
+		this.op(OP_END, 0);
+	}
+
+	public void glTexCoord2f(float s, float t)
+	{
+		this.op(OP_TEXCOORD, 2);
+		this.args[this.argCount++] = this.texOffsetU + s * this.texScaleU;
+		this.args[this.argCount++] = this.texOffsetV + t * this.texScaleV;
+	}
+
+	public void glVertex3f(float x, float y, float z)
+	{
+		this.op(OP_VERTEX, 3);
+		this.vertexCount++;
+		this.args[this.argCount++] = x;
+		this.args[this.argCount++] = y;
+		this.args[this.argCount++] = z;
+	}
+
+	public void glColor3f(float red, float green, float blue)
+	{
+		this.op(OP_COLOR, 3);
+		this.args[this.argCount++] = red;
+		this.args[this.argCount++] = green;
+		this.args[this.argCount++] = blue;
+	}
+
+	public void glPushMatrix()
+	{
+		this.op(OP_PUSHMATRIX, 0);
+	}
+
+	public void glPopMatrix()
+	{
+		this.op(OP_POPMATRIX, 0);
+	}
+
+	public void glTranslatef(float x, float y, float z)
+	{
+		this.op(OP_TRANSLATE, 3);
+		this.args[this.argCount++] = x;
+		this.args[this.argCount++] = y;
+		this.args[this.argCount++] = z;
+	}
+
+	public void glRotatef(float angle, float x, float y, float z)
+	{
+		this.op(OP_ROTATE, 4);
+		this.args[this.argCount++] = angle;
+		this.args[this.argCount++] = x;
+		this.args[this.argCount++] = y;
+		this.args[this.argCount++] = z;
+	}
+
+	public void glScalef(float x, float y, float z)
+	{
+		this.op(OP_SCALE, 3);
+		this.args[this.argCount++] = x;
+		this.args[this.argCount++] = y;
+		this.args[this.argCount++] = z;
+	}
+
+	/**
+	 * Plays back everything we've recorded into the given backend.  Must be
+	 * called from the GL thread, generally inside a glNewList().
+	 */
+	public void replay(RenderBackend backend)
+	{
+		int a = 0;
+		float[] args = this.args;
+		for (int i = 0; i < this.opCount; i++)
+		{
+			switch (this.ops[i])
+			{
+				case OP_BEGIN:
+					backend.glBegin((int)args[a]);
+					a += 1;
+					break;
+				case OP_END:
+					backend.glEnd();
+					break;
+				case OP_TEXCOORD:
+					backend.glTexCoord2f(args[a], args[a+1]);
+					a += 2;
+					break;
+				case OP_VERTEX:
+					backend.glVertex3f(args[a], args[a+1], args[a+2]);
+					a += 3;
+					break;
+				case OP_COLOR:
+					backend.glColor3f(args[a], args[a+1], args[a+2]);
+					a += 3;
+					break;
+				case OP_PUSHMATRIX:
+					backend.glPushMatrix();
+					break;
+				case OP_POPMATRIX:
+					backend.glPopMatrix();
+					break;
+				case OP_TRANSLATE:
+					backend.glTranslatef(args[a], args[a+1], args[a+2]);
+					a += 3;
+					break;
+				case OP_ROTATE:
+					backend.glRotatef(args[a], args[a+1], args[a+2], args[a+3]);
+					a += 4;
+					break;
+				case OP_SCALE:
+					backend.glScalef(args[a], args[a+1], args[a+2]);
+					a += 3;
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Compiles our contents into a new display list, using XRay.renderBackend,
+	 * and returns its ID.
+	 */
+	public int compile()
+	{
+		RenderBackend backend = XRay.renderBackend;
+		int list = backend.glGenLists(1);
+		backend.glNewList(list, GL11.GL_COMPILE);
+		this.replay(backend);
+		backend.glEndList();
+		return list;
+	}
+}
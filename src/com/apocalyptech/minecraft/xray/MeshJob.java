@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A pending rebuild of some or all of a Chunk's geometry.  Jobs are created
+ * and filled in by MeshScheduler on the GL thread (see Chunk.captureRebuild()),
+ * meshed on a worker thread (Chunk.buildMeshes()), and then handed back to the
+ * GL thread to be uploaded as display lists (Chunk.uploadMeshes()).
+ *
+ * Repeated requests for the same chunk while the job is still waiting in the
+ * queue just get merged into it.
+ */
+public class MeshJob implements Comparable<MeshJob>
+{
+	/**
+	 * The work to do for a single section of the chunk.  We remember the
+	 * section's dirty generations as of when we were queued, so that stale
+	 * results can be thrown away at upload time.
+	 */
+	public static class SectionWork
+	{
+		public final ChunkSection section;
+		public boolean main;
+		public boolean selected;
+		public int generation;
+		public int selectedGeneration;
+
+		// Set at upload time: whether our results are still current
+		public boolean applyMain;
+		public boolean applySelected;
+
+		public SectionWork(ChunkSection section)
+		{
+			this.section = section;
+		}
+	}
+
+	/**
+	 * A single finished sub-mesh
+	 */
+	public static class Result
+	{
+		public final SectionWork work;
+		public final int sheet;
+		public final int listType;
+		public final int affectMask;
+		public final int valueMask;
+		public final MeshBuffer buffer;
+
+		public Result(SectionWork work, int sheet, int listType, int affectMask, int valueMask, MeshBuffer buffer)
+		{
+			this.work = work;
+			this.sheet = sheet;
+			this.listType = listType;
+			this.affectMask = affectMask;
+			this.valueMask = valueMask;
+			this.buffer = buffer;
+		}
+	}
+
+	public final Chunk chunk;
+	public final int chunkGeneration;
+	public final int epoch;
+	public final long requestTime;
+
+	// Scheduling priority; visible work first, then the closest chunks
+	public boolean visible;
+	public int distance;
+
+	// State that the meshing depends on, copied from the GL thread
+	public boolean[] selectedMap;
+	public boolean highlighting;
+	public RenderConfig config;
+
+	// Our neighboring chunks, as they were when we were queued (any of which
+	// may be null).  Workers only look at these, never at the level itself,
+	// since its chunk array is changed on the GL thread as chunks load.
+	public Chunk west;
+	public Chunk east;
+	public Chunk north;
+	public Chunk south;
+
+	// Whether to build the chunk's paintings, border and slime box as well
+	public boolean extras;
+
+	private HashMap<Integer, SectionWork> sections;
+
+	// Our output
+	public ArrayList<Result> results;
+	public MeshBuffer paintings;
+	public MeshBuffer border;
+	public MeshBuffer slimeBox;
+	public boolean failed;
+
+	public MeshJob(Chunk chunk, int chunkGeneration, int epoch)
+	{
+		this.chunk = chunk;
+		this.chunkGeneration = chunkGeneration;
+		this.epoch = epoch;
+		this.requestTime = System.nanoTime();
+		this.visible = false;
+		this.distance = 0;
+		this.extras = false;
+		this.sections = new HashMap<Integer, SectionWork>();
+		this.results = new ArrayList<Result>();
+		this.failed = false;
+	}
+
+	/**
+	 * Adds a section to this job, merging with any work already queued for it.
+	 */
+	public void addSection(ChunkSection section, boolean main, boolean selected)
+	{
+		SectionWork work = this.sections.get(section.y);
+		if (work == null)
+		{
+			work = new SectionWork(section);
+			this.sections.put(section.y, work);
+		}
+		if (main)
+		{
+			work.main = true;
+			work.generation = section.generation;
+			this.visible = true;
+		}
+		if (selected)
+		{
+			work.selected = true;
+			work.selectedGeneration = section.selectedGeneration;
+		}
+	}
+
+	public Iterable<SectionWork> getSections()
+	{
+		return this.sections.values();
+	}
+
+	public void addResult(SectionWork work, int sheet, int listType, int affectMask, int valueMask, MeshBuffer buffer)
+	{
+		this.results.add(new Result(work, sheet, listType, affectMask, valueMask, buffer));
+	}
+
+	/**
+	 * Visible jobs sort first, and then the closest ones.
+	 */
+	public int compareTo(MeshJob other)
+	{
+		if (this.visible != other.visible)
+		{
+			return (this.visible ? -1 : 1);
+		}
+		return (this.distance - other.distance);
+	}
+}
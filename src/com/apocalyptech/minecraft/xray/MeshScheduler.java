@@ -0,0 +1,362 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Schedules the rebuilding of chunk geometry.  Chunks used to rebuild their
+ * lists lazily inside the render passes, one after another on the GL thread,
+ * in whatever order they happened to be drawn.  Now the main loop hands any
+ * chunk with dirty sections to request() each frame, and:
+ *
+ *   - Repeated requests for a chunk which is still waiting are merged into
+ *     the job which is already queued.
+ *   - Jobs are ordered so that visible sections come first, and then by
+ *     distance from the camera.
+ *   - The actual meshing happens on a pool of worker threads, which record
+ *     into MeshBuffers.  Only one worker ever handles a given chunk at once,
+ *     since Chunk keeps its loop state in instance variables.
+ *   - The GL thread just uploads finished jobs in upload(), up to a per-frame
+ *     time budget.
+ *
+ * We also keep track of how long rebuilds take, from the initial request
+ * through to upload, so that we can report on it.
+ */
+public class MeshScheduler
+{
+	private static final int LATENCY_SAMPLES = 512;
+
+	private final PriorityQueue<MeshJob> queue;
+	private final HashMap<Chunk, MeshJob> pending;
+	private final HashSet<Chunk> running;
+	private final LinkedList<MeshJob> completed;
+	private final Thread[] workers;
+
+	// Bumped when we're cleared, so that anything still in-flight for an old
+	// world gets thrown away.
+	private int epoch;
+
+	// How many jobs have thrown an exception while being meshed
+	private int failedCount;
+
+	// Ring buffer of our most recent rebuild latencies, in nanoseconds
+	private final long[] latencies;
+	private int latencyCount;
+	private int latencyPos;
+
+	/**
+	 * Creates a new scheduler and starts up its workers.
+	 * 
+	 * @param workerCount How many worker threads to use
+	 */
+	public MeshScheduler(int workerCount)
+	{
+		this.queue = new PriorityQueue<MeshJob>();
+		this.pending = new HashMap<Chunk, MeshJob>();
+		this.running = new HashSet<Chunk>();
+		this.completed = new LinkedList<MeshJob>();
+		this.epoch = 0;
+		this.failedCount = 0;
+		this.latencies = new long[LATENCY_SAMPLES];
+		this.latencyCount = 0;
+		this.latencyPos = 0;
+
+		this.workers = new Thread[workerCount];
+		for (int i = 0; i < workerCount; i++)
+		{
+			this.workers[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					MeshScheduler.this.workerLoop();
+				}
+			}, "XRay Mesher " + (i+1));
+			this.workers[i].setDaemon(true);
+			this.workers[i].start();
+		}
+	}
+
+	/**
+	 * Creates a new scheduler with one worker per available processor, leaving
+	 * one free for the GL thread.
+	 */
+	public MeshScheduler()
+	{
+		this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+	}
+
+	/**
+	 * Requests a rebuild of whatever is currently dirty in the given chunk.
+	 * Must be called from the GL thread.
+	 * 
+	 * @param chunk The chunk to rebuild
+	 * @param distance Distance from the camera, in chunks
+	 * @param selectedMap Which ores are currently selected for highlighting
+	 * @param highlighting Whether we're currently highlighting ores
+	 */
+	public synchronized void request(Chunk chunk, int distance, boolean[] selectedMap, boolean highlighting)
+	{
+		MeshJob job = this.pending.get(chunk);
+		if (job == null)
+		{
+			job = chunk.createMeshJob(this.epoch);
+			this.pending.put(chunk, job);
+		}
+		else
+		{
+			this.queue.remove(job);
+		}
+		chunk.captureRebuild(job, selectedMap, highlighting);
+		job.distance = distance;
+		this.queue.add(job);
+		this.notifyAll();
+	}
+
+	/**
+	 * Uploads finished jobs until we run out of them, or we've used up our
+	 * time budget.  Must be called from the GL thread.
+	 * 
+	 * @param budget How long we're allowed to spend, in nanoseconds
+	 */
+	public void upload(long budget)
+	{
+		this.upload(budget, null);
+	}
+
+	/**
+	 * Uploads finished jobs as in upload(long), adding each chunk which
+	 * actually had something uploaded to the given list.
+	 * 
+	 * @param budget How long we're allowed to spend, in nanoseconds
+	 * @param uploaded Where to add the chunks we uploaded; may be null
+	 */
+	public void upload(long budget, List<Chunk> uploaded)
+	{
+		long start = System.nanoTime();
+		MeshJob job;
+		while (true)
+		{
+			synchronized (this)
+			{
+				if (this.completed.isEmpty())
+				{
+					return;
+				}
+				job = this.completed.removeFirst();
+			}
+			if (job.epoch != this.epoch)
+			{
+				job.chunk.abandonMeshJob(job);
+				continue;
+			}
+			if (job.chunk.uploadMeshes(job))
+			{
+				this.recordLatency(System.nanoTime() - job.requestTime);
+				Metrics.MESH_LATENCY.recordSince(job.requestTime);
+				if (uploaded != null)
+				{
+					uploaded.add(job.chunk);
+				}
+			}
+			if (System.nanoTime() - start > budget)
+			{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Throws away everything we have queued.  Jobs which are currently being
+	 * worked on will be discarded when they finish.  The chunks involved get
+	 * their dirty flags back, in case we come back to them later.  Must be
+	 * called from the GL thread.
+	 */
+	public synchronized void clear()
+	{
+		this.epoch++;
+		for (MeshJob job : this.pending.values())
+		{
+			job.chunk.abandonMeshJob(job);
+		}
+		for (MeshJob job : this.completed)
+		{
+			job.chunk.abandonMeshJob(job);
+		}
+		this.queue.clear();
+		this.pending.clear();
+		this.completed.clear();
+	}
+
+	/**
+	 * Stops our workers.  Anything they're in the middle of is finished off
+	 * first, but nothing else will be meshed.
+	 */
+	public void shutdown()
+	{
+		for (Thread worker : this.workers)
+		{
+			worker.interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of jobs waiting to be meshed
+	 */
+	public synchronized int getQueueDepth()
+	{
+		return this.queue.size();
+	}
+
+	/**
+	 * Returns the number of jobs which are being meshed, or are waiting
+	 * to be uploaded
+	 */
+	public synchronized int getInFlight()
+	{
+		return this.running.size() + this.completed.size();
+	}
+
+	/**
+	 * Returns how many jobs have failed to mesh since we were created
+	 */
+	public synchronized int getFailedCount()
+	{
+		return this.failedCount;
+	}
+
+	/**
+	 * Returns the given percentile of our recent rebuild latencies, in
+	 * milliseconds.  Will return 0 if we haven't rebuilt anything yet.
+	 * 
+	 * @param percentile The percentile to report, from 0 to 100
+	 */
+	public synchronized double getLatencyPercentile(double percentile)
+	{
+		if (this.latencyCount == 0)
+		{
+			return 0;
+		}
+		long[] sorted = Arrays.copyOf(this.latencies, this.latencyCount);
+		Arrays.sort(sorted);
+		int idx = (int)Math.ceil(percentile / 100d * sorted.length) - 1;
+		idx = Math.max(0, Math.min(sorted.length - 1, idx));
+		return sorted[idx] / 1000000d;
+	}
+
+	private synchronized void recordLatency(long nanos)
+	{
+		this.latencies[this.latencyPos] = nanos;
+		this.latencyPos = (this.latencyPos + 1) % LATENCY_SAMPLES;
+		if (this.latencyCount < LATENCY_SAMPLES)
+		{
+			this.latencyCount++;
+		}
+	}
+
+	/**
+	 * Waits for, and returns, the highest-priority job whose chunk isn't
+	 * already being worked on by another worker.
+	 */
+	private synchronized MeshJob take()
+		throws InterruptedException
+	{
+		MeshJob job;
+		ArrayList<MeshJob> skipped = new ArrayList<MeshJob>();
+		while (true)
+		{
+			if (Thread.interrupted())
+			{
+				throw new InterruptedException();
+			}
+			while ((job = this.queue.poll()) != null)
+			{
+				if (!this.running.contains(job.chunk))
+				{
+					break;
+				}
+				skipped.add(job);
+			}
+			this.queue.addAll(skipped);
+			skipped.clear();
+			if (job != null)
+			{
+				this.pending.remove(job.chunk);
+				this.running.add(job.chunk);
+				return job;
+			}
+			this.wait();
+		}
+	}
+
+	private synchronized void finish(MeshJob job)
+	{
+		if (job.failed)
+		{
+			this.failedCount++;
+		}
+		this.running.remove(job.chunk);
+		this.completed.add(job);
+
+		// Something we skipped over earlier may be runnable now
+		this.notifyAll();
+	}
+
+	private void workerLoop()
+	{
+		MeshJob job;
+		while (true)
+		{
+			try
+			{
+				job = this.take();
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+			try
+			{
+				long start = System.nanoTime();
+				job.chunk.buildMeshes(job);
+				Metrics.MESH_BUILD.recordSince(start);
+			}
+			catch (Exception e)
+			{
+				XRay.logger.error("Error meshing chunk (" + job.chunk.x + ", " + job.chunk.z + "): " + e.toString());
+				job.failed = true;
+			}
+			this.finish(job);
+		}
+	}
+}
@@ -0,0 +1,444 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A registry of runtime performance metrics, so that stutter reports can be
+ * diagnosed with actual numbers.  There are three kinds of metric:
+ *
+ *   Counter   - a running total, ie: how many region files we've opened
+ *   Gauge     - a value which is read whenever it's asked for, ie: the
+ *               current mesh queue depth
+ *   Histogram - a window of recent samples, which reports count, p50, p99
+ *               and max; generally timings, ie: how long chunks take to parse
+ *
+ * The metrics which are recorded from inside the loading and meshing code
+ * are declared here, so that they all exist (in a fixed order) from the
+ * start.  Gauges need something to read from, so XRay registers those once
+ * it's up and running.  Recording a sample never allocates, so it's safe
+ * to do in the render loop, and every metric can be updated from any thread.
+ *
+ * Metrics can be viewed on the second page of the render details overlay,
+ * through JMX (see MetricsMBean), and optionally logged to a CSV file.
+ */
+public class Metrics
+{
+	private static final long MS = 1000000L;
+
+	private static final LinkedHashMap<String, Metric> registry = new LinkedHashMap<String, Metric>();
+
+	// Loading
+	public static final Histogram REGION_OPEN = histogram("region.open", "Opening a region file", true);
+	public static final Histogram CHUNK_READ = histogram("chunk.read", "Reading a chunk's compressed data from its region file", true);
+	public static final Histogram CHUNK_BATCH_READ = histogram("chunk.batchRead", "Reading a batch of chunks' compressed data, in file order", true);
+	public static final Histogram REGION_READ_RUNS = histogram("region.readRuns", "Separate reads needed per region for a batch of chunks", false);
+	public static final Histogram CHUNK_PARSE = histogram("chunk.parse", "Inflating and parsing a chunk's NBT", true);
+	public static final Histogram CHUNK_CONSTRUCT = histogram("chunk.construct", "Building a Chunk from its NBT", true);
+
+	// Meshing
+	public static final Histogram MESH_BUILD = histogram("mesh.build", "Meshing a chunk on a worker thread", true);
+	public static final Histogram MESH_LATENCY = histogram("mesh.latency", "From requesting a rebuild to uploading it", true);
+	public static final Histogram MESH_QUADS = histogram("mesh.quads", "Quads uploaded per chunk rebuild", false);
+	public static final Histogram MESH_LISTS = histogram("mesh.lists", "Display lists compiled per chunk rebuild", false);
+
+	// Main loop
+	public static final Histogram MINIMAP_UPLOAD = histogram("minimap.upload", "Uploading the minimap texture", true);
+	public static final Histogram FRAME_TIME = histogram("frame.time", "Time spent on each frame, before swapping buffers", true);
+
+	/**
+	 * Something we keep track of
+	 */
+	public static abstract class Metric
+	{
+		public final String name;
+		public final String description;
+
+		protected Metric(String name, String description)
+		{
+			this.name = name;
+			this.description = description;
+		}
+
+		/**
+		 * The names of the values we report, which are appended to our own
+		 * name when exported.  An empty string means our name alone.
+		 */
+		public abstract String[] getFields();
+
+		/**
+		 * Our current values, in the same order as getFields()
+		 */
+		public abstract double[] getValues();
+
+		/**
+		 * A short, human-readable summary of our current values
+		 */
+		public abstract String getSummary();
+	}
+
+	/**
+	 * A running total
+	 */
+	public static class Counter extends Metric
+	{
+		private static final String[] FIELDS = { "" };
+
+		private final AtomicLong value;
+
+		protected Counter(String name, String description)
+		{
+			super(name, description);
+			this.value = new AtomicLong();
+		}
+
+		public void increment()
+		{
+			this.value.incrementAndGet();
+		}
+
+		public void add(long amount)
+		{
+			this.value.addAndGet(amount);
+		}
+
+		public long get()
+		{
+			return this.value.get();
+		}
+
+		public String[] getFields()
+		{
+			return FIELDS;
+		}
+
+		public double[] getValues()
+		{
+			return new double[] { this.get() };
+		}
+
+		public String getSummary()
+		{
+			return Long.toString(this.get());
+		}
+	}
+
+	/**
+	 * Where a Gauge gets its value from
+	 */
+	public static interface GaugeSource
+	{
+		public long getValue();
+	}
+
+	/**
+	 * A value which is read on demand
+	 */
+	public static class Gauge extends Metric
+	{
+		private static final String[] FIELDS = { "" };
+
+		private final GaugeSource source;
+
+		protected Gauge(String name, String description, GaugeSource source)
+		{
+			super(name, description);
+			this.source = source;
+		}
+
+		public long get()
+		{
+			return this.source.getValue();
+		}
+
+		public String[] getFields()
+		{
+			return FIELDS;
+		}
+
+		public double[] getValues()
+		{
+			return new double[] { this.get() };
+		}
+
+		public String getSummary()
+		{
+			return Long.toString(this.get());
+		}
+	}
+
+	/**
+	 * A window of our most recent samples.  Timings are recorded in
+	 * nanoseconds and reported in milliseconds.
+	 */
+	public static class Histogram extends Metric
+	{
+		private static final int SAMPLES = 1024;
+		private static final String[] FIELDS = { "count", "p50", "p99", "max" };
+
+		private final boolean time;
+		private final long[] samples;
+		private int sampleCount;
+		private int samplePos;
+		private long count;
+
+		protected Histogram(String name, String description, boolean time)
+		{
+			super(name, description);
+			this.time = time;
+			this.samples = new long[SAMPLES];
+			this.sampleCount = 0;
+			this.samplePos = 0;
+			this.count = 0;
+		}
+
+		public synchronized void record(long value)
+		{
+			this.samples[this.samplePos] = value;
+			this.samplePos = (this.samplePos + 1) % SAMPLES;
+			if (this.sampleCount < SAMPLES)
+			{
+				this.sampleCount++;
+			}
+			this.count++;
+		}
+
+		/**
+		 * Records the time since the given System.nanoTime() value
+		 */
+		public void recordSince(long start)
+		{
+			this.record(System.nanoTime() - start);
+		}
+
+		/**
+		 * Returns the total number of samples we've ever recorded
+		 */
+		public synchronized long getCount()
+		{
+			return this.count;
+		}
+
+		/**
+		 * Returns our recent samples, sorted, and converted to milliseconds if
+		 * they're timings
+		 */
+		private double[] getSorted()
+		{
+			long[] sorted;
+			synchronized (this)
+			{
+				sorted = Arrays.copyOf(this.samples, this.sampleCount);
+			}
+			Arrays.sort(sorted);
+			double[] values = new double[sorted.length];
+			for (int i = 0; i < sorted.length; i++)
+			{
+				values[i] = (this.time ? sorted[i] / (double)MS : sorted[i]);
+			}
+			return values;
+		}
+
+		private static double percentile(double[] sorted, double percentile)
+		{
+			if (sorted.length == 0)
+			{
+				return 0;
+			}
+			int idx = (int)Math.ceil(percentile / 100d * sorted.length) - 1;
+			return sorted[Math.max(0, Math.min(sorted.length - 1, idx))];
+		}
+
+		public String[] getFields()
+		{
+			return FIELDS;
+		}
+
+		public double[] getValues()
+		{
+			double[] sorted = this.getSorted();
+			return new double[] {
+				this.getCount(),
+				percentile(sorted, 50),
+				percentile(sorted, 99),
+				(sorted.length == 0 ? 0 : sorted[sorted.length - 1])
+			};
+		}
+
+		public String getSummary()
+		{
+			double[] values = this.getValues();
+			if (this.time)
+			{
+				return String.format("%.1f / %.1f ms", values[1], values[2]);
+			}
+			return String.format("%.0f / %.0f", values[1], values[2]);
+		}
+	}
+
+	private static synchronized void register(Metric metric)
+	{
+		if (registry.containsKey(metric.name))
+		{
+			throw new IllegalArgumentException("Metric " + metric.name + " already exists");
+		}
+		registry.put(metric.name, metric);
+	}
+
+	/**
+	 * Creates and registers a new counter
+	 */
+	public static Counter counter(String name, String description)
+	{
+		Counter counter = new Counter(name, description);
+		register(counter);
+		return counter;
+	}
+
+	/**
+	 * Creates and registers a new histogram
+	 *
+	 * @param time Whether our samples are timings, in nanoseconds
+	 */
+	public static Histogram histogram(String name, String description, boolean time)
+	{
+		Histogram histogram = new Histogram(name, description, time);
+		register(histogram);
+		return histogram;
+	}
+
+	/**
+	 * Registers a gauge.  If one already exists with the same name (ie: from
+	 * a previous world), it's replaced.
+	 */
+	public static synchronized Gauge gauge(String name, String description, GaugeSource source)
+	{
+		Gauge gauge = new Gauge(name, description, source);
+		registry.put(name, gauge);
+		return gauge;
+	}
+
+	/**
+	 * Returns all our metrics, in the order they were registered
+	 */
+	public static synchronized ArrayList<Metric> getMetrics()
+	{
+		return new ArrayList<Metric>(registry.values());
+	}
+
+	/**
+	 * Returns the metric with the given name, or null
+	 */
+	public static synchronized Metric getMetric(String name)
+	{
+		return registry.get(name);
+	}
+
+	/**
+	 * Returns the full name of a metric's field, as exported
+	 */
+	public static String getFieldName(Metric metric, String field)
+	{
+		if (field.length() == 0)
+		{
+			return metric.name;
+		}
+		return metric.name + "." + field;
+	}
+
+	/**
+	 * Starts appending all our metrics to the given CSV file, every so often,
+	 * from a background thread.  A header line is written at the start of
+	 * each session, and again if the set of metrics changes.
+	 *
+	 * @param file The file to append to
+	 * @param intervalSeconds How often to write a line
+	 * @return The timer doing the writing, which should be cancelled on exit
+	 */
+	public static Timer startCsvLog(final File file, int intervalSeconds)
+	{
+		Timer timer = new Timer("XRay Metrics CSV", true);
+		timer.schedule(new TimerTask()
+		{
+			private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+			private String lastHeader = null;
+
+			public void run()
+			{
+				StringBuffer header = new StringBuffer("time");
+				StringBuffer line = new StringBuffer(this.format.format(new Date()));
+				for (Metric metric : getMetrics())
+				{
+					String[] fields = metric.getFields();
+					double[] values = metric.getValues();
+					for (int i = 0; i < fields.length; i++)
+					{
+						header.append(',').append(getFieldName(metric, fields[i]));
+						line.append(',').append(String.format(Locale.US, "%.3f", values[i]));
+					}
+				}
+				PrintWriter out = null;
+				try
+				{
+					out = new PrintWriter(new FileWriter(file, true));
+					if (!header.toString().equals(this.lastHeader))
+					{
+						out.println(header.toString());
+						this.lastHeader = header.toString();
+					}
+					out.println(line.toString());
+				}
+				catch (IOException e)
+				{
+					XRay.logger.warn("Could not write metrics to " + file.getPath() + ": " + e.toString());
+					this.cancel();
+				}
+				finally
+				{
+					if (out != null)
+					{
+						out.close();
+					}
+				}
+			}
+		}, intervalSeconds * 1000L, intervalSeconds * 1000L);
+		return timer;
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Exports our Metrics over JMX, so they can be watched with jconsole or
+ * VisualVM.  Every field of every metric shows up as a read-only attribute,
+ * ie: "chunk.parse.p99".  Metrics can be registered after we are, so our
+ * attribute list is built fresh whenever it's asked for.
+ */
+public class MetricsMBean implements DynamicMBean
+{
+	public static final String OBJECT_NAME = "com.apocalyptech.minecraft.xray:type=Metrics";
+
+	/**
+	 * Registers us with the platform MBean server.  Failure isn't fatal; we
+	 * just won't be visible over JMX.
+	 */
+	public static void register()
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name))
+			{
+				server.registerMBean(new MetricsMBean(), name);
+			}
+		}
+		catch (Exception e)
+		{
+			XRay.logger.warn("Could not register metrics with JMX: " + e.toString());
+		}
+	}
+
+	public Object getAttribute(String attribute)
+		throws AttributeNotFoundException, MBeanException, ReflectionException
+	{
+		for (Metrics.Metric metric : Metrics.getMetrics())
+		{
+			if (!attribute.startsWith(metric.name))
+			{
+				continue;
+			}
+			String[] fields = metric.getFields();
+			for (int i = 0; i < fields.length; i++)
+			{
+				if (attribute.equals(Metrics.getFieldName(metric, fields[i])))
+				{
+					return metric.getValues()[i];
+				}
+			}
+		}
+		throw new AttributeNotFoundException(attribute);
+	}
+
+	public AttributeList getAttributes(String[] attributes)
+	{
+		AttributeList list = new AttributeList();
+		for (String attribute : attributes)
+		{
+			try
+			{
+				list.add(new Attribute(attribute, this.getAttribute(attribute)));
+			}
+			catch (Exception e)
+			{
+				// Leave it out, as per the DynamicMBean contract
+			}
+		}
+		return list;
+	}
+
+	public void setAttribute(Attribute attribute)
+		throws AttributeNotFoundException
+	{
+		throw new AttributeNotFoundException("Metrics are read-only");
+	}
+
+	public AttributeList setAttributes(AttributeList attributes)
+	{
+		return new AttributeList();
+	}
+
+	public Object invoke(String actionName, Object[] params, String[] signature)
+		throws MBeanException, ReflectionException
+	{
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	public MBeanInfo getMBeanInfo()
+	{
+		ArrayList<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+		for (Metrics.Metric metric : Metrics.getMetrics())
+		{
+			for (String field : metric.getFields())
+			{
+				attributes.add(new MBeanAttributeInfo(Metrics.getFieldName(metric, field), "java.lang.Double",
+							metric.description, true, false, false));
+			}
+		}
+		return new MBeanInfo(this.getClass().getName(), "Minecraft X-Ray runtime metrics",
+				attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+				null, new MBeanOperationInfo[0], null);
+	}
+}
@@ -33,7 +33,9 @@ import java.awt.Font;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.concurrent.Future;
 import java.lang.Integer;
+import java.io.File;
 import java.io.InputStream;
 import java.io.IOException;
 
@@ -160,7 +162,8 @@ public class MinecraftConstants {
 	public static BlockType BLOCK_PISTON_STICKY_BODY;
 	public static BlockType BLOCK_SILVERFISH;
 
-	// A HashMap to define blocks that the "explored" highlight will use
+	// A HashMap to define blocks that the "explored" highlight will use.  Chunks
+	// only ever see this through a RenderConfig snapshot.
 	public static HashMap<Short, Boolean> exploredBlocks;
 
 	// A meta-block to use for unknown block types
@@ -258,10 +261,11 @@ public class MinecraftConstants {
 
 		TOGGLE_FULLSCREEN     (ACTION_CAT.OTHER, Keyboard.KEY_BACK, "Toggle Fullscreen"),
 		TOGGLE_POSITION_INFO  (ACTION_CAT.OTHER, Keyboard.KEY_GRAVE, "Toggle Level Info"),
-		TOGGLE_RENDER_DETAILS (ACTION_CAT.OTHER, Keyboard.KEY_R, "Toggle Rendering Info"),
+		TOGGLE_RENDER_DETAILS (ACTION_CAT.OTHER, Keyboard.KEY_R, "Toggle Rendering Info / Metrics"),
 		OPEN_NEW_MAP          (ACTION_CAT.OTHER, Keyboard.KEY_O, "Open New Map"),
 		RELOAD                (ACTION_CAT.OTHER, Keyboard.KEY_EQUALS, "Reload Map from Disk"),
 		TOGGLE_MINIMAP        (ACTION_CAT.OTHER, Keyboard.KEY_TAB, "Toggle Minimap"),
+		TOGGLE_CAVE_MAP       (ACTION_CAT.OTHER, Keyboard.KEY_K, "Toggle Cave Map"),
 		RELEASE_MOUSE         (ACTION_CAT.OTHER, Keyboard.KEY_ESCAPE, "Release Mouse"),
 		KEY_HELP              (ACTION_CAT.OTHER, Keyboard.KEY_Y, "Show Keyboard Reference"),
 		SET_ORE_BINDS         (ACTION_CAT.OTHER, Keyboard.KEY_RBRACKET, "Set Ore Highlight Binds"),
@@ -294,7 +298,13 @@ public class MinecraftConstants {
 	static void initialize()
 		throws BlockTypeLoadException
 	{
+		// Our extra blockdef files don't depend on anything else, so get them
+		// parsing in the background while we deal with the main one.
+		long start = System.nanoTime();
+		ArrayList<Future<BlockTypeCollection>> extraBlockdefs = MinecraftEnvironment.submitBlockTypeCollectionFiles();
+
 		loadMainBlocks();
+		start = StartupTasks.logStage("main blockdef", start);
 		initSpriteSheetToTextureTable();
 		initPaintings();
 
@@ -303,8 +313,9 @@ public class MinecraftConstants {
 		//blockCollection.importFrom(blockinfo, true);
 
 		//TODO: Exceptions generated should really be saving our static state information (for later reporting)
-		for (BlockTypeCollection coll : MinecraftEnvironment.getBlockTypeCollectionFiles())
+		for (Future<BlockTypeCollection> future : extraBlockdefs)
 		{
+			BlockTypeCollection coll = StartupTasks.await(future);
 			String g = "user";
 			if (coll.getGlobal())
 			{
@@ -344,6 +355,7 @@ public class MinecraftConstants {
 				XRay.logger.info("Error in " + g + " blockdef at " + coll.getFile().getName() + ": " + coll.getException().toString());
 			}
 		}
+		StartupTasks.logStage("extra blockdefs (" + extraBlockdefs.size() + " files)", start);
 	}
 
 	/**
@@ -453,6 +465,7 @@ public class MinecraftConstants {
 
 		// First load the actual YAML
 		BlockTypeCollection blockinfo;
+		StartupCache.recordFile(new File(filename));
 		try
 		{
 			blockinfo = BlockTypeCollection.loadFromYaml(filename, global);
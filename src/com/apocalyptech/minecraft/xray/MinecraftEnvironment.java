@@ -36,11 +36,9 @@ import java.awt.AlphaComposite;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.FileInputStream;
 import java.io.DataInputStream;
-import java.io.LineNumberReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -49,12 +47,11 @@ import java.util.Map;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.TreeMap;
 import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipException;
-import java.util.jar.JarFile;
-import java.util.zip.ZipEntry;
 
 import javax.imageio.ImageIO;
 
@@ -267,6 +264,67 @@ public class MinecraftEnvironment {
 		return null;
 	}
 	
+	/**
+	 * Returns streams for several chunks at once.  For region-based worlds the
+	 * chunks are grouped by region, and each region's are read in file order
+	 * with as few reads as we can manage; see
+	 * RegionFile.getChunkDataInputStreams().
+	 *
+	 * @param world
+	 * @param chunkX The Chunk X coordinates
+	 * @param chunkZ The Chunk Z coordinates
+	 * @return A stream for each chunk, in the same order, or null for any
+	 *         which don't exist
+	 */
+	public static DataInputStream[] getChunkInputStreams(WorldInfo world, int[] chunkX, int[] chunkZ) {
+		DataInputStream[] streams = new DataInputStream[chunkX.length];
+		if (world.data_format == WorldInfo.MAP_TYPE.ORIGINAL)
+		{
+			for (int i = 0; i < chunkX.length; i++)
+			{
+				streams[i] = getChunkInputStream(world, chunkX[i], chunkZ[i]);
+			}
+			return streams;
+		}
+
+		TreeMap<IntegerPair, ArrayList<Integer>> regions = new TreeMap<IntegerPair, ArrayList<Integer>>();
+		IntegerPair region;
+		ArrayList<Integer> indexes;
+		for (int i = 0; i < chunkX.length; i++)
+		{
+			region = new IntegerPair(chunkX[i] >> 5, chunkZ[i] >> 5);
+			indexes = regions.get(region);
+			if (indexes == null)
+			{
+				indexes = new ArrayList<Integer>();
+				regions.put(region, indexes);
+			}
+			indexes.add(i);
+		}
+		for (ArrayList<Integer> group : regions.values())
+		{
+			int first = group.get(0);
+			RegionFile rf = RegionFileCache.getRegionFile(world, chunkX[first], chunkZ[first]);
+			if (rf == null)
+			{
+				continue;
+			}
+			int[] x = new int[group.size()];
+			int[] z = new int[group.size()];
+			for (int i = 0; i < x.length; i++)
+			{
+				x[i] = chunkX[group.get(i)] & 31;
+				z[i] = chunkZ[group.get(i)] & 31;
+			}
+			DataInputStream[] regionStreams = rf.getChunkDataInputStreams(x, z);
+			for (int i = 0; i < x.length; i++)
+			{
+				streams[group.get(i)] = regionStreams[i];
+			}
+		}
+		return streams;
+	}
+
 	/***
 	 * Returns a file handle to the base minecraft directory
 	 * @return
@@ -318,159 +376,74 @@ public class MinecraftEnvironment {
 	}
 
 	/**
-	 * Get a list of BlockTypeCollections from the given directory
+	 * Starts loading BlockTypeCollections from the given directory in the
+	 * background, one task per file.  Each task always returns a collection;
+	 * ones which failed to load have their exception set.
 	 */
-	public static ArrayList<BlockTypeCollection> getBlockTypeCollectionFilesFromDir(File dir, boolean global)
+	public static ArrayList<Future<BlockTypeCollection>> submitBlockTypeCollectionFilesFromDir(File dir, final boolean global)
 	{
-		ArrayList<BlockTypeCollection> list = new ArrayList<BlockTypeCollection>();
-		BlockTypeCollection tempcollection;
-		String fullFilename;
+		ArrayList<Future<BlockTypeCollection>> list = new ArrayList<Future<BlockTypeCollection>>();
 		if (dir.exists() && dir.isDirectory() && dir.canRead())
 		{
 			for (String filename : dir.list(new BlockdefFilter()))
 			{
-				fullFilename = dir.getPath() + "/" + filename;
-				try
+				final String fullFilename = dir.getPath() + "/" + filename;
+				list.add(StartupTasks.submit(new Callable<BlockTypeCollection>()
 				{
-					tempcollection = MinecraftConstants.loadBlocks(fullFilename, global);
-				}
-				catch (BlockTypeLoadException e)
-				{
-					tempcollection = new BlockTypeCollection(new File(fullFilename), global, e);
-				}
-				list.add(tempcollection);
+					public BlockTypeCollection call()
+					{
+						try
+						{
+							return MinecraftConstants.loadBlocks(fullFilename, global);
+						}
+						catch (BlockTypeLoadException e)
+						{
+							return new BlockTypeCollection(new File(fullFilename), global, e);
+						}
+					}
+				}));
 			}
 		}
 		return list;
 	}
 
+	/**
+	 * Starts loading all available BlockType files in the background, both
+	 * from our global directory and the user xrayBaseDir.  The futures are
+	 * returned in the same order that the files should be imported.
+	 */
+	public static ArrayList<Future<BlockTypeCollection>> submitBlockTypeCollectionFiles()
+	{
+		ArrayList<Future<BlockTypeCollection>> list = new ArrayList<Future<BlockTypeCollection>>();
+		list.addAll(submitBlockTypeCollectionFilesFromDir(new File("blockdefs"), true));
+		list.addAll(submitBlockTypeCollectionFilesFromDir(new File(xrayBaseDir, "blockdefs"), false));
+		return list;
+	}
+
 	/**
 	 * Returns a list of available BlockType files, both from our global directory,
 	 * and the user xrayBaseDir
 	 */
 	public static ArrayList<BlockTypeCollection> getBlockTypeCollectionFiles()
+		throws BlockTypeLoadException
 	{
 		ArrayList<BlockTypeCollection> list = new ArrayList<BlockTypeCollection>();
-		list.addAll(getBlockTypeCollectionFilesFromDir(new File("blockdefs"), true));
-		list.addAll(getBlockTypeCollectionFilesFromDir(new File(xrayBaseDir, "blockdefs"), false));
+		for (Future<BlockTypeCollection> future : submitBlockTypeCollectionFiles())
+		{
+			list.add(StartupTasks.await(future));
+		}
 		return list;
 	}
 	
 	/***
 	 * Returns a stream to an arbitrary file either from our override directory,
-	 * the main jar, or from the user-specified texture pack.
+	 * the main jar, or from the user-specified texture pack.  See
+	 * TexturepackResolver for the details.
 	 * 
 	 * @return
 	 */
 	public static InputStream getMinecraftTexturepackData(String filename) {
-
-		// First check our override directory for the file
-		File overrideFile = new File(xrayBaseDir, "textures/" + filename);
-		if(overrideFile.exists()) {
-			try {
-				XRay.logger.info("Overriding " + filename + " at " + overrideFile.getPath());
-				return new FileInputStream(overrideFile);
-			} catch (FileNotFoundException e) {
-				// Don't do anything; just continue on our merry little way
-			}
-		}
-		
-		// Next check the options.txt file to see if we should be using the defined
-		// texture pack.
-		File optionsFile = new File(baseDir, "options.txt");
-		String texturepack = null;
-		if (optionsFile.exists())
-		{
-			LineNumberReader reader = null;
-			try
-			{
-				reader = new LineNumberReader(new FileReader(optionsFile));
-				String line = null;
-				String[] parts;
-				while ((line = reader.readLine()) != null)
-				{
-					parts = line.split(":", 2);
-					if (parts.length == 2)
-					{
-						if (parts[0].equalsIgnoreCase("skin"))
-						{
-							if (parts[1].equalsIgnoreCase("Default"))
-							{
-								// Default skin, just break and 
-								break;
-							}
-							else
-							{
-								// Use the specified texture pack
-								texturepack = parts[1];
-								break;
-							}
-						}
-					}
-				}
-			}
-			catch (FileNotFoundException e)
-			{
-				// Just ignore it and load the default terrain.png
-			}
-			catch (IOException e)
-			{
-				// Ditto, just ignore
-			}
-			if (reader != null)
-			{
-				try
-				{
-					reader.close();
-				}
-				catch (IOException e)
-				{
-					// do nothing
-				}
-			}
-		}
-		
-		// Attempt to load in the texture pack
-		if (texturepack != null)
-		{
-			File packFile = new File(baseDir, "texturepacks/" + texturepack);
-			if (packFile.exists())
-			{
-				ZipFile zf = null;
-				try
-				{
-					zf = new ZipFile(packFile);
-					ZipEntry entry = zf.getEntry(filename);
-					if (entry != null)
-					{
-						XRay.logger.info("Using " + filename + " from texturepack " + texturepack);
-						return zf.getInputStream(entry);
-					}
-				}
-				catch (ZipException e)
-				{
-					// Do nothing.
-				}
-				catch (IOException e)
-				{
-					// Do nothing
-				}
-				if (zf != null)
-				{
-					try
-					{
-						zf.close();
-					}
-					catch (IOException e)
-					{
-						// do nothing
-					}
-				}
-			}
-		}
-		
-		// If we got here, just do what we've always done.
-		return getMinecraftFile(filename);
+		return TexturepackResolver.getInstance().open(filename);
 	}
 	
 	/***
@@ -524,6 +497,32 @@ public class MinecraftEnvironment {
 		}
 	}
 	
+	/**
+	 * Reads an image from our override directory, the main jar, or the user's
+	 * texture pack, recording its contents with StartupCache.
+	 *
+	 * @param filename
+	 * @return The image, or null if it couldn't be found or read
+	 */
+	public static BufferedImage getTexturepackImage(String filename)
+	{
+		return StartupCache.loadImage(filename, getMinecraftTexturepackData(filename));
+	}
+
+	/**
+	 * Starts reading an image in the background; see getTexturepackImage()
+	 */
+	public static Future<BufferedImage> submitTexturepackImage(final String filename)
+	{
+		return StartupTasks.submit(new Callable<BufferedImage>()
+		{
+			public BufferedImage call()
+			{
+				return getTexturepackImage(filename);
+			}
+		});
+	}
+
 	/**
 	 * Attempts to create a bufferedImage containing our painting sheet
 	 * @return
@@ -581,7 +580,10 @@ public class MinecraftEnvironment {
 	public static ArrayList<BufferedImage> getMinecraftTexture()
 		throws BlockTypeLoadException
 	{
-		BufferedImage bi = buildImageFromInput(getMinecraftTextureData());
+		// Start reading our auxiliary images while we work on the main one
+		Future<BufferedImage> waterFuture = submitTexturepackImage("misc/water.png");
+		Future<BufferedImage> particleFuture = submitTexturepackImage("particles.png");
+		BufferedImage bi = getTexturepackImage("terrain.png");
 		if (bi == null)
 		{
 			return null;
@@ -754,7 +756,7 @@ public class MinecraftEnvironment {
 		BLOCK_WATER.setTexIdx(blockCollection.reserveTexture());
 		int[] water_tex = BLOCK_WATER.getTexCoordsArr();
 		BLOCK_STATIONARY_WATER.setTexIdxCoords(water_tex[0], water_tex[1]);
-		BufferedImage bi2 = buildImageFromInput(getMinecraftWaterData());
+		BufferedImage bi2 = StartupTasks.await(waterFuture);
 		int water_width = bi2.getWidth();
 		g2d.setComposite(AlphaComposite.Src);
 		if (square_width < water_width)
@@ -772,7 +774,7 @@ public class MinecraftEnvironment {
 		// Also create a fake sort of "fire" graphic to use
 		BLOCK_FIRE.setTexIdx(blockCollection.reserveTexture());
 		int[] fire_tex = BLOCK_FIRE.getTexCoordsArr();
-		bi2 = buildImageFromInput(getMinecraftParticleData());
+		bi2 = StartupTasks.await(particleFuture);
 		int particle_width = bi2.getWidth()/16;
 		int fire_x = fire_tex[0];
 		int fire_y = fire_tex[1];
@@ -841,11 +843,8 @@ public class MinecraftEnvironment {
 		// Send our processed texture 
 		blockCollection.setInitialTexture(bi);
 
-		// Load in extra texture sheets
-		blockCollection.importCustomTextureSheets();
-
-		// Load in filename textures, if needed
-		blockCollection.loadFilenameTextures();
+		// Load in textures from extra texture sheets and filenames
+		blockCollection.importExtraTextures();
 
 		// Report on the count of texture sheets
 		XRay.logger.debug("Texture Sheet count: " + blockCollection.textures.size());
@@ -905,64 +904,6 @@ public class MinecraftEnvironment {
 	 * @return
 	 */
 	public static InputStream getMinecraftFile(String fileName){
-		File minecraftDataFile = new File(baseDir, "bin/minecraft.jar");
-		if(minecraftDataFile.exists()) {
-			if (minecraftDataFile.isDirectory())
-			{
-				// Some mods (TooManyItems in particular) on some OSes (OSX in particular)
-				// end up replacing minecraft.jar with an unpacked directory containing
-				// its contents.  We may as well check for that.
-				File dataFile = new File(minecraftDataFile, fileName);
-				if (dataFile.exists())
-				{
-					try
-					{
-						return new FileInputStream(dataFile);
-					}
-					catch (FileNotFoundException e)
-					{
-					}
-				}
-			}
-			else
-			{
-				try {
-					JarFile jf = new JarFile(minecraftDataFile);
-					ZipEntry zipEntry = jf.getEntry(fileName);
-					if(zipEntry != null) {
-						return jf.getInputStream(zipEntry);
-					}
-				} catch (IOException e) {
-					XRay.logger.warn(e.toString());
-					//return null;
-				}
-			}
-		}
-
-		// If we get here, either we couldn't find minecraft.jar or there was
-		// something wrong with it (perhaps altered by a mod, or whatever).  In
-		// the absence of anything else to do, we'll just load a bundled version
-		// that comes with X-Ray.  If that doesn't work, we'll just sit down
-		// and have a cry.  Note that this bit is sort of implicitly assuming that
-		// any file we might have bundled is a texture, hence the directory name.
-		if (fileName.equals("terrain.png") || fileName.equals("particles.png") ||
-				fileName.equals("art/kz.png") || fileName.equals("misc/water.png"))
-		{
-			XRay.logger.info("Resorting to bundled " + fileName);
-			File dataFile = new File("textures", fileName);
-			if (dataFile.exists())
-			{
-				try
-				{
-					return new FileInputStream(dataFile);
-				}
-				catch (FileNotFoundException e)
-				{
-				}
-			}
-		}
-
-		// *sob*
-		return null;
+		return TexturepackResolver.getInstance().openFromMinecraft(fileName);
 	}
 }
@@ -29,6 +29,7 @@ package com.apocalyptech.minecraft.xray;
 import java.io.File;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.ArrayList;
 
 import com.apocalyptech.minecraft.xray.dtf.CompoundTag;
@@ -59,7 +60,6 @@ public class MinecraftLevel {
 	private int playerPos_idx;
 	private int spawnPoint_idx;
 	private long randomSeed;
-	public short[] HIGHLIGHT_ORES;
 	
 	public ArrayList<Texture> minecraftTextures;
 	public Texture paintingTexture;
@@ -67,6 +67,8 @@ public class MinecraftLevel {
 	public String levelName;
 
 	public LightSourceRegistry lightSources;
+
+	public SectionVisibility visibility;
 	
 	/**
 	 * Given a WorldInfo object, return its user-defined name.  There's
@@ -93,13 +95,13 @@ public class MinecraftLevel {
 	 * Create a minecraftLevel from the given world
 	 * @param world
 	 */
-	public MinecraftLevel(WorldInfo world, ArrayList<Texture> minecraftTextures, Texture paintingTexture, short[] HIGHLIGHT_ORES) {
+	public MinecraftLevel(WorldInfo world, ArrayList<Texture> minecraftTextures, Texture paintingTexture) {
 		this.world = world;
 		this.minecraftTextures = minecraftTextures;
 		this.paintingTexture = paintingTexture;
-		this.HIGHLIGHT_ORES = HIGHLIGHT_ORES;
 		
 		this.levelData = new Chunk[LEVELDATA_SIZE][LEVELDATA_SIZE];
+		this.visibility = new SectionVisibility();
 		
 		File levelFile = world.getLevelDatFile();
 		
@@ -107,11 +109,41 @@ public class MinecraftLevel {
 		
 		//	XRay.logger.trace(levelData.toString());
 		
+		CompoundTag levelDataData = (CompoundTag) levelData.getTagWithName("Data");
+		this.loadPlayerPositions(levelDataData);
+		
+		// Figure out what sort of data we should be looking for
+		world.data_format = MinecraftLevel.getDataFormat(levelDataData);
+
+		// Grab the level name
+		StringTag levelNameTag = (StringTag) levelDataData.getTagWithName("LevelName");
+		if (levelNameTag != null)
+		{
+			this.levelName = levelNameTag.value;
+		}
+		else
+		{
+			this.levelName = null;
+		}
+
+		// Pull our random seed
+		this.randomSeed = ((LongTag) levelDataData.getTagWithName("RandomSeed")).value;
+
+		// And finally, initialize our Light Source Registry
+		this.lightSources = new LightSourceRegistry();
+	}
+
+	/**
+	 * Populates our list of camera presets (singleplayer user, any multiplayer
+	 * users in this dimension, and the spawnpoint) from the given level.dat
+	 * "Data" tag.
+	 */
+	private void loadPlayerPositions(CompoundTag levelDataData)
+	{
 		this.playerPositions = new ArrayList<CameraPreset>();
 		this.playerPos_idx = -1;
 		this.spawnPoint_idx = -1;
 		
-		CompoundTag levelDataData = (CompoundTag) levelData.getTagWithName("Data");
 		CompoundTag levelPlayerData = (CompoundTag) levelDataData.getTagWithName("Player");
 		if(levelPlayerData != null) {
 			
@@ -201,44 +233,31 @@ public class MinecraftLevel {
 		{
 			this.playerPos_idx = this.spawnPoint_idx;
 		}
-		
-		// Figure out what sort of data we should be looking for
-		IntTag versionTag = (IntTag) levelDataData.getTagWithName("version");
-		if (versionTag != null)
-		{
-			switch (versionTag.value)
-			{
-				case 19133:
-					world.data_format = WorldInfo.MAP_TYPE.ANVIL;
-					break;
-					
-				case 19132:
-				default:
-					world.data_format = WorldInfo.MAP_TYPE.MCREGION;
-					break;
-			}
-		}
-		else
-		{
-			world.data_format = WorldInfo.MAP_TYPE.ORIGINAL;
-		}
+	}
 
-		// Grab the level name
-		StringTag levelNameTag = (StringTag) levelDataData.getTagWithName("LevelName");
-		if (levelNameTag != null)
+	/**
+	 * Re-reads level.dat and the multiplayer player files, for when the
+	 * game has written out new player positions while we're running.
+	 */
+	public void refreshPlayerPositions()
+	{
+		ArrayList<CameraPreset> oldPositions = this.playerPositions;
+		int oldPlayerPos_idx = this.playerPos_idx;
+		int oldSpawnPoint_idx = this.spawnPoint_idx;
+		try
 		{
-			this.levelName = levelNameTag.value;
+			CompoundTag levelData = (CompoundTag) DTFReader.readDTFFile(world.getLevelDatFile());
+			this.world.populateMPPlayerList();
+			this.loadPlayerPositions((CompoundTag) levelData.getTagWithName("Data"));
 		}
-		else
+		catch (Exception e)
 		{
-			this.levelName = null;
+			// Minecraft may be partway through writing the file; we'll get it next time.
+			XRay.logger.warn("Error refreshing player positions: " + e.toString());
+			this.playerPositions = oldPositions;
+			this.playerPos_idx = oldPlayerPos_idx;
+			this.spawnPoint_idx = oldSpawnPoint_idx;
 		}
-
-		// Pull our random seed
-		this.randomSeed = ((LongTag) levelDataData.getTagWithName("RandomSeed")).value;
-
-		// And finally, initialize our Light Source Registry
-		this.lightSources = new LightSourceRegistry();
 	}
 
 	/**
@@ -279,7 +298,7 @@ public class MinecraftLevel {
 	}
 
 	public CameraPreset getPrevPlayerPosition(CameraPreset current) {
-		int prev_idx = current.idx - 1;
+		int prev_idx = Math.min(current.idx, this.playerPositions.size()) - 1;
 		if (prev_idx < 0)
 		{
 			prev_idx = this.playerPositions.size()-1;
@@ -360,6 +379,27 @@ public class MinecraftLevel {
 		}
 	}
 	
+	/**
+	 * Invalidates only the chunk sections which contain one of the given
+	 * block IDs.
+	 */
+	public void invalidateSelected(BitSet blockIds, boolean main_dirty) {
+		for (Chunk[] chunkrow : this.levelData)
+		{
+			for (Chunk chunk : chunkrow)
+			{
+				if (chunk != null)
+				{
+					chunk.setSelectedDirty(blockIds);
+					if (main_dirty)
+					{
+						chunk.setDirty(blockIds);
+					}
+				}
+			}
+		}
+	}
+	
 	public void markChunkAsDirty(int x, int z) {
 		Chunk c = this.getChunk(x, z);
 		if (c != null)
@@ -367,7 +407,47 @@ public class MinecraftLevel {
 			c.setDirty();
 		}
 	}
+
+	/**
+	 * Marks the given chunk as dirty, but only the sections which have blocks
+	 * along the specified border.
+	 */
+	public void markChunkBorderAsDirty(int x, int z, Chunk.FACING border) {
+		Chunk c = this.getChunk(x, z);
+		if (c != null)
+		{
+			c.setBorderDirty(border);
+		}
+	}
 	
+	/**
+	 * Figures out what sort of chunk data a world uses, from the "Data" tag
+	 * of its level.dat
+	 *
+	 * @param levelDataData The level.dat "Data" tag
+	 * @return The world's data format
+	 */
+	public static WorldInfo.MAP_TYPE getDataFormat(CompoundTag levelDataData)
+	{
+		IntTag versionTag = (IntTag) levelDataData.getTagWithName("version");
+		if (versionTag != null)
+		{
+			switch (versionTag.value)
+			{
+				case 19133:
+					return WorldInfo.MAP_TYPE.ANVIL;
+					
+				case 19132:
+				default:
+					return WorldInfo.MAP_TYPE.MCREGION;
+			}
+		}
+		else
+		{
+			return WorldInfo.MAP_TYPE.ORIGINAL;
+		}
+	}
+
 	/**
 	 * Loads a chunk given the chunk's x and z coordinates (not world coordinates)
 	 *
@@ -375,15 +455,55 @@ public class MinecraftLevel {
 	 * @param chunkZ The Chunk Z coordinate
 	 */
 	public Tag loadChunk(int chunkX, int chunkZ) {
+		long start = System.nanoTime();
 		DataInputStream chunkInputStream = MinecraftEnvironment.getChunkInputStream(world, chunkX, chunkZ);
 		if(chunkInputStream == null) {
 			return null;
 		}
+		Metrics.CHUNK_READ.recordSince(start);
+		return this.loadChunk(chunkX, chunkZ, chunkInputStream);
+	}
+
+	/**
+	 * Reads the compressed data for several chunks at once, which is a good
+	 * deal faster than reading them one at a time when there's a lot of them
+	 * (see RegionFile.getChunkDataInputStreams()).  The results can be handed
+	 * to loadChunk() in whatever order is convenient.
+	 *
+	 * @param chunkX The Chunk X coordinates
+	 * @param chunkZ The Chunk Z coordinates
+	 * @return A stream for each chunk, or null for any which don't exist
+	 */
+	public DataInputStream[] readChunks(int[] chunkX, int[] chunkZ)
+	{
+		long start = System.nanoTime();
+		DataInputStream[] streams = MinecraftEnvironment.getChunkInputStreams(world, chunkX, chunkZ);
+		Metrics.CHUNK_BATCH_READ.recordSince(start);
+		return streams;
+	}
+
+	/**
+	 * Loads a chunk whose data has already been read from disk
+	 *
+	 * @param chunkX The Chunk X coordinate
+	 * @param chunkZ The Chunk Z coordinate
+	 * @param chunkInputStream The chunk's data, from readChunks(); may be null
+	 */
+	public Tag loadChunk(int chunkX, int chunkZ, DataInputStream chunkInputStream) {
+		if(chunkInputStream == null) {
+			return null;
+		}
+		long start;
 		try
 		{
+			// The data is inflated as it's parsed, so the two are timed together
+			start = System.nanoTime();
 			Tag t = DTFReader.readTagData(chunkInputStream);
+			Metrics.CHUNK_PARSE.recordSince(start);
 			if (t != null)
 			{
+				this.freeChunkLists(chunkX, chunkZ);
+				start = System.nanoTime();
 				switch (world.data_format)
 				{
 					case ANVIL:
@@ -394,6 +514,7 @@ public class MinecraftLevel {
 						levelData[(chunkX+LEVELDATA_OFFSET)%LEVELDATA_SIZE][(chunkZ+LEVELDATA_OFFSET)%LEVELDATA_SIZE] = new ChunkOriginal(this, t);
 						break;
 				}
+				Metrics.CHUNK_CONSTRUCT.recordSince(start);
 			}	
 			return t;
 		}
@@ -422,70 +543,79 @@ public class MinecraftLevel {
 	 */
 	public void clearChunk(int chunkX, int chunkZ)
 	{
+		this.freeChunkLists(chunkX, chunkZ);
 		this.levelData[(chunkX+LEVELDATA_OFFSET)%LEVELDATA_SIZE][(chunkZ+LEVELDATA_OFFSET)%LEVELDATA_SIZE] = null;
 	}
 	
 	/**
-	 * Sets all chunks in the given X row to be no longer on the minimap
+	 * Frees the GL lists of whatever chunk is currently occupying the slot
+	 * that the given coordinates map to.
 	 * 
 	 * @param chunkX
+	 * @param chunkZ
 	 */
-	public ArrayList<Chunk> removeChunkRowXFromMinimap(int chunkX)
+	private void freeChunkLists(int chunkX, int chunkZ)
 	{
-		ArrayList<Chunk> chunks = new ArrayList<Chunk>();
-		int xval = (chunkX+LEVELDATA_OFFSET)%LEVELDATA_SIZE;
-		for (int i=0; i<LEVELDATA_SIZE; i++)
+		Chunk c = this.getChunk(chunkX, chunkZ);
+		if (c != null)
 		{
-			if (this.levelData[xval][i] != null && this.levelData[xval][i].isOnMinimap)
+			c.freeLists();
+		}
+	}
+	
+	/**
+	 * Frees the GL lists for every chunk we have loaded.  The chunks themselves
+	 * are kept, and will rebuild their lists the next time they're drawn.
+	 */
+	public void freeAllLists()
+	{
+		for (int x=0; x<LEVELDATA_SIZE; x++)
+		{
+			for (int z=0; z<LEVELDATA_SIZE; z++)
 			{
-				//XRay.logger.trace("(" + chunkX + ") Removing from minimap on " + xval + ", " + i);
-				this.levelData[xval][i].isOnMinimap = false;
-				chunks.add(this.levelData[xval][i]);
+				if (this.levelData[x][z] != null)
+				{
+					this.levelData[x][z].freeLists();
+				}
 			}
 		}
-		return chunks;
 	}
-	
+
 	/**
-	 * Sets all chunks in the given Z row to be no longer on the minimap
-	 * 
-	 * @param chunkZ
+	 * Returns how many chunks we currently have loaded
 	 */
-	public ArrayList<Chunk> removeChunkRowZFromMinimap(int chunkZ)
+	public int getLoadedChunkCount()
 	{
-		ArrayList<Chunk> chunks = new ArrayList<Chunk>();
-		int zval = (chunkZ+LEVELDATA_OFFSET)%LEVELDATA_SIZE;
-		for (int i=0; i<LEVELDATA_SIZE; i++)
+		int count = 0;
+		for (int x=0; x<LEVELDATA_SIZE; x++)
 		{
-			if (this.levelData[i][zval] != null && this.levelData[i][zval].isOnMinimap)
+			for (int z=0; z<LEVELDATA_SIZE; z++)
 			{
-				//XRay.logger.trace("Removing from minimap on " + i + ", " + zval);
-				this.levelData[i][zval].isOnMinimap = false;
-				chunks.add(this.levelData[i][zval]);
+				if (this.levelData[x][z] != null)
+				{
+					count++;
+				}
 			}
 		}
-		return chunks;
+		return count;
 	}
-	
+
 	/**
-	 * Sets all chunks to be no longer on the minimap
-	 * @return
+	 * Returns approximately how much memory our loaded chunks are using
 	 */
-	public ArrayList<Chunk> removeAllChunksFromMinimap()
+	public long estimateMemoryUsage()
 	{
-		ArrayList<Chunk> chunks = new ArrayList<Chunk>();	
-		for (int z=0; z<LEVELDATA_SIZE; z++)
+		long total = 0;
+		for (int x=0; x<LEVELDATA_SIZE; x++)
 		{
-			for (int x=0; x<LEVELDATA_SIZE; x++)
+			for (int z=0; z<LEVELDATA_SIZE; z++)
 			{
-				if (this.levelData[x][z] != null && this.levelData[x][z].isOnMinimap)
+				if (this.levelData[x][z] != null)
 				{
-					//XRay.logger.trace("(" + chunkX + ") Removing from minimap on " + xval + ", " + i);
-					this.levelData[x][z].isOnMinimap = false;
-					chunks.add(this.levelData[x][z]);
+					total += this.levelData[x][z].estimateMemoryUsage();
 				}
 			}
 		}
-		return chunks;
+		return total;
 	}
 }
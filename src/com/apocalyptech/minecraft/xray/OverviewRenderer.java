@@ -0,0 +1,786 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.imageio.ImageIO;
+
+import com.apocalyptech.minecraft.xray.dtf.ByteArrayTag;
+import com.apocalyptech.minecraft.xray.dtf.ByteTag;
+import com.apocalyptech.minecraft.xray.dtf.CompoundTag;
+import com.apocalyptech.minecraft.xray.dtf.DTFReader;
+import com.apocalyptech.minecraft.xray.dtf.ListTag;
+import com.apocalyptech.minecraft.xray.dtf.ShortArrayTag;
+import com.apocalyptech.minecraft.xray.dtf.Tag;
+
+/**
+ * Renders a top-down overview of an entire dimension to a pyramid of PNG
+ * tiles, without opening a display.  Each column is colored the same way as
+ * it is on the minimap (see ColumnSummary), so this is really just the
+ * minimap for every chunk in the world at once.
+ *
+ * Zoom level 0 has one 512x512 tile per region, at one pixel per block
+ * column, written to <outdir>/0/<regionX>_<regionZ>.png.  Each level above
+ * that halves the resolution, so a tile at level N covers 2^N regions on a
+ * side.  Regions are rendered in parallel, one per task, and each task only
+ * ever holds a single region's tile, its compressed chunk data, and a single
+ * chunk's parsed data in memory; the upper levels are then built from the
+ * tiles already on disk.
+ *
+ * The modification time of every region we render is kept in a manifest in
+ * the output directory, and regions which haven't changed since the last run
+ * are skipped (along with every tile above them which doesn't cover anything
+ * that did change).
+ */
+public class OverviewRenderer
+{
+	private static final int REGION_DIM = 512;
+	private static final String MANIFEST = "overview.manifest";
+
+	private WorldInfo world;
+	private File outDir;
+	private int zoomLevels;
+	private int threads;
+	private boolean force;
+	private ExecutorService pool;
+
+	public OverviewRenderer(WorldInfo world, File outDir, int zoomLevels, int threads, boolean force)
+	{
+		this.world = world;
+		this.outDir = outDir;
+		this.zoomLevels = zoomLevels;
+		this.threads = threads;
+		this.force = force;
+	}
+
+	/**
+	 * Command-line entry point.  Also reachable via "xray.jar --overview ..."
+	 */
+	public static void main(String args[])
+	{
+		File worldDir = null;
+		File outDir = null;
+		int dimension = 0;
+		int zoomLevels = 5;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean force = false;
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				if (args[i].equals("--dimension"))
+				{
+					dimension = Integer.parseInt(args[++i]);
+				}
+				else if (args[i].equals("--zooms"))
+				{
+					zoomLevels = Math.max(1, Integer.parseInt(args[++i]));
+				}
+				else if (args[i].equals("--threads"))
+				{
+					threads = Math.max(1, Integer.parseInt(args[++i]));
+				}
+				else if (args[i].equals("--force"))
+				{
+					force = true;
+				}
+				else if (worldDir == null)
+				{
+					worldDir = new File(args[i]);
+				}
+				else if (outDir == null)
+				{
+					outDir = new File(args[i]);
+				}
+				else
+				{
+					throw new IllegalArgumentException("Unknown argument: " + args[i]);
+				}
+			}
+		}
+		catch (RuntimeException e)
+		{
+			// Covers both bad numbers and running off the end of args
+			worldDir = null;
+		}
+		if (worldDir == null || outDir == null)
+		{
+			System.err.println("Usage: OverviewRenderer <worlddir> <outdir> [--dimension N] [--zooms N] [--threads N] [--force]");
+			System.exit(1);
+		}
+
+		try
+		{
+			MinecraftConstants.initialize();
+			StartupTasks.shutdown();
+
+			WorldInfo world;
+			if (dimension == 0)
+			{
+				world = new WorldInfo(worldDir.getCanonicalPath(), worldDir.getName(), 0, true);
+			}
+			else
+			{
+				world = new WorldInfo(new File(worldDir, "DIM" + dimension).getCanonicalPath(), worldDir.getName(), dimension, true);
+			}
+			CompoundTag levelData = (CompoundTag) DTFReader.readDTFFile(world.getLevelDatFile());
+			if (levelData == null)
+			{
+				throw new IOException("Could not read " + world.getLevelDatFile().getPath());
+			}
+			world.data_format = MinecraftLevel.getDataFormat((CompoundTag) levelData.getTagWithName("Data"));
+
+			new OverviewRenderer(world, outDir, zoomLevels, threads, force).render();
+		}
+		catch (BlockTypeLoadException e)
+		{
+			XRay.logger.fatal("Error reading Minecraft block data: " + e.toString());
+			System.exit(1);
+		}
+		catch (IOException e)
+		{
+			XRay.logger.fatal("Error rendering overview: " + e.toString());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Renders every region which has changed since our last run, and then
+	 * every tile above them.
+	 */
+	public void render()
+		throws IOException
+	{
+		long start = System.nanoTime();
+		new File(this.outDir, "0").mkdirs();
+		if (!this.outDir.isDirectory())
+		{
+			throw new IOException("Could not create " + this.outDir.getPath());
+		}
+
+		// Find out what's there, and what's changed
+		TreeMap<IntegerPair, Long> previous = this.readManifest();
+		TreeMap<IntegerPair, Long> current = this.findRegions();
+		TreeSet<IntegerPair> dirty = new TreeSet<IntegerPair>();
+		ArrayList<IntegerPair> toRender = new ArrayList<IntegerPair>();
+		for (Map.Entry<IntegerPair, Long> entry : current.entrySet())
+		{
+			IntegerPair region = entry.getKey();
+			Long mtime = previous.get(region);
+			if (this.force || mtime == null || mtime.longValue() != entry.getValue().longValue() ||
+					!this.getTileFile(0, region.getValueOne(), region.getValueTwo()).exists())
+			{
+				toRender.add(region);
+			}
+		}
+		for (IntegerPair region : previous.keySet())
+		{
+			if (!current.containsKey(region))
+			{
+				// Region's gone away entirely, so its tile should too
+				this.getTileFile(0, region.getValueOne(), region.getValueTwo()).delete();
+				dirty.add(region);
+			}
+		}
+		XRay.logger.info("Overview: " + current.size() + " regions found, " + toRender.size() + " to render, using " + this.threads + " threads");
+
+		this.pool = Executors.newFixedThreadPool(this.threads, new ThreadFactory()
+		{
+			private int count = 0;
+
+			public synchronized Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "XRay Overview " + (++count));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try
+		{
+			// Regions first
+			long regionStart = System.nanoTime();
+			ArrayList<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			for (IntegerPair region : toRender)
+			{
+				futures.add(this.pool.submit(new RegionTask(region.getValueOne(), region.getValueTwo())));
+			}
+			int failed = 0;
+			for (int i = 0; i < futures.size(); i++)
+			{
+				IntegerPair region = toRender.get(i);
+				dirty.add(region);
+				if (!this.await(futures.get(i), "region " + region.getValueOne() + ", " + region.getValueTwo()))
+				{
+					// Forget about it, so that we try again next time
+					current.remove(region);
+					failed++;
+				}
+			}
+			double regionSecs = (System.nanoTime() - regionStart) / 1000000000d;
+			if (toRender.size() > 0)
+			{
+				XRay.logger.info(String.format("Overview: rendered %d regions in %.2fs (%.1f regions/sec)%s",
+							toRender.size() - failed, regionSecs, (toRender.size() - failed) / regionSecs,
+							(failed > 0 ? ", " + failed + " failed" : "")));
+			}
+			this.writeManifest(current);
+
+			// Then everything above them
+			for (int level = 1; level < this.zoomLevels; level++)
+			{
+				long levelStart = System.nanoTime();
+				TreeSet<IntegerPair> parents = new TreeSet<IntegerPair>();
+				for (IntegerPair tile : dirty)
+				{
+					parents.add(new IntegerPair(tile.getValueOne() >> 1, tile.getValueTwo() >> 1));
+				}
+				new File(this.outDir, Integer.toString(level)).mkdirs();
+				futures.clear();
+				for (IntegerPair tile : parents)
+				{
+					futures.add(this.pool.submit(new ZoomTask(level, tile.getValueOne(), tile.getValueTwo())));
+				}
+				int i = 0;
+				for (IntegerPair tile : parents)
+				{
+					this.await(futures.get(i++), "level " + level + " tile " + tile.getValueOne() + ", " + tile.getValueTwo());
+				}
+				if (parents.size() > 0)
+				{
+					XRay.logger.info(String.format("Overview: built %d tiles at zoom level %d in %.2fs",
+								parents.size(), level, (System.nanoTime() - levelStart) / 1000000000d));
+				}
+				dirty = parents;
+			}
+		}
+		finally
+		{
+			this.pool.shutdown();
+			this.pool = null;
+		}
+		XRay.logger.info(String.format("Overview: finished in %.2fs total", (System.nanoTime() - start) / 1000000000d));
+	}
+
+	/**
+	 * Waits for a task to finish, reporting any error it ran into.
+	 *
+	 * @return Whether the task succeeded
+	 */
+	private boolean await(Future<Boolean> future, String desc)
+	{
+		try
+		{
+			return future.get().booleanValue();
+		}
+		catch (ExecutionException e)
+		{
+			XRay.logger.error("Overview: error rendering " + desc + ": " + e.getCause().toString());
+		}
+		catch (InterruptedException e)
+		{
+			XRay.logger.error("Overview: interrupted while rendering " + desc);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns all the region files in our dimension, along with when they
+	 * were last modified.
+	 */
+	private TreeMap<IntegerPair, Long> findRegions()
+	{
+		TreeMap<IntegerPair, Long> regions = new TreeMap<IntegerPair, Long>();
+		File[] files = new File(this.world.getBasePath(), "region").listFiles(new RegionFileFilter(this.world));
+		if (files == null)
+		{
+			return regions;
+		}
+		Pattern pattern = Pattern.compile(RegionFileFilter.match_regex);
+		for (File file : files)
+		{
+			Matcher matcher = pattern.matcher(file.getName());
+			if (matcher.matches())
+			{
+				regions.put(new IntegerPair(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))),
+						file.lastModified());
+			}
+		}
+		return regions;
+	}
+
+	/**
+	 * Reads in the region timestamps from our last run, if there was one.
+	 * Each line is "regionX regionZ mtime".
+	 */
+	private TreeMap<IntegerPair, Long> readManifest()
+	{
+		TreeMap<IntegerPair, Long> manifest = new TreeMap<IntegerPair, Long>();
+		File file = new File(this.outDir, MANIFEST);
+		if (!file.exists())
+		{
+			return manifest;
+		}
+		BufferedReader reader = null;
+		try
+		{
+			reader = new BufferedReader(new FileReader(file));
+			String line;
+			String[] parts;
+			while ((line = reader.readLine()) != null)
+			{
+				parts = line.trim().split("\\s+");
+				if (parts.length == 3)
+				{
+					manifest.put(new IntegerPair(Integer.parseInt(parts[0]), Integer.parseInt(parts[1])),
+							Long.parseLong(parts[2]));
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			// Just render everything again
+			XRay.logger.warn("Overview: could not read " + file.getPath() + ", rendering everything: " + e.toString());
+			manifest.clear();
+		}
+		finally
+		{
+			if (reader != null)
+			{
+				try
+				{
+					reader.close();
+				}
+				catch (IOException e)
+				{
+					// whatever
+				}
+			}
+		}
+		return manifest;
+	}
+
+	/**
+	 * Writes out our region timestamps for next time
+	 */
+	private void writeManifest(TreeMap<IntegerPair, Long> manifest)
+		throws IOException
+	{
+		File temp = new File(this.outDir, MANIFEST + ".tmp");
+		PrintWriter writer = new PrintWriter(new FileWriter(temp));
+		for (Map.Entry<IntegerPair, Long> entry : manifest.entrySet())
+		{
+			writer.println(entry.getKey().getValueOne() + " " + entry.getKey().getValueTwo() + " " + entry.getValue());
+		}
+		writer.close();
+		if (writer.checkError())
+		{
+			throw new IOException("Could not write " + temp.getPath());
+		}
+		this.replaceFile(temp, new File(this.outDir, MANIFEST));
+	}
+
+	private File getTileFile(int level, int tileX, int tileZ)
+	{
+		return new File(new File(this.outDir, Integer.toString(level)), tileX + "_" + tileZ + ".png");
+	}
+
+	/**
+	 * Writes out a tile.  We write to a temporary file first, so that anything
+	 * watching the output directory never sees half a PNG.
+	 */
+	private void writeTile(BufferedImage image, int level, int tileX, int tileZ)
+		throws IOException
+	{
+		File file = this.getTileFile(level, tileX, tileZ);
+		File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+		if (!ImageIO.write(image, "png", temp))
+		{
+			throw new IOException("No PNG writer available");
+		}
+		this.replaceFile(temp, file);
+	}
+
+	private void replaceFile(File temp, File file)
+		throws IOException
+	{
+		if (!temp.renameTo(file))
+		{
+			// Windows won't rename over an existing file
+			file.delete();
+			if (!temp.renameTo(file))
+			{
+				throw new IOException("Could not rename " + temp.getPath() + " to " + file.getPath());
+			}
+		}
+	}
+
+	/**
+	 * Block data for a single Anvil chunk, without any of the overhead of a
+	 * full ChunkAnvil.
+	 */
+	private static class AnvilBlocks implements ColumnSummary.BlockSource
+	{
+		public short[][] sections = new short[16][];
+		public int ceilingHeight = 255;
+
+		public AnvilBlocks(CompoundTag levelTag)
+		{
+			ListTag sectionsTag = (ListTag) levelTag.getTagWithName("Sections");
+			if (sectionsTag == null)
+			{
+				return;
+			}
+			for (Tag sectionTagTemp : sectionsTag.value)
+			{
+				CompoundTag sectionTag = (CompoundTag) sectionTagTemp;
+				int section = ((ByteTag) sectionTag.getTagWithName("Y")).value;
+				ShortArrayTag blocksTag = (ShortArrayTag) sectionTag.getTagWithName("Blocks");
+				if (section < 0 || blocksTag == null)
+				{
+					continue;
+				}
+				if (section >= this.sections.length)
+				{
+					short[][] newSections = new short[section + 1][];
+					System.arraycopy(this.sections, 0, newSections, 0, this.sections.length);
+					this.sections = newSections;
+					this.ceilingHeight = ((section + 1) * 16) - 1;
+				}
+				this.sections[section] = blocksTag.value;
+				ByteArrayTag addBlocksTag = (ByteArrayTag) sectionTag.getTagWithName("Add");
+				if (addBlocksTag != null)
+				{
+					ChunkAnvil.mergeAddBlocks(blocksTag.value, addBlocksTag.value);
+				}
+			}
+		}
+
+		public short getBlock(int x, int y, int z)
+		{
+			int section = y >> 4;
+			if (section < this.sections.length && this.sections[section] != null)
+			{
+				return this.sections[section][((y & 15) * 256) + (z * 16) + x];
+			}
+			return 0;
+		}
+
+		public void summarize(ColumnSummary summary)
+		{
+			short[] blocks;
+			int i;
+			for (int section = 0; section < this.sections.length; section++)
+			{
+				blocks = this.sections[section];
+				if (blocks == null)
+				{
+					continue;
+				}
+				i = 0;
+				for (int y = section * 16; y < (section + 1) * 16; y++)
+				{
+					for (int z = 0; z < 16; z++)
+					{
+						for (int x = 0; x < 16; x++)
+						{
+							summary.addBlock(x, y, z, blocks[i++]);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Block data for a single pre-Anvil chunk
+	 */
+	private static class OriginalBlocks implements ColumnSummary.BlockSource
+	{
+		public short[] blocks;
+		public int ceilingHeight = 127;
+
+		public OriginalBlocks(CompoundTag levelTag)
+		{
+			this.blocks = ((ShortArrayTag) levelTag.getTagWithName("Blocks")).value;
+		}
+
+		public short getBlock(int x, int y, int z)
+		{
+			return this.blocks[y + (z * 128) + (x * 128 * 16)];
+		}
+
+		public void summarize(ColumnSummary summary)
+		{
+			int i = 0;
+			for (int x = 0; x < 16; x++)
+			{
+				for (int z = 0; z < 16; z++)
+				{
+					for (int y = 0; y < 128; y++)
+					{
+						summary.addBlock(x, y, z, this.blocks[i++]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Works out the colors for a single chunk, the same way that Chunk does
+	 * for the minimap.
+	 *
+	 * @return The chunk's colors, indexed by (z*16)+x, or null if it has no
+	 *         block data
+	 */
+	private int[] summarizeChunk(CompoundTag levelTag)
+	{
+		ColumnSummary summary = new ColumnSummary(this.world.isDimension(-1));
+		Tag heightMapTag = levelTag.getTagWithName("HeightMap");
+		if (this.world.data_format == WorldInfo.MAP_TYPE.ANVIL)
+		{
+			AnvilBlocks blocks = new AnvilBlocks(levelTag);
+			if (!summary.summarizeFromHeightMap(blocks, heightMapTag, blocks.ceilingHeight))
+			{
+				summary.beginPass();
+				blocks.summarize(summary);
+				summary.endPass();
+			}
+		}
+		else
+		{
+			if (levelTag.getTagWithName("Blocks") == null)
+			{
+				return null;
+			}
+			OriginalBlocks blocks = new OriginalBlocks(levelTag);
+			if (!summary.summarizeFromHeightMap(blocks, heightMapTag, blocks.ceilingHeight))
+			{
+				summary.beginPass();
+				blocks.summarize(summary);
+				summary.endPass();
+			}
+		}
+		return summary.getColors();
+	}
+
+	/**
+	 * Renders a single region to its level-0 tile
+	 */
+	private class RegionTask implements Callable<Boolean>
+	{
+		private int regionX;
+		private int regionZ;
+
+		public RegionTask(int regionX, int regionZ)
+		{
+			this.regionX = regionX;
+			this.regionZ = regionZ;
+		}
+
+		public Boolean call()
+			throws IOException
+		{
+			BufferedImage image = new BufferedImage(REGION_DIM, REGION_DIM, BufferedImage.TYPE_INT_ARGB);
+			int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			int chunkCount = 0;
+			try
+			{
+				RegionFile rf = RegionFileCache.getRegionFileByRegion(world, this.regionX, this.regionZ);
+				if (rf == null)
+				{
+					return false;
+				}
+				// Read the whole region in file order up front; it's only the
+				// compressed data, so this is a few MB at the most.
+				int[] xs = new int[1024];
+				int[] zs = new int[1024];
+				for (int i = 0; i < 1024; i++)
+				{
+					xs[i] = i % 32;
+					zs[i] = i / 32;
+				}
+				DataInputStream[] streams = rf.getChunkDataInputStreams(xs, zs);
+				DataInputStream in;
+				CompoundTag chunkData;
+				CompoundTag levelTag;
+				int[] colors;
+				int base;
+				for (int cz = 0; cz < 32; cz++)
+				{
+					for (int cx = 0; cx < 32; cx++)
+					{
+						in = streams[(cz * 32) + cx];
+						streams[(cz * 32) + cx] = null;
+						if (in == null)
+						{
+							continue;
+						}
+						try
+						{
+							chunkData = (CompoundTag) DTFReader.readTagData(in);
+						}
+						finally
+						{
+							in.close();
+						}
+						if (chunkData == null || (levelTag = (CompoundTag) chunkData.getTagWithName("Level")) == null)
+						{
+							continue;
+						}
+						colors = summarizeChunk(levelTag);
+						if (colors == null)
+						{
+							continue;
+						}
+						base = (cz * 16 * REGION_DIM) + (cx * 16);
+						for (int zz = 0; zz < 16; zz++)
+						{
+							System.arraycopy(colors, zz * 16, pixels, base + (zz * REGION_DIM), 16);
+						}
+						chunkCount++;
+					}
+				}
+			}
+			finally
+			{
+				RegionFileCache.closeRegionFile(world, this.regionX, this.regionZ);
+			}
+			if (chunkCount > 0)
+			{
+				writeTile(image, 0, this.regionX, this.regionZ);
+			}
+			else
+			{
+				getTileFile(0, this.regionX, this.regionZ).delete();
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Builds a single tile above level 0 from the (up to) four tiles
+	 * underneath it.  Each 2x2 block of pixels is averaged, weighted by alpha
+	 * so that empty columns at the edge of the world don't darken the colors
+	 * next to them.
+	 */
+	private class ZoomTask implements Callable<Boolean>
+	{
+		private int level;
+		private int tileX;
+		private int tileZ;
+
+		public ZoomTask(int level, int tileX, int tileZ)
+		{
+			this.level = level;
+			this.tileX = tileX;
+			this.tileZ = tileZ;
+		}
+
+		public Boolean call()
+			throws IOException
+		{
+			BufferedImage image = null;
+			int[] pixels = null;
+			int[] childPixels = new int[REGION_DIM * REGION_DIM];
+			int half = REGION_DIM / 2;
+			int p, a, r, g, b, weight, base;
+			for (int dz = 0; dz < 2; dz++)
+			{
+				for (int dx = 0; dx < 2; dx++)
+				{
+					File childFile = getTileFile(this.level - 1, (this.tileX * 2) + dx, (this.tileZ * 2) + dz);
+					if (!childFile.exists())
+					{
+						continue;
+					}
+					BufferedImage child = ImageIO.read(childFile);
+					if (child == null || child.getWidth() != REGION_DIM || child.getHeight() != REGION_DIM)
+					{
+						throw new IOException("Could not read " + childFile.getPath());
+					}
+					child.getRGB(0, 0, REGION_DIM, REGION_DIM, childPixels, 0, REGION_DIM);
+					if (image == null)
+					{
+						image = new BufferedImage(REGION_DIM, REGION_DIM, BufferedImage.TYPE_INT_ARGB);
+						pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+					}
+					for (int z = 0; z < half; z++)
+					{
+						for (int x = 0; x < half; x++)
+						{
+							a = r = g = b = 0;
+							base = (z * 2 * REGION_DIM) + (x * 2);
+							for (int i = 0; i < 4; i++)
+							{
+								p = childPixels[base + ((i >> 1) * REGION_DIM) + (i & 1)];
+								weight = p >>> 24;
+								a += weight;
+								r += ((p >> 16) & 0xFF) * weight;
+								g += ((p >> 8) & 0xFF) * weight;
+								b += (p & 0xFF) * weight;
+							}
+							if (a > 0)
+							{
+								pixels[(((dz * half) + z) * REGION_DIM) + (dx * half) + x] =
+									((a / 4) << 24) | ((r / a) << 16) | ((g / a) << 8) | (b / a);
+							}
+						}
+					}
+				}
+			}
+			if (image == null)
+			{
+				getTileFile(this.level, this.tileX, this.tileZ).delete();
+			}
+			else
+			{
+				writeTile(image, this.level, this.tileX, this.tileZ);
+			}
+			return true;
+		}
+	}
+}
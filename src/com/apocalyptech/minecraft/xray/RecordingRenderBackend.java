@@ -0,0 +1,382 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.util.Arrays;
+
+import org.lwjgl.opengl.GL11;
+
+/**
+ * A RenderBackend which doesn't draw anything, and instead counts what would
+ * have been drawn: vertices, triangles, draw calls, texture binds and other
+ * state changes.  Display lists are tracked well enough that calling one
+ * counts the geometry which was compiled into it, so the totals reflect what
+ * a frame would actually have pushed through the card.  This lets us keep an
+ * eye on our geometry output (quads per chunk, binds per frame, and so on)
+ * without a display at all.
+ *
+ * Counters accumulate until reset() is called; generally you'd reset at the
+ * start of every frame.  List compiles and deletes are counted separately,
+ * since they happen as chunks are uploaded rather than as they're drawn.
+ */
+public class RecordingRenderBackend implements RenderBackend
+{
+	/**
+	 * What got compiled into a single display list
+	 */
+	private static class ListContents
+	{
+		public int vertices;
+		public int triangles;
+		public int primitives;
+	}
+
+	// Indexed by list ID, which we hand out sequentially.  This is an array
+	// rather than a map so that calling a list doesn't box its ID; the
+	// allocation check runs frames through here and expects zero garbage.
+	private ListContents[] lists;
+	private int liveLists;
+	private int nextList;
+	private ListContents compiling;
+
+	// The primitive we're in the middle of, if any
+	private int mode;
+	private int primitiveVertices;
+
+	private int boundTexture;
+
+	// Per-frame counters
+	private long vertices;
+	private long triangles;
+	private long drawCalls;
+	private long textureBinds;
+	private long redundantBinds;
+	private long stateChanges;
+
+	// Upload counters
+	private long listsCompiled;
+	private long listsDeleted;
+	private long verticesCompiled;
+	private long trianglesCompiled;
+
+	public RecordingRenderBackend()
+	{
+		this.lists = new ListContents[1024];
+		this.liveLists = 0;
+		this.nextList = 1;
+		this.compiling = null;
+		this.mode = -1;
+		this.boundTexture = -1;
+		this.reset();
+		this.resetUploads();
+	}
+
+	/**
+	 * Clears our per-frame counters
+	 */
+	public void reset()
+	{
+		this.vertices = 0;
+		this.triangles = 0;
+		this.drawCalls = 0;
+		this.textureBinds = 0;
+		this.redundantBinds = 0;
+		this.stateChanges = 0;
+	}
+
+	/**
+	 * Clears our list compile and delete counters
+	 */
+	public void resetUploads()
+	{
+		this.listsCompiled = 0;
+		this.listsDeleted = 0;
+		this.verticesCompiled = 0;
+		this.trianglesCompiled = 0;
+	}
+
+	/**
+	 * Returns how many triangles the given number of vertices makes, in the
+	 * given primitive mode
+	 */
+	private static int countTriangles(int mode, int count)
+	{
+		switch (mode)
+		{
+			case GL11.GL_TRIANGLES:
+				return count / 3;
+			case GL11.GL_TRIANGLE_STRIP:
+			case GL11.GL_TRIANGLE_FAN:
+			case GL11.GL_POLYGON:
+				return Math.max(0, count - 2);
+			case GL11.GL_QUADS:
+				return (count / 4) * 2;
+			case GL11.GL_QUAD_STRIP:
+				return Math.max(0, ((count - 2) / 2) * 2);
+			default:
+				return 0;
+		}
+	}
+
+	public void glBegin(int mode)
+	{
+		this.mode = mode;
+		this.primitiveVertices = 0;
+	}
+
+	public void glEnd()
+	{
+		int tris = countTriangles(this.mode, this.primitiveVertices);
+		if (this.compiling != null)
+		{
+			this.compiling.vertices += this.primitiveVertices;
+			this.compiling.triangles += tris;
+			this.compiling.primitives++;
+		}
+		else
+		{
+			this.vertices += this.primitiveVertices;
+			this.triangles += tris;
+			this.drawCalls++;
+		}
+		this.mode = -1;
+	}
+
+	public void glTexCoord2f(float s, float t)
+	{
+	}
+
+	public void glVertex3f(float x, float y, float z)
+	{
+		this.primitiveVertices++;
+	}
+
+	public void glColor3f(float red, float green, float blue)
+	{
+		if (this.compiling == null)
+		{
+			this.stateChanges++;
+		}
+	}
+
+	public void glColor4f(float red, float green, float blue, float alpha)
+	{
+		if (this.compiling == null)
+		{
+			this.stateChanges++;
+		}
+	}
+
+	public void glPushMatrix()
+	{
+	}
+
+	public void glPopMatrix()
+	{
+	}
+
+	public void glTranslatef(float x, float y, float z)
+	{
+	}
+
+	public void glRotatef(float angle, float x, float y, float z)
+	{
+	}
+
+	public void glScalef(float x, float y, float z)
+	{
+	}
+
+	public int glGenLists(int range)
+	{
+		int first = this.nextList;
+		this.nextList += range;
+		if (this.nextList > this.lists.length)
+		{
+			this.lists = Arrays.copyOf(this.lists, Math.max(this.nextList, this.lists.length * 2));
+		}
+		return first;
+	}
+
+	public void glNewList(int list, int mode)
+	{
+		this.compiling = new ListContents();
+		if (this.lists[list] == null)
+		{
+			this.liveLists++;
+		}
+		this.lists[list] = this.compiling;
+	}
+
+	public void glEndList()
+	{
+		this.listsCompiled++;
+		this.verticesCompiled += this.compiling.vertices;
+		this.trianglesCompiled += this.compiling.triangles;
+		this.compiling = null;
+	}
+
+	public void glCallList(int list)
+	{
+		ListContents contents = (list > 0 && list < this.lists.length ? this.lists[list] : null);
+		if (contents != null)
+		{
+			this.vertices += contents.vertices;
+			this.triangles += contents.triangles;
+			this.drawCalls++;
+		}
+	}
+
+	public void glDeleteLists(int list, int range)
+	{
+		for (int i = Math.max(1, list); i < Math.min(list + range, this.lists.length); i++)
+		{
+			if (this.lists[i] != null)
+			{
+				this.lists[i] = null;
+				this.liveLists--;
+				this.listsDeleted++;
+			}
+		}
+	}
+
+	public void glBindTexture(int target, int texture)
+	{
+		this.textureBinds++;
+		if (texture == this.boundTexture)
+		{
+			this.redundantBinds++;
+		}
+		this.boundTexture = texture;
+	}
+
+	public void glEnable(int cap)
+	{
+		this.stateChanges++;
+	}
+
+	public void glDisable(int cap)
+	{
+		this.stateChanges++;
+	}
+
+	public void glBlendFunc(int sfactor, int dfactor)
+	{
+		this.stateChanges++;
+	}
+
+	/**
+	 * Vertices drawn since the last reset()
+	 */
+	public long getVertices()
+	{
+		return this.vertices;
+	}
+
+	/**
+	 * Triangles drawn since the last reset()
+	 */
+	public long getTriangles()
+	{
+		return this.triangles;
+	}
+
+	/**
+	 * Display lists called, plus immediate-mode primitives drawn, since the
+	 * last reset()
+	 */
+	public long getDrawCalls()
+	{
+		return this.drawCalls;
+	}
+
+	/**
+	 * Texture binds since the last reset()
+	 */
+	public long getTextureBinds()
+	{
+		return this.textureBinds;
+	}
+
+	/**
+	 * Texture binds since the last reset() which bound the texture which was
+	 * already bound
+	 */
+	public long getRedundantBinds()
+	{
+		return this.redundantBinds;
+	}
+
+	/**
+	 * Enables, disables, blend function and color changes since the last
+	 * reset(), not counting colors compiled into display lists
+	 */
+	public long getStateChanges()
+	{
+		return this.stateChanges;
+	}
+
+	/**
+	 * Display lists compiled since the last resetUploads()
+	 */
+	public long getListsCompiled()
+	{
+		return this.listsCompiled;
+	}
+
+	/**
+	 * Display lists deleted since the last resetUploads()
+	 */
+	public long getListsDeleted()
+	{
+		return this.listsDeleted;
+	}
+
+	/**
+	 * Vertices compiled into display lists since the last resetUploads()
+	 */
+	public long getVerticesCompiled()
+	{
+		return this.verticesCompiled;
+	}
+
+	/**
+	 * Triangles compiled into display lists since the last resetUploads()
+	 */
+	public long getTrianglesCompiled()
+	{
+		return this.trianglesCompiled;
+	}
+
+	/**
+	 * How many display lists currently exist
+	 */
+	public int getLiveLists()
+	{
+		return this.liveLists;
+	}
+}
@@ -66,6 +66,7 @@ package com.apocalyptech.minecraft.xray;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.zip.*;
 
 public class RegionFile {
@@ -77,6 +78,12 @@ public class RegionFile {
     private static final int SECTOR_INTS = SECTOR_BYTES / 4;
 
     static final int CHUNK_HEADER_SIZE = 5;
+
+    /* when reading several chunks at once, gaps of up to this many sectors
+     * between them are read straight through rather than seeked over, and
+     * no single read gets larger than MAX_RUN_SECTORS */
+    private static final int MAX_GAP_SECTORS = 8;
+    private static final int MAX_RUN_SECTORS = 256;
     //private static final byte emptySector[] = new byte[4096];
 
     private final File fileName;
@@ -153,11 +160,71 @@ public class RegionFile {
         }
     }
 
-    /* the modification date of the region file when it was first opened */
+    /* the modification date of the region file when its header was last read */
     public long lastModified() {
         return lastModified;
     }
 
+    public File getFile() {
+        return fileName;
+    }
+
+    /*
+     * re-reads the offset and timestamp tables if the file has been modified
+     * since we last looked at them, and returns the indexes (x + z * 32) of
+     * every chunk whose entry changed.  We only ever read, so this is safe
+     * to do while Minecraft (or a server) still has the file open for
+     * writing; a chunk caught halfway through a write just fails to load
+     * and gets picked up again the next time it's saved.
+     */
+    public synchronized ArrayList<Integer> refreshHeader() {
+        ArrayList<Integer> changed = new ArrayList<Integer>();
+        long modified = fileName.lastModified();
+        if (modified == 0 || modified == lastModified) {
+            return changed;
+        }
+
+        try {
+            int nSectors = (int) (file.length() / SECTOR_BYTES);
+            if (nSectors < 2) {
+                return changed;
+            }
+            sectorFree = new ArrayList<Boolean>(nSectors);
+            for (int i = 0; i < nSectors; ++i) {
+                sectorFree.add(true);
+            }
+            sectorFree.set(0, false);
+            sectorFree.set(1, false);
+
+            file.seek(0);
+            for (int i = 0; i < SECTOR_INTS; ++i) {
+                int offset = file.readInt();
+                if (offset != offsets[i]) {
+                    changed.add(i);
+                    offsets[i] = offset;
+                }
+                if (offset != 0 && (offset >> 8) + (offset & 0xFF) <= sectorFree.size()) {
+                    for (int sectorNum = 0; sectorNum < (offset & 0xFF); ++sectorNum) {
+                        sectorFree.set((offset >> 8) + sectorNum, false);
+                    }
+                }
+            }
+            for (int i = 0; i < SECTOR_INTS; ++i) {
+                int lastModValue = file.readInt();
+                if (lastModValue != chunkTimestamps[i]) {
+                    if (offsets[i] != 0 && !changed.contains(i)) {
+                        changed.add(i);
+                    }
+                    chunkTimestamps[i] = lastModValue;
+                }
+            }
+            lastModified = modified;
+        } catch (IOException e) {
+            debugln("REFRESH " + fileName.getName() + " failed: " + e.toString());
+        }
+        return changed;
+    }
+
     // various small debug printing helpers
     private void debug(String in) {
 //        XRay.logger.debug(in);
@@ -237,6 +304,109 @@ public class RegionFile {
         }
     }
 
+    /*
+     * gets (uncompressed) streams for several chunks at once, in the same
+     * order as the given coordinates, with null for any which aren't found,
+     * just as getChunkDataInputStream would.  rather than seeking to each
+     * chunk in turn, we sort them by where they live in the file, and read
+     * each run of nearby sectors with a single large read.  the streams are
+     * only inflated as they're read from, so the decompression still happens
+     * wherever the caller gets around to it.
+     */
+    public synchronized DataInputStream[] getChunkDataInputStreams(int[] x, int[] z) {
+        DataInputStream[] streams = new DataInputStream[x.length];
+
+        /* pack each chunk's starting sector and index into a long, so that
+         * sorting them puts them in file order */
+        long[] order = new long[x.length];
+        int count = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (outOfBounds(x[i], z[i])) {
+                debugln("READ", x[i], z[i], "out of bounds");
+                continue;
+            }
+            int offset = getOffset(x[i], z[i]);
+            if (offset == 0) {
+                continue;
+            }
+            if ((offset >> 8) + (offset & 0xFF) > sectorFree.size()) {
+                debugln("READ", x[i], z[i], "invalid sector");
+                continue;
+            }
+            order[count++] = (((long) (offset >> 8)) << 32) | i;
+        }
+        Arrays.sort(order, 0, count);
+
+        int runStart = 0;
+        int runs = 0;
+        while (runStart < count) {
+            /* find how far this run goes */
+            int firstSector = (int) (order[runStart] >> 32);
+            int endSector = firstSector;
+            int runEnd = runStart;
+            while (runEnd < count) {
+                int index = (int) order[runEnd];
+                int sector = (int) (order[runEnd] >> 32);
+                int sectors = getOffset(x[index], z[index]) & 0xFF;
+                if (runEnd > runStart &&
+                        (sector > endSector + MAX_GAP_SECTORS || sector + sectors - firstSector > MAX_RUN_SECTORS)) {
+                    break;
+                }
+                endSector = Math.max(endSector, sector + sectors);
+                runEnd++;
+            }
+
+            /* read it in one go, and hand out the chunks inside it */
+            byte[] run = new byte[(endSector - firstSector) * SECTOR_BYTES];
+            try {
+                file.seek(((long) firstSector) * SECTOR_BYTES);
+                file.readFully(run);
+            } catch (IOException e) {
+                debugln("READ sectors " + firstSector + " to " + endSector + ": exception");
+                runStart = runEnd;
+                continue;
+            }
+            for (int i = runStart; i < runEnd; i++) {
+                int index = (int) order[i];
+                int pos = ((int) (order[i] >> 32) - firstSector) * SECTOR_BYTES;
+                streams[index] = getChunkDataInputStream(x[index], z[index], run, pos);
+            }
+            runStart = runEnd;
+            runs++;
+        }
+        Metrics.REGION_READ_RUNS.record(runs);
+        return streams;
+    }
+
+    /*
+     * gets a stream for a single chunk whose sectors have already been read
+     * into the given buffer, starting at pos
+     */
+    private DataInputStream getChunkDataInputStream(int x, int z, byte[] buffer, int pos) {
+        int numSectors = getOffset(x, z) & 0xFF;
+        int length = ((buffer[pos] & 0xFF) << 24) | ((buffer[pos + 1] & 0xFF) << 16) |
+            ((buffer[pos + 2] & 0xFF) << 8) | (buffer[pos + 3] & 0xFF);
+        if (length < 1 || length > SECTOR_BYTES * numSectors - 4) {
+            debugln("READ", x, z, "invalid length: " + length + " > 4096 * " + numSectors);
+            return null;
+        }
+
+        byte version = buffer[pos + 4];
+        try {
+            if (version == VERSION_GZIP) {
+                return new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(buffer, pos + CHUNK_HEADER_SIZE, length - 1)));
+            } else if (version == VERSION_DEFLATE) {
+                return new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(buffer, pos + CHUNK_HEADER_SIZE, length - 1)));
+            }
+        } catch (IOException e) {
+            debugln("READ", x, z, "exception");
+            return null;
+        }
+
+        debugln("READ", x, z, "unknown version " + version);
+        return null;
+    }
+
     /* Commented for X-Ray because we shouldn't be writing anything
     public DataOutputStream getChunkDataOutputStream(int x, int z) {
         if (outOfBounds(x, z)) return null;
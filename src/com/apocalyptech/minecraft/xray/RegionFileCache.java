@@ -223,7 +223,7 @@ public class RegionFileCache {
 		return getRegionFile(world, (regionX << 5), (regionZ << 5));
 	}
 
-    public static synchronized RegionFile getRegionFile(WorldInfo world, int chunkX, int chunkZ) {
+    private static File getRegionFileName(WorldInfo world, int chunkX, int chunkZ) {
         File regionDir = new File(new File(world.getBasePath()), "region");
 		String extension;
 		switch(world.data_format)
@@ -236,7 +236,11 @@ public class RegionFileCache {
 			default:
 				extension = ".mcr";
 		}
-        File file = new File(regionDir, "r." + (chunkX >> 5) + "." + (chunkZ >> 5) + extension);
+        return new File(regionDir, "r." + (chunkX >> 5) + "." + (chunkZ >> 5) + extension);
+    }
+
+    public static synchronized RegionFile getRegionFile(WorldInfo world, int chunkX, int chunkZ) {
+        File file = getRegionFileName(world, chunkX, chunkZ);
 
         Reference<RegionFile> ref = cache.get(file);
 
@@ -257,7 +261,9 @@ public class RegionFileCache {
 
         if (file.exists())
         {
+	        long start = System.nanoTime();
 	        RegionFile reg = new RegionFile(file);
+	        Metrics.REGION_OPEN.recordSince(start);
 	        cache.put(file, new SoftReference<RegionFile>(reg));
 	        return reg;
         }
@@ -267,6 +273,37 @@ public class RegionFileCache {
         }
     }
 
+    /*
+     * returns every RegionFile we currently have open from the given region
+     * directory, so that they can be checked for changes on disk
+     */
+    public static synchronized ArrayList<RegionFile> getOpenRegionFiles(File regionDir) {
+        ArrayList<RegionFile> open = new ArrayList<RegionFile>();
+        for (Map.Entry<File, Reference<RegionFile>> entry : cache.entrySet()) {
+            RegionFile rf = entry.getValue().get();
+            if (rf != null && regionDir.equals(entry.getKey().getParentFile())) {
+                open.add(rf);
+            }
+        }
+        return open;
+    }
+
+    /*
+     * closes and forgets a single region, for callers which know they're
+     * done with it (OverviewRenderer works through regions one at a time on
+     * several threads, and mustn't have clear() close one out from under it)
+     */
+    public static synchronized void closeRegionFile(WorldInfo world, int regionX, int regionZ) {
+        Reference<RegionFile> ref = cache.remove(getRegionFileName(world, (regionX << 5), (regionZ << 5)));
+        if (ref != null && ref.get() != null) {
+            try {
+                ref.get().close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     public static synchronized void clear() {
         for (Reference<RegionFile> ref : cache.values()) {
             try {
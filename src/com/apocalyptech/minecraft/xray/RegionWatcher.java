@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps an eye on the world we're viewing, so that if Minecraft (or a server)
+ * is still running against it, we can pick up changes without having to
+ * reload everything from disk.
+ *
+ * A background thread polls the region files we currently have open; when
+ * one's modification time changes, it re-reads just that file's offset and
+ * timestamp tables and queues up the chunks whose entries actually changed.
+ * It also watches level.dat and the multiplayer player files so that our
+ * camera presets stay current.  The GL thread then picks all that up with
+ * drain() and reloads only those chunks.
+ *
+ * We poll rather than using any filesystem notification mechanism, since
+ * region files are large, get rewritten in-place, and we only care about a
+ * handful of them; a stat() per open region every couple of seconds is
+ * basically free.
+ */
+public class RegionWatcher implements Runnable
+{
+	public static final long POLL_INTERVAL = 2000;
+
+	/**
+	 * Everything which has changed since the last time we were drained.
+	 */
+	public static class Changes
+	{
+		public ArrayList<IntegerPair> chunks = new ArrayList<IntegerPair>();
+		public boolean playersChanged = false;
+
+		public boolean isEmpty()
+		{
+			return chunks.isEmpty() && !playersChanged;
+		}
+	}
+
+	private final Pattern regionPattern;
+	private final Thread thread;
+	private WorldInfo world;
+	private Changes changes;
+	private HashMap<File, Long> metadataTimes;
+
+	/**
+	 * Creates a new watcher and starts its polling thread.  It won't actually
+	 * look at anything until it's been given a world with watch().
+	 */
+	public RegionWatcher()
+	{
+		this.regionPattern = Pattern.compile("^r\\.(-?\\d+)\\.(-?\\d+)\\.mc[ar]$");
+		this.changes = new Changes();
+		this.metadataTimes = new HashMap<File, Long>();
+		this.thread = new Thread(this, "XRay Region Watcher");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Starts watching the given world, forgetting about anything we'd
+	 * queued up for the previous one.
+	 */
+	public synchronized void watch(WorldInfo world)
+	{
+		this.world = world;
+		this.changes = new Changes();
+		this.metadataTimes = this.getMetadataTimes(world);
+	}
+
+	/**
+	 * Stops watching entirely.
+	 */
+	public synchronized void stop()
+	{
+		this.world = null;
+		this.changes = new Changes();
+	}
+
+	/**
+	 * Returns everything which has changed since the last call, and resets.
+	 */
+	public synchronized Changes drain()
+	{
+		Changes drained = this.changes;
+		this.changes = new Changes();
+		return drained;
+	}
+
+	public void run()
+	{
+		while (true)
+		{
+			try
+			{
+				Thread.sleep(POLL_INTERVAL);
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+			try
+			{
+				this.poll();
+			}
+			catch (Exception e)
+			{
+				XRay.logger.warn("Error checking world for changes: " + e.toString());
+			}
+		}
+	}
+
+	/**
+	 * Checks our open region files and player files for changes.  The region
+	 * headers are read outside of our own lock, since the GL thread will want
+	 * to call drain() in the meantime.
+	 */
+	private void poll()
+	{
+		WorldInfo current;
+		synchronized (this)
+		{
+			current = this.world;
+		}
+		if (current == null)
+		{
+			return;
+		}
+
+		ArrayList<IntegerPair> found = new ArrayList<IntegerPair>();
+		File regionDir = new File(new File(current.getBasePath()), "region");
+		for (RegionFile rf : RegionFileCache.getOpenRegionFiles(regionDir))
+		{
+			if (rf.getFile().lastModified() == rf.lastModified())
+			{
+				continue;
+			}
+			Matcher matcher = this.regionPattern.matcher(rf.getFile().getName());
+			if (!matcher.matches())
+			{
+				continue;
+			}
+			int regionX = Integer.parseInt(matcher.group(1));
+			int regionZ = Integer.parseInt(matcher.group(2));
+			for (int idx : rf.refreshHeader())
+			{
+				found.add(new IntegerPair((regionX << 5) + (idx % 32), (regionZ << 5) + (idx / 32)));
+			}
+		}
+
+		HashMap<File, Long> times = this.getMetadataTimes(current);
+
+		synchronized (this)
+		{
+			// If we were retargeted while we were looking, throw it all away
+			if (current != this.world)
+			{
+				return;
+			}
+			this.changes.chunks.addAll(found);
+			if (!times.equals(this.metadataTimes))
+			{
+				this.changes.playersChanged = true;
+				this.metadataTimes = times;
+			}
+		}
+	}
+
+	/**
+	 * Returns the modification times of level.dat and any player files for
+	 * the given world.
+	 */
+	private HashMap<File, Long> getMetadataTimes(WorldInfo world)
+	{
+		HashMap<File, Long> times = new HashMap<File, Long>();
+		if (world == null || world.getBasePath() == null)
+		{
+			return times;
+		}
+		File levelDat = world.getLevelDatFile();
+		times.put(levelDat, levelDat.lastModified());
+		File playerDir = world.getPlayerListDir();
+		if (playerDir != null && playerDir.isDirectory())
+		{
+			File[] players = playerDir.listFiles();
+			if (players != null)
+			{
+				for (File player : players)
+				{
+					if (player.getName().endsWith(".dat"))
+					{
+						times.put(player, player.lastModified());
+					}
+				}
+			}
+		}
+		return times;
+	}
+}
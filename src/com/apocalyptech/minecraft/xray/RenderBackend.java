@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+/**
+ * The GL calls which our chunk geometry goes through: replaying MeshBuffers
+ * into display lists, calling and freeing those lists, and the texture binds
+ * and state changes made around them while drawing the world.  Everything
+ * else still talks to GL11 directly.
+ *
+ * The backend in use lives in XRay.renderBackend.  Normally that's an
+ * LWJGLRenderBackend, which just passes everything along to GL11, but it can
+ * be swapped for a RecordingRenderBackend to count what we would have drawn
+ * on a machine without a display.
+ *
+ * Arguments are the same as for the GL11 calls of the same name.
+ */
+public interface RenderBackend
+{
+	public void glBegin(int mode);
+
+	public void glEnd();
+
+	public void glTexCoord2f(float s, float t);
+
+	public void glVertex3f(float x, float y, float z);
+
+	public void glColor3f(float red, float green, float blue);
+
+	public void glColor4f(float red, float green, float blue, float alpha);
+
+	public void glPushMatrix();
+
+	public void glPopMatrix();
+
+	public void glTranslatef(float x, float y, float z);
+
+	public void glRotatef(float angle, float x, float y, float z);
+
+	public void glScalef(float x, float y, float z);
+
+	public int glGenLists(int range);
+
+	public void glNewList(int list, int mode);
+
+	public void glEndList();
+
+	public void glCallList(int list);
+
+	public void glDeleteLists(int list, int range);
+
+	public void glBindTexture(int target, int texture);
+
+	public void glEnable(int cap);
+
+	public void glDisable(int cap);
+
+	public void glBlendFunc(int sfactor, int dfactor);
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the global state that chunk geometry depends on:
+ * our block types and their render descriptors, the texture atlas, the
+ * decoration bounds, which ores the F-keys are bound to, and which blocks
+ * count as "explored."  The live versions of these are owned by XRay (and
+ * in the case of the ore bindings, can be edited from the Swing thread), so
+ * MeshScheduler's workers only ever look at one of these instead.
+ *
+ * Whenever any of that state changes, a new snapshot gets published, which
+ * replaces the current one atomically.  Each snapshot has a version number,
+ * plus separate versions for the main and selected geometry, which only
+ * change when something that geometry depends on actually has.  Chunks
+ * remember the snapshot their lists were built against, and rebuild
+ * themselves once those versions no longer match.
+ *
+ * The render toggles aren't included here, since every combination of
+ * those is already built into its own sub-mesh (see XRay.RenderToggles).
+ */
+public class RenderConfig
+{
+	private static volatile RenderConfig current;
+
+	public final int version;
+	public final int mainVersion;
+	public final int selectedVersion;
+
+	// These arrays shouldn't be modified
+	public final BlockType[] blockArray;
+	public final BlockRenderDescriptor[] descriptors;
+	public final short[] highlightOres;
+	public final SheetAtlas atlas;
+
+	private final HashMap<Integer, TextureDecorationStats> decorationStats;
+	private final BitSet explored;
+
+	private RenderConfig(RenderConfig previous, BlockType[] blockArray, BlockRenderDescriptor[] descriptors,
+			SheetAtlas atlas, Map<Integer, TextureDecorationStats> decorationStats,
+			short[] highlightOres, Collection<Short> explored)
+	{
+		this.blockArray = blockArray.clone();
+		this.descriptors = descriptors.clone();
+		this.highlightOres = highlightOres.clone();
+		this.atlas = atlas;
+		this.decorationStats = new HashMap<Integer, TextureDecorationStats>();
+		if (decorationStats != null)
+		{
+			this.decorationStats.putAll(decorationStats);
+		}
+		this.explored = new BitSet();
+		if (explored != null)
+		{
+			for (short id : explored)
+			{
+				this.explored.set(id);
+			}
+		}
+
+		if (previous == null)
+		{
+			this.version = 1;
+			this.mainVersion = 1;
+			this.selectedVersion = 1;
+		}
+		else
+		{
+			this.version = previous.version + 1;
+			if (this.sameMainGeometry(previous))
+			{
+				this.mainVersion = previous.mainVersion;
+			}
+			else
+			{
+				this.mainVersion = this.version;
+			}
+			if (this.sameMainGeometry(previous) && Arrays.equals(this.highlightOres, previous.highlightOres))
+			{
+				this.selectedVersion = previous.selectedVersion;
+			}
+			else
+			{
+				this.selectedVersion = this.version;
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the given snapshot would produce the same geometry as us
+	 * for everything but the selected ores.
+	 */
+	private boolean sameMainGeometry(RenderConfig other)
+	{
+		return (this.atlas == other.atlas &&
+				Arrays.equals(this.blockArray, other.blockArray) &&
+				Arrays.equals(this.descriptors, other.descriptors) &&
+				this.decorationStats.equals(other.decorationStats));
+	}
+
+	/**
+	 * Returns the decoration bounds for the given texture, or null if we
+	 * don't have any.
+	 */
+	public TextureDecorationStats getDecorationStats(int textureId)
+	{
+		return this.decorationStats.get(textureId);
+	}
+
+	/**
+	 * Returns whether the given block ID counts as a light source for our
+	 * "explored" highlighting.
+	 */
+	public boolean isExplored(short id)
+	{
+		return (id >= 0 && this.explored.get(id));
+	}
+
+	/**
+	 * Returns the most recently published snapshot, or null if none has
+	 * been published yet.
+	 */
+	public static RenderConfig getCurrent()
+	{
+		return current;
+	}
+
+	/**
+	 * Takes a snapshot of the given state and makes it current.  Everything
+	 * passed in is copied, so the caller is free to keep modifying its own
+	 * versions afterwards.  This can be called from any thread.
+	 *
+	 * @return The new snapshot
+	 */
+	public static synchronized RenderConfig publish(BlockType[] blockArray, BlockRenderDescriptor[] descriptors,
+			SheetAtlas atlas, Map<Integer, TextureDecorationStats> decorationStats,
+			short[] highlightOres, Collection<Short> explored)
+	{
+		RenderConfig config = new RenderConfig(current, blockArray, descriptors, atlas,
+				decorationStats, highlightOres, explored);
+		current = config;
+		return config;
+	}
+}
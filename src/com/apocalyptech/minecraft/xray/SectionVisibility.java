@@ -0,0 +1,412 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.util.Arrays;
+
+/**
+ * CPU-side occlusion culling, based on the connectivity of chunk sections.
+ *
+ * At load time, each section is flood-filled to find out which of its six
+ * faces are connected to each other through see-through blocks (and, separately,
+ * through opaque blocks).  Then each frame we do a breadth-first search out
+ * from the camera's section across that graph, and only the sections we
+ * reach are considered potentially visible.
+ *
+ * What counts as "see-through" follows Chunk.checkSolid(): anything which
+ * would cause an adjacent solid face to be drawn.  Since we don't cull
+ * backfaces, a camera which is itself inside solid rock can see straight
+ * through the rock to the first cave wall, so in that case the search runs
+ * over the opaque connectivity instead.
+ *
+ * Note that this only applies to the regular render passes; highlighted ores
+ * are drawn through everything anyway.
+ */
+public class SectionVisibility
+{
+	// Connectivity value where every face connects to every other face
+	public static final long ALL_CONNECTED = (1L << 36) - 1;
+
+	// Offsets to the adjacent section, indexed by Chunk.FACING ordinal.  Also
+	// note that the opposite of any facing is just (ordinal ^ 1)
+	private static final int[] FACE_DX = new int[6];
+	private static final int[] FACE_DY = new int[6];
+	private static final int[] FACE_DZ = new int[6];
+	static
+	{
+		FACE_DY[Chunk.FACING.TOP.ordinal()] = 1;
+		FACE_DY[Chunk.FACING.BOTTOM.ordinal()] = -1;
+		FACE_DZ[Chunk.FACING.NORTH.ordinal()] = -1;
+		FACE_DZ[Chunk.FACING.SOUTH.ordinal()] = 1;
+		FACE_DX[Chunk.FACING.WEST.ordinal()] = -1;
+		FACE_DX[Chunk.FACING.EAST.ordinal()] = 1;
+	}
+
+	// The frame number that visible sections get stamped with
+	private int frame;
+
+	// Whether culling is in effect for the current frame
+	private boolean enabled;
+
+	// Scratch space for our per-frame search, reused between frames
+	private byte[] visitedFaces;
+	private int[] queueIdx;
+	private byte[] queueEntry;
+	private byte[] queueDirs;
+
+	public SectionVisibility()
+	{
+		this.frame = 0;
+		this.enabled = false;
+		this.visitedFaces = new byte[0];
+	}
+
+	/**
+	 * Returns whether the two given faces are connected, according to the
+	 * given connectivity value.
+	 */
+	public static boolean isConnected(long connectivity, int from, int to)
+	{
+		return ((connectivity >> (from*6 + to)) & 1L) == 1L;
+	}
+
+	/**
+	 * Flood-fills a single section to find which faces are connected to each
+	 * other.  If traverseOpaque is false, we look for paths through the
+	 * see-through blocks; if true, through the opaque ones.
+	 *
+	 * @param opaque Opacity of each block in the section, indexed as x + z*16 + y*256
+	 * @param traverseOpaque Which kind of block we're filling through
+	 * @param queue Scratch space of at least 4096 entries
+	 * @param visited Scratch space of at least 4096 entries
+	 * @return A bitfield, where bit (from*6 + to) is set if the faces connect
+	 */
+	public static long computeConnectivity(boolean[] opaque, boolean traverseOpaque, int[] queue, boolean[] visited)
+	{
+		Arrays.fill(visited, 0, 4096, false);
+		long connectivity = 0;
+		int head, tail;
+		int faces;
+		int i, x, y, z;
+		for (int start = 0; start < 4096; start++)
+		{
+			if (visited[start] || opaque[start] != traverseOpaque)
+			{
+				continue;
+			}
+			head = 0;
+			tail = 0;
+			faces = 0;
+			queue[tail++] = start;
+			visited[start] = true;
+			while (head < tail)
+			{
+				i = queue[head++];
+				x = i & 15;
+				z = (i >> 4) & 15;
+				y = i >> 8;
+
+				if (x == 0)
+				{
+					faces |= 1 << Chunk.FACING.WEST.ordinal();
+				}
+				else
+				{
+					tail = visit(i-1, opaque, traverseOpaque, queue, tail, visited);
+				}
+				if (x == 15)
+				{
+					faces |= 1 << Chunk.FACING.EAST.ordinal();
+				}
+				else
+				{
+					tail = visit(i+1, opaque, traverseOpaque, queue, tail, visited);
+				}
+				if (z == 0)
+				{
+					faces |= 1 << Chunk.FACING.NORTH.ordinal();
+				}
+				else
+				{
+					tail = visit(i-16, opaque, traverseOpaque, queue, tail, visited);
+				}
+				if (z == 15)
+				{
+					faces |= 1 << Chunk.FACING.SOUTH.ordinal();
+				}
+				else
+				{
+					tail = visit(i+16, opaque, traverseOpaque, queue, tail, visited);
+				}
+				if (y == 0)
+				{
+					faces |= 1 << Chunk.FACING.BOTTOM.ordinal();
+				}
+				else
+				{
+					tail = visit(i-256, opaque, traverseOpaque, queue, tail, visited);
+				}
+				if (y == 15)
+				{
+					faces |= 1 << Chunk.FACING.TOP.ordinal();
+				}
+				else
+				{
+					tail = visit(i+256, opaque, traverseOpaque, queue, tail, visited);
+				}
+			}
+
+			for (int from = 0; from < 6; from++)
+			{
+				if ((faces & (1 << from)) != 0)
+				{
+					for (int to = 0; to < 6; to++)
+					{
+						if ((faces & (1 << to)) != 0)
+						{
+							connectivity |= 1L << (from*6 + to);
+						}
+					}
+				}
+			}
+			if (connectivity == ALL_CONNECTED)
+			{
+				break;
+			}
+		}
+		return connectivity;
+	}
+
+	/**
+	 * Helper for computeConnectivity(); queues up the given block if it
+	 * hasn't been seen yet and is of the type we're filling through.
+	 */
+	private static int visit(int i, boolean[] opaque, boolean traverseOpaque, int[] queue, int tail, boolean[] visited)
+	{
+		if (!visited[i] && opaque[i] == traverseOpaque)
+		{
+			visited[i] = true;
+			queue[tail++] = i;
+		}
+		return tail;
+	}
+
+	/**
+	 * Returns the connectivity of the given section, for the kind of search
+	 * we're doing.  Null sections are all air.
+	 */
+	private static long getConnectivity(ChunkSection section, boolean traverseOpaque)
+	{
+		if (section == null)
+		{
+			return (traverseOpaque ? 0 : ALL_CONNECTED);
+		}
+		return (traverseOpaque ? section.opaqueConnectivity : section.seeThroughConnectivity);
+	}
+
+	/**
+	 * Returns whether the given section was reached by our most recent search.
+	 * If culling isn't in effect, everything is visible.
+	 */
+	public boolean isVisible(ChunkSection section)
+	{
+		return (!this.enabled || section.visibleFrame == this.frame);
+	}
+
+	/**
+	 * Returns whether culling was in effect for our most recent search.
+	 */
+	public boolean isEnabled()
+	{
+		return this.enabled;
+	}
+
+	/**
+	 * Disables culling until the next call to update()
+	 */
+	public void disable()
+	{
+		this.enabled = false;
+	}
+
+	/**
+	 * Computes the set of potentially-visible sections for this frame.
+	 *
+	 * @param level The level we're searching through
+	 * @param camX Camera block X coordinate
+	 * @param camY Camera block Y coordinate
+	 * @param camZ Camera block Z coordinate
+	 * @param range How many chunks out from the camera we're drawing
+	 */
+	public void update(MinecraftLevel level, int camX, int camY, int camZ, int range)
+	{
+		this.frame++;
+		this.enabled = false;
+
+		int camChunkX = MinecraftLevel.getChunkX(camX);
+		int camChunkZ = MinecraftLevel.getChunkZ(camZ);
+		Chunk camChunk = level.getChunk(camChunkX, camChunkZ);
+		if (camChunk == null || camY < 0)
+		{
+			return;
+		}
+
+		// Figure out how tall our search area needs to be
+		int width = range*2 + 1;
+		int height = 0;
+		Chunk chunk;
+		for (int dx = -range; dx <= range; dx++)
+		{
+			for (int dz = -range; dz <= range; dz++)
+			{
+				chunk = level.getChunk(camChunkX + dx, camChunkZ + dz);
+				if (chunk != null && chunk.sections.length > height)
+				{
+					height = chunk.sections.length;
+				}
+			}
+		}
+		int cells = width * width * height;
+		if (this.visitedFaces.length < cells)
+		{
+			this.visitedFaces = new byte[cells];
+			this.queueIdx = new int[cells*6];
+			this.queueEntry = new byte[cells*6];
+			this.queueDirs = new byte[cells*6];
+		}
+		else
+		{
+			Arrays.fill(this.visitedFaces, 0, cells, (byte)0);
+		}
+
+		// Find out what kind of block the camera is sitting in, and seed
+		// our search.
+		boolean traverseOpaque;
+		int head = 0;
+		int tail = 0;
+		int camSection = camY / 16;
+		if (camSection >= camChunk.sections.length)
+		{
+			// We're up above the world, so start with every top section in
+			// range, as seen from above.
+			traverseOpaque = false;
+			int top = Chunk.FACING.TOP.ordinal();
+			for (int dx = -range; dx <= range; dx++)
+			{
+				for (int dz = -range; dz <= range; dz++)
+				{
+					chunk = level.getChunk(camChunkX + dx, camChunkZ + dz);
+					if (chunk != null)
+					{
+						int sy = chunk.sections.length - 1;
+						int idx = ((sy * width) + (dz + range)) * width + (dx + range);
+						this.visitedFaces[idx] |= (byte)(1 << top);
+						this.queueIdx[tail] = idx;
+						this.queueEntry[tail] = (byte)top;
+						this.queueDirs[tail] = (byte)(1 << Chunk.FACING.BOTTOM.ordinal());
+						tail++;
+					}
+				}
+			}
+		}
+		else
+		{
+			short camBlock = camChunk.getBlock(MinecraftLevel.getBlockX(camX), camY, MinecraftLevel.getBlockZ(camZ));
+			traverseOpaque = !camChunk.checkSolid(camBlock);
+			int idx = ((camSection * width) + range) * width + range;
+			this.visitedFaces[idx] = (byte)0x3F;
+			this.queueIdx[tail] = idx;
+			this.queueEntry[tail] = -1;
+			this.queueDirs[tail] = 0;
+			tail++;
+		}
+
+		// And now do the search itself
+		int idx, entry, dirs;
+		int sx, sy, sz;
+		int nx, ny, nz, nidx, nentry;
+		long connectivity;
+		ChunkSection section;
+		Chunk nchunk;
+		while (head < tail)
+		{
+			idx = this.queueIdx[head];
+			entry = this.queueEntry[head];
+			dirs = this.queueDirs[head];
+			head++;
+
+			sx = idx % width;
+			sz = (idx / width) % width;
+			sy = idx / (width * width);
+			chunk = level.getChunk(camChunkX + sx - range, camChunkZ + sz - range);
+			section = chunk.sections[sy];
+			if (section != null)
+			{
+				section.visibleFrame = this.frame;
+			}
+			connectivity = getConnectivity(section, traverseOpaque);
+
+			for (int exit = 0; exit < 6; exit++)
+			{
+				// Never double back on a direction we've already travelled
+				if ((dirs & (1 << (exit ^ 1))) != 0)
+				{
+					continue;
+				}
+				if (entry >= 0 && !isConnected(connectivity, entry, exit))
+				{
+					continue;
+				}
+				nx = sx + FACE_DX[exit];
+				ny = sy + FACE_DY[exit];
+				nz = sz + FACE_DZ[exit];
+				if (nx < 0 || nx >= width || nz < 0 || nz >= width || ny < 0 || ny >= height)
+				{
+					continue;
+				}
+				nchunk = level.getChunk(camChunkX + nx - range, camChunkZ + nz - range);
+				if (nchunk == null || ny >= nchunk.sections.length)
+				{
+					continue;
+				}
+				nidx = ((ny * width) + nz) * width + nx;
+				nentry = exit ^ 1;
+				if ((this.visitedFaces[nidx] & (1 << nentry)) != 0)
+				{
+					continue;
+				}
+				this.visitedFaces[nidx] |= (byte)(1 << nentry);
+				this.queueIdx[tail] = nidx;
+				this.queueEntry[tail] = (byte)nentry;
+				this.queueDirs[tail] = (byte)(dirs | (1 << exit));
+				tail++;
+			}
+		}
+
+		this.enabled = true;
+	}
+}
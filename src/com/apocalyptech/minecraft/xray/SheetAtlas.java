@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * Combines all of our texture sheets into one big texture, so that the
+ * render loop can bind a single texture and draw each chunk with one call per
+ * pass, rather than looping over every sheet for every chunk.
+ *
+ * The sheets are laid out in a grid of equally-sized cells.  Both the cells
+ * and the grid dimensions are powers of two, so the combined image is a power
+ * of two on each side and won't get stretched when it's turned into a
+ * Texture.  Sheets which are smaller than a cell are scaled up to fill it, in
+ * the same way that Texture would stretch them up to a power of two if they
+ * were uploaded on their own.
+ *
+ * Chunk geometry is still built with per-sheet texture coordinates; the
+ * mesher uses getScaleU()/getOffsetU() and friends to map those into the
+ * appropriate cell.  Nothing in here talks to GL.
+ */
+public class SheetAtlas
+{
+	private final BufferedImage image;
+	private final int sheetCount;
+	private final int cols;
+	private final int rows;
+
+	private SheetAtlas(BufferedImage image, int sheetCount, int cols, int rows)
+	{
+		this.image = image;
+		this.sheetCount = sheetCount;
+		this.cols = cols;
+		this.rows = rows;
+	}
+
+	/**
+	 * Works out the grid for the given number of sheets, with the given cell
+	 * size.  We double whichever dimension is currently shorter, to keep the
+	 * result reasonably square.
+	 *
+	 * @return {cols, rows}, or null if the result would be larger than maxSize
+	 *         on either side
+	 */
+	public static int[] computeGrid(int sheetCount, int cellWidth, int cellHeight, int maxSize)
+	{
+		int cols = 1;
+		int rows = 1;
+		while (cols * rows < sheetCount)
+		{
+			if (cols * cellWidth <= rows * cellHeight)
+			{
+				cols *= 2;
+			}
+			else
+			{
+				rows *= 2;
+			}
+		}
+		if (cols * cellWidth > maxSize || rows * cellHeight > maxSize)
+		{
+			return null;
+		}
+		return new int[] { cols, rows };
+	}
+
+	/**
+	 * Composes an atlas out of the given sheets.
+	 *
+	 * @param sheets Our texture sheets, in sheet order
+	 * @param maxSize The largest texture dimension we're allowed to use
+	 * @return The new atlas, or null if the sheets won't fit in maxSize
+	 */
+	public static SheetAtlas compose(List<BufferedImage> sheets, int maxSize)
+	{
+		if (sheets.isEmpty())
+		{
+			return null;
+		}
+		int cellWidth = 1;
+		int cellHeight = 1;
+		for (BufferedImage sheet : sheets)
+		{
+			cellWidth = Math.max(cellWidth, TextureTool.get2Fold(sheet.getWidth()));
+			cellHeight = Math.max(cellHeight, TextureTool.get2Fold(sheet.getHeight()));
+		}
+		int[] grid = computeGrid(sheets.size(), cellWidth, cellHeight, maxSize);
+		if (grid == null)
+		{
+			return null;
+		}
+
+		BufferedImage image = new BufferedImage(grid[0] * cellWidth, grid[1] * cellHeight, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2d = image.createGraphics();
+		g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+		int sheetNum = 0;
+		for (BufferedImage sheet : sheets)
+		{
+			g2d.drawImage(sheet,
+					(sheetNum % grid[0]) * cellWidth, (sheetNum / grid[0]) * cellHeight,
+					cellWidth, cellHeight, null);
+			sheetNum++;
+		}
+		g2d.dispose();
+
+		return new SheetAtlas(image, sheets.size(), grid[0], grid[1]);
+	}
+
+	/**
+	 * Returns our combined image
+	 */
+	public BufferedImage getImage()
+	{
+		return this.image;
+	}
+
+	/**
+	 * Returns how many sheets we contain
+	 */
+	public int getSheetCount()
+	{
+		return this.sheetCount;
+	}
+
+	public int getCols()
+	{
+		return this.cols;
+	}
+
+	public int getRows()
+	{
+		return this.rows;
+	}
+
+	/**
+	 * How much a sheet's U coordinates need to be scaled by
+	 */
+	public float getScaleU()
+	{
+		return 1f / this.cols;
+	}
+
+	/**
+	 * How much a sheet's V coordinates need to be scaled by
+	 */
+	public float getScaleV()
+	{
+		return 1f / this.rows;
+	}
+
+	/**
+	 * Where the given sheet's cell starts, horizontally
+	 */
+	public float getOffsetU(int sheet)
+	{
+		return (float)(sheet % this.cols) / this.cols;
+	}
+
+	/**
+	 * Where the given sheet's cell starts, vertically
+	 */
+	public float getOffsetV(int sheet)
+	{
+		return (float)(sheet / this.cols) / this.rows;
+	}
+
+	/**
+	 * Maps a U coordinate on the given sheet into the atlas
+	 */
+	public float mapU(int sheet, float u)
+	{
+		return this.getOffsetU(sheet) + u * this.getScaleU();
+	}
+
+	/**
+	 * Maps a V coordinate on the given sheet into the atlas
+	 */
+	public float mapV(int sheet, float v)
+	{
+		return this.getOffsetV(sheet) + v * this.getScaleV();
+	}
+}
@@ -0,0 +1,311 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.awt.image.BufferedImage;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.imageio.ImageIO;
+
+/**
+ * Keeps track of the content of every input file that goes into building our
+ * block table and textures (blockdef YAML, terrain.png and friends, custom
+ * texture sheets and filename textures), so that anything we derive purely
+ * from those can be cached on disk between runs, keyed by a hash of them all.
+ *
+ * At the moment that's just the decoration bounds, which otherwise require
+ * scanning the pixels of every decoration texture.  The block table and the
+ * composed texture sheets themselves aren't cached, since building them is
+ * also how texture slots get handed out to each BlockType.
+ */
+public class StartupCache
+{
+	// Bump this whenever the format of anything we cache changes
+	private static final int CACHE_VERSION = 1;
+
+	private static final String DECORATION_PREFIX = "decorations-";
+
+	// Input name -> hash of its contents
+	private static final TreeMap<String, String> inputs = new TreeMap<String, String>();
+
+	private StartupCache()
+	{
+	}
+
+	/**
+	 * Records the contents of one of our inputs.
+	 */
+	public static void recordInput(String name, byte[] data)
+	{
+		String hash = hash(data);
+		synchronized (inputs)
+		{
+			inputs.put(name, hash);
+		}
+	}
+
+	/**
+	 * Records the contents of an input file.  Unreadable files are just
+	 * skipped; whatever's loading them will complain on its own.
+	 */
+	public static void recordFile(File file)
+	{
+		try
+		{
+			InputStream stream = new FileInputStream(file);
+			try
+			{
+				recordInput(file.getPath(), readFully(stream));
+			}
+			finally
+			{
+				stream.close();
+			}
+		}
+		catch (IOException e)
+		{
+			// Nothing
+		}
+	}
+
+	/**
+	 * Reads an image from the given stream, recording its contents as we go.
+	 * Returns null if the stream is null or can't be read.
+	 */
+	public static BufferedImage loadImage(String name, InputStream stream)
+	{
+		if (stream == null)
+		{
+			return null;
+		}
+		try
+		{
+			byte[] data;
+			try
+			{
+				data = readFully(stream);
+			}
+			finally
+			{
+				stream.close();
+			}
+			recordInput(name, data);
+			return ImageIO.read(new ByteArrayInputStream(data));
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a key describing the content of every input we've seen so far,
+	 * along with the given description of which texture slots those inputs
+	 * were assigned to.  Slot assignment is done by our own code (see
+	 * TextureAtlasPacker), so the inputs alone can't tell us whether a cached
+	 * value for a given slot is still about the same texture.
+	 */
+	public static String getInputKey(String slotLayout)
+	{
+		StringBuffer all = new StringBuffer();
+		all.append(CACHE_VERSION);
+		all.append('\n').append(hash(slotLayout.getBytes()));
+		synchronized (inputs)
+		{
+			for (Map.Entry<String, String> entry : inputs.entrySet())
+			{
+				all.append('\n').append(entry.getKey()).append('=').append(entry.getValue());
+			}
+		}
+		return hash(all.toString().getBytes());
+	}
+
+	/**
+	 * Loads previously-computed decoration bounds for the given texture sheet.
+	 * Returns null if we don't have any, or if they don't cover every texture
+	 * that we need.
+	 */
+	public static HashMap<Integer, TextureDecorationStats> loadDecorationStats(String key, BufferedImage sheet, Collection<Integer> textureIds)
+	{
+		File cacheFile = getCacheFile(DECORATION_PREFIX + key + ".txt");
+		if (cacheFile == null || !cacheFile.exists())
+		{
+			return null;
+		}
+		HashMap<Integer, TextureDecorationStats> stats = new HashMap<Integer, TextureDecorationStats>();
+		BufferedReader reader = null;
+		try
+		{
+			reader = new BufferedReader(new FileReader(cacheFile));
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				String[] parts = line.trim().split(" ");
+				if (parts.length != 5)
+				{
+					continue;
+				}
+				stats.put(Integer.valueOf(parts[0]), new TextureDecorationStats(sheet,
+							Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+							Integer.parseInt(parts[3]), Integer.parseInt(parts[4])));
+			}
+		}
+		catch (Exception e)
+		{
+			XRay.logger.warn("Could not read decoration cache " + cacheFile.getName() + ": " + e.toString());
+			return null;
+		}
+		finally
+		{
+			if (reader != null)
+			{
+				try
+				{
+					reader.close();
+				}
+				catch (IOException e)
+				{
+					// Nothing
+				}
+			}
+		}
+		if (!stats.keySet().containsAll(textureIds))
+		{
+			return null;
+		}
+		return stats;
+	}
+
+	/**
+	 * Saves decoration bounds for next time, clearing out any we'd saved for
+	 * other inputs.
+	 */
+	public static void saveDecorationStats(String key, HashMap<Integer, TextureDecorationStats> stats)
+	{
+		File cacheFile = getCacheFile(DECORATION_PREFIX + key + ".txt");
+		if (cacheFile == null)
+		{
+			return;
+		}
+		File[] old = cacheFile.getParentFile().listFiles();
+		if (old != null)
+		{
+			for (File oldFile : old)
+			{
+				if (oldFile.getName().startsWith(DECORATION_PREFIX) && !oldFile.equals(cacheFile))
+				{
+					oldFile.delete();
+				}
+			}
+		}
+		try
+		{
+			PrintWriter writer = new PrintWriter(new FileWriter(cacheFile));
+			for (Map.Entry<Integer, TextureDecorationStats> entry : stats.entrySet())
+			{
+				int[] bounds = entry.getValue().getBounds();
+				writer.println(entry.getKey() + " " + bounds[0] + " " + bounds[1] + " " + bounds[2] + " " + bounds[3]);
+			}
+			writer.close();
+		}
+		catch (IOException e)
+		{
+			XRay.logger.warn("Could not write decoration cache " + cacheFile.getName() + ": " + e.toString());
+		}
+	}
+
+	/**
+	 * Returns the named file inside our cache directory, creating the directory
+	 * if need be.  Returns null if that's not possible.
+	 */
+	private static File getCacheFile(String name)
+	{
+		if (MinecraftEnvironment.xrayBaseDir == null)
+		{
+			return null;
+		}
+		File cacheDir = new File(MinecraftEnvironment.xrayBaseDir, "cache");
+		if (!cacheDir.exists() && !cacheDir.mkdirs())
+		{
+			return null;
+		}
+		return new File(cacheDir, name);
+	}
+
+	/**
+	 * Reads everything from a stream.
+	 */
+	private static byte[] readFully(InputStream stream)
+		throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		int count;
+		while ((count = stream.read(buf)) != -1)
+		{
+			out.write(buf, 0, count);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns the hex SHA-1 of some data.
+	 */
+	private static String hash(byte[] data)
+	{
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+			StringBuffer hex = new StringBuffer();
+			for (byte b : digest)
+			{
+				hex.append(String.format("%02x", b & 0xFF));
+			}
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// Every JVM is required to have SHA-1, but just in case
+			return Integer.toHexString(java.util.Arrays.hashCode(data));
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A small thread pool for running independent bits of our startup in
+ * parallel (parsing blockdef files, decoding textures, scanning decoration
+ * bounds, etc), plus some helpers to report on how long each stage took.
+ *
+ * Tasks submitted here should never wait on other tasks submitted here,
+ * since the pool is fixed-size; the waiting should always happen from the
+ * main thread.
+ */
+public class StartupTasks
+{
+	private static ExecutorService pool = null;
+
+	private StartupTasks()
+	{
+	}
+
+	/**
+	 * Returns our pool, creating it if need be.
+	 */
+	private static synchronized ExecutorService getPool()
+	{
+		if (pool == null)
+		{
+			int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+			pool = Executors.newFixedThreadPool(threads, new ThreadFactory()
+			{
+				private int count = 0;
+
+				public synchronized Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "XRay Startup " + (++count));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return pool;
+	}
+
+	/**
+	 * Starts the given task running in the background.
+	 */
+	public static <T> Future<T> submit(Callable<T> task)
+	{
+		return getPool().submit(task);
+	}
+
+	/**
+	 * Waits for a task to finish and returns its result, passing along any
+	 * BlockTypeLoadException that it threw.
+	 */
+	public static <T> T await(Future<T> future)
+		throws BlockTypeLoadException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof BlockTypeLoadException)
+			{
+				throw (BlockTypeLoadException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error)
+			{
+				throw (Error) e.getCause();
+			}
+			throw new BlockTypeLoadException("Error during startup: " + e.getCause().toString(), (Exception) e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			throw new BlockTypeLoadException("Interrupted during startup", e);
+		}
+	}
+
+	/**
+	 * Reports how long a stage of our startup took, given the System.nanoTime()
+	 * from when it started.  Returns the current System.nanoTime(), so that
+	 * consecutive stages can be chained.
+	 */
+	public static long logStage(String stage, long start)
+	{
+		long now = System.nanoTime();
+		XRay.logger.info(String.format("Startup: %s took %.1f ms", stage, (now - start) / 1000000f));
+		return now;
+	}
+
+	/**
+	 * Shuts down our pool, once we're done starting up.
+	 */
+	public static synchronized void shutdown()
+	{
+		if (pool != null)
+		{
+			pool.shutdown();
+			pool = null;
+		}
+	}
+}
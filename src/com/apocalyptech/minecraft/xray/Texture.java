@@ -344,7 +344,7 @@ public class Texture {
 	}
 
 	public void bind() {
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureId); 
+		XRay.renderBackend.glBindTexture(GL11.GL_TEXTURE_2D, textureId);
     }
 	
 	public ByteBuffer getTextureCompatibleBuffer() {
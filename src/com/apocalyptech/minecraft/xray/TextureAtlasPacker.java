@@ -0,0 +1,370 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * Works out which texture sheet each of our extra textures (from custom
+ * texture sheets and filename textures) should live on.  All of a block's
+ * textures have to be on the same sheet, and we'd like to use as few sheets
+ * as possible, since every sheet means another pass through the render loop
+ * and another set of display lists for each chunk.
+ *
+ * We used to just fill up the current sheet block-by-block and start a new
+ * one whenever a block didn't fit, which would leave holes at the end of
+ * each sheet and duplicate any textures shared with blocks on the previous
+ * one.  Instead, we now:
+ *
+ *   1. Group together blocks which share any textures, since those would
+ *      ideally all end up on the same sheet.
+ *   2. Pack those groups, largest first, onto the first sheet with room for
+ *      them (counting any of their textures which are already there as
+ *      free), which is the usual first-fit-decreasing bin packing.
+ *   3. Any group too big for a whole sheet gets split up, and its blocks
+ *      are packed individually in the same way.
+ *
+ * This doesn't do any of the actual texture copying; it just works out the
+ * plan.  Each texture is identified by an arbitrary string key.
+ *
+ * TexturePackerCheck, in the bench tree, compares this against the old
+ * greedy fill (see simulateGreedy()) on the input sets in bench/data.  Where
+ * textures are shared within families of blocks, we save a sheet (4 rather
+ * than 5); where they're shared at random, we save slots but no sheets.
+ */
+public class TextureAtlasPacker
+{
+	/**
+	 * A block which needs some textures.
+	 */
+	private static class Item
+	{
+		public BlockType block;
+		public String namespace;
+		public ArrayList<String> keys;
+		public Item parent;
+
+		public Item(BlockType block, String namespace, ArrayList<String> keys)
+		{
+			this.block = block;
+			this.namespace = namespace;
+			this.keys = keys;
+			this.parent = this;
+		}
+	}
+
+	private final int firstPageFree;
+	private final int pageSize;
+	private final ArrayList<Item> items;
+	private final ArrayList<LinkedHashSet<String>> pages;
+	private final HashMap<BlockType, Integer> blockPages;
+
+	/**
+	 * @param firstPageFree How many free slots there are on our current sheet
+	 * @param pageSize How many slots there are on a new sheet
+	 */
+	public TextureAtlasPacker(int firstPageFree, int pageSize)
+	{
+		this.firstPageFree = firstPageFree;
+		this.pageSize = pageSize;
+		this.items = new ArrayList<Item>();
+		this.pages = new ArrayList<LinkedHashSet<String>>();
+		this.blockPages = new HashMap<BlockType, Integer>();
+	}
+
+	/**
+	 * Adds a block which needs the given textures.
+	 *
+	 * @param block The block
+	 * @param namespace Where the textures are coming from; only used for simulateGreedy()
+	 * @param keys The textures it needs
+	 */
+	public void add(BlockType block, String namespace, ArrayList<String> keys)
+	{
+		this.items.add(new Item(block, namespace, new ArrayList<String>(new LinkedHashSet<String>(keys))));
+	}
+
+	/**
+	 * Returns whether we have anything to pack at all.
+	 */
+	public boolean isEmpty()
+	{
+		return this.items.isEmpty();
+	}
+
+	/**
+	 * Does the packing.
+	 */
+	public void pack()
+		throws BlockTypeLoadException
+	{
+		// First group together our blocks which share textures
+		HashMap<String, Item> owners = new HashMap<String, Item>();
+		for (Item item : this.items)
+		{
+			for (String key : item.keys)
+			{
+				Item owner = owners.get(key);
+				if (owner == null)
+				{
+					owners.put(key, item);
+				}
+				else
+				{
+					union(owner, item);
+				}
+			}
+		}
+		HashMap<Item, ArrayList<Item>> groupMap = new HashMap<Item, ArrayList<Item>>();
+		ArrayList<ArrayList<Item>> groups = new ArrayList<ArrayList<Item>>();
+		for (Item item : this.items)
+		{
+			Item root = find(item);
+			ArrayList<Item> group = groupMap.get(root);
+			if (group == null)
+			{
+				group = new ArrayList<Item>();
+				groupMap.put(root, group);
+				groups.add(group);
+			}
+			group.add(item);
+		}
+
+		// Then pack, largest groups first
+		final HashMap<ArrayList<Item>, LinkedHashSet<String>> groupKeys = new HashMap<ArrayList<Item>, LinkedHashSet<String>>();
+		for (ArrayList<Item> group : groups)
+		{
+			groupKeys.put(group, getKeys(group));
+		}
+		Collections.sort(groups, new Comparator<ArrayList<Item>>()
+		{
+			public int compare(ArrayList<Item> a, ArrayList<Item> b)
+			{
+				return groupKeys.get(b).size() - groupKeys.get(a).size();
+			}
+		});
+		this.pages.clear();
+		this.blockPages.clear();
+		for (ArrayList<Item> group : groups)
+		{
+			if (groupKeys.get(group).size() <= this.pageSize)
+			{
+				this.place(group, groupKeys.get(group));
+			}
+			else
+			{
+				// Too big for a single sheet, so split it up
+				ArrayList<Item> split = new ArrayList<Item>(group);
+				Collections.sort(split, new Comparator<Item>()
+				{
+					public int compare(Item a, Item b)
+					{
+						return b.keys.size() - a.keys.size();
+					}
+				});
+				for (Item item : split)
+				{
+					if (item.keys.size() > this.pageSize)
+					{
+						throw new BlockTypeLoadException("Block " + item.block.idStr + " uses more textures than fit on a single sheet");
+					}
+					ArrayList<Item> single = new ArrayList<Item>();
+					single.add(item);
+					this.place(single, new LinkedHashSet<String>(item.keys));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Places a set of blocks onto the first sheet with room for them, creating
+	 * a new sheet if there's nowhere.
+	 */
+	private void place(ArrayList<Item> group, LinkedHashSet<String> keys)
+	{
+		int page;
+		for (page = 0; page < this.pages.size(); page++)
+		{
+			int needed = 0;
+			for (String key : keys)
+			{
+				if (!this.pages.get(page).contains(key))
+				{
+					needed++;
+				}
+			}
+			if (needed <= this.getCapacity(page) - this.pages.get(page).size())
+			{
+				break;
+			}
+		}
+		if (page == this.pages.size())
+		{
+			this.pages.add(new LinkedHashSet<String>());
+			if (keys.size() > this.getCapacity(page))
+			{
+				// Only possible on our first sheet, if it's mostly full already
+				this.pages.add(new LinkedHashSet<String>());
+				page++;
+			}
+		}
+		this.pages.get(page).addAll(keys);
+		for (Item item : group)
+		{
+			this.blockPages.put(item.block, page);
+		}
+	}
+
+	/**
+	 * Returns how many slots are available on the given sheet in total.
+	 */
+	private int getCapacity(int page)
+	{
+		if (page == 0)
+		{
+			return this.firstPageFree;
+		}
+		return this.pageSize;
+	}
+
+	/**
+	 * Returns the number of sheets we've used, including our starting one.
+	 */
+	public int getPageCount()
+	{
+		return this.pages.size();
+	}
+
+	/**
+	 * Returns the textures to be put on the given sheet (relative to our
+	 * starting sheet), in a stable order.
+	 */
+	public ArrayList<String> getPageKeys(int page)
+	{
+		return new ArrayList<String>(this.pages.get(page));
+	}
+
+	/**
+	 * Returns which sheet (relative to our starting sheet) the given block
+	 * ended up on.
+	 */
+	public int getPage(BlockType block)
+	{
+		return this.blockPages.get(block);
+	}
+
+	/**
+	 * Returns the total number of texture slots we've used.
+	 */
+	public int getSlotCount()
+	{
+		int count = 0;
+		for (LinkedHashSet<String> page : this.pages)
+		{
+			count += page.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Works out how many sheets and slots our old approach would have used,
+	 * for comparison: blocks are placed in the order they were added, onto
+	 * the current sheet until one doesn't fit.  Returns {sheets, slots}.
+	 */
+	public int[] simulateGreedy()
+	{
+		int sheets = 1;
+		int free = this.firstPageFree;
+		int slots = 0;
+		String namespace = null;
+		LinkedHashSet<String> seen = new LinkedHashSet<String>();
+		for (Item item : this.items)
+		{
+			if (namespace == null || !namespace.equals(item.namespace))
+			{
+				namespace = item.namespace;
+				seen.clear();
+			}
+			ArrayList<String> needed = new ArrayList<String>();
+			for (String key : item.keys)
+			{
+				if (!seen.contains(key))
+				{
+					needed.add(key);
+				}
+			}
+			if (needed.size() > free)
+			{
+				sheets++;
+				free = this.pageSize;
+				seen.clear();
+				needed = item.keys;
+			}
+			seen.addAll(needed);
+			free -= needed.size();
+			slots += needed.size();
+		}
+		return new int[] { sheets, slots };
+	}
+
+	/**
+	 * Returns all the textures used by a group of blocks.
+	 */
+	private static LinkedHashSet<String> getKeys(ArrayList<Item> group)
+	{
+		LinkedHashSet<String> keys = new LinkedHashSet<String>();
+		for (Item item : group)
+		{
+			keys.addAll(item.keys);
+		}
+		return keys;
+	}
+
+	private static Item find(Item item)
+	{
+		while (item.parent != item)
+		{
+			item.parent = item.parent.parent;
+			item = item.parent;
+		}
+		return item;
+	}
+
+	private static void union(Item a, Item b)
+	{
+		Item rootA = find(a);
+		Item rootB = find(b);
+		if (rootA != rootB)
+		{
+			rootB.parent = rootA;
+		}
+	}
+}
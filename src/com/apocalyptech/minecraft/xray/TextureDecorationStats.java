@@ -120,7 +120,28 @@ public class TextureDecorationStats
 			}
 		}
 
-		// Now compute the float values
+		this.computeFloats(bi);
+	}
+
+	/**
+	 * Creates a new set of stats from previously-computed pixel bounds, as
+	 * stored by StartupCache.
+	 */
+	public TextureDecorationStats(BufferedImage bi, int top, int bottom, int left, int right)
+	{
+		this.top = top;
+		this.bottom = bottom;
+		this.left = left;
+		this.right = right;
+		this.computeFloats(bi);
+	}
+
+	/**
+	 * Computes our float values from our pixel bounds.
+	 */
+	private void computeFloats(BufferedImage bi)
+	{
+		int square_width = bi.getWidth()/16;
 		this.top_f = (float)this.top/(float)square_width;
 		this.bottom_f = (float)this.bottom/(float)square_width;
 		this.left_f = (float)this.left/(float)square_width;
@@ -136,6 +157,14 @@ public class TextureDecorationStats
 		this.height_tex_f = (float)(this.bottom+1-this.top)/(float)bi.getHeight();
 	}
 
+	/**
+	 * Returns our pixel bounds as {top, bottom, left, right}
+	 */
+	public int[] getBounds()
+	{
+		return new int[] { this.top, this.bottom, this.left, this.right };
+	}
+
 	/**
 	 * Gets the alpha value for a given pixel in an array.
 	 */
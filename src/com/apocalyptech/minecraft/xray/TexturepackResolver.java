@@ -0,0 +1,383 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.LineNumberReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Works out where each texture file we ask for should come from: our
+ * override directory, the user's selected texture pack, minecraft.jar, or
+ * the textures we bundle ourselves, in that order.
+ *
+ * This used to be worked out from scratch for every file, which meant
+ * re-reading options.txt and reopening the texture pack's zip each time.
+ * That adds up once blockdefs start asking for hundreds of filename
+ * textures, so now we do it all once: options.txt is parsed a single time,
+ * the override directory is listed, and the texture pack and minecraft.jar
+ * are each opened once, with their entries indexed by name.  The ZipFile
+ * handles are shared between everyone who asks for a file (ZipFile is fine
+ * with that, including from multiple threads).
+ */
+public class TexturepackResolver
+{
+	// Files which we bundle fallbacks for, in our own "textures" directory
+	private static final String[] BUNDLED = new String[] {
+		"terrain.png", "particles.png", "art/kz.png", "misc/water.png"
+	};
+
+	private static TexturepackResolver instance = null;
+
+	private final File overrideDir;
+	private final HashSet<String> overrides;
+
+	private final String texturepack;
+	private ZipFile packZip;
+	private final HashMap<String, ZipEntry> packIndex;
+
+	private File jarDir;
+	private ZipFile jarZip;
+	private final HashMap<String, ZipEntry> jarIndex;
+
+	// Some stats, so we can see how we're doing
+	private int lookups;
+	private long lookupTime;
+
+	/**
+	 * Returns our resolver, building it if it doesn't exist yet.
+	 */
+	public static synchronized TexturepackResolver getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new TexturepackResolver(MinecraftEnvironment.baseDir, MinecraftEnvironment.xrayBaseDir);
+		}
+		return instance;
+	}
+
+	/**
+	 * Builds our index.
+	 *
+	 * @param baseDir The Minecraft directory
+	 * @param xrayBaseDir Our own directory
+	 */
+	private TexturepackResolver(File baseDir, File xrayBaseDir)
+	{
+		long start = System.nanoTime();
+
+		this.overrideDir = new File(xrayBaseDir, "textures");
+		this.overrides = new HashSet<String>();
+		this.indexOverrides(this.overrideDir, "");
+
+		this.texturepack = readTexturepackOption(new File(baseDir, "options.txt"));
+		this.packIndex = new HashMap<String, ZipEntry>();
+		if (this.texturepack != null)
+		{
+			File packFile = new File(baseDir, "texturepacks/" + this.texturepack);
+			if (packFile.exists())
+			{
+				try
+				{
+					this.packZip = new ZipFile(packFile);
+					indexZip(this.packZip, this.packIndex);
+				}
+				catch (IOException e)
+				{
+					XRay.logger.warn("Could not open texturepack " + this.texturepack + ": " + e.toString());
+					this.packZip = null;
+				}
+			}
+		}
+
+		this.jarIndex = new HashMap<String, ZipEntry>();
+		File minecraftDataFile = new File(baseDir, "bin/minecraft.jar");
+		if (minecraftDataFile.exists())
+		{
+			if (minecraftDataFile.isDirectory())
+			{
+				// Some mods (TooManyItems in particular) on some OSes (OSX in particular)
+				// end up replacing minecraft.jar with an unpacked directory containing
+				// its contents.  We may as well check for that.
+				this.jarDir = minecraftDataFile;
+			}
+			else
+			{
+				try
+				{
+					this.jarZip = new ZipFile(minecraftDataFile);
+					indexZip(this.jarZip, this.jarIndex);
+				}
+				catch (IOException e)
+				{
+					XRay.logger.warn(e.toString());
+					this.jarZip = null;
+				}
+			}
+		}
+
+		XRay.logger.info(String.format("Indexed %d override, %d texturepack and %d minecraft.jar entries in %.1f ms",
+					this.overrides.size(), this.packIndex.size(), this.jarIndex.size(),
+					(System.nanoTime() - start) / 1000000f));
+	}
+
+	/**
+	 * Returns a stream to the given file, or null if it can't be found anywhere.
+	 */
+	public InputStream open(String filename)
+	{
+		long start = System.nanoTime();
+		try
+		{
+			return this.find(filename);
+		}
+		finally
+		{
+			synchronized (this)
+			{
+				this.lookups++;
+				this.lookupTime += System.nanoTime() - start;
+			}
+		}
+	}
+
+	/**
+	 * Does the actual work for open()
+	 */
+	private InputStream find(String filename)
+	{
+		// First check our override directory for the file
+		if (this.overrides.contains(filename))
+		{
+			File overrideFile = new File(this.overrideDir, filename);
+			try
+			{
+				XRay.logger.info("Overriding " + filename + " at " + overrideFile.getPath());
+				return new FileInputStream(overrideFile);
+			}
+			catch (FileNotFoundException e)
+			{
+				// Don't do anything; just continue on our merry little way
+			}
+		}
+
+		// Then the texture pack
+		ZipEntry entry = this.packIndex.get(filename);
+		if (entry != null)
+		{
+			try
+			{
+				XRay.logger.info("Using " + filename + " from texturepack " + this.texturepack);
+				return this.packZip.getInputStream(entry);
+			}
+			catch (IOException e)
+			{
+				// Do nothing
+			}
+		}
+
+		// If we got here, just do what we've always done.
+		return this.openFromMinecraft(filename);
+	}
+
+	/**
+	 * Returns a stream to a file inside minecraft.jar, or failing that, to our
+	 * bundled fallbacks.
+	 */
+	public InputStream openFromMinecraft(String filename)
+	{
+		if (this.jarDir != null)
+		{
+			File dataFile = new File(this.jarDir, filename);
+			if (dataFile.exists())
+			{
+				try
+				{
+					return new FileInputStream(dataFile);
+				}
+				catch (FileNotFoundException e)
+				{
+				}
+			}
+		}
+		else
+		{
+			ZipEntry entry = this.jarIndex.get(filename);
+			if (entry != null)
+			{
+				try
+				{
+					return this.jarZip.getInputStream(entry);
+				}
+				catch (IOException e)
+				{
+					XRay.logger.warn(e.toString());
+				}
+			}
+		}
+
+		// If we get here, either we couldn't find minecraft.jar or there was
+		// something wrong with it (perhaps altered by a mod, or whatever).  In
+		// the absence of anything else to do, we'll just load a bundled version
+		// that comes with X-Ray.  If that doesn't work, we'll just sit down
+		// and have a cry.  Note that this bit is sort of implicitly assuming that
+		// any file we might have bundled is a texture, hence the directory name.
+		for (String bundled : BUNDLED)
+		{
+			if (bundled.equals(filename))
+			{
+				XRay.logger.info("Resorting to bundled " + filename);
+				File dataFile = new File("textures", filename);
+				if (dataFile.exists())
+				{
+					try
+					{
+						return new FileInputStream(dataFile);
+					}
+					catch (FileNotFoundException e)
+					{
+					}
+				}
+				break;
+			}
+		}
+
+		// *sob*
+		return null;
+	}
+
+	/**
+	 * Reports on how many files we've looked up, and how long it took.
+	 */
+	public synchronized void logStats()
+	{
+		XRay.logger.info(String.format("Resolved %d texture files in %.1f ms", this.lookups, this.lookupTime / 1000000f));
+	}
+
+	/**
+	 * Recursively adds everything in our override directory to our index
+	 */
+	private void indexOverrides(File dir, String prefix)
+	{
+		File[] files = dir.listFiles();
+		if (files == null)
+		{
+			return;
+		}
+		for (File file : files)
+		{
+			if (file.isDirectory())
+			{
+				this.indexOverrides(file, prefix + file.getName() + "/");
+			}
+			else
+			{
+				this.overrides.add(prefix + file.getName());
+			}
+		}
+	}
+
+	/**
+	 * Adds all the entries of a zipfile to the given index.
+	 */
+	private static void indexZip(ZipFile zf, HashMap<String, ZipEntry> index)
+	{
+		Enumeration<? extends ZipEntry> entries = zf.entries();
+		while (entries.hasMoreElements())
+		{
+			ZipEntry entry = entries.nextElement();
+			if (!entry.isDirectory())
+			{
+				index.put(entry.getName(), entry);
+			}
+		}
+	}
+
+	/**
+	 * Reads options.txt to see if we should be using a texture pack.  Returns
+	 * the pack's filename, or null for the default textures.
+	 */
+	private static String readTexturepackOption(File optionsFile)
+	{
+		String texturepack = null;
+		if (optionsFile.exists())
+		{
+			LineNumberReader reader = null;
+			try
+			{
+				reader = new LineNumberReader(new FileReader(optionsFile));
+				String line = null;
+				String[] parts;
+				while ((line = reader.readLine()) != null)
+				{
+					parts = line.split(":", 2);
+					if (parts.length == 2)
+					{
+						if (parts[0].equalsIgnoreCase("skin"))
+						{
+							if (!parts[1].equalsIgnoreCase("Default"))
+							{
+								// Use the specified texture pack
+								texturepack = parts[1];
+							}
+							break;
+						}
+					}
+				}
+			}
+			catch (FileNotFoundException e)
+			{
+				// Just ignore it and load the default terrain.png
+			}
+			catch (IOException e)
+			{
+				// Ditto, just ignore
+			}
+			if (reader != null)
+			{
+				try
+				{
+					reader.close();
+				}
+				catch (IOException e)
+				{
+					// do nothing
+				}
+			}
+		}
+		return texturepack;
+	}
+}
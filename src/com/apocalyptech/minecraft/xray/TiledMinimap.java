@@ -0,0 +1,555 @@
+/**
+ * Copyright (c) 2010-2012, Vincent Vollers and Christopher J. Kucera
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Minecraft X-Ray team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL VINCENT VOLLERS OR CJ KUCERA BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.apocalyptech.minecraft.xray;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+
+/**
+ * Our minimap, split up into one tile per region.  The minimap used to be a
+ * single 2048x2048 texture which wrapped around via GL_REPEAT, which meant
+ * that we had to keep trimming chunks off of it as the camera moved so that
+ * the far side didn't bleed through, and that every change to it re-uploaded
+ * the whole 16MB texture.
+ *
+ * Tiles which have been drawn to recently are kept "resident": their pixels
+ * are held in a buffer ready for uploading, and they have a GL texture.  Once
+ * we have more than MAX_RESIDENT of those, the least-recently-used tile has
+ * its texture freed and its pixels compressed, which at one byte-ish per
+ * column makes the explored map effectively unbounded.  Tiles which come back
+ * into view are decompressed and uploaded again.
+ *
+ * Minimap pixels are laid out one per block, so a minimap coordinate is just
+ * the world X and Z coordinate of the block.  Everything here should be
+ * called from the GL thread.
+ */
+public class TiledMinimap
+{
+	// Each tile covers a single region: 32x32 chunks at one pixel per block
+	public static final int TILE_CHUNKS = 32;
+	public static final int TILE_DIM = TILE_CHUNKS * 16;
+	private static final int TILE_BYTES = TILE_DIM * TILE_DIM * 4;
+
+	// How many tiles we keep textures and uncompressed pixels for.  The big
+	// map on a 1080p screen needs around twenty of these; our chunk loading
+	// only ever touches a handful.
+	private static final int MAX_RESIDENT = 32;
+
+	/**
+	 * Identifies a tile by its coordinates (ie: region coordinates)
+	 */
+	private static class TileKey
+	{
+		public int x;
+		public int z;
+
+		public TileKey(int x, int z)
+		{
+			this.x = x;
+			this.z = z;
+		}
+
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof TileKey))
+			{
+				return false;
+			}
+			TileKey other = (TileKey) o;
+			return (other.x == this.x && other.z == this.z);
+		}
+
+		public int hashCode()
+		{
+			return (this.x * 31) + this.z;
+		}
+	}
+
+	/**
+	 * A single tile.  Exactly one of pixels and packed is non-null at any
+	 * given time, depending on whether or not we're resident.
+	 */
+	private static class Tile
+	{
+		public final int x;
+		public final int z;
+
+		// RGBA pixel data, ready for uploading
+		public ByteBuffer pixels;
+
+		// Our pixels, deflated, while we're not resident
+		public byte[] packed;
+
+		// Our texture, or -1 if we haven't uploaded one yet
+		public int texture;
+
+		// The range of rows which has changed since our last upload
+		public int dirtyMin;
+		public int dirtyMax;
+
+		// The last frame in which we were drawn to, or drawn
+		public int lastUsed;
+
+		public Tile(int x, int z)
+		{
+			this.x = x;
+			this.z = z;
+			this.texture = -1;
+			this.clearDirty();
+		}
+
+		public boolean isDirty()
+		{
+			return (this.dirtyMax >= this.dirtyMin);
+		}
+
+		public void setDirty(int min, int max)
+		{
+			this.dirtyMin = Math.min(this.dirtyMin, min);
+			this.dirtyMax = Math.max(this.dirtyMax, max);
+		}
+
+		public void clearDirty()
+		{
+			this.dirtyMin = TILE_DIM;
+			this.dirtyMax = -1;
+		}
+	}
+
+	private HashMap<TileKey, Tile> tiles;
+	private ArrayList<Tile> residentTiles;
+	private ArrayList<ByteBuffer> spareBuffers;
+
+	// Reused for looking tiles up, so that drawing doesn't allocate
+	private TileKey lookupKey;
+
+	private int frame;
+
+	// Scratch space for compressing and decompressing tiles
+	private byte[] transferBuffer;
+	private IntBuffer textureIdBuffer;
+
+	public TiledMinimap()
+	{
+		this.tiles = new HashMap<TileKey, Tile>();
+		this.residentTiles = new ArrayList<Tile>();
+		this.spareBuffers = new ArrayList<ByteBuffer>();
+		this.lookupKey = new TileKey(0, 0);
+		this.frame = 0;
+		this.textureIdBuffer = BufferUtils.createIntBuffer(1);
+	}
+
+	/**
+	 * Draws a chunk onto the map.
+	 *
+	 * @param chunkX The chunk's X coordinate
+	 * @param chunkZ The chunk's Z coordinate
+	 * @param colors ARGB colors for the chunk, indexed by (z*16)+x, as
+	 *        returned by Chunk.getMinimapColors()
+	 */
+	public void drawChunk(int chunkX, int chunkZ, int[] colors)
+	{
+		Tile tile = this.getTile(chunkX >> 5, chunkZ >> 5, true);
+		int baseX = (chunkX & (TILE_CHUNKS - 1)) * 16;
+		int baseZ = (chunkZ & (TILE_CHUNKS - 1)) * 16;
+		ByteBuffer pixels = tile.pixels;
+		int color;
+		int i = 0;
+		for (int zz = 0; zz < 16; zz++)
+		{
+			pixels.position((((baseZ + zz) * TILE_DIM) + baseX) * 4);
+			for (int xx = 0; xx < 16; xx++)
+			{
+				color = colors[i++];
+				pixels.put((byte) (color >> 16));
+				pixels.put((byte) (color >> 8));
+				pixels.put((byte) color);
+				pixels.put((byte) (color >>> 24));
+			}
+		}
+		pixels.rewind();
+		tile.setDirty(baseZ, baseZ + 15);
+	}
+
+	/**
+	 * Returns whether any of our resident tiles have changes which need
+	 * uploading.
+	 */
+	public boolean needsUpload()
+	{
+		for (int i = 0; i < this.residentTiles.size(); i++)
+		{
+			if (this.residentTiles.get(i).isDirty())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Uploads whatever's changed in our resident tiles.  Only the rows which
+	 * have actually changed get sent.
+	 */
+	public void upload()
+	{
+		Tile tile;
+		for (int i = 0; i < this.residentTiles.size(); i++)
+		{
+			tile = this.residentTiles.get(i);
+			if (!tile.isDirty())
+			{
+				continue;
+			}
+			if (tile.texture == -1)
+			{
+				this.textureIdBuffer.clear();
+				GL11.glGenTextures(this.textureIdBuffer);
+				tile.texture = this.textureIdBuffer.get(0);
+				XRay.renderBackend.glBindTexture(GL11.GL_TEXTURE_2D, tile.texture);
+				GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL12.GL_CLAMP_TO_EDGE);
+				GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL12.GL_CLAMP_TO_EDGE);
+				GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
+				GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+				GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, TILE_DIM, TILE_DIM, 0,
+						GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, tile.pixels);
+			}
+			else
+			{
+				XRay.renderBackend.glBindTexture(GL11.GL_TEXTURE_2D, tile.texture);
+				tile.pixels.position(tile.dirtyMin * TILE_DIM * 4);
+				GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, tile.dirtyMin, TILE_DIM, tile.dirtyMax - tile.dirtyMin + 1,
+						GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, tile.pixels);
+				tile.pixels.rewind();
+			}
+			tile.clearDirty();
+		}
+	}
+
+	/**
+	 * Draws the part of the map around the given point.  The caller should
+	 * have set up whatever color and blending it wants.
+	 *
+	 * @param mapX The minimap X coordinate to put at screenX
+	 * @param mapZ The minimap Z coordinate to put at screenY
+	 * @param screenX Where on the screen the map should be centered
+	 * @param screenY Where on the screen the map should be centered
+	 * @param halfWidth Half the width of the area to draw into, on screen
+	 * @param halfHeight Half the height of the area to draw into, on screen
+	 * @param scale How many screen pixels to use for each map pixel
+	 */
+	public void draw(float mapX, float mapZ, float screenX, float screenY, float halfWidth, float halfHeight, float scale)
+	{
+		this.frame++;
+		float left = mapX - (halfWidth / scale);
+		float right = mapX + (halfWidth / scale);
+		float top = mapZ - (halfHeight / scale);
+		float bottom = mapZ + (halfHeight / scale);
+		int minTileX = (int) Math.floor(left / TILE_DIM);
+		int maxTileX = (int) Math.floor(right / TILE_DIM);
+		int minTileZ = (int) Math.floor(top / TILE_DIM);
+		int maxTileZ = (int) Math.floor(bottom / TILE_DIM);
+
+		Tile tile;
+		float tileLeft;
+		float tileTop;
+		float x0, x1, z0, z1;
+		for (int tx = minTileX; tx <= maxTileX; tx++)
+		{
+			for (int tz = minTileZ; tz <= maxTileZ; tz++)
+			{
+				tile = this.getTile(tx, tz, false);
+				if (tile == null || tile.texture == -1)
+				{
+					continue;
+				}
+				tileLeft = tx * (float) TILE_DIM;
+				tileTop = tz * (float) TILE_DIM;
+				x0 = Math.max(left, tileLeft);
+				x1 = Math.min(right, tileLeft + TILE_DIM);
+				z0 = Math.max(top, tileTop);
+				z1 = Math.min(bottom, tileTop + TILE_DIM);
+				XRay.renderBackend.glBindTexture(GL11.GL_TEXTURE_2D, tile.texture);
+				SpriteTool.drawCurrentSprite(screenX + ((x0 - mapX) * scale), screenY + ((z0 - mapZ) * scale),
+						(x1 - x0) * scale, (z1 - z0) * scale,
+						(x0 - tileLeft) / TILE_DIM, (z0 - tileTop) / TILE_DIM,
+						(x1 - tileLeft) / TILE_DIM, (z1 - tileTop) / TILE_DIM);
+			}
+		}
+	}
+
+	/**
+	 * Frees all our textures and compresses all our tiles, for when our
+	 * dimension is being suspended.  Tiles will come back as they're needed.
+	 */
+	public void releaseTextures()
+	{
+		Tile tile;
+		while (this.residentTiles.size() > 0)
+		{
+			tile = this.residentTiles.remove(this.residentTiles.size() - 1);
+			this.evict(tile);
+			tile.pixels = null;
+		}
+		this.spareBuffers.clear();
+	}
+
+	/**
+	 * Frees everything we've got
+	 */
+	public void dispose()
+	{
+		for (Tile tile : this.residentTiles)
+		{
+			this.deleteTexture(tile);
+		}
+		this.residentTiles.clear();
+		this.spareBuffers.clear();
+		this.tiles.clear();
+	}
+
+	/**
+	 * Returns approximately how much memory we're using, in bytes
+	 */
+	public long estimateMemoryUsage()
+	{
+		long total = (long) (this.residentTiles.size() + this.spareBuffers.size()) * TILE_BYTES;
+		for (Tile tile : this.tiles.values())
+		{
+			if (tile.packed != null)
+			{
+				total += tile.packed.length;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Returns how many tiles we currently have textures for
+	 */
+	public int getResidentCount()
+	{
+		return this.residentTiles.size();
+	}
+
+	/**
+	 * Returns how many tiles we have in total
+	 */
+	public int getTileCount()
+	{
+		return this.tiles.size();
+	}
+
+	/**
+	 * Finds the given tile, making it resident if it isn't already.
+	 *
+	 * @param create Whether to create the tile if we don't have it yet
+	 * @return The tile, or null if we don't have it and weren't asked to
+	 *         create it
+	 */
+	private Tile getTile(int x, int z, boolean create)
+	{
+		Tile tile;
+		for (int i = 0; i < this.residentTiles.size(); i++)
+		{
+			tile = this.residentTiles.get(i);
+			if (tile.x == x && tile.z == z)
+			{
+				tile.lastUsed = this.frame;
+				return tile;
+			}
+		}
+
+		this.lookupKey.x = x;
+		this.lookupKey.z = z;
+		tile = this.tiles.get(this.lookupKey);
+		if (tile == null)
+		{
+			if (!create)
+			{
+				return null;
+			}
+			tile = new Tile(x, z);
+			this.tiles.put(new TileKey(x, z), tile);
+			tile.pixels = this.getBuffer();
+			byte[] transfer = this.getTransferBuffer();
+			Arrays.fill(transfer, (byte) 0);
+			tile.pixels.put(transfer);
+			tile.pixels.rewind();
+		}
+		else
+		{
+			tile.pixels = this.getBuffer();
+			this.unpack(tile);
+			tile.setDirty(0, TILE_DIM - 1);
+		}
+		tile.lastUsed = this.frame;
+		this.residentTiles.add(tile);
+		this.trimResident();
+		return tile;
+	}
+
+	/**
+	 * Evicts least-recently-used tiles until we're back within MAX_RESIDENT.
+	 * Tiles used this frame are left alone even if that leaves us over.
+	 */
+	private void trimResident()
+	{
+		while (this.residentTiles.size() > MAX_RESIDENT)
+		{
+			int oldest = -1;
+			Tile tile;
+			for (int i = 0; i < this.residentTiles.size(); i++)
+			{
+				tile = this.residentTiles.get(i);
+				if (tile.lastUsed != this.frame &&
+						(oldest == -1 || tile.lastUsed < this.residentTiles.get(oldest).lastUsed))
+				{
+					oldest = i;
+				}
+			}
+			if (oldest == -1)
+			{
+				return;
+			}
+			tile = this.residentTiles.remove(oldest);
+			this.evict(tile);
+			this.spareBuffers.add(tile.pixels);
+			tile.pixels = null;
+		}
+	}
+
+	/**
+	 * Frees a tile's texture and compresses its pixels.  Its pixel buffer is
+	 * left for the caller to deal with.
+	 */
+	private void evict(Tile tile)
+	{
+		this.deleteTexture(tile);
+		this.pack(tile);
+		tile.clearDirty();
+		if (XRay.logger.isDebugEnabled())
+		{
+			XRay.logger.debug("Minimap tile " + tile.x + ", " + tile.z + " evicted, packed to " + tile.packed.length + " bytes");
+		}
+	}
+
+	private void deleteTexture(Tile tile)
+	{
+		if (tile.texture != -1)
+		{
+			GL11.glDeleteTextures(tile.texture);
+			tile.texture = -1;
+		}
+	}
+
+	private ByteBuffer getBuffer()
+	{
+		if (this.spareBuffers.size() > 0)
+		{
+			return this.spareBuffers.remove(this.spareBuffers.size() - 1);
+		}
+		return BufferUtils.createByteBuffer(TILE_BYTES);
+	}
+
+	private byte[] getTransferBuffer()
+	{
+		if (this.transferBuffer == null)
+		{
+			this.transferBuffer = new byte[TILE_BYTES];
+		}
+		return this.transferBuffer;
+	}
+
+	private void pack(Tile tile)
+	{
+		byte[] transfer = this.getTransferBuffer();
+		tile.pixels.rewind();
+		tile.pixels.get(transfer);
+		tile.pixels.rewind();
+
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		deflater.setInput(transfer);
+		deflater.finish();
+		byte[] out = new byte[8192];
+		int length = 0;
+		while (!deflater.finished())
+		{
+			if (length == out.length)
+			{
+				byte[] bigger = new byte[out.length * 2];
+				System.arraycopy(out, 0, bigger, 0, length);
+				out = bigger;
+			}
+			length += deflater.deflate(out, length, out.length - length);
+		}
+		deflater.end();
+
+		tile.packed = new byte[length];
+		System.arraycopy(out, 0, tile.packed, 0, length);
+	}
+
+	private void unpack(Tile tile)
+	{
+		byte[] transfer = this.getTransferBuffer();
+		Inflater inflater = new Inflater();
+		inflater.setInput(tile.packed);
+		try
+		{
+			int length = 0;
+			while (length < TILE_BYTES && !inflater.finished())
+			{
+				length += inflater.inflate(transfer, length, TILE_BYTES - length);
+			}
+		}
+		catch (DataFormatException e)
+		{
+			// Shouldn't happen, since we compressed it ourselves, but if it does
+			// we'll just have a blank tile until its chunks get drawn again.
+			XRay.logger.warn("Couldn't unpack minimap tile " + tile.x + ", " + tile.z + ": " + e.toString());
+			Arrays.fill(transfer, (byte) 0);
+		}
+		finally
+		{
+			inflater.end();
+		}
+		tile.packed = null;
+		tile.pixels.rewind();
+		tile.pixels.put(transfer);
+		tile.pixels.rewind();
+	}
+}
@@ -51,10 +51,16 @@ import java.io.FileOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.util.Map;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
+import java.util.Timer;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
 import javax.swing.JOptionPane;
@@ -111,13 +117,6 @@ public class XRay
 	public static String app_name    = "Minecraft X-Ray";
 	public static String windowTitle = app_name + " " + app_version;
 
-	// Minimap size - I did try increasing this but there were some performance
-	// issues
-	private final int minimap_dim = 2048;
-	private final float minimap_dim_f = (float) minimap_dim;
-	private final int minimap_dim_h = minimap_dim / 2;
-	private final float minimap_dim_h_f = (float) minimap_dim_h;
-	private boolean minimap_needs_updating = false;
 
 	// current display mode
 	private DisplayMode displayMode;
@@ -135,6 +134,18 @@ public class XRay
 
 	// the sprite sheet for all textures
 	public ArrayList<Texture> minecraftTextures;
+
+	// All of the above combined into one texture, if we could fit them.  When
+	// this is in use, chunks build their geometry against Chunk.ATLAS_SHEET
+	// instead of the individual sheets.
+	public static volatile SheetAtlas sheetAtlas;
+	public Texture sheetAtlasTexture;
+
+	// What our chunk geometry is drawn through; see RenderBackend
+	public static RenderBackend renderBackend = new LWJGLRenderBackend();
+
+	// Which sheets the render loop needs to go through
+	private int[] renderSheets;
 	public Texture paintingTexture;
 	public Texture loadingTextTexture;
 	public Texture chunkBorderTexture;
@@ -144,10 +155,11 @@ public class XRay
 	public double outOfRangeHeight;
 	public double outOfRangeWidth;
 
-	// the textures used by the minimap
-	private Texture minimapTexture;
+	// the minimap itself, and the sprites we draw over it
+	private TiledMinimap minimap;
 	private Texture minimapArrowTexture;
-	private Graphics2D minimapGraphics;
+	private Texture spawnMarkerTexture;
+	private Texture playerMarkerTexture;
 
 	// Texture for screenshots
 	public Texture screenshotTexture;
@@ -171,11 +183,60 @@ public class XRay
 	// Toggles that need to be available to the renderers
 	public static class RenderToggles
 	{
+		// Bits for the toggles which chunk geometry depends on.  Geometry affected
+		// by these is built into separate sub-meshes for each state, so flipping
+		// one of these toggles only changes which sub-meshes get drawn.  The
+		// "gating" toggles just turn geometry on or off, so only need the "on" state.
+		public static final int MESH_WATER = 0x01;
+		public static final int MESH_BEDROCK = 0x02;
+		public static final int MESH_EXPLORED = 0x04;
+		public static final int MESH_GRASS = 0x08;
+		public static final int MESH_SILVERFISH = 0x10;
+		public static final int MESH_FENCES = 0x20;
+		public static final int MESH_GATING = MESH_WATER | MESH_BEDROCK;
+		public static final int MESH_COMBINATIONS = 0x40;
+
 		public boolean render_bedrock = false;
 		public boolean render_water = true;
 		public boolean highlight_explored = false;
 		public boolean beta19_fences = true;
+		public boolean accurate_grass = true;
+		public boolean silverfish_highlight = true;
 		public HIGHLIGHT_TYPE highlightOres = defaultHighlightOre;
+
+		/**
+		 * Returns the current state of our mesh-affecting toggles, as a
+		 * combination of the MESH_* bits.
+		 */
+		public int getMeshMask()
+		{
+			int mask = 0;
+			if (this.render_water)
+			{
+				mask |= MESH_WATER;
+			}
+			if (this.render_bedrock)
+			{
+				mask |= MESH_BEDROCK;
+			}
+			if (this.highlight_explored)
+			{
+				mask |= MESH_EXPLORED;
+			}
+			if (this.accurate_grass)
+			{
+				mask |= MESH_GRASS;
+			}
+			if (this.silverfish_highlight)
+			{
+				mask |= MESH_SILVERFISH;
+			}
+			if (this.beta19_fences)
+			{
+				mask |= MESH_FENCES;
+			}
+			return mask;
+		}
 	}
 	public static RenderToggles toggle = new RenderToggles();
 
@@ -210,6 +271,16 @@ public class XRay
 	// wheter we show the big map or the mini map
 	private boolean mapBig = false;
 
+	// The cave map, which shows a slice of a few Y levels around the camera
+	// instead of the top-down view (null when we're not showing it).  When the
+	// camera changes levels we work back through levelData bringing each chunk
+	// up to date, a bit at a time; caveSliceSlot is how far we've got.
+	private TiledMinimap caveMinimap;
+	private int caveSliceBottom;
+	private int caveSliceSlot;
+	private boolean caveRedrawAll;
+	private static final int CAVE_SLICE_HALF = 2;
+
 	// wheter we are done with loading the map data (just for the mini map really)
 	private boolean map_load_started = false;
 
@@ -218,7 +289,10 @@ public class XRay
 	private int selectedWorld;
 
 	// the world chunks we still need to load
-	private LinkedList<Block> mapChunksToLoad;
+	private ChunkLoader chunkLoader;
+
+	// loaded chunks which the game has saved since we read them
+	private ChunkLoader chunkRefresher;
 
 	// the current (selected) world number
 	private WorldInfo world = null;
@@ -234,6 +308,7 @@ public class XRay
 
 	// the fps display texture
 	private Texture fpsTexture;
+	private Graphics2D fpsGraphics;
 
 	// far too many fps calculation variables (copied this from another project)
 	public long previousTime;
@@ -250,11 +325,22 @@ public class XRay
 	// level info texture
 	private boolean levelInfoToggle = false;
 	private Texture levelInfoTexture;
+	private Graphics2D levelInfoGraphics;
+
+	// Color we draw values in, in the fps and level info boxes
+	private static final Color INFO_VALUE_COLOR = Color.RED.darker();
 	private boolean renderDetailsToggle = true;
 	private Texture renderDetailsTexture;
 	private int renderDetails_w = 160;
 	private int cur_renderDetails_h;
-	private int levelInfoTexture_h = 144;
+
+	// The second page of the render details overlay: our runtime Metrics
+	private boolean renderMetricsPage = false;
+	private Texture metricsTexture;
+	private int metrics_w = 256;
+	private int cur_metrics_h;
+	private Timer metricsCsvTimer;
+	private int levelInfoTexture_h = 184;
 	private boolean regenerateRenderDetailsTexture = false;
 	private boolean regenerateOreHighlightTexture = false;
 	private boolean regenerateOutOfBoundsTexture = false;
@@ -264,12 +350,6 @@ public class XRay
 	private int[] lightLevelStart = new int[] { 0, 20, 30, 40, 60, 80, 100, 120 };
 	private int currentLightLevel = 2;
 
-	// Grass rendering status
-	private boolean accurateGrass = true;
-
-	// Silverfish rendering status
-	private boolean silverfishHighlight = true;
-
 	// Chunk border rendering status
 	private boolean renderChunkBorders = false;
 
@@ -287,6 +367,10 @@ public class XRay
 	private float sphere_y = 0f;
 	private float sphere_z = 0f;
 
+	// Display list for the sphere, and the radius it was built for
+	private int sphereList = -1;
+	private int sphereListRadius;
+
 	// vars to keep track of our current chunk coordinates
 	private int cur_chunk_x = 0;
 	private int cur_chunk_z = 0;
@@ -294,15 +378,39 @@ public class XRay
 	private boolean initial_load_done = false;
 	private boolean initial_load_queued = false;
 
-	// vars to keep track of how much the camera has moved since our last
-	// minimap trim.
-	private int total_dX = 0;
-	private int total_dZ = 0;
-	private int minimap_trim_chunks = 10;
-	private int minimap_trim_chunk_distance = 64;
+	// Decides how long we're allowed to spend loading chunks, uploading chunk
+	// geometry, etc, before we update
+	private FrameBudgetGovernor frameGovernor;
 
-	// How long are we allowed to spend loading chunks before we update?
-	private long max_chunkload_time = Sys.getTimerResolution() / 10; // a tenth of a second
+	// Checks that steady-state frames aren't allocating anything
+	private FrameAllocationMonitor allocationMonitor;
+
+	// The chunks we're drawing this frame; reused between frames
+	private ArrayList<Chunk> frameChunks = new ArrayList<Chunk>();
+
+	// Where the camera was last frame, so the governor knows if we're moving
+	private float lastCameraX, lastCameraY, lastCameraZ, lastCameraYaw, lastCameraPitch;
+
+	// How many frames we've held off on uploading the minimap, and how many we
+	// can hold off for before we do it regardless of our budget
+	private int minimap_deferred_frames = 0;
+	private static final int MAX_MINIMAP_DEFERRED_FRAMES = 15;
+
+	// Builds our chunk geometry in the background
+	private MeshScheduler meshScheduler;
+
+	// Dimensions we've recently switched away from, and how much memory we're
+	// willing to spend on loaded level data overall (including the current level)
+	private LevelCache levelCache;
+	private long memory_budget = Runtime.getRuntime().maxMemory() / 2;
+
+	// Whether our next initial chunk load should keep chunks which are already
+	// loaded, rather than reloading them all from disk
+	private boolean keep_loaded_chunks = false;
+
+	// Watches the current world on disk for chunks which the game has saved
+	// since we loaded them
+	private RegionWatcher regionWatcher;
 
 	// The current camera position that we're at
 	private CameraPreset currentPosition;
@@ -321,6 +429,13 @@ public class XRay
 	// lets start with the program
 	public static void main(String args[])
 	{
+		// Rendering an overview map doesn't need a display at all
+		if (args.length > 0 && args[0].equals("--overview"))
+		{
+			OverviewRenderer.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
 		//PropertyConfigurator.configure("xray-log4j.properties");
 		Date now = new Date();
 		logger.info("Starting " + windowTitle + " at " + now.toString());
@@ -337,9 +452,11 @@ public class XRay
 		// First up: initialize our static datastructures in MinecraftConstants.
 		// This used to happen in a static {} block, but that makes some things
 		// difficult.
+		long startupStart = System.nanoTime();
 		try
 		{
 			MinecraftConstants.initialize();
+			StartupTasks.logStage("block definitions", startupStart);
 		}
 		catch (BlockTypeLoadException e)
 		{
@@ -381,6 +498,7 @@ public class XRay
 			initGL();
 
 			// init our program
+			startupStart = System.nanoTime();
 			try
 			{
 				initialize();
@@ -390,6 +508,11 @@ public class XRay
 				ExceptionDialog.presentDialog("Error reading Minecraft block data", e);
 				return;
 			}
+			finally
+			{
+				StartupTasks.shutdown();
+			}
+			StartupTasks.logStage("initialization", startupStart);
 
 			// And now load our world
 			this.setMinecraftWorld(availableWorlds.get(this.selectedWorld));
@@ -401,17 +524,28 @@ public class XRay
 			// main loop
 			while (!done)
 			{
+				long frameStart = System.nanoTime();
 				long time = Sys.getTime();
 				float timeDelta = (time - lastTime) / 1000.0f;
 				lastTime = time;
+				boolean moved = cameraMoved();
+				frameGovernor.beginFrame(moved);
+
+				// Frames where nothing is moving, loading, or rebuilding shouldn't
+				// allocate anything; keep an eye on that
+				boolean steady = (!moved &&
+						(chunkLoader == null || (chunkLoader.isEmpty() && chunkRefresher.isEmpty())) &&
+						meshScheduler.getQueueDepth() == 0 && meshScheduler.getInFlight() == 0);
+				allocationMonitor.beginFrame();
 
 				// handle input given the timedelta (for mouse control)
 				handleInput(timeDelta);
 
 				// Load chunks if needed
-				if (mapChunksToLoad != null)
+				if (chunkLoader != null)
 				{
 					loadPendingChunks();
+					refreshChangedChunks();
 				}
 
 				// Regenerate our rendering details window if we've been told to
@@ -431,11 +565,26 @@ public class XRay
 				// render whatever we need to render
 				render(timeDelta);
 
-				// update our minimap if we need to (new chunks loaded, etc)
-				if (minimap_needs_updating)
+				// update our minimap if we need to (new chunks loaded, etc).  Only the
+				// changed rows of each tile get uploaded, but hold off while we're out
+				// of time anyway, though not indefinitely.  Whichever map isn't being
+				// shown can wait until it is.
+				updateCaveMap();
+				TiledMinimap shownMap = (caveMinimap != null ? caveMinimap : minimap);
+				if (shownMap.needsUpload())
 				{
-					minimapTexture.update();
-					minimap_needs_updating = false;
+					if (frameGovernor.remaining() > 0 || minimap_deferred_frames >= MAX_MINIMAP_DEFERRED_FRAMES)
+					{
+						long uploadStart = System.nanoTime();
+						shownMap.upload();
+						minimap_deferred_frames = 0;
+						frameGovernor.charge(System.nanoTime() - uploadStart);
+						Metrics.MINIMAP_UPLOAD.recordSince(uploadStart);
+					}
+					else
+					{
+						minimap_deferred_frames++;
+					}
 				}
 
 				// Sleep a bit if we're not visible, to save on CPU
@@ -451,6 +600,9 @@ public class XRay
 				}
 
 				// Push to screen
+				frameGovernor.endFrame();
+				allocationMonitor.endFrame(steady);
+				Metrics.FRAME_TIME.recordSince(frameStart);
 				Display.update();
 
 			}
@@ -600,7 +752,8 @@ public class XRay
 
 	/***
 	 * Updates our ore-binding preferences and saves out the config file.
-	 * Will also invalidate our selection stuff.
+	 * Will also publish a new RenderConfig, so that our selected lists get
+	 * rebuilt against the new ores.  This is called from the Swing thread.
 	 */
 	public void updateHighlightBindings()
 	{
@@ -611,7 +764,17 @@ public class XRay
 		this.savePreferences();
 
 		this.regenerateOreHighlightTexture = true;
-		this.invalidateSelectedChunks();
+		this.publishRenderConfig();
+	}
+
+	/**
+	 * Publishes a new RenderConfig snapshot of everything our chunk geometry
+	 * depends on.  This needs calling whenever any of that changes.
+	 */
+	private void publishRenderConfig()
+	{
+		RenderConfig.publish(blockArray, BlockRenderTable.descriptors, sheetAtlas,
+				decorationStats, HIGHLIGHT_ORES, exploredBlocks.keySet());
 	}
 
 	/**
@@ -652,18 +815,18 @@ public class XRay
 	}
 
 	/**
-	 * Loads any pending chunks, but won't exceed max_chunkload_time timer ticks
+	 * Loads any pending chunks, but won't exceed the frame governor's budget
 	 * (unless we're doing the initial load).
 	 */
 	public void loadPendingChunks()
 	{
 		Block b;
-		long time = Sys.getTime();
+		long time = System.nanoTime();
 		int total = 0;
 		int counter = 0;
 		if (!initial_load_done)
 		{
-			total = mapChunksToLoad.size();
+			total = chunkLoader.size();
 			setOrthoOn();
 
 			GL11.glDisable(GL11.GL_BLEND);
@@ -693,44 +856,16 @@ public class XRay
 			loadingTextTexture.update();
 		}
 
-		// There's various cases where parts of our crosshairs may be covered over by
-		// other blocks, or bits of the crosshairs left on the map when wrapping, etc.
-		// Whatever.
-		boolean got_spawn_chunk = false;
-		boolean got_playerpos_chunk = false;
-		CameraPreset spawn = level.getSpawnPoint();
-		CameraPreset playerpos = level.getPlayerPosition();
-		Chunk c;
-		while (!mapChunksToLoad.isEmpty())
+		while (!chunkLoader.isEmpty())
 		{
-			// Load and draw the chunk
-			b = (Block) mapChunksToLoad.removeFirst();
-			// logger.debug("Loading chunk " + b.x + "," + b.z);
-
-			// There may be some circumstances where a chunk we're going to load is already loaded.
-			// Mostly while moving diagonally, I think. I'm actually not convinced that it's worth
-			// checking for, as it doesn't happen TOO often.
-			c = level.getChunk(b.x, b.z);
-			if (c != null)
+			// Load and draw the chunk.  During the initial load we read the
+			// whole queue from disk in one go.
+			b = chunkLoader.loadNext(initial_load_done ? ChunkLoader.READ_BATCH : chunkLoader.size());
+			if (b == null)
 			{
-				if (c.x == b.x && c.z == b.z)
-				{
-					continue;
-				}
+				continue;
 			}
-			level.loadChunk(b.x, b.z);
 			drawChunkToMap(b.x, b.z);
-			if (spawn.block.cx == b.x && spawn.block.cz == b.z)
-			{
-				got_spawn_chunk = true;
-			}
-			if (playerpos.block.cx == b.x && playerpos.block.cz == b.z)
-			{
-				got_playerpos_chunk = true;
-			}
-
-			// Make sure we update the minimap
-			minimap_needs_updating = true;
 
 			// Draw a progress bar if we're doing the initial load
 			if (!initial_load_done)
@@ -798,26 +933,19 @@ public class XRay
 				// Otherwise (if our initial load is done), mark any existing adjacent chunks
 				// as dirty so that they re-render. This is needed so that we don't get gaps
 				// in our terrain because the adjacent chunks weren't ready yet.
-				level.markChunkAsDirty(b.x + 1, b.z);
-				level.markChunkAsDirty(b.x - 1, b.z);
-				level.markChunkAsDirty(b.x, b.z + 1);
-				level.markChunkAsDirty(b.x, b.z - 1);
+				// Only the sections which actually touch the new chunk need it, though.
+				level.markChunkBorderAsDirty(b.x + 1, b.z, Chunk.FACING.WEST);
+				level.markChunkBorderAsDirty(b.x - 1, b.z, Chunk.FACING.EAST);
+				level.markChunkBorderAsDirty(b.x, b.z + 1, Chunk.FACING.NORTH);
+				level.markChunkBorderAsDirty(b.x, b.z - 1, Chunk.FACING.SOUTH);
 			}
 
 			// If we've taken too long, break out so the GUI can update
-			if (initial_load_done && Sys.getTime() - time > max_chunkload_time)
+			if (initial_load_done && System.nanoTime() - time > frameGovernor.remaining())
 			{
 				break;
 			}
 		}
-		if (got_spawn_chunk)
-		{
-			drawSpawnMarkerToMinimap();
-		}
-		if (got_playerpos_chunk)
-		{
-			drawPlayerposMarkerToMinimap();
-		}
 		if (!initial_load_done)
 		{
 			GL11.glEnable(GL11.GL_BLEND);
@@ -825,9 +953,103 @@ public class XRay
 			setOrthoOff();
 			first_run = false;
 		}
+		else
+		{
+			frameGovernor.charge(System.nanoTime() - time);
+		}
 		initial_load_done = true;
 	}
 
+	/**
+	 * Reloads any chunks which the game has saved out since we loaded them,
+	 * as reported by our RegionWatcher, along with player positions if
+	 * level.dat or the player files have changed.  Changed chunks are queued
+	 * up in chunkRefresher, which only bothers with the ones we currently have
+	 * loaded (anything else will be read fresh whenever we get around to
+	 * loading it anyway), and which tries again later on any which can't be
+	 * read yet.  Like loadPendingChunks(), we only work through the queue
+	 * until the frame governor's budget is used up, and leave the rest for
+	 * later frames.
+	 */
+	private void refreshChangedChunks()
+	{
+		if (!initial_load_done)
+		{
+			return;
+		}
+		RegionWatcher.Changes changes = regionWatcher.drain();
+		for (IntegerPair pair : changes.chunks)
+		{
+			chunkRefresher.add(pair.getValueOne(), pair.getValueTwo());
+		}
+		if (changes.playersChanged)
+		{
+			level.refreshPlayerPositions();
+			logger.info("Refreshed player positions");
+		}
+		if (chunkRefresher.isEmpty())
+		{
+			return;
+		}
+
+		// Anything which fails to load goes back on the end of the queue, so
+		// only go through what's queued right now, to leave retries for later
+		long time = System.nanoTime();
+		int remaining = chunkRefresher.size();
+		int refreshed = 0;
+		Block b;
+		while (remaining > 0 && !chunkRefresher.isEmpty())
+		{
+			remaining--;
+			b = chunkRefresher.loadNext(ChunkLoader.READ_BATCH);
+			if (b == null)
+			{
+				continue;
+			}
+			drawChunkToMap(b.x, b.z);
+			level.markChunkBorderAsDirty(b.x + 1, b.z, Chunk.FACING.WEST);
+			level.markChunkBorderAsDirty(b.x - 1, b.z, Chunk.FACING.EAST);
+			level.markChunkBorderAsDirty(b.x, b.z + 1, Chunk.FACING.NORTH);
+			level.markChunkBorderAsDirty(b.x, b.z - 1, Chunk.FACING.SOUTH);
+			refreshed++;
+
+			if (System.nanoTime() - time > frameGovernor.remaining())
+			{
+				break;
+			}
+		}
+
+		long elapsed = System.nanoTime() - time;
+		frameGovernor.charge(elapsed);
+		if (refreshed > 0)
+		{
+			logger.info(String.format("Refreshed %d changed chunk(s) from disk in %.1f ms%s",
+					refreshed, elapsed / 1000000f,
+					(chunkRefresher.isEmpty() ? "" : " (" + chunkRefresher.size() + " still queued)")));
+		}
+	}
+
+	/**
+	 * Returns whether the camera has moved or turned since the last time
+	 * we were called.
+	 */
+	private boolean cameraMoved()
+	{
+		float x = camera.getPosition().x;
+		float y = camera.getPosition().y;
+		float z = camera.getPosition().z;
+		float yaw = camera.getYaw();
+		float pitch = camera.getPitch();
+		boolean moved = (x != lastCameraX || y != lastCameraY || z != lastCameraZ ||
+				yaw != lastCameraYaw || pitch != lastCameraPitch);
+		lastCameraX = x;
+		lastCameraY = y;
+		lastCameraZ = z;
+		lastCameraYaw = yaw;
+		lastCameraPitch = pitch;
+		return moved;
+	}
+
 	public void incLightLevel()
 	{
 		this.currentLightLevel++;
@@ -878,11 +1100,13 @@ public class XRay
 
 	/**
 	 * Alters our grass texture_dir_map to include or not include the fancier
-	 * grass rendering, in case anyone wants that behavior on occasion.
+	 * grass rendering, in case anyone wants that behavior on occasion.  Note that
+	 * chunk geometry is built for both states already (see BlockRenderTable), so
+	 * this only keeps the BlockType itself in line with the toggle.
 	 */
 	private void setAccurateGrass()
 	{
-		if (accurateGrass)
+		if (toggle.accurate_grass)
 		{
 			if (BLOCK_GRASS.texture_dir_map == null)
 			{
@@ -900,11 +1124,12 @@ public class XRay
 
 	/**
 	 * Alters our silverfish texture_dir_map to include or not include the fancier
-	 * silverfish highlighting
+	 * silverfish highlighting.  As with grass, chunk geometry is already built
+	 * for both states.
 	 */
 	private void setSilverfishHighlight()
 	{
-		if (silverfishHighlight)
+		if (toggle.silverfish_highlight)
 		{
 			BLOCK_SILVERFISH.texture_data_map = MinecraftEnvironment.silverfishDataHighlighted;
 			BLOCK_SILVERFISH.setTexIdx(MinecraftEnvironment.silverfishDataHighlighted.get((byte)0));
@@ -966,8 +1191,6 @@ public class XRay
 	{
 		try
 		{
-			minimapTexture = TextureTool.allocateTexture(minimap_dim, minimap_dim);
-			minimapGraphics = minimapTexture.getImage().createGraphics();
 			loadingTextTexture = TextureTool.allocateTexture(1024, 64);
 		}
 		catch (IOException e1)
@@ -976,6 +1199,10 @@ public class XRay
 			e1.printStackTrace();
 		}
 
+		// Each world gets its own minimap
+		minimap = new TiledMinimap();
+		setCaveMap(caveMinimap != null);
+
 		// level data
 		levelBlockX = Integer.MIN_VALUE;
 		levelBlockZ = Integer.MIN_VALUE;
@@ -999,21 +1226,47 @@ public class XRay
 		// camera
 		camera = new FirstPersonCameraController(0, 0, 0);
 
+		// chunk mesh workers, and our background work budget
+		meshScheduler = new MeshScheduler();
+		frameGovernor = new FrameBudgetGovernor();
+		allocationMonitor = new FrameAllocationMonitor();
+		levelCache = new LevelCache();
+		regionWatcher = new RegionWatcher();
+		initMetrics();
+
 		// textures
 		try
 		{
 			// Note that in order to avoid weird texture-resize fuzziness, these textures
 			// should have dimensions which are powers of 2
 			minimapArrowTexture = TextureTool.allocateTexture(32, 32);
+			spawnMarkerTexture = TextureTool.allocateTexture(32, 32);
+			playerMarkerTexture = TextureTool.allocateTexture(32, 32);
 			fpsTexture = TextureTool.allocateTexture(128, 32);
+			fpsGraphics = fpsTexture.getImage().createGraphics();
 			levelInfoTexture = TextureTool.allocateTexture(128, 256);
+			levelInfoGraphics = levelInfoTexture.getImage().createGraphics();
 			renderDetailsTexture = TextureTool.allocateTexture(256, 256);
+			metricsTexture = TextureTool.allocateTexture(256, 512);
 
 			createMinimapSprites();
 
+			// painting textures don't depend on anything else, so start reading
+			// those while we build our main textures
+			long stageStart = System.nanoTime();
+			Future<BufferedImage> paintingFuture = StartupTasks.submit(new Callable<BufferedImage>()
+			{
+				public BufferedImage call()
+				{
+					return MinecraftEnvironment.getMinecraftPaintings();
+				}
+			});
+
 			// minecraft textures
 			minecraftTextures = new ArrayList<Texture>();
 			ArrayList<BufferedImage> textureImages = MinecraftEnvironment.getMinecraftTexture();
+			stageStart = StartupTasks.logStage("texture sheets", stageStart);
+			TexturepackResolver.getInstance().logStats();
 			if (textureImages == null)
 			{
 			}
@@ -1023,7 +1276,40 @@ public class XRay
 				newtex.update();
 				minecraftTextures.add(newtex);
 			}
-			Texture minecraftTexture = minecraftTextures.get(0);
+			final Texture minecraftTexture = minecraftTextures.get(0);
+
+			// If we've got more than one sheet, try to combine them all into one
+			// texture so that each chunk only needs a single call per render pass
+			sheetAtlas = null;
+			if (textureImages.size() > 1 && xray_properties.getBooleanProperty("USE_TEXTURE_ATLAS", true))
+			{
+				SheetAtlas atlas = SheetAtlas.compose(textureImages, GL11.glGetInteger(GL11.GL_MAX_TEXTURE_SIZE));
+				if (atlas == null)
+				{
+					logger.info("Texture sheets are too large to combine; rendering each sheet separately");
+				}
+				else
+				{
+					sheetAtlasTexture = TextureTool.allocateTexture(atlas.getImage(), GL11.GL_NEAREST);
+					sheetAtlasTexture.update();
+					sheetAtlas = atlas;
+					logger.info("Combined " + atlas.getSheetCount() + " texture sheets into a " +
+							atlas.getImage().getWidth() + "x" + atlas.getImage().getHeight() + " atlas");
+				}
+			}
+			if (sheetAtlas == null)
+			{
+				renderSheets = new int[minecraftTextures.size()];
+				for (int i = 0; i < renderSheets.length; i++)
+				{
+					renderSheets[i] = i;
+				}
+			}
+			else
+			{
+				renderSheets = new int[] { Chunk.ATLAS_SHEET };
+			}
+			stageStart = StartupTasks.logStage("texture upload", stageStart);
 
 			// Get a list of block types organized by type
 			HashMap<BLOCK_TYPE, ArrayList<BlockType>> reverse_block_type_map = new HashMap<BLOCK_TYPE, ArrayList<BlockType>>();
@@ -1036,21 +1322,37 @@ public class XRay
 				reverse_block_type_map.get(block.type).add(block);
 			}
 
-			// Compute some information about some decorative textures
-			decorationStats = new HashMap<Integer, TextureDecorationStats>();
+			// Compute some information about some decorative textures.  First
+			// figure out which textures we need.  The slots those textures ended
+			// up in depend on our packing code as well as on the input files, so
+			// we describe them all in slotLayout, which goes into our cache key.
+			LinkedHashSet<Integer> decorationIds = new LinkedHashSet<Integer>();
+			StringBuffer slotLayout = new StringBuffer();
 			for (BLOCK_TYPE decBlockType : DECORATION_BLOCKS)
 			{
 				for (BlockType decBlock : reverse_block_type_map.get(decBlockType))
 				{
+					slotLayout.append(decBlock.idStr).append(':').append(decBlock.tex_idx);
+					if (decBlock.texture_data_map != null)
+					{
+						slotLayout.append(' ').append(new TreeMap<Byte, Integer>(decBlock.texture_data_map));
+					}
+					if (decBlock.texture_dir_map != null)
+					{
+						slotLayout.append(' ').append(new TreeMap<BlockType.DIRECTION_REL, Integer>(decBlock.texture_dir_map));
+					}
+					if (decBlock.texture_extra_map != null)
+					{
+						slotLayout.append(' ').append(new TreeMap<String, Integer>(decBlock.texture_extra_map));
+					}
+					slotLayout.append('\n');
+
 					// First the basic data map
 					if (decBlock.texture_data_map != null)
 					{
 						for (int textureId : decBlock.texture_data_map.values())
 						{
-							if (!decorationStats.containsKey(textureId))
-							{
-								decorationStats.put(textureId, new TextureDecorationStats(minecraftTexture, textureId));
-							}
+							decorationIds.add(textureId);
 						}
 					}
 
@@ -1059,10 +1361,7 @@ public class XRay
 					{
 						for (int textureId : decBlock.texture_dir_map.values())
 						{
-							if (!decorationStats.containsKey(textureId))
-							{
-								decorationStats.put(textureId, new TextureDecorationStats(minecraftTexture, textureId));
-							}
+							decorationIds.add(textureId);
 						}
 					}
 
@@ -1072,24 +1371,46 @@ public class XRay
 						for (String key : blockTypeExtraTexturesReq.get(decBlock.type))
 						{
 							int textureId = decBlock.texture_extra_map.get(key);
-							if (!decorationStats.containsKey(textureId))
-							{
-								decorationStats.put(textureId, new TextureDecorationStats(minecraftTexture, textureId));
-							}
+							decorationIds.add(textureId);
 						}
 					}
 
-					// Now the "base" texture, if we didn't already do it
-					if (!decorationStats.containsKey(decBlock.tex_idx))
+					// Now the "base" texture
+					decorationIds.add(decBlock.tex_idx);
+				}
+			}
+
+			// Then either pull them from our cache, or scan them all in parallel
+			String decorationKey = StartupCache.getInputKey(slotLayout.toString());
+			decorationStats = StartupCache.loadDecorationStats(decorationKey, minecraftTexture.getImage(), decorationIds);
+			if (decorationStats == null)
+			{
+				HashMap<Integer, Future<TextureDecorationStats>> decorationFutures = new HashMap<Integer, Future<TextureDecorationStats>>();
+				for (final int textureId : decorationIds)
+				{
+					decorationFutures.put(textureId, StartupTasks.submit(new Callable<TextureDecorationStats>()
 					{
-						int textureId = decBlock.tex_idx;
-						decorationStats.put(textureId, new TextureDecorationStats(minecraftTexture, textureId));
-					}
+						public TextureDecorationStats call()
+						{
+							return new TextureDecorationStats(minecraftTexture, textureId);
+						}
+					}));
 				}
+				decorationStats = new HashMap<Integer, TextureDecorationStats>();
+				for (Map.Entry<Integer, Future<TextureDecorationStats>> entry : decorationFutures.entrySet())
+				{
+					decorationStats.put(entry.getKey(), StartupTasks.await(entry.getValue()));
+				}
+				StartupCache.saveDecorationStats(decorationKey, decorationStats);
+				stageStart = StartupTasks.logStage("decoration bounds (" + decorationIds.size() + " textures)", stageStart);
+			}
+			else
+			{
+				stageStart = StartupTasks.logStage("decoration bounds (cached)", stageStart);
 			}
 
 			// painting textures
-			BufferedImage minecraftPaintingImage = MinecraftEnvironment.getMinecraftPaintings();
+			BufferedImage minecraftPaintingImage = StartupTasks.await(paintingFuture);
 			paintingTexture = TextureTool.allocateTexture(minecraftPaintingImage, GL11.GL_NEAREST);
 			paintingTexture.update();
 
@@ -1134,6 +1455,8 @@ public class XRay
 		}
 
 		// Extra things we have to do
+		BlockRenderTable.build();
+		this.publishRenderConfig();
 		this.prepareNewWorld();
 		setAccurateGrass();
 		setSilverfishHighlight();
@@ -1339,7 +1662,7 @@ public class XRay
 
 	/**
 	 * Updates our exploredBlocks hashmap based on dimension (Glowstone should trigger
-	 * in Overworld, but not in Nether)
+	 * in Overworld, but not in Nether), and publishes it in a new RenderConfig.
 	 */
 	private void updateExploredBlocks()
 	{
@@ -1361,6 +1684,7 @@ public class XRay
 				}
 			}
 		}
+		this.publishRenderConfig();
 	}
 
 	/***
@@ -1371,10 +1695,13 @@ public class XRay
 	private void setMinecraftWorld(WorldInfo world)
 	{
 		this.world = world;
-		this.level = new MinecraftLevel(world, minecraftTextures, paintingTexture, HIGHLIGHT_ORES);
+		this.meshScheduler.clear();
+		this.level = new MinecraftLevel(world, minecraftTextures, paintingTexture);
+		this.regionWatcher.watch(world);
 
 		// determine which chunks are available in this world
-		mapChunksToLoad = new LinkedList<Block>();
+		chunkLoader = new ChunkLoader(level);
+		chunkRefresher = new ChunkLoader(level, true);
 
 		updateExploredBlocks();
 
@@ -1423,21 +1750,56 @@ public class XRay
 	private void setMinecraftWorld(WorldInfo world, FirstPersonCameraController camera)
 	{
 		this.world = world;
-		this.level = new MinecraftLevel(world, minecraftTextures, paintingTexture, HIGHLIGHT_ORES);
+		this.meshScheduler.clear();
+		this.level = new MinecraftLevel(world, minecraftTextures, paintingTexture);
+		this.regionWatcher.watch(world);
 
 		// determine which chunks are available in this world
-		mapChunksToLoad = new LinkedList<Block>();
+		chunkLoader = new ChunkLoader(level);
+		chunkRefresher = new ChunkLoader(level, true);
 
 		updateExploredBlocks();
 
 		this.camera = camera;
 		initial_load_queued = false;
 		initial_load_done = false;
-		this.removeChunklistFromMap(level.removeAllChunksFromMinimap());
 		this.triggerChunkLoads();
 
 	}
 
+	/**
+	 * Switches back to a dimension which we'd previously suspended into our
+	 * LevelCache.  Its chunks and minimap are all still there, so we only need
+	 * to load whatever's new around the camera.
+	 * 
+	 * @param cached The suspended dimension
+	 * @param camera Our camera, already translated into the new dimension
+	 */
+	private void resumeMinecraftWorld(LevelCache.Entry cached, FirstPersonCameraController camera)
+	{
+		this.world = cached.world;
+		this.meshScheduler.clear();
+		this.level = cached.level;
+		this.regionWatcher.watch(cached.world);
+		this.minimap = cached.minimap;
+		setCaveMap(caveMinimap != null);
+
+		// level data
+		levelBlockX = Integer.MIN_VALUE;
+		levelBlockZ = Integer.MIN_VALUE;
+
+		chunkLoader = new ChunkLoader(level);
+		chunkRefresher = new ChunkLoader(level, true);
+
+		updateExploredBlocks();
+
+		this.camera = camera;
+		initial_load_queued = false;
+		initial_load_done = false;
+		keep_loaded_chunks = true;
+		this.triggerChunkLoads();
+	}
+
 	/**
 	 * Take a screenshot of our current map, so that we can draw it "behind"
 	 * our loading map dialog.  This is a bit silly, really, but I do think it
@@ -1489,7 +1851,6 @@ public class XRay
 		this.camera.setYawAndPitch(180 + playerPos.yaw, playerPos.pitch);
 		initial_load_queued = false;
 		initial_load_done = false;
-		this.removeChunklistFromMap(level.removeAllChunksFromMinimap());
 		this.triggerChunkLoads();
 		this.currentPosition = playerPos;
 	}
@@ -1516,6 +1877,8 @@ public class XRay
 
 		// A full reinitialization is kind of overkill, but whatever.
 		// TODO: code duplicated from switchDimension
+		this.levelCache.clear();
+		this.minimap.dispose();
 		this.prepareNewWorld();
 		this.setMinecraftWorld(availableWorlds.get(this.selectedWorld));
 		this.updateRenderDetails();
@@ -1596,7 +1959,7 @@ public class XRay
 	}
 
 	/**
-	 * Populates mapChunksToLoad with a list of chunks that need adding, based
+	 * Populates chunkLoader with a list of chunks that need adding, based
 	 * on how far we've moved since our last known position. Realistically this
 	 * is never going to be more than one line at a time, though if someone's
 	 * getting hit with ridiculously low FPS or something, perhaps there could
@@ -1651,7 +2014,7 @@ public class XRay
 							}
 							level.clearChunk(lx, lz);
 						}
-						mapChunksToLoad.add(new Block(lx, 0, lz));
+						chunkLoader.add(lx, lz);
 					}
 				}
 			}
@@ -1689,60 +2052,10 @@ public class XRay
 							}
 							level.clearChunk(lx, lz);
 						}
-						mapChunksToLoad.add(new Block(lx, 0, lz));
-					}
-				}
-			}
-
-			// Figure out if we need to trim our minimap (to prevent wrapping around)
-			total_dX += dx;
-			total_dZ += dz;
-			ArrayList<Chunk> trimList = new ArrayList<Chunk>();
-			int i;
-			if (Math.abs(total_dX) >= minimap_trim_chunks)
-			{
-				if (total_dX < 0)
-				{
-					// logger.trace("Clearing X from " + (chunkX-minimap_trim_chunk_distance+minimap_trim_chunks) + " to " + (chunkX-minimap_trim_chunk_distance));
-					for (i = chunkX - minimap_trim_chunk_distance + minimap_trim_chunks; i >= chunkX - minimap_trim_chunk_distance; i--)
-					{
-						trimList.addAll(level.removeChunkRowXFromMinimap(i));
-					}
-					total_dX = -(Math.abs(total_dX) % minimap_trim_chunks);
-				}
-				else
-				{
-					// logger.trace("Clearing X from " + (chunkX+minimap_trim_chunk_distance-minimap_trim_chunks) + " to " + (chunkX+minimap_trim_chunk_distance));
-					for (i = chunkX + minimap_trim_chunk_distance - minimap_trim_chunks; i <= chunkX + minimap_trim_chunk_distance; i++)
-					{
-						trimList.addAll(level.removeChunkRowXFromMinimap(i));
+						chunkLoader.add(lx, lz);
 					}
-					total_dX = total_dX % minimap_trim_chunks;
 				}
 			}
-			if (Math.abs(total_dZ) >= minimap_trim_chunks)
-			{
-				if (total_dZ < 0)
-				{
-					// logger.trace("Clearing Z from " + (chunkZ-minimap_trim_chunk_distance+minimap_trim_chunks) + " to " + (chunkZ-minimap_trim_chunk_distance));
-					for (i = chunkZ - minimap_trim_chunk_distance + minimap_trim_chunks; i >= chunkZ - minimap_trim_chunk_distance; i--)
-					{
-						trimList.addAll(level.removeChunkRowZFromMinimap(i));
-					}
-					total_dZ = -(Math.abs(total_dZ) % minimap_trim_chunks);
-				}
-				else
-				{
-					// logger.trace("Clearing Z from " + (chunkZ+minimap_trim_chunk_distance-minimap_trim_chunks) + " to " + (chunkZ+minimap_trim_chunk_distance));
-					for (i = chunkZ + minimap_trim_chunk_distance - minimap_trim_chunks; i <= chunkZ + minimap_trim_chunk_distance; i++)
-					{
-						trimList.addAll(level.removeChunkRowZFromMinimap(i));
-					}
-					total_dZ = total_dZ % minimap_trim_chunks;
-				}
-			}
-
-			removeChunklistFromMap(trimList);
 		}
 		else
 		{
@@ -1751,11 +2064,20 @@ public class XRay
 			{
 				for (int lz = chunkZ - loadChunkRange; lz <= chunkZ + loadChunkRange; lz++)
 				{
+					if (keep_loaded_chunks)
+					{
+						Chunk existing = level.getChunk(lx, lz);
+						if (existing != null && existing.x == lx && existing.z == lz)
+						{
+							continue;
+						}
+					}
 					level.clearChunk(lx, lz);
-					mapChunksToLoad.add(new Block(lx, 0, lz));
+					chunkLoader.add(lx, lz);
 				}
 			}
 			initial_load_queued = true;
+			keep_loaded_chunks = false;
 		}
 		cur_chunk_x = chunkX;
 		cur_chunk_z = chunkZ;
@@ -1865,6 +2187,10 @@ public class XRay
 					// Toggle minimap/largemap
 					mapBig = !mapBig;
 				}
+				else if (key == key_mapping.get(KEY_ACTION.TOGGLE_CAVE_MAP))
+				{
+					setCaveMap(caveMinimap == null);
+				}
 				else if (key == key_mapping.get(KEY_ACTION.TOGGLE_FULLSCREEN))
 				{
 					// Fullscreen
@@ -1916,9 +2242,8 @@ public class XRay
 				else if (key == key_mapping.get(KEY_ACTION.TOGGLE_ACCURATE_GRASS))
 				{
 					// Toggle the drawing of accurate grass
-					accurateGrass = !accurateGrass;
+					toggle.accurate_grass = !toggle.accurate_grass;
 					setAccurateGrass();
-					invalidateSelectedChunks(true);
 					updateRenderDetails();
 				}
 				else if (key == key_mapping.get(KEY_ACTION.MOVE_TO_SPAWN))
@@ -1965,43 +2290,53 @@ public class XRay
 				}
 				else if (key == key_mapping.get(KEY_ACTION.TOGGLE_RENDER_DETAILS))
 				{
-					// Toggle rendering info popup
-					renderDetailsToggle = !renderDetailsToggle;
+					// Cycle the rendering info popup through its settings page,
+					// its metrics page, and off
+					if (!renderDetailsToggle)
+					{
+						renderDetailsToggle = true;
+						renderMetricsPage = false;
+					}
+					else if (!renderMetricsPage)
+					{
+						renderMetricsPage = true;
+						updateMetricsPage();
+					}
+					else
+					{
+						renderDetailsToggle = false;
+						renderMetricsPage = false;
+					}
 				}
 				else if (key == key_mapping.get(KEY_ACTION.TOGGLE_BEDROCK))
 				{
 					// Toggle bedrock rendering
 					toggle.render_bedrock = !toggle.render_bedrock;
-					invalidateSelectedChunks(true);
 					updateRenderDetails();
 				}
 				else if (key == key_mapping.get(KEY_ACTION.TOGGLE_HIGHLIGHT_EXPLORED))
 				{
 					// Toggle explored-area highlighting
 					toggle.highlight_explored = !toggle.highlight_explored;
-					invalidateSelectedChunks(true);
 					updateRenderDetails();
 				}
 				else if (key == key_mapping.get(KEY_ACTION.TOGGLE_WATER))
 				{
 					// Toggle water rendering
 					toggle.render_water = !toggle.render_water;
-					invalidateSelectedChunks(true);
 					updateRenderDetails();
 				}
 				else if (key == key_mapping.get(KEY_ACTION.TOGGLE_BETA19_FENCES))
 				{
 					// Toggle "new" fence rendering
 					toggle.beta19_fences = !toggle.beta19_fences;
-					invalidateSelectedChunks(true);
 					updateRenderDetails();
 				}
 				else if (key == key_mapping.get(KEY_ACTION.TOGGLE_SILVERFISH))
 				{
 					// Toggle silverfish highlighting
-					silverfishHighlight = !silverfishHighlight;
+					toggle.silverfish_highlight = !toggle.silverfish_highlight;
 					setSilverfishHighlight();
-					invalidateSelectedChunks(true);
 					updateRenderDetails();
 				}
 				else if (key == key_mapping.get(KEY_ACTION.TOGGLE_CAMERA_LOCK))
@@ -2064,36 +2399,23 @@ public class XRay
 						done = true;
 					}
 				}
-				/*
-				else if (key == Keyboard.KEY_P)
-				{
-					// Temp routine to write the minimap out to a PNG (for debugging purposes)
-					BufferedImage bi = minimapTexture.getImage();
-					try {
-						ImageIO.write(bi, "PNG", new File("/home/pez/xray.png"));
-						logger.info("Wrote minimap to disk.");
-					}
-					catch (Exception e)
-					{
-						// whatever
-					}
-				}
-				 */
 				else
 				{
 					// Toggle highlightable ores
 					needToReloadWorld = false;
+					BitSet toggledOres = new BitSet();
 					for (int i = 0; i < mineralToggle.length; i++)
 					{
 						if (key == HIGHLIGHT_ORE_KEYS[i])
 						{
 							mineralToggle[i] = !mineralToggle[i];
+							toggledOres.set(HIGHLIGHT_ORES[i]);
 							needToReloadWorld = true;
 						}
 					}
 					if (needToReloadWorld)
 					{
-						invalidateSelectedChunks();
+						invalidateSelectedChunks(toggledOres, false);
 					}
 
 					// Handle changing chunk ranges (how far out we draw from the camera
@@ -2323,11 +2645,22 @@ public class XRay
 			this.cameraTextOverride = newworld.getDimensionDesc() + " (same location)";
 		}
 
-		// A full reinitialization is kind of overkill, but whatever.
+		// Hang on to the dimension we're leaving, and then either pick up the
+		// new one from where we left it, or do a full reinitialization.
 		FirstPersonCameraController cur_camera = this.camera;
 		this.camera.processNetherWarp(camera_mult);
-		this.prepareNewWorld();
-		this.setMinecraftWorld(newworld, cur_camera);
+		this.levelCache.suspend(this.world, this.level, this.minimap);
+		LevelCache.Entry cached = this.levelCache.resume(newworld);
+		if (cached == null)
+		{
+			this.prepareNewWorld();
+			this.setMinecraftWorld(newworld, cur_camera);
+		}
+		else
+		{
+			this.resumeMinecraftWorld(cached, cur_camera);
+		}
+		this.levelCache.trim(this.memory_budget - this.level.estimateMemoryUsage());
 		this.updateRenderDetails();
 		this.triggerChunkLoads();
 
@@ -2373,6 +2706,12 @@ public class XRay
 		level.invalidateSelected(main_dirty);
 	}
 
+	private void invalidateSelectedChunks(BitSet blockIds, boolean main_dirty)
+	{
+		level.invalidateSelected(blockIds, main_dirty);
+	}
+
+
 	private void setLightMode(boolean lightMode)
 	{
 		this.lightMode = lightMode;
@@ -2404,42 +2743,37 @@ public class XRay
 		}
 	}
 
-	/***
-	 * Draw the spawn position to the minimap
+	/**
+	 * Compiles the display list for our sphere, at its current radius.
+	 * Tesselating the spheres is fairly expensive, so we only do it when the
+	 * radius changes rather than every frame.
 	 */
-	private void drawSpawnMarkerToMinimap()
+	private void buildSphereList()
 	{
-		Graphics2D g = minimapGraphics;
-
-		CameraPreset spawn = level.getSpawnPoint();
-		int sy = getMinimapBaseY(spawn.block.cz) + (spawn.block.x % 16);
-		int sx = (getMinimapBaseX(spawn.block.cx) + (spawn.block.z % 16)) % minimap_dim;
-
-		g.setStroke(new BasicStroke(2));
-		g.setColor(Color.red.brighter());
-		g.drawOval(sx - 6, sy - 6, 11, 11);
-		g.drawLine(sx - 8, sy, sx + 8, sy);
-		g.drawLine(sx, sy - 8, sx, sy + 8);
-		minimapTexture.update();
+		if (this.sphereList == -1)
+		{
+			this.sphereList = GL11.glGenLists(1);
+		}
+		Sphere sphere = new Sphere();
+		GL11.glNewList(this.sphereList, GL11.GL_COMPILE);
+		GL11.glColor4f(.8f, .3f, .3f, .9f); 
+		sphere.draw(.4f, 10, 10);
+		GL11.glColor4f(.4f, .4f, .8f, .6f); 
+		sphere.draw((float)this.draw_sphere_radius, 20, 20);
+		GL11.glEndList();
+		this.sphereListRadius = this.draw_sphere_radius;
 	}
 
-	/***
-	 * Draw the current position to the minimap
+	/**
+	 * Returns the texture to bind for one of our renderSheets
 	 */
-	private void drawPlayerposMarkerToMinimap()
+	private Texture getSheetTexture(int sheet)
 	{
-		Graphics2D g = minimapGraphics;
-
-		CameraPreset player = level.getPlayerPosition();
-		int py = getMinimapBaseY(player.block.cz) + (player.block.x % 16);
-		int px = getMinimapBaseX(player.block.cx) + (player.block.z % 16);
-
-		g.setStroke(new BasicStroke(2));
-		g.setColor(Color.yellow.brighter());
-		g.drawOval(px - 6, py - 6, 11, 11);
-		g.drawLine(px - 8, py, px + 8, py);
-		g.drawLine(px, py - 8, px, py + 8);
-		minimapTexture.update();
+		if (sheet == Chunk.ATLAS_SHEET)
+		{
+			return this.sheetAtlasTexture;
+		}
+		return this.minecraftTextures.get(sheet);
 	}
 
 	/***
@@ -2492,8 +2826,11 @@ public class XRay
 			highlight_chunk_range = HIGHLIGHT_RANGES[currentHighlightDistance];
 		}
 
-		// Get a list of chunks that we'll iterate over, on our various passes
-		ArrayList<Chunk> chunkList = new ArrayList<Chunk>();
+		// Get a list of chunks that we'll iterate over, on our various passes.  We
+		// hang on to the list between frames, and loop over it by index, so that
+		// drawing a frame doesn't allocate anything.
+		ArrayList<Chunk> chunkList = this.frameChunks;
+		chunkList.clear();
 		Chunk curChunk = null;
 		for (int lx = currentLevelX - visible_chunk_range; lx <= currentLevelX + visible_chunk_range; lx++)
 		{
@@ -2511,15 +2848,35 @@ public class XRay
 			}
 		}
 
+		// Figure out which sections could actually be seen from where we are
+		level.visibility.update(level, levelBlockX, (int)Math.floor(-camera.getPosition().y+.5f), levelBlockZ, visible_chunk_range);
+
+		// Queue up any chunks whose geometry needs rebuilding, and upload
+		// whatever the mesh workers have finished
+		boolean highlighting = (toggle.highlightOres != HIGHLIGHT_TYPE.OFF);
+		for (int c = 0; c < chunkList.size(); c++)
+		{
+			Chunk k = chunkList.get(c);
+			if (k.needsRebuild())
+			{
+				meshScheduler.request(k,
+						Math.max(Math.abs(k.x - currentLevelX), Math.abs(k.z - currentLevelZ)),
+						this.mineralToggle, highlighting);
+			}
+		}
+		long uploadStart = System.nanoTime();
+		meshScheduler.upload(frameGovernor.remaining());
+		frameGovernor.charge(System.nanoTime() - uploadStart);
+
 		// Now do various passes
-		GL11.glEnable(GL11.GL_TEXTURE_2D);
-		GL11.glColor3f(1.0f, 1.0f, 1.0f);
+		renderBackend.glEnable(GL11.GL_TEXTURE_2D);
+		renderBackend.glColor3f(1.0f, 1.0f, 1.0f);
 		int last_tex = -1;
-		int i;
 
 		// May as well render paintings first; they'll be "behind" everything then.
-		for (Chunk k : chunkList)
+		for (int c = 0; c < chunkList.size(); c++)
 		{
+			Chunk k = chunkList.get(c);
 			if (k.hasPaintings())
 			{
 				if (last_tex != -2)
@@ -2532,62 +2889,70 @@ public class XRay
 		}
 
 		// Now our regular blocks
-		for (i=0; i<this.minecraftTextures.size(); i++)
+		for (int sheet : this.renderSheets)
 		{
-			for (Chunk k : chunkList)
+			for (int c = 0; c < chunkList.size(); c++)
 			{
-				if (k.usesSheet(i))
+				Chunk k = chunkList.get(c);
+				if (k.usesSheet(sheet))
 				{
-					if (last_tex != i)
+					if (last_tex != sheet)
 					{
-						minecraftTextures.get(i).bind();
-						last_tex = i;
+						this.getSheetTexture(sheet).bind();
+						last_tex = sheet;
 					}
-					k.renderSolid(i);
-					k.renderSelected(i, this.mineralToggle);
+					k.renderSolid(sheet);
+					k.renderSelected(sheet);
 				}
 			}
 		}
 
 		// Now nonstandard blocks
-		for (i=0; i<this.minecraftTextures.size(); i++)
+		for (int sheet : this.renderSheets)
 		{
-			for (Chunk k : chunkList)
+			for (int c = 0; c < chunkList.size(); c++)
 			{
-				if (k.usesSheet(i))
+				Chunk k = chunkList.get(c);
+				if (k.usesSheet(sheet))
 				{
-					if (last_tex != i)
+					if (last_tex != sheet)
 					{
-						minecraftTextures.get(i).bind();
-						last_tex = i;
+						this.getSheetTexture(sheet).bind();
+						last_tex = sheet;
 					}
-					k.renderNonstandard(i);
+					k.renderNonstandard(sheet);
 				}
 			}
 		}
 
 		// Now Glass, or anything else we consider glassy
-		for (i=0; i<this.minecraftTextures.size(); i++)
+		for (int sheet : this.renderSheets)
 		{
-			for (Chunk k : chunkList)
+			for (int c = 0; c < chunkList.size(); c++)
 			{
-				if (k.usesSheet(i))
+				Chunk k = chunkList.get(c);
+				if (k.usesSheet(sheet))
 				{
-					if (last_tex != i)
+					if (last_tex != sheet)
 					{
-						minecraftTextures.get(i).bind();
-						last_tex = i;
+						this.getSheetTexture(sheet).bind();
+						last_tex = sheet;
 					}
-					k.renderGlass(i);
+					k.renderGlass(sheet);
 				}
 			}
 		}
 
+		// Empty sections skip their lists entirely, so we can't rely on the
+		// glass pass having left us at full brightness.
+		renderBackend.glColor3f(1.0f, 1.0f, 1.0f);
+
 		// Slime chunks!
 		if (world.isDimension(0) && renderSlimeChunks)
 		{
-			for (Chunk k : chunkList)
+			for (int c = 0; c < chunkList.size(); c++)
 			{
+				Chunk k = chunkList.get(c);
 				if (k.willSpawnSlimes)
 				{
 					slimeChunkTexture.bind();
@@ -2611,11 +2976,11 @@ public class XRay
 			GL11.glPushMatrix();
 			GL11.glTranslatef(this.sphere_x, this.sphere_y, this.sphere_z);
 			GL11.glDisable(GL11.GL_TEXTURE_2D);
-			Sphere mysphere = new Sphere();
-			GL11.glColor4f(.8f, .3f, .3f, .9f); 
-			mysphere.draw(.4f, 10, 10);
-			GL11.glColor4f(.4f, .4f, .8f, .6f); 
-			mysphere.draw((float)this.draw_sphere_radius, 20, 20);
+			if (this.sphereList == -1 || this.sphereListRadius != this.draw_sphere_radius)
+			{
+				this.buildSphereList();
+			}
+			GL11.glCallList(this.sphereList);
 			GL11.glEnable(GL11.GL_TEXTURE_2D);
 			GL11.glPopMatrix();
 		}
@@ -2624,7 +2989,7 @@ public class XRay
 		if (toggle.highlightOres != HIGHLIGHT_TYPE.OFF)
 		{
 
-			GL11.glDisable(GL11.GL_DEPTH_TEST);
+			renderBackend.glDisable(GL11.GL_DEPTH_TEST);
 			switch (toggle.highlightOres)
 			{
 			// Old-style; at least one person prefers it
@@ -2636,7 +3001,7 @@ public class XRay
 					alpha = 1.0f - alpha;
 				}
 				alpha = 0.1f + (alpha * 0.8f);
-				GL11.glColor4f(alpha, alpha, alpha, alpha); 
+				renderBackend.glColor4f(alpha, alpha, alpha, alpha); 
 				break;
 
 				// New style disco-y highlighting
@@ -2645,36 +3010,37 @@ public class XRay
 				float red = (float)Math.sin(timeidx)*.5f+.5f;
 				float green = (float)Math.sin(timeidx+2.09439f)*.5f+.5f;
 				float blue = (float)Math.sin(timeidx+4.18878f)*.5f+.5f;
-				GL11.glColor4f(red, green, blue, 1f);
+				renderBackend.glColor4f(red, green, blue, 1f);
 				break;
 			}
 			setLightLevel(20);
-			GL11.glBlendFunc(GL11.GL_ONE, GL11.GL_ONE);
+			renderBackend.glBlendFunc(GL11.GL_ONE, GL11.GL_ONE);
 
 			// TODO: could check for specific textures here, rather than looping over all
-			for (i=0; i<this.minecraftTextures.size(); i++)
+			for (int sheet : this.renderSheets)
 			{
-				for (Chunk k : chunkList)
+				for (int c = 0; c < chunkList.size(); c++)
 				{
+					Chunk k = chunkList.get(c);
 					if (k.x >= currentLevelX - highlight_chunk_range &&
 						k.x <= currentLevelX + highlight_chunk_range &&
 						k.z >= currentLevelZ - highlight_chunk_range &&
 						k.z <= currentLevelZ + highlight_chunk_range)
 					{
-						if (k.usesSheet(i))
+						if (k.usesSheet(sheet))
 						{
-							if (last_tex != i)
+							if (last_tex != sheet)
 							{
-								minecraftTextures.get(i).bind();
-								last_tex = i;
+								this.getSheetTexture(sheet).bind();
+								last_tex = sheet;
 							}
-							k.renderSelected(i, this.mineralToggle);
+							k.renderSelected(sheet);
 						}
 					}
 				}
 			}
-			GL11.glEnable(GL11.GL_DEPTH_TEST);
-			GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+			renderBackend.glEnable(GL11.GL_DEPTH_TEST);
+			renderBackend.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
 		}
 
 		setLightLevel();
@@ -2728,7 +3094,7 @@ public class XRay
 	{
 		int labelX = 5;
 		int valueX = 70;
-		Graphics2D g = levelInfoTexture.getImage().createGraphics();
+		Graphics2D g = levelInfoGraphics;
 		g.setBackground(Color.BLUE);
 		g.clearRect(0, 0, 128, levelInfoTexture_h);
 		g.setColor(Color.WHITE);
@@ -2738,35 +3104,46 @@ public class XRay
 		int chunkZ = level.getChunkZ(levelBlockZ);
 		g.setColor(Color.BLACK);
 		g.drawString("Chunk X:", labelX, 22);
-		g.setColor(Color.RED.darker());
+		g.setColor(INFO_VALUE_COLOR);
 		g.drawString(Integer.toString(chunkX), valueX, 22);
 
 		g.setColor(Color.BLACK);
 		g.drawString("Chunk Z:", labelX, 22 + 16);
-		g.setColor(Color.RED.darker());
+		g.setColor(INFO_VALUE_COLOR);
 		g.drawString(Integer.toString(chunkZ), valueX, 22 + 16);
 
 		g.setColor(Color.BLACK);
 		g.drawString("World X:", labelX, 22 + 32);
-		g.setColor(Color.RED.darker());
+		g.setColor(INFO_VALUE_COLOR);
 		g.drawString(String.format("%.1f", reportBlockX), valueX, 22 + 32);
 
 		g.setColor(Color.BLACK);
 		g.drawString("World Z:", labelX, 22 + 16 + 32);
-		g.setColor(Color.RED.darker());
+		g.setColor(INFO_VALUE_COLOR);
 		g.drawString(String.format("%.1f", reportBlockZ), valueX, 22 + 16 + 32);
 
 		g.setColor(Color.BLACK);
 		g.drawString("World Y:", labelX, 22 + 16 + 32 + 16);
-		g.setColor(Color.RED.darker());
+		g.setColor(INFO_VALUE_COLOR);
 		g.drawString(String.format("%.1f", (-camera.getPosition().y+.5f)), valueX, 22 + 16 + 32 + 16);
 
 		long heapSize = Runtime.getRuntime().totalMemory();
 		g.setColor(Color.BLACK);
 		g.drawString("Memory Used", labelX, 22 + 16 + 32 + 16 + 25);
-		g.setColor(Color.RED.darker());
+		g.setColor(INFO_VALUE_COLOR);
 		g.drawString(Integer.toString((int) (heapSize / 1024 / 1024)) + " MB", 20, 22 + 16 + 32 + 16 + 25 + 20);
 
+		g.setColor(Color.BLACK);
+		g.drawString("Mesh Queue:", labelX, 22 + 16 + 32 + 16 + 25 + 20 + 22);
+		g.setColor(INFO_VALUE_COLOR);
+		g.drawString(Integer.toString(meshScheduler.getQueueDepth()), valueX + 20, 22 + 16 + 32 + 16 + 25 + 20 + 22);
+
+		g.setColor(Color.BLACK);
+		g.drawString("Rebuild p50/p99", labelX, 22 + 16 + 32 + 16 + 25 + 20 + 22 + 16);
+		g.setColor(INFO_VALUE_COLOR);
+		g.drawString(String.format("%.0f / %.0f ms", meshScheduler.getLatencyPercentile(50), meshScheduler.getLatencyPercentile(99)),
+				20, 22 + 16 + 32 + 16 + 25 + 20 + 22 + 16 + 16);
+
 		levelInfoTexture.update();
 	}
 
@@ -2878,6 +3255,137 @@ public class XRay
 		g.fillRect(marker_x, y - line_h + 8, 3, 13);
 	}
 
+	/**
+	 * Registers our gauges with Metrics, exports the lot via JMX, and starts
+	 * logging them to a CSV file if the user's asked for that.
+	 */
+	private void initMetrics()
+	{
+		Metrics.gauge("chunk.loadQueue", "Chunks waiting to be loaded", new Metrics.GaugeSource()
+		{
+			public long getValue()
+			{
+				ChunkLoader loader = chunkLoader;
+				return (loader == null ? 0 : loader.size());
+			}
+		});
+		Metrics.gauge("chunk.refreshQueue", "Changed chunks waiting to be refreshed", new Metrics.GaugeSource()
+		{
+			public long getValue()
+			{
+				ChunkLoader refresher = chunkRefresher;
+				return (refresher == null ? 0 : refresher.size());
+			}
+		});
+		Metrics.gauge("mesh.queue", "Chunk rebuilds waiting for a worker", new Metrics.GaugeSource()
+		{
+			public long getValue()
+			{
+				return meshScheduler.getQueueDepth();
+			}
+		});
+		Metrics.gauge("mesh.inFlight", "Chunk rebuilds being meshed or awaiting upload", new Metrics.GaugeSource()
+		{
+			public long getValue()
+			{
+				return meshScheduler.getInFlight();
+			}
+		});
+		Metrics.gauge("chunks.loaded", "Chunks currently loaded", new Metrics.GaugeSource()
+		{
+			public long getValue()
+			{
+				MinecraftLevel curLevel = level;
+				return (curLevel == null ? 0 : curLevel.getLoadedChunkCount());
+			}
+		});
+		Metrics.gauge("heap.used", "Java heap in use, in bytes", new Metrics.GaugeSource()
+		{
+			public long getValue()
+			{
+				Runtime rt = Runtime.getRuntime();
+				return rt.totalMemory() - rt.freeMemory();
+			}
+		});
+		Metrics.gauge("heap.perChunk", "Java heap in use per loaded chunk, in bytes", new Metrics.GaugeSource()
+		{
+			public long getValue()
+			{
+				MinecraftLevel curLevel = level;
+				int chunks = (curLevel == null ? 0 : curLevel.getLoadedChunkCount());
+				if (chunks == 0)
+				{
+					return 0;
+				}
+				Runtime rt = Runtime.getRuntime();
+				return (rt.totalMemory() - rt.freeMemory()) / chunks;
+			}
+		});
+
+		Metrics.gauge("minimap.resident", "Minimap tiles currently held as textures", new Metrics.GaugeSource()
+		{
+			public long getValue()
+			{
+				TiledMinimap curMinimap = minimap;
+				return (curMinimap == null ? 0 : curMinimap.getResidentCount());
+			}
+		});
+		Metrics.gauge("minimap.tiles", "Minimap tiles explored, resident or not", new Metrics.GaugeSource()
+		{
+			public long getValue()
+			{
+				TiledMinimap curMinimap = minimap;
+				return (curMinimap == null ? 0 : curMinimap.getTileCount());
+			}
+		});
+
+		MetricsMBean.register();
+
+		if (xray_properties.getBooleanProperty("METRICS_CSV", false))
+		{
+			File csv = new File(MinecraftEnvironment.getXrayDirectory(), "metrics.csv");
+			logger.info("Logging metrics to " + csv.getPath());
+			metricsCsvTimer = Metrics.startCsvLog(csv, 10);
+		}
+	}
+
+	/**
+	 * Update the metrics page of our render-details infobox
+	 */
+	private void updateMetricsPage()
+	{
+		int line_h = 14;
+		int x_off = 5;
+		Graphics2D g = metricsTexture.getImage().createGraphics();
+		g.setBackground(Color.WHITE);
+		g.clearRect(0, 0, metrics_w, metricsTexture.getTextureHeight());
+		g.setFont(DETAILVALUEFONT);
+		g.setColor(Color.BLACK);
+		int y = 20;
+		g.drawString("Metrics", x_off, y);
+		y += 4;
+
+		g.setFont(SMALLFONT);
+		for (Metrics.Metric metric : Metrics.getMetrics())
+		{
+			if (y + line_h > metricsTexture.getTextureHeight() - 8)
+			{
+				break;
+			}
+			y += line_h;
+			g.setColor(Color.BLUE.darker());
+			g.drawString(metric.name, x_off, y);
+			g.setColor(Color.BLACK);
+			g.drawString(metric.getSummary(), x_off + 90, y);
+		}
+
+		cur_metrics_h = y + 8;
+		g.setColor(Color.BLUE);
+		g.setStroke(new BasicStroke(2));
+		g.drawRect(1, 1, metrics_w - 2, cur_metrics_h - 2);
+		metricsTexture.update();
+	}
+
 	/**
 	 * Update our render-details infobox
 	 */
@@ -2922,7 +3430,7 @@ public class XRay
 			line_count++;
 			infoboxTextLabel(g, x_off, line_count * line_h, "Water: ", Color.BLACK, DETAILFONT, "Off", Color.RED.darker(), DETAILVALUEFONT);
 		}
-		if (!accurateGrass)
+		if (!toggle.accurate_grass)
 		{
 			line_count++;
 			infoboxTextLabel(g, x_off, line_count * line_h, "Grass: ", Color.BLACK, DETAILFONT, "Inaccurate", Color.RED.darker(), DETAILVALUEFONT);
@@ -2942,7 +3450,7 @@ public class XRay
 			line_count++;
 			infoboxTextLabel(g, x_off, line_count * line_h, "\"New\" Fences: ", Color.BLACK, DETAILFONT, "Off", Color.green.darker(), DETAILVALUEFONT);
 		}
-		if (!silverfishHighlight)
+		if (!toggle.silverfish_highlight)
 		{
 			line_count++;
 			infoboxTextLabel(g, x_off, line_count * line_h, "Silverfish Highlight: ", Color.BLACK, DETAILFONT, "Off", Color.green.darker(), DETAILVALUEFONT);
@@ -3031,7 +3539,7 @@ public class XRay
 		int y = 48;
 		if (renderDetailsToggle)
 		{
-			y += cur_renderDetails_h + 16;
+			y += (renderMetricsPage ? cur_metrics_h : cur_renderDetails_h) + 16;
 		}
 		GL11.glColor4f(1.0f, 1.0f, 1.0f, 1.0f);
 		levelInfoTexture.bind();
@@ -3043,9 +3551,18 @@ public class XRay
 	 */
 	private void drawRenderDetails()
 	{
-		renderDetailsTexture.bind();
-		GL11.glColor4f(1.0f, 1.0f, 1.0f, .7f);
-		SpriteTool.drawCurrentSprite(0, 48, renderDetails_w, cur_renderDetails_h, 0, 0, renderDetails_w / 256f, cur_renderDetails_h / 256f);
+		if (renderMetricsPage)
+		{
+			metricsTexture.bind();
+			GL11.glColor4f(1.0f, 1.0f, 1.0f, .7f);
+			SpriteTool.drawCurrentSprite(0, 48, metrics_w, cur_metrics_h, 0, 0, metrics_w / 256f, cur_metrics_h / 512f);
+		}
+		else
+		{
+			renderDetailsTexture.bind();
+			GL11.glColor4f(1.0f, 1.0f, 1.0f, .7f);
+			SpriteTool.drawCurrentSprite(0, 48, renderDetails_w, cur_renderDetails_h, 0, 0, renderDetails_w / 256f, cur_renderDetails_h / 256f);
+		}
 		GL11.glColor4f(1.0f, 1.0f, 1.0f, 1f);
 	}
 	
@@ -3192,9 +3709,13 @@ public class XRay
 		}
 		if (updateFPSText)
 		{
+			// Formatting our text allocates, which is fine once a second
+			allocationMonitor.skipFrame();
 			if (levelInfoToggle)
 				updateLevelInfo();
-			Graphics2D g = fpsTexture.getImage().createGraphics();
+			if (renderDetailsToggle && renderMetricsPage)
+				updateMetricsPage();
+			Graphics2D g = fpsGraphics;
 			g.setBackground(Color.BLUE);
 			g.clearRect(0, 0, 128, 32);
 			g.setColor(Color.WHITE);
@@ -3202,7 +3723,7 @@ public class XRay
 			g.setColor(Color.BLACK);
 			g.setFont(ARIALFONT);
 			g.drawString("FPS:", 10, 22);
-			g.setColor(Color.RED.darker());
+			g.setColor(INFO_VALUE_COLOR);
 			g.drawString(Integer.toString(fps), 60, 22);
 
 			fpsTexture.update();
@@ -3259,151 +3780,63 @@ public class XRay
 	 */
 	private void drawMinimap()
 	{
+		float centerX;
+		float centerY;
+		float halfWidth;
+		float halfHeight;
+		float scale;
 		if (mapBig)
 		{
-			// the big map
-			// just draws the texture, but move the texture so the middle of the
-			// screen is where we currently are
-
-			minimapTexture.bind();
-
-			float vSizeFactor = .5f;
-
-			float vTexX = (1.0f / minimap_dim_f) * currentCameraPosX;
-			float vTexY = (1.0f / minimap_dim_f) * currentCameraPosZ;
-			float vTexZ = vSizeFactor;
-
-			GL11.glColor4f(1.0f, 1.0f, 1.0f, 0.7f);
-			GL11.glPushMatrix();
-			GL11.glTranslatef((screenWidth / 2.0f), (screenHeight / 2.0f), 0.0f);
-			GL11.glBegin(GL11.GL_TRIANGLE_STRIP);
-
-			GL11.glTexCoord2f(vTexX - vTexZ, vTexY - vTexZ);
-			GL11.glVertex2f(-minimap_dim_h_f, -minimap_dim_h_f);
-
-			GL11.glTexCoord2f(vTexX + vTexZ, vTexY - vTexZ);
-			GL11.glVertex2f(+minimap_dim_h_f, -minimap_dim_h_f);
-
-			GL11.glTexCoord2f(vTexX - vTexZ, vTexY + vTexZ);
-			GL11.glVertex2f(-minimap_dim_h_f, +minimap_dim_h_f);
-
-			GL11.glTexCoord2f(vTexX + vTexZ, vTexY + vTexZ);
-			GL11.glVertex2f(+minimap_dim_h_f, +minimap_dim_h_f);
-
-			GL11.glEnd();
-			GL11.glPopMatrix();
-			GL11.glColor4f(1.0f, 1.0f, 1.0f, 1f);
-
-			//SpriteTool.drawSpriteAndRotateAndScale(minimapArrowTexture, screenWidth / 2.0f, screenHeight / 2.0f, camera.getYaw() + 90, 0.5f);
-			SpriteTool.drawSpriteAndRotateAndScale(minimapArrowTexture, screenWidth / 2.0f, screenHeight / 2.0f, camera.getYaw(), 0.5f);
+			// the big map, at one pixel per block, covering the whole screen
+			// with the middle of the screen where we currently are
+			centerX = screenWidth / 2.0f;
+			centerY = screenHeight / 2.0f;
+			halfWidth = centerX;
+			halfHeight = centerY;
+			scale = 1.0f;
 		}
 		else
 		{
 			// the minimap
-			// I set the minimap to 200 wide and tall
-
-			// Interestingly, thanks to the fact that we're using GL11.GL_REPEAT on our
-			// textures (via glTexParameter), we don't have to worry about checking
-			// bounds here, etc. Or in other words, our map will automatically wrap for
-			// us. Sweet!
-			float vSizeFactor = 200.0f / minimap_dim_f;
-
-			float vTexX = (1.0f / minimap_dim_f) * currentCameraPosX;
-			float vTexY = (1.0f / minimap_dim_f) * currentCameraPosZ;
-			float vTexZ = vSizeFactor;
-
-			minimapTexture.bind();
-			GL11.glColor4f(1.0f, 1.0f, 1.0f, 0.7f);
-			GL11.glPushMatrix();
-			GL11.glTranslatef(screenWidth - 100, 100, 0.0f);
-			GL11.glBegin(GL11.GL_TRIANGLE_STRIP);
-
-			GL11.glTexCoord2f(vTexX - vTexZ, vTexY - vTexZ);
-			GL11.glVertex2f(-100, -100);
-
-			GL11.glTexCoord2f(vTexX + vTexZ, vTexY - vTexZ);
-			GL11.glVertex2f(+100, -100);
-
-			GL11.glTexCoord2f(vTexX - vTexZ, vTexY + vTexZ);
-			GL11.glVertex2f(-100, +100);
-
-			GL11.glTexCoord2f(vTexX + vTexZ, vTexY + vTexZ);
-			GL11.glVertex2f(+100, +100);
-
-			GL11.glEnd();
-			GL11.glPopMatrix();
-			GL11.glColor4f(1.0f, 1.0f, 1.0f, 1f);
-
-			//SpriteTool.drawSpriteAndRotateAndScale(minimapArrowTexture, screenWidth - 100, 100, camera.getYaw() + 90, 0.5f);
-			SpriteTool.drawSpriteAndRotateAndScale(minimapArrowTexture, screenWidth - 100, 100, camera.getYaw(), 0.5f);
+			// I set the minimap to 200 wide and tall, showing 400 blocks across
+			centerX = screenWidth - 100;
+			centerY = 100;
+			halfWidth = 100;
+			halfHeight = 100;
+			scale = 0.5f;
 		}
-	}
 
-	/**
-	 * Returns the "base" minimap X coordinate, given chunk coordinate X. The
-	 * "base" will be the upper left corner.
-	 * 
-	 * As of Beta 1.9-pre4, X increases to the east (decreasing to the west),
-	 * and Z increases to the South (decreasing to the North).  This is much nicer
-	 * to deal with then the way we were pretending things worked previously.
-	 * 
-	 * @param chunkZ
-	 * @return
-	 */
-	private int getMinimapBaseX(int chunkX)
-	{
-		return (((chunkX*16) % minimap_dim) + minimap_dim) % minimap_dim;
-	}
+		GL11.glColor4f(1.0f, 1.0f, 1.0f, 0.7f);
+		(caveMinimap != null ? caveMinimap : minimap).draw(currentCameraPosX, currentCameraPosZ, centerX, centerY, halfWidth, halfHeight, scale);
+		GL11.glColor4f(1.0f, 1.0f, 1.0f, 1f);
 
-	/**
-	 * Returns the "base" minimap Y coordinate, given chunk coordinate Z. The
-	 * "base" will be the upper left corner.
-	 * 
-	 * As of Beta 1.9-pre4, X increases to the east (decreasing to the west),
-	 * and Z increases to the South (decreasing to the North).  This is much nicer
-	 * to deal with then the way we were pretending things worked previously.
-	 * 
-	 * @param chunkZ
-	 * @return
-	 */
-	private int getMinimapBaseY(int chunkZ)
-	{
-		return (((chunkZ*16) % minimap_dim) + minimap_dim) % minimap_dim;
-	}
+		drawMinimapMarker(spawnMarkerTexture, level.getSpawnPoint(), centerX, centerY, halfWidth, halfHeight, scale);
+		drawMinimapMarker(playerMarkerTexture, level.getPlayerPosition(), centerX, centerY, halfWidth, halfHeight, scale);
 
-	/**
-	 * Clears out the area on the minimap belonging to this chunk
-	 * 
-	 * @param x
-	 * @param z
-	 */
-	public void removeMapChunkFromMap(int x, int z)
-	{
-		// minimapGraphics.setColor(new Color(0f, 0f, 0f, 1f));
-		// minimapGraphics.setComposite(AlphaComposite.Src);
-		minimapGraphics.fillRect(getMinimapBaseX(x), getMinimapBaseY(z), 16, 16);
-		level.getChunk(x, z).isOnMinimap = false;
+		//SpriteTool.drawSpriteAndRotateAndScale(minimapArrowTexture, centerX, centerY, camera.getYaw() + 90, 0.5f);
+		SpriteTool.drawSpriteAndRotateAndScale(minimapArrowTexture, centerX, centerY, camera.getYaw(), 0.5f);
 	}
 
 	/**
-	 * Loops through a list of chunks and removes them from the minimap
-	 * 
-	 * @param trimList
+	 * Draws a marker (ie: spawn or player position) over the minimap, if it's
+	 * within the area the minimap is currently showing.  These used to be drawn
+	 * into the minimap texture itself, which meant they had to be redrawn
+	 * whenever the chunk underneath them was.
 	 */
-	private void removeChunklistFromMap(ArrayList<Chunk> trimList)
+	private void drawMinimapMarker(Texture marker, CameraPreset position, float centerX, float centerY,
+			float halfWidth, float halfHeight, float scale)
 	{
-		minimapGraphics.setColor(new Color(0f, 0f, 0f, 0f));
-		minimapGraphics.setComposite(AlphaComposite.Src);
-		boolean minimap_changed = false;
-		for (Chunk tempchunk_trim : trimList)
+		if (position == null)
 		{
-			removeMapChunkFromMap(tempchunk_trim.x, tempchunk_trim.z);
-			minimap_changed = true;
+			return;
 		}
-		if (minimap_changed)
+		float dx = (position.block.x - currentCameraPosX) * scale;
+		float dy = (position.block.z - currentCameraPosZ) * scale;
+		if (Math.abs(dx) > halfWidth || Math.abs(dy) > halfHeight)
 		{
-			minimapTexture.update();
+			return;
 		}
+		SpriteTool.drawSpriteAndScale(marker, centerX + dx, centerY + dy, scale);
 	}
 
 	/***
@@ -3414,7 +3847,6 @@ public class XRay
 	 */
 	public void drawChunkToMap(int x, int z)
 	{
-		short[][] minimap_data;
 		Chunk c = level.getChunk(x, z);
 		if (c == null)
 		{
@@ -3422,45 +3854,90 @@ public class XRay
 		}
 
 		c.isOnMinimap = true;
-		minimap_data = c.getMinimapValues();
 
-		int base_x = getMinimapBaseX(x);
-		int base_y = getMinimapBaseY(z);
+		// The chunk keeps its minimap colors around, so this is just a copy.
+		minimap.drawChunk(x, z, c.getMinimapColors());
+
+		if (caveMinimap != null && caveSliceBottom != Integer.MIN_VALUE)
+		{
+			c.updateSliceColors(caveSliceBottom, caveSliceBottom + (CAVE_SLICE_HALF * 2));
+			caveMinimap.drawChunk(x, z, c.getSliceColors());
+		}
+	}
+
+	/**
+	 * Turns the cave map on or off.  Turning it on always starts it from
+	 * scratch, redrawing every loaded chunk.
+	 */
+	private void setCaveMap(boolean enabled)
+	{
+		if (caveMinimap != null)
+		{
+			caveMinimap.dispose();
+			caveMinimap = null;
+		}
+		if (enabled)
+		{
+			caveMinimap = new TiledMinimap();
+			caveSliceBottom = Integer.MIN_VALUE;
+			caveSliceSlot = 0;
+			caveRedrawAll = true;
+		}
+	}
 
-		Color blockColor;
-		Graphics2D g = minimapGraphics;
-		for (int zz = 0; zz < 16; zz++)
+	/**
+	 * Keeps the cave map following the camera's Y level.  Chunks remember which
+	 * band they were last drawn for and only come back as changed if their
+	 * colors actually did, so only the tiles (and rows) underneath those get
+	 * uploaded again.  We stop for the frame once we're out of budget, and
+	 * carry on from there next time.
+	 */
+	private void updateCaveMap()
+	{
+		if (caveMinimap == null || level == null)
 		{
-			for (int xx = 0; xx < 16; xx++)
+			return;
+		}
+		int bottom = (int)Math.floor(-camera.getPosition().y + .5f) - CAVE_SLICE_HALF;
+		if (bottom != caveSliceBottom)
+		{
+			caveSliceBottom = bottom;
+			caveSliceSlot = 0;
+		}
+		int total = MinecraftLevel.LEVELDATA_SIZE * MinecraftLevel.LEVELDATA_SIZE;
+		if (caveSliceSlot >= total)
+		{
+			return;
+		}
+
+		long start = System.nanoTime();
+		long budget = frameGovernor.remaining();
+		int top = bottom + (CAVE_SLICE_HALF * 2);
+		Chunk c;
+		while (caveSliceSlot < total)
+		{
+			c = level.levelData[caveSliceSlot / MinecraftLevel.LEVELDATA_SIZE][caveSliceSlot % MinecraftLevel.LEVELDATA_SIZE];
+			caveSliceSlot++;
+			if (c != null && (c.updateSliceColors(bottom, top) || caveRedrawAll))
 			{
-				if (minimap_data[xx][zz] > 0)
-				{
-					if (MinecraftConstants.blockArray[minimap_data[xx][zz]] == null)
-					{
-						blockColor = BLOCK_UNKNOWN.color;
-					}
-					else
-					{
-						blockColor = MinecraftConstants.blockArray[minimap_data[xx][zz]].color;
-					}
-					if (blockColor != null)
-					{
-						// Previously we were using g.drawLine() here, but a minute-or-so's worth of investigating
-						// didn't uncover a way to force that to be pixel-precise (the color would often bleed over
-						// into adjoining pixels), so we're using g.fillRect() instead, which actually looks like it
-						// is probably a faster operation anyway. I'm sure there'd have been a way to get drawLine
-						// to behave, but c'est la vie!
-						g.setColor(blockColor);
-						g.fillRect(base_x + xx, base_y + zz, 1, 1);
-					}
-				}
+				caveMinimap.drawChunk(c.x, c.z, c.getSliceColors());
 			}
+			// Always get through at least one row of slots, so we make progress
+			if (caveSliceSlot % MinecraftLevel.LEVELDATA_SIZE == 0 && System.nanoTime() - start > budget)
+			{
+				break;
+			}
+		}
+		if (caveSliceSlot >= total)
+		{
+			caveRedrawAll = false;
 		}
+		frameGovernor.charge(System.nanoTime() - start);
 	}
 
 	/***
-	 * Draws the minimap sprites (currently just the arrow image) to their
-	 * textures
+	 * Draws the minimap sprites (the arrow, and our spawn and player position
+	 * markers) to their textures
 	 */
 	private void createMinimapSprites()
 	{
@@ -3473,6 +3950,24 @@ public class XRay
 		g.drawLine(30, 24, 30, 8);
 		g.drawLine(30, 8, 3, 16);
 		minimapArrowTexture.update();
+
+		// Then the markers
+		drawMinimapMarkerSprite(spawnMarkerTexture, Color.red.brighter());
+		drawMinimapMarkerSprite(playerMarkerTexture, Color.yellow.brighter());
+	}
+
+	/**
+	 * Draws a crosshair-style marker into the given 32x32 texture
+	 */
+	private void drawMinimapMarkerSprite(Texture texture, Color color)
+	{
+		Graphics2D g = texture.getImage().createGraphics();
+		g.setStroke(new BasicStroke(2));
+		g.setColor(color);
+		g.drawOval(16 - 6, 16 - 6, 11, 11);
+		g.drawLine(16 - 8, 16, 16 + 8, 16);
+		g.drawLine(16, 16 - 8, 16, 16 + 8);
+		texture.update();
 	}
 
 	/**
@@ -3499,8 +3994,8 @@ public class XRay
 		xray_properties.setBooleanProperty("STATE_LIGHTING", lightMode);
 		xray_properties.setBooleanProperty("STATE_LEVEL_INFO", levelInfoToggle);
 		xray_properties.setBooleanProperty("STATE_RENDER_DETAILS", renderDetailsToggle);
-		xray_properties.setBooleanProperty("STATE_ACCURATE_GRASS", accurateGrass);
-		xray_properties.setBooleanProperty("STATE_SILVERFISH_HIGHLIGHT", silverfishHighlight);
+		xray_properties.setBooleanProperty("STATE_ACCURATE_GRASS", toggle.accurate_grass);
+		xray_properties.setBooleanProperty("STATE_SILVERFISH_HIGHLIGHT", toggle.silverfish_highlight);
 		xray_properties.setBooleanProperty("STATE_CHUNK_BORDERS", renderChunkBorders);
 		xray_properties.setBooleanProperty("STATE_SLIME_CHUNKS", renderSlimeChunks);
 		xray_properties.setIntProperty("STATE_CHUNK_RANGE", currentChunkRange);
@@ -3548,8 +4043,8 @@ public class XRay
 		lightMode = xray_properties.getBooleanProperty("STATE_LIGHTING", lightMode);
 		levelInfoToggle = xray_properties.getBooleanProperty("STATE_LEVEL_INFO", levelInfoToggle);
 		renderDetailsToggle = xray_properties.getBooleanProperty("STATE_RENDER_DETAILS", renderDetailsToggle);
-		accurateGrass = xray_properties.getBooleanProperty("STATE_ACCURATE_GRASS", accurateGrass);
-		silverfishHighlight = xray_properties.getBooleanProperty("STATE_SILVERFISH_HIGHLIGHT", silverfishHighlight);
+		toggle.accurate_grass = xray_properties.getBooleanProperty("STATE_ACCURATE_GRASS", toggle.accurate_grass);
+		toggle.silverfish_highlight = xray_properties.getBooleanProperty("STATE_SILVERFISH_HIGHLIGHT", toggle.silverfish_highlight);
 		renderChunkBorders = xray_properties.getBooleanProperty("STATE_CHUNK_BORDERS", renderChunkBorders);
 		renderSlimeChunks = xray_properties.getBooleanProperty("STATE_SLIME_CHUNKS", renderSlimeChunks);
 		currentChunkRange = xray_properties.getIntProperty("STATE_CHUNK_RANGE", currentChunkRange);
@@ -3566,6 +4061,10 @@ public class XRay
 	 */
 	private void cleanup()
 	{
+		if (metricsCsvTimer != null)
+		{
+			metricsCsvTimer.cancel();
+		}
 		JumpDialog.closeDialog();
 		KeyHelpDialog.closeDialog();
 		BlockBindDialog.closeDialog();
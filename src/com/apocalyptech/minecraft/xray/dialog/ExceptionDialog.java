@@ -95,8 +95,9 @@ public class ExceptionDialog extends JFrame {
 	
 	public static Image iconImage;
 
-	private static String extraStatus1;
-	private static String extraStatus2;
+	// These are per-thread, since some of our startup loading happens in parallel
+	private static final ThreadLocal<String> extraStatus1 = new ThreadLocal<String>();
+	private static final ThreadLocal<String> extraStatus2 = new ThreadLocal<String>();
 
 	/***
 	 * Centers this dialog on the screen
@@ -131,16 +132,16 @@ public class ExceptionDialog extends JFrame {
 		reportLabel.setFont(new Font("Arial", Font.PLAIN, 12));
 
 		JLabel extraStatusLabel1 = null;
-		if (extraStatus1 != null)
+		if (extraStatus1.get() != null)
 		{
-			extraStatusLabel1 = new JLabel(extraStatus1);
+			extraStatusLabel1 = new JLabel(extraStatus1.get());
 			extraStatusLabel1.setFont(new Font("Arial", Font.PLAIN, 12));
 		}
 
 		JLabel extraStatusLabel2 = null;
-		if (extraStatus2 != null)
+		if (extraStatus2.get() != null)
 		{
-			extraStatusLabel2 = new JLabel(extraStatus2);
+			extraStatusLabel2 = new JLabel(extraStatus2.get());
 			extraStatusLabel2.setFont(new Font("Arial", Font.PLAIN, 12));
 		}
 
@@ -289,7 +290,7 @@ public class ExceptionDialog extends JFrame {
 	 */
 	public static void setExtraStatus1(String newStatus)
 	{
-		extraStatus1 = newStatus;
+		extraStatus1.set(newStatus);
 	}
 
 	/**
@@ -297,7 +298,7 @@ public class ExceptionDialog extends JFrame {
 	 */
 	public static String getExtraStatus1()
 	{
-		return extraStatus1;
+		return extraStatus1.get();
 	}
 
 	/**
@@ -305,7 +306,7 @@ public class ExceptionDialog extends JFrame {
 	 */
 	public static void clearExtraStatus1()
 	{
-		extraStatus1 = null;
+		extraStatus1.remove();
 	}
 
 	/**
@@ -313,7 +314,7 @@ public class ExceptionDialog extends JFrame {
 	 */
 	public static void setExtraStatus2(String newStatus)
 	{
-		extraStatus2 = newStatus;
+		extraStatus2.set(newStatus);
 	}
 
 	/**
@@ -321,7 +322,7 @@ public class ExceptionDialog extends JFrame {
 	 */
 	public static String getExtraStatus2()
 	{
-		return extraStatus2;
+		return extraStatus2.get();
 	}
 
 	/**
@@ -329,7 +330,7 @@ public class ExceptionDialog extends JFrame {
 	 */
 	public static void clearExtraStatus2()
 	{
-		extraStatus2 = null;
+		extraStatus2.remove();
 	}
 
 	/***